@@ -1,19 +1,29 @@
 package ca.mcgill.ecse211.mountev3rest.controller;
 
+import ca.mcgill.ecse211.mountev3rest.hardware.EV3Motor;
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import ca.mcgill.ecse211.mountev3rest.navigation.ArcIntegrator;
+import ca.mcgill.ecse211.mountev3rest.navigation.DifferentialDrive;
 import ca.mcgill.ecse211.mountev3rest.navigation.Display;
 import ca.mcgill.ecse211.mountev3rest.navigation.Localizer;
 import ca.mcgill.ecse211.mountev3rest.navigation.Navigation;
+import ca.mcgill.ecse211.mountev3rest.navigation.NavigationCommand;
 import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
 import ca.mcgill.ecse211.mountev3rest.navigation.OdometerException;
 import ca.mcgill.ecse211.mountev3rest.navigation.OdometryCorrector;
 import ca.mcgill.ecse211.mountev3rest.sensor.ColorDetector;
+import ca.mcgill.ecse211.mountev3rest.sensor.ColorLookupTable;
 import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
 import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
+import ca.mcgill.ecse211.mountev3rest.sensor.SensorRecorder;
 import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
 import ca.mcgill.ecse211.mountev3rest.util.ArmController;
 import ca.mcgill.ecse211.mountev3rest.util.CoordinateMap;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
+import java.io.IOException;
 import lejos.hardware.Button;
-import lejos.hardware.Sound;
 import lejos.hardware.ev3.LocalEV3;
 import lejos.hardware.lcd.TextLCD;
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
@@ -48,7 +58,17 @@ public class DomainController {
   private static final double WHEEL_RADIUS = 2.05;
   private static final double TILE_SIZE = 30.48;
   private static final double MOTOR_OFFSET = 1.015;
+  private static final int DRIVE_ACCELERATION = 800; // Degrees per second squared of the wheels
   private static final double SENSOR_OFFSET = -2.3;
+  private static final long ODOMETER_PERIOD = 25; // Milliseconds between odometer updates
+  private static final long LIGHT_SAMPLING_PERIOD = 10; // Milliseconds between light readings
+  private static final long US_SAMPLING_PERIOD = 30; // Milliseconds between ultrasonic readings
+  private static final String CALIBRATION_FILE = "lineCalibration.properties";
+  private static final String COLOR_REFERENCES_FILE = "colorReferences.properties";
+  private static final String COLOR_TABLE_FILE = "colorTable.bin";
+  private static final boolean RECORD_SENSORS = false; // Log the sensors for offline replay
+  private static final String RECORDING_FILE = "sensors.log";
+  private static final int RECORDING_CAPACITY = 1 << 18; // Records, about 15 minutes of a run
   private static final int MIN_DIST_TO_TREE = 5;
   private static final int MIN_DIST_TO_AVOID = 20;
   private static final double CORRECTION_DIST = 3;
@@ -56,6 +76,7 @@ public class DomainController {
 
   // Attributes
   CoordinateMap map;
+  RobotContext context;
   Odometer odometer;
   OdometryCorrector odometryCorrector;
   Navigation navigation;
@@ -64,13 +85,13 @@ public class DomainController {
   LightPoller lightPoller;
   ArmController armController;
   ColorDetector colorDetector;
+  TextLCD lcd;
 
   // Status attributes
   Zone zone;
 
-  // Threads
-  Thread odoThread;
-  Thread navThread;
+  // Periodic tasks
+  PeriodicScheduler scheduler;
 
   /**
    * Creates a {@code DomainController} and initializes all the required specialized classes.
@@ -90,11 +111,10 @@ public class DomainController {
   public DomainController() throws OdometerException, PollerException {
 
     // Get motor objects
-    EV3LargeRegulatedMotor leftMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D"));
-    EV3LargeRegulatedMotor rightMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("A"));
-    EV3MediumRegulatedMotor colorSensorMotor =
-        new EV3MediumRegulatedMotor(LocalEV3.get().getPort("B"));
-    EV3MediumRegulatedMotor armMotor = new EV3MediumRegulatedMotor(LocalEV3.get().getPort("C"));
+    Motor leftMotor = new EV3Motor(new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D")));
+    Motor rightMotor = new EV3Motor(new EV3LargeRegulatedMotor(LocalEV3.get().getPort("A")));
+    Motor colorSensorMotor = new EV3Motor(new EV3MediumRegulatedMotor(LocalEV3.get().getPort("B")));
+    Motor armMotor = new EV3Motor(new EV3MediumRegulatedMotor(LocalEV3.get().getPort("C")));
 
     // Instantiate the sensors
     EV3ColorSensor rightLightSensor = new EV3ColorSensor(LocalEV3.get().getPort("S1"));
@@ -102,28 +122,93 @@ public class DomainController {
     EV3ColorSensor leftLightSensor = new EV3ColorSensor(LocalEV3.get().getPort("S3"));
     EV3UltrasonicSensor usSensor = new EV3UltrasonicSensor(LocalEV3.get().getPort("S4"));
 
+    // Create the singleton components shared with the rest of the code
+    UltrasonicPoller.getUltrasonicPoller(usSensor.getMode("Distance"));
+    LightPoller.getLightPoller(topLightSensor.getMode("RGB"), leftLightSensor.getMode("Red"),
+        rightLightSensor.getMode("Red"));
+    Odometer.getOdometer(leftMotor, rightMotor, MOTOR_OFFSET,
+        new ArcIntegrator(WHEEL_RADIUS, TRACK), ODOMETER_PERIOD);
+
+    initialize(RobotContext.getDefault(), leftMotor, rightMotor, colorSensorMotor, armMotor,
+        LocalEV3.get().getTextLCD());
+  }
+
+  /**
+   * Creates a {@code DomainController} for the robot described by the given context. No singleton
+   * is used, so several controllers, each with its own context, can run in the same JVM. The
+   * odometer of the context is scheduled by this controller and must not be run elsewhere. Closing
+   * the context once the robot is done stops every thread started by the controller.
+   * 
+   * @param context Context holding the odometer and sensor pollers of the robot.
+   * @param leftMotor Left motor of the robot.
+   * @param rightMotor Right motor of the robot.
+   * @param colorSensorMotor Motor that moves the front light sensor.
+   * @param armMotor Motor that controls the arm's claw.
+   * @param lcd Display of the robot.
+   * 
+   * @throws OdometerException If the context does not provide an {@code Odometer}.
+   * @throws PollerException If the context does not provide an {@code UltrasonicPoller} or a
+   *         {@code LightPoller}.
+   * 
+   * @see RobotContext
+   */
+  public DomainController(RobotContext context, Motor leftMotor, Motor rightMotor,
+      Motor colorSensorMotor, Motor armMotor, TextLCD lcd)
+      throws OdometerException, PollerException {
+    initialize(context, leftMotor, rightMotor, colorSensorMotor, armMotor, lcd);
+  }
+
+  /*
+   * Creates the specialized objects and starts the periodic tasks.
+   */
+  private void initialize(RobotContext context, Motor leftMotor, Motor rightMotor,
+      Motor colorSensorMotor, Motor armMotor, TextLCD lcd)
+      throws OdometerException, PollerException {
+    this.context = context;
+    this.lcd = lcd;
+
     // Create the specialized objects
-    usPoller = UltrasonicPoller.getUltrasonicPoller(usSensor);
-    lightPoller = LightPoller.getLightPoller(topLightSensor, leftLightSensor, rightLightSensor);
-    odometer = Odometer.getOdometer(leftMotor, rightMotor, TRACK, WHEEL_RADIUS, MOTOR_OFFSET);
-    odometryCorrector =
-        new OdometryCorrector(leftMotor, rightMotor, TILE_SIZE, SENSOR_OFFSET, MOTOR_OFFSET);
-    navigation =
-        new Navigation(leftMotor, rightMotor, odometryCorrector, WHEEL_RADIUS, TRACK, MOTOR_OFFSET);
-    localizer = new Localizer(leftMotor, rightMotor, navigation, odometryCorrector, SENSOR_OFFSET,
-        TILE_SIZE);
-    colorDetector = new ColorDetector(LocalEV3.get().getTextLCD());
-    armController = new ArmController(colorSensorMotor, armMotor, leftMotor, rightMotor, navigation,
-        colorDetector, SENSOR_OFFSET);
+    usPoller = context.getUltrasonicPoller();
+    lightPoller = context.getLightPoller();
+    odometer = context.getOdometer();
+    DifferentialDrive drive =
+        new DifferentialDrive(leftMotor, rightMotor, WHEEL_RADIUS, TRACK, MOTOR_OFFSET);
+    drive.setAcceleration(DRIVE_ACCELERATION);
+    odometryCorrector = new OdometryCorrector(context, drive, TILE_SIZE, SENSOR_OFFSET);
+    navigation = new Navigation(context, drive, odometryCorrector);
+    localizer = new Localizer(context, navigation, odometryCorrector, SENSOR_OFFSET, TILE_SIZE);
+    colorDetector = new ColorDetector(lcd, lightPoller);
+    colorDetector.loadReferences(COLOR_REFERENCES_FILE); // Keeps the defaults if there is no file
+    ColorLookupTable colorTable = new ColorLookupTable(colorDetector.getClassifier());
+    if (colorTable.load(COLOR_TABLE_FILE))
+      colorDetector.setLookupTable(colorTable);
+    armController = new ArmController(colorSensorMotor, armMotor, navigation, colorDetector,
+        SENSOR_OFFSET, context.getFeedback());
 
     // Initialize the zone enumeration
     zone = Zone.START;
 
-    // Initialize and start the required extra threads
-    odoThread = new Thread(odometer);
-    navThread = new Thread(navigation);
-    odoThread.start();
-    navThread.start();
+    // Record the readings of the sensors before any of them is read. The context closes the
+    // recorder along with itself, which writes the log to its file
+    if (RECORD_SENSORS) {
+      try {
+        context.setRecorder(new SensorRecorder(RECORDING_FILE, RECORDING_CAPACITY));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    // Schedule and start the periodic tasks on the scheduler of the robot, which the context shuts
+    // down once the robot is done. The navigation blocks while turning, so it must not share a
+    // priority level with the odometer, and neither do the pollers, which sample on their own.
+    scheduler = context.getScheduler();
+    scheduler.schedule(odometer, odometer.getPeriod(), Priority.HIGH);
+    scheduler.schedule(navigation, Navigation.NAVIGATION_PERIOD, Priority.NORMAL);
+    scheduler.start();
+    lightPoller.attachMotors(leftMotor, rightMotor);
+    lightPoller.loadCalibration(CALIBRATION_FILE);
+    lightPoller.startSampling(scheduler, LIGHT_SAMPLING_PERIOD, LightPoller.LINES);
+    usPoller.startSampling(scheduler, US_SAMPLING_PERIOD);
   }
 
   /**
@@ -137,12 +222,16 @@ public class DomainController {
 
   /**
    * Uses the {@code Localizer} class to provide the odometer with an initial set of coordinates
-   * that correspond to the location of the robot with respect to the grid.
+   * that correspond to the location of the robot with respect to the grid. The line detection
+   * thresholds learned while crossing the lines are then saved to seed the next run.
    * 
    * @see Localizer
    */
   public void localize() {
     localizer.localize(map.StartCorner, map.LL_x, map.LL_y, map.UR_x, map.UR_y);
+
+    // Localization crosses several lines, keep the resulting calibration for the next run
+    lightPoller.saveCalibration(CALIBRATION_FILE);
   }
 
 
@@ -425,60 +514,44 @@ public class DomainController {
 
     switch (traversal) {
       case NORTH: // Bridge is placed vertically and the robot is closer to the lower left corner.
-        navigation.travelToY(map.TN_LL_y - 1);
-        navigation.waitNavigation();
-        navigation.travelToX(map.TN_LL_x + 0.5);
-        navigation.waitNavigation();
-        navigation.travelToY(map.TN_LL_y - 0.9);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.TN_LL_y - 1),
+            NavigationCommand.travelToX(map.TN_LL_x + 0.5),
+            NavigationCommand.travelToY(map.TN_LL_y - 0.9)).await();
         odometryCorrector.disable();
         odometryCorrector.correctOnNextLine(true);
-        navigation.highSpeedOn();
-        navigation.travelToY(map.TN_UR_y + 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelToY(map.TN_UR_y + 1),
+            NavigationCommand.highSpeed(false)).await();
         break;
       case WEST: // Bridge is placed horizontally and the robot is closer to the upper right corner.
-        navigation.travelToX(map.TN_UR_x + 1);
-        navigation.waitNavigation();
-        navigation.travelToY(map.TN_UR_y - 0.5);
-        navigation.waitNavigation();
-        navigation.travelToX(map.TN_UR_x + 0.9);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.TN_UR_x + 1),
+            NavigationCommand.travelToY(map.TN_UR_y - 0.5),
+            NavigationCommand.travelToX(map.TN_UR_x + 0.9)).await();
         odometryCorrector.disable();
         odometryCorrector.correctOnNextLine(true);
-        navigation.highSpeedOn();
-        navigation.travelToX(map.TN_LL_x - 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelToX(map.TN_LL_x - 1),
+            NavigationCommand.highSpeed(false)).await();
         break;
       case SOUTH: // Bridge is placed vertically and the robot is closer to the upper right corner.
-        navigation.travelToY(map.TN_UR_y + 1);
-        navigation.waitNavigation();
-        navigation.travelToX(map.TN_UR_x - 0.5);
-        navigation.waitNavigation();
-        navigation.travelToY(map.TN_UR_y + 0.9);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.TN_UR_y + 1),
+            NavigationCommand.travelToX(map.TN_UR_x - 0.5),
+            NavigationCommand.travelToY(map.TN_UR_y + 0.9)).await();
         odometryCorrector.disable();
         odometryCorrector.correctOnNextLine(true);
-        navigation.highSpeedOn();
-        navigation.travelToY(map.TN_LL_y - 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelToY(map.TN_LL_y - 1),
+            NavigationCommand.highSpeed(false)).await();
         break;
       case EAST: // Bridge is placed horizontally and the robot is closer to the lower left corner.
-        navigation.travelToX(map.TN_LL_x - 1);
-        navigation.waitNavigation();
-        navigation.travelToY(map.TN_LL_y + 0.5);
-        navigation.waitNavigation();
-        navigation.travelToX(map.TN_LL_x - 0.9);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.TN_LL_x - 1),
+            NavigationCommand.travelToY(map.TN_LL_y + 0.5),
+            NavigationCommand.travelToX(map.TN_LL_x - 0.9)).await();
         odometryCorrector.disable();
         odometryCorrector.correctOnNextLine(true);
-        navigation.highSpeedOn();
-        navigation.travelToX(map.TN_UR_x + 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelToX(map.TN_UR_x + 1),
+            NavigationCommand.highSpeed(false)).await();
         break;
     }
 
@@ -573,117 +646,77 @@ public class DomainController {
     if (position[0] < map.T_x * TILE_SIZE && position[1] < map.T_y * TILE_SIZE) {
       if (navigation.computeDistance(map.T_x - 1, map.T_y) < navigation.computeDistance(map.T_x,
           map.T_y - 1)) {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x - 1, map.T_y - SMALL_DIST);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(0);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x - 1, map.T_y - SMALL_DIST),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(0)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(90);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(90),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       } else {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x - SMALL_DIST, map.T_y - 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(90);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x - SMALL_DIST, map.T_y - 1),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(90)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(0);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(0),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       }
     } else if (position[0] < map.T_x * TILE_SIZE && position[1] > map.T_y * TILE_SIZE) {
       if (navigation.computeDistance(map.T_x - 1, map.T_y) < navigation.computeDistance(map.T_x,
           map.T_y + 1)) {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x - 1, map.T_y + SMALL_DIST);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(180);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x - 1, map.T_y + SMALL_DIST),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(180)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(90);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(90),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       } else {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x - SMALL_DIST, map.T_y + 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(90);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x - SMALL_DIST, map.T_y + 1),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(90)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(180);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(180),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       }
     } else if (position[0] > map.T_x * TILE_SIZE && position[1] > map.T_y * TILE_SIZE) {
       if (navigation.computeDistance(map.T_x + 1, map.T_y) < navigation.computeDistance(map.T_x,
           map.T_y + 1)) {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x + 1, map.T_y + SMALL_DIST);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(180);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x + 1, map.T_y + SMALL_DIST),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(180)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(270);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(270),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       } else {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x + SMALL_DIST, map.T_y + 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(270);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x + SMALL_DIST, map.T_y + 1),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(270)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(180);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(180),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       }
     } else if (position[0] > map.T_x * TILE_SIZE && position[1] < map.T_y * TILE_SIZE) {
       if (navigation.computeDistance(map.T_x + 1, map.T_y) < navigation.computeDistance(map.T_x,
           map.T_y - 1)) {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x + 1, map.T_y - SMALL_DIST);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(0);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x + 1, map.T_y - SMALL_DIST),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(0)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(270);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(270),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       } else {
-        navigation.highSpeedOn();
-        navigation.travelTo(map.T_x + SMALL_DIST, map.T_y - 1);
-        navigation.waitNavigation();
-        navigation.highSpeedOff();
-        navigation.turnTo(270);
+        navigation.enqueue(NavigationCommand.highSpeed(true),
+            NavigationCommand.travelTo(map.T_x + SMALL_DIST, map.T_y - 1),
+            NavigationCommand.highSpeed(false), NavigationCommand.turnTo(270)).await();
         odometryCorrector.correctOnNextLine(false);
-        navigation.advanceDist(-SENSOR_OFFSET);
-        navigation.waitNavigation();
-        navigation.turnTo(0);
-        navigation.advanceDist(CORRECTION_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.advance(-SENSOR_OFFSET), NavigationCommand.turnTo(0),
+            NavigationCommand.advance(CORRECTION_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
       }
     }
@@ -733,15 +766,15 @@ public class DomainController {
     position = odometer.getXYT();
     if (inY) {
       if (position[0] < TILE_SIZE * map.T_x) {
-        navigation.turnTo(90);
+        navigation.turnTo(90).await();
       } else {
-        navigation.turnTo(270);
+        navigation.turnTo(270).await();
       }
     } else if (inX) {
       if (position[1] < TILE_SIZE * map.T_y) {
-        navigation.turnTo(0);
+        navigation.turnTo(0).await();
       } else {
-        navigation.turnTo(180);
+        navigation.turnTo(180).await();
       }
     }
   }
@@ -756,64 +789,48 @@ public class DomainController {
 
     switch (odometryCorrector.direction) {
       case NORTH:
-        navigation.turnTo(90);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(90),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToX(map.T_x + 1);
-        navigation.waitNavigation();
-
-        navigation.travelToY(map.T_y);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.T_x + 1),
+            NavigationCommand.travelToY(map.T_y)).await();
 
         if (turn)
-          navigation.turnTo(270);
+          navigation.turnTo(270).await();
         break;
       case EAST:
-        navigation.turnTo(180);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(180),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToY(map.T_y - 1);
-        navigation.waitNavigation();
-
-        navigation.travelToX(map.T_x);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.T_y - 1),
+            NavigationCommand.travelToX(map.T_x)).await();
 
         if (turn)
-          navigation.turnTo(0);
+          navigation.turnTo(0).await();
         break;
       case SOUTH:
-        navigation.turnTo(270);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(270),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToX(map.T_x - 1);
-        navigation.waitNavigation();
-
-        navigation.travelToY(map.T_y);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.T_x - 1),
+            NavigationCommand.travelToY(map.T_y)).await();
 
         if (turn)
-          navigation.turnTo(90);
+          navigation.turnTo(90).await();
         break;
       case WEST:
-        navigation.turnTo(0);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(0),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToY(map.T_y + 1);
-        navigation.waitNavigation();
-
-        navigation.travelToX(map.T_x);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.T_y + 1),
+            NavigationCommand.travelToX(map.T_x)).await();
 
         if (turn)
-          navigation.turnTo(180);
+          navigation.turnTo(180).await();
         break;
       default:
         break;
@@ -830,64 +847,48 @@ public class DomainController {
 
     switch (odometryCorrector.direction) {
       case NORTH:
-        navigation.turnTo(270);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(270),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToX(map.T_x - 1);
-        navigation.waitNavigation();
-
-        navigation.travelToY(map.T_y);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.T_x - 1),
+            NavigationCommand.travelToY(map.T_y)).await();
 
         if (turn)
-          navigation.turnTo(90);
+          navigation.turnTo(90).await();
         break;
       case EAST:
-        navigation.turnTo(0);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(0),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToY(map.T_y + 1);
-        navigation.waitNavigation();
-
-        navigation.travelToX(map.T_x);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.T_y + 1),
+            NavigationCommand.travelToX(map.T_x)).await();
 
         if (turn)
-          navigation.turnTo(180);
+          navigation.turnTo(180).await();
         break;
       case SOUTH:
-        navigation.turnTo(90);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(90),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToX(map.T_x + 1);
-        navigation.waitNavigation();
-
-        navigation.travelToY(map.T_y);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToX(map.T_x + 1),
+            NavigationCommand.travelToY(map.T_y)).await();
 
         if (turn)
-          navigation.turnTo(270);
+          navigation.turnTo(270).await();
         break;
       case WEST:
-        navigation.turnTo(180);
-        navigation.advanceDist(SMALL_DIST);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.turnTo(180),
+            NavigationCommand.advance(SMALL_DIST)).await();
         odometryCorrector.correctOnNextLine(true);
 
-        navigation.travelToY(map.T_y - 1);
-        navigation.waitNavigation();
-
-        navigation.travelToX(map.T_x);
-        navigation.waitNavigation();
+        navigation.enqueue(NavigationCommand.travelToY(map.T_y - 1),
+            NavigationCommand.travelToX(map.T_x)).await();
 
         if (turn)
-          navigation.turnTo(0);
+          navigation.turnTo(0).await();
         break;
       default:
         break;
@@ -1002,14 +1003,12 @@ public class DomainController {
   // REMOVE
   public void testNavigation() throws OdometerException {
 
-    TextLCD lcd = LocalEV3.get().getTextLCD();
     lcd.drawString("      READY      ", 0, 4);
 
     // Button.waitForAnyPress();
 
-    Display display = new Display(lcd);
-    Thread disThread = new Thread(display);
-    disThread.start();
+    Display display = new Display(context, lcd);
+    scheduler.schedule(display, Display.DISPLAY_PERIOD, Priority.LOW);
 
     try {
       Thread.sleep(1000);
@@ -1027,13 +1026,13 @@ public class DomainController {
     navigation.waitNavigation();*/
 
 
-    navigation.turnTo(90);
+    navigation.turnTo(90).await();
     Button.waitForAnyPress();
-    navigation.turnTo(180);
+    navigation.turnTo(180).await();
     Button.waitForAnyPress();
-    navigation.turnTo(90);
+    navigation.turnTo(90).await();
     Button.waitForAnyPress();
-    navigation.turnTo(0);
+    navigation.turnTo(0).await();
     Button.waitForAnyPress();
 
 
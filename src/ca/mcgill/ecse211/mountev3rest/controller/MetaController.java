@@ -85,8 +85,8 @@ public class MetaController {
     lcd.drawString("       READY       ", 0, 4);
 
     /*Display display = new Display(lcd);
-    Thread disThread = new Thread(display);
-    disThread.start();*/
+    domainController.scheduler.schedule(display, Display.DISPLAY_PERIOD,
+        PeriodicScheduler.Priority.LOW);*/
     
     int treeRotations = 0;
 
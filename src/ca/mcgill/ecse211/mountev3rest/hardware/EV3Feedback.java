@@ -0,0 +1,18 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+import lejos.hardware.Sound;
+
+/**
+ * Gives the feedback of the robot through the speaker of the EV3 brick.
+ * 
+ * @author angelortiz
+ *
+ */
+public class EV3Feedback implements Feedback {
+
+  @Override
+  public void beep() {
+    Sound.beep();
+  }
+
+}
@@ -0,0 +1,106 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+import lejos.robotics.RegulatedMotor;
+
+/**
+ * Adapts a regulated motor of the EV3 brick, such as an {@code EV3LargeRegulatedMotor} or an
+ * {@code EV3MediumRegulatedMotor}, to the {@code Motor} interface.
+ * 
+ * @author angelortiz
+ *
+ */
+public class EV3Motor implements Motor {
+
+  // Attributes
+  private final RegulatedMotor motor;
+
+  /**
+   * Creates an adapter for the given motor.
+   * 
+   * @param motor leJOS motor connected to the brick.
+   */
+  public EV3Motor(RegulatedMotor motor) {
+    this.motor = motor;
+  }
+
+  /**
+   * Returns the leJOS motor behind the adapter.
+   * 
+   * @return The adapted {@code RegulatedMotor}.
+   */
+  public RegulatedMotor getMotor() {
+    return motor;
+  }
+
+  @Override
+  public void forward() {
+    motor.forward();
+  }
+
+  @Override
+  public void backward() {
+    motor.backward();
+  }
+
+  @Override
+  public void stop(boolean immediateReturn) {
+    motor.stop(immediateReturn);
+  }
+
+  @Override
+  public void rotate(int angle) {
+    motor.rotate(angle);
+  }
+
+  @Override
+  public void rotate(int angle, boolean immediateReturn) {
+    motor.rotate(angle, immediateReturn);
+  }
+
+  @Override
+  public void setSpeed(int speed) {
+    motor.setSpeed(speed);
+  }
+
+  @Override
+  public void setAcceleration(int acceleration) {
+    motor.setAcceleration(acceleration);
+  }
+
+  @Override
+  public int getTachoCount() {
+    return motor.getTachoCount();
+  }
+
+  @Override
+  public boolean isMoving() {
+    return motor.isMoving();
+  }
+
+  @Override
+  public void waitComplete() {
+    motor.waitComplete();
+  }
+
+  @Override
+  public void synchronizeWith(Motor[] motors) {
+    RegulatedMotor[] regulatedMotors = new RegulatedMotor[motors.length];
+    for (int i = 0; i < motors.length; i++) {
+      if (!(motors[i] instanceof EV3Motor))
+        throw new IllegalArgumentException("EV3 motors can only be synchronized with each other.");
+      regulatedMotors[i] = ((EV3Motor) motors[i]).motor;
+    }
+    motor.synchronizeWith(regulatedMotors);
+  }
+
+  @Override
+  public void startSynchronization() {
+    motor.startSynchronization();
+  }
+
+  @Override
+  public void endSynchronization() {
+    motor.endSynchronization();
+  }
+
+}
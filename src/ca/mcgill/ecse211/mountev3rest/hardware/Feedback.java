@@ -0,0 +1,23 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+/**
+ * Signals given by the robot to the people watching it, such as the beeps marking a correction of
+ * the odometer or the color of a ring.
+ * <p>
+ * The control code only signals through this interface, so that it does not load the audio stack
+ * of leJOS when it runs on another JVM. The brick uses an {@code EV3Feedback}, and simulations a
+ * {@code SilentFeedback}.
+ * 
+ * @see EV3Feedback
+ * @see SilentFeedback
+ * @author angelortiz
+ *
+ */
+public interface Feedback {
+
+  /**
+   * Emits a single beep.
+   */
+  public void beep();
+
+}
@@ -0,0 +1,104 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+/**
+ * Regulated motor used to move the robot or one of its mechanisms.
+ * <p>
+ * The interface only holds the operations used by the rest of the code, so that it can be
+ * implemented both by the motors of the EV3 brick, through an {@code EV3Motor}, and by a
+ * {@code SimulatedMotor} running on any JVM. Angles are given in degrees and speeds in degrees per
+ * second, as in leJOS.
+ * 
+ * @see EV3Motor
+ * @see SimulatedMotor
+ * @author angelortiz
+ *
+ */
+public interface Motor {
+
+  /**
+   * Starts rotating the motor forward until it is stopped.
+   */
+  public void forward();
+
+  /**
+   * Starts rotating the motor backward until it is stopped.
+   */
+  public void backward();
+
+  /**
+   * Stops the motor.
+   * 
+   * @param immediateReturn If true, returns without waiting for the motor to come to a stop.
+   */
+  public void stop(boolean immediateReturn);
+
+  /**
+   * Rotates the motor by the given angle and waits until the rotation is completed.
+   * 
+   * @param angle Angle of the rotation in degrees.
+   */
+  public void rotate(int angle);
+
+  /**
+   * Rotates the motor by the given angle.
+   * 
+   * @param angle Angle of the rotation in degrees.
+   * @param immediateReturn If true, returns as soon as the rotation starts.
+   */
+  public void rotate(int angle, boolean immediateReturn);
+
+  /**
+   * Sets the speed of the motor. The new speed applies immediately if the motor is moving.
+   * 
+   * @param speed Speed in degrees per second.
+   */
+  public void setSpeed(int speed);
+
+  /**
+   * Sets the acceleration used by the motor to change its speed, including when it starts and
+   * stops. Rotations decelerate so that they end at their target.
+   * 
+   * @param acceleration Acceleration in degrees per second squared.
+   */
+  public void setAcceleration(int acceleration);
+
+  /**
+   * Returns the rotation of the motor since it was created.
+   * 
+   * @return Tacho count in degrees.
+   */
+  public int getTachoCount();
+
+  /**
+   * Indicates whether the motor is moving.
+   * 
+   * @return True if the motor is rotating or has a rotation in progress.
+   */
+  public boolean isMoving();
+
+  /**
+   * Waits until the current rotation of the motor is completed.
+   */
+  public void waitComplete();
+
+  /**
+   * Sets the motors whose commands are synchronized with the ones of this motor. The motors must be
+   * of the same implementation as this one.
+   * 
+   * @param motors Motors to synchronize with.
+   */
+  public void synchronizeWith(Motor[] motors);
+
+  /**
+   * Starts a block of synchronized commands. The commands issued to this motor and to the motors it
+   * is synchronized with are deferred until {@code endSynchronization()}, and then take effect at
+   * the same time. Commands issued within the block must not wait for the motor.
+   */
+  public void startSynchronization();
+
+  /**
+   * Ends a block of synchronized commands, making all of them take effect at once.
+   */
+  public void endSynchronization();
+
+}
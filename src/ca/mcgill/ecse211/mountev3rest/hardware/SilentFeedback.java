@@ -0,0 +1,15 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+/**
+ * Ignores the feedback of the robot, for simulations running without the EV3 brick.
+ * 
+ * @author angelortiz
+ *
+ */
+public class SilentFeedback implements Feedback {
+
+  @Override
+  public void beep() {
+  }
+
+}
@@ -0,0 +1,314 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+/**
+ * In-memory motor that follows the commands it receives without any hardware.
+ * <p>
+ * The position of the motor is computed from the time elapsed since the last command. The motor
+ * changes its speed with the acceleration given to {@code setAcceleration()}, decelerating so that
+ * rotations end exactly at their target, or instantly if no acceleration was set. The elapsed time
+ * is multiplied by a time scale, so a simulation can run faster than real time. The control code
+ * still paces itself with {@code Thread.sleep()} and the system clock, so large time scales
+ * increase the distance covered between two iterations of its loops in the same way a slower
+ * processor would.
+ * <p>
+ * Commands issued within a synchronization block all take effect at the time the block started,
+ * like the synchronized commands of the EV3 motors. The time at which the last command of a motor
+ * took effect is available through {@code getCommandTime()}, which allows measuring the skew
+ * between the motors of the robot.
+ * 
+ * @see Motor
+ * @author angelortiz
+ *
+ */
+public class SimulatedMotor implements Motor {
+
+  // Constants
+  private static final long MAX_WAIT = 10; // Milliseconds between checks of a rotation
+  private static final double STEP = 0.001; // Simulated seconds per step while accelerating
+
+  // Attributes
+  private final double timeScale;
+  private double position; // Rotation in degrees
+  private int speed; // Degrees per second
+  private int acceleration; // Degrees per second squared, 0 to change the speed instantly
+  private double velocity; // Current signed speed in degrees per second
+  private int direction; // 1 forward, -1 backward, 0 stopped
+  private boolean rotating; // True if the motor is moving towards the target
+  private double target;
+  private long lastUpdate;
+  private long commandTime;
+  private int commands; // Number of movement commands received
+
+  // Synchronization
+  private SimulatedMotor[] group; // Motors synchronized with this one, including itself
+  private boolean synchronizing; // Time is frozen at syncTime while in a synchronization block
+  private long syncTime;
+
+  /**
+   * Creates a simulated motor running in real time.
+   */
+  public SimulatedMotor() {
+    this(1);
+  }
+
+  /**
+   * Creates a simulated motor running at the given multiple of real time.
+   * 
+   * @param timeScale Simulated seconds elapsed per real second.
+   */
+  public SimulatedMotor(double timeScale) {
+    if (!(timeScale > 0))
+      throw new IllegalArgumentException("The time scale must be positive.");
+    this.timeScale = timeScale;
+    this.position = 0;
+    this.speed = 0;
+    this.acceleration = 0;
+    this.velocity = 0;
+    this.direction = 0;
+    this.rotating = false;
+    this.lastUpdate = System.nanoTime();
+    this.commandTime = lastUpdate;
+    this.group = new SimulatedMotor[] {this};
+    this.synchronizing = false;
+  }
+
+  @Override
+  public synchronized void forward() {
+    move(1);
+  }
+
+  @Override
+  public synchronized void backward() {
+    move(-1);
+  }
+
+  @Override
+  public synchronized void stop(boolean immediateReturn) {
+    update();
+    direction = 0;
+    rotating = false;
+    commandTime = now();
+    commands++;
+    notifyAll();
+
+    if (!immediateReturn && !synchronizing)
+      waitMotion();
+  }
+
+  @Override
+  public void rotate(int angle) {
+    rotate(angle, false);
+  }
+
+  @Override
+  public synchronized void rotate(int angle, boolean immediateReturn) {
+    update();
+    commandTime = now();
+    commands++;
+    notifyAll(); // Wakes up the threads waiting on a previous rotation
+    if (angle == 0) {
+      direction = 0;
+      rotating = false;
+      return;
+    }
+
+    target = position + angle;
+    direction = angle > 0 ? 1 : -1;
+    rotating = true;
+
+    if (!immediateReturn && !synchronizing)
+      waitMotion();
+  }
+
+  @Override
+  public synchronized void setSpeed(int speed) {
+    update();
+    this.speed = Math.abs(speed);
+  }
+
+  @Override
+  public synchronized void setAcceleration(int acceleration) {
+    update();
+    this.acceleration = Math.abs(acceleration);
+  }
+
+  @Override
+  public synchronized int getTachoCount() {
+    update();
+    return (int) Math.round(position);
+  }
+
+  @Override
+  public synchronized boolean isMoving() {
+    update();
+    return direction != 0 || velocity != 0;
+  }
+
+  @Override
+  public synchronized void waitComplete() {
+    update();
+    if (!synchronizing)
+      waitMotion();
+  }
+
+  @Override
+  public synchronized void synchronizeWith(Motor[] motors) {
+    SimulatedMotor[] group = new SimulatedMotor[motors.length + 1];
+    group[0] = this;
+    for (int i = 0; i < motors.length; i++) {
+      if (!(motors[i] instanceof SimulatedMotor))
+        throw new IllegalArgumentException(
+            "Simulated motors can only be synchronized with each other.");
+      group[i + 1] = (SimulatedMotor) motors[i];
+    }
+    this.group = group;
+  }
+
+  @Override
+  public void startSynchronization() {
+    long time = System.nanoTime();
+    for (SimulatedMotor motor : group())
+      motor.freeze(time);
+  }
+
+  @Override
+  public void endSynchronization() {
+    for (SimulatedMotor motor : group())
+      motor.unfreeze();
+  }
+
+  /**
+   * Returns the speed at which the motor is currently rotating, which differs from the speed set
+   * while the motor accelerates or decelerates.
+   * 
+   * @return Signed speed in degrees per second, positive when moving forward.
+   */
+  public synchronized double getRotationSpeed() {
+    update();
+    return velocity;
+  }
+
+  /**
+   * Returns the time at which the last command of the motor took effect.
+   * 
+   * @return Time as given by {@code System.nanoTime()}.
+   */
+  public synchronized long getCommandTime() {
+    return commandTime;
+  }
+
+  // ---PRIVATE METHODS---
+
+  private synchronized SimulatedMotor[] group() {
+    return group;
+  }
+
+  /*
+   * Starts a synchronization block at the given time.
+   */
+  private synchronized void freeze(long time) {
+    update(time);
+    synchronizing = true;
+    syncTime = time;
+  }
+
+  /*
+   * Ends a synchronization block. The motor moves from the time the block started.
+   */
+  private synchronized void unfreeze() {
+    synchronizing = false;
+    notifyAll();
+  }
+
+  /*
+   * Starts a continuous rotation in the given direction.
+   */
+  private void move(int direction) {
+    update();
+    this.direction = direction;
+    rotating = false;
+    commandTime = now();
+    commands++;
+    notifyAll();
+  }
+
+  /*
+   * Waits until the current rotation or stop is completed or interrupted by another command. Must
+   * be called while holding the lock of the motor.
+   */
+  private void waitMotion() {
+    int command = commands;
+    while (commands == command && (rotating || (direction == 0 && velocity != 0))) {
+      long remaining = MAX_WAIT;
+      if (rotating && speed > 0)
+        remaining = (long) Math.ceil(Math.abs(target - position) / speed / timeScale * 1000);
+      try {
+        wait(Math.max(1, Math.min(remaining, MAX_WAIT)));
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+      update();
+    }
+  }
+
+  /*
+   * Current time of the motor, which does not advance within a synchronization block.
+   */
+  private long now() {
+    return synchronizing ? syncTime : System.nanoTime();
+  }
+
+  private void update() {
+    update(now());
+  }
+
+  /*
+   * Advances the position of the motor to the given time.
+   */
+  private void update(long now) {
+    double elapsed = Math.max(0, now - lastUpdate) * 1e-9 * timeScale;
+    lastUpdate = Math.max(now, lastUpdate);
+
+    while (elapsed > 0 && (direction != 0 || velocity != 0)) {
+      // Continuous movements at a constant speed can be advanced in a single step
+      if (!rotating && velocity == direction * speed) {
+        position += velocity * elapsed;
+        return;
+      }
+      double dt = acceleration == 0 ? elapsed : Math.min(elapsed, STEP);
+      step(dt);
+      elapsed -= dt;
+    }
+  }
+
+  /*
+   * Advances the motor by a step short enough to consider the acceleration constant. Rotations
+   * decelerate once the remaining angle is the distance needed to stop.
+   */
+  private void step(double dt) {
+    double desired = direction * speed;
+    if (rotating && acceleration > 0) {
+      double remaining = Math.max(0, (target - position) * direction);
+      desired = direction * Math.min(speed, Math.sqrt(2 * acceleration * remaining));
+    }
+
+    if (acceleration == 0)
+      velocity = desired;
+    else if (velocity < desired)
+      velocity = Math.min(desired, velocity + acceleration * dt);
+    else
+      velocity = Math.max(desired, velocity - acceleration * dt);
+    position += velocity * dt;
+
+    if (rotating && (target - position) * direction <= 0) {
+      position = target;
+      velocity = 0;
+      direction = 0;
+      rotating = false;
+      notifyAll();
+    } else if (direction == 0 && velocity == 0) {
+      notifyAll();
+    }
+  }
+
+}
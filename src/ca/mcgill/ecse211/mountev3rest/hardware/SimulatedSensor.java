@@ -0,0 +1,58 @@
+package ca.mcgill.ecse211.mountev3rest.hardware;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * In-memory sensor returning the values last set on it.
+ * <p>
+ * The pollers read their sensors through the {@code SampleProvider} interface of leJOS, which does
+ * not depend on the hardware, so a simulation only needs to update the values of a
+ * {@code SimulatedSensor} as the simulated robot moves.
+ * 
+ * @author angelortiz
+ *
+ */
+public class SimulatedSensor implements SampleProvider {
+
+  // Attributes
+  private final float[] values;
+
+  /**
+   * Creates a sensor with the given sample size. Every value starts at 0.
+   * 
+   * @param size Number of values in a sample.
+   */
+  public SimulatedSensor(int size) {
+    values = new float[size];
+  }
+
+  /**
+   * Sets the values returned by the sensor.
+   * 
+   * @param sample Array holding at least as many values as the sample size.
+   */
+  public synchronized void set(float[] sample) {
+    System.arraycopy(sample, 0, values, 0, values.length);
+  }
+
+  /**
+   * Sets a single value returned by the sensor.
+   * 
+   * @param index Index of the value in the sample.
+   * @param value New value.
+   */
+  public synchronized void set(int index, float value) {
+    values[index] = value;
+  }
+
+  @Override
+  public int sampleSize() {
+    return values.length;
+  }
+
+  @Override
+  public synchronized void fetchSample(float[] sample, int offset) {
+    System.arraycopy(values, 0, sample, offset, values.length);
+  }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Provides the interfaces through which the rest of the code accesses the motors of the robot and
+ * gives feedback, along with their EV3 and simulated implementations.
+ */
+package ca.mcgill.ecse211.mountev3rest.hardware;
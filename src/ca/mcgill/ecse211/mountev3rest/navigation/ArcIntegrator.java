@@ -0,0 +1,69 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Odometry model that treats the movement of the robot during an update as an arc of constant
+ * curvature, which is the exact path followed when both wheels turn at constant speeds.
+ * <p>
+ * The displacement is the chord of that arc. Its direction is the midpoint heading
+ * {@code theta + deltaT / 2} and its length is the distance travelled scaled by
+ * {@code sin(deltaT / 2) / (deltaT / 2)}. The {@code EulerIntegrator} instead applies the whole
+ * distance along the final heading, which causes an error proportional to the rotation per update.
+ * Since this model stays accurate when the rotation per update is large, it allows running the
+ * odometer at lower rates or higher speeds.
+ * <p>
+ * The trigonometric values are read from the table of the {@code LookupTableIntegrator}, so this
+ * model does not require floating point hardware either. The computed pose therefore matches the
+ * arc up to the interpolation error of the table, below one part in a million of the distance
+ * travelled, rather than exactly.
+ * 
+ * @see Odometer
+ * @author angelortiz
+ *
+ */
+public class ArcIntegrator implements OdometryIntegrator {
+
+  // Constants
+  private static final double SERIES_LIMIT = 0.1; // Half angle below which the series is used
+  private final double HALF_DIST_PER_COUNT; // Distance travelled by the center per count of sum
+  private final double DEGREES_PER_COUNT; // Rotation of the robot per count of difference
+
+  /**
+   * Creates an integrator for a robot with the given dimensions.
+   * 
+   * @param WHEEL_RAD Wheel radius measurement of the robot.
+   * @param TRACK Distance between the left and right wheels.
+   */
+  public ArcIntegrator(final double WHEEL_RAD, final double TRACK) {
+    double distPerCount = Math.PI * WHEEL_RAD / 180;
+    HALF_DIST_PER_COUNT = 0.5 * distPerCount;
+    DEGREES_PER_COUNT = Math.toDegrees(distPerCount / TRACK);
+  }
+
+  @Override
+  public void integrate(int deltaLeft, int deltaRight, double theta, double[] delta) {
+    double deltaD = HALF_DIST_PER_COUNT * (deltaLeft + deltaRight);
+    double deltaT = DEGREES_PER_COUNT * (deltaLeft - deltaRight);
+
+    double heading = theta + 0.5 * deltaT;
+    double chord = deltaD * chordFactor(0.5 * Math.toRadians(deltaT));
+
+    delta[0] = chord * LookupTableIntegrator.sin(heading);
+    delta[1] = chord * LookupTableIntegrator.cos(heading);
+    delta[2] = deltaT;
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Computes sin(half) / half. Small angles use the Taylor series, since dividing the table value
+   * by a small angle would amplify its interpolation error.
+   */
+  private double chordFactor(double half) {
+    if (half < SERIES_LIMIT && half > -SERIES_LIMIT) {
+      double squared = half * half;
+      return 1 - squared / 6 * (1 - squared / 20);
+    }
+    return LookupTableIntegrator.sin(Math.toDegrees(half)) / half;
+  }
+
+}
@@ -0,0 +1,399 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+
+/**
+ * Moves the robot by issuing paired commands to its left and right motors.
+ * <p>
+ * Commands to both wheels are issued within a synchronization block, so the wheels start and stop
+ * at the same time instead of one after the other. The {@code MOTOR_OFFSET} compensating for the
+ * difference between the motors is applied here to every command: the left motor always runs
+ * {@code MOTOR_OFFSET} times faster and further than the right one, which is also the ratio the
+ * {@code Odometer} divides the left tacho count by.
+ * <p>
+ * Speed changes are limited by the acceleration of the drive, so every movement follows the
+ * trapezoidal {@code MotionProfile} returned by {@code getProfile()}. The speed and acceleration of
+ * both wheels are scaled by the same ratio, which keeps their profiles proportional and makes them
+ * finish at the same time even when they rotate by different angles.
+ * <p>
+ * Angles follow the convention of the {@code Odometer}, where positive angles are clockwise
+ * rotations. Speeds are given in degrees per second of the right wheel.
+ * 
+ * @see MotionProfile
+ * @see Odometer
+ * @author angelortiz
+ *
+ */
+public class DifferentialDrive {
+
+  // Constants
+  private static final int DEFAULT_ACCELERATION = 6000; // Default of the EV3 motors
+  private final double WHEEL_RADIUS;
+  private final double TRACK;
+  private final double MOTOR_OFFSET;
+
+  // Attributes
+  private final Motor leftMotor;
+  private final Motor rightMotor;
+  private int speed;
+  private MotionProfile profile;
+
+  /**
+   * Creates a drive for the given motors and synchronizes them.
+   * 
+   * @param leftMotor Left motor of the robot.
+   * @param rightMotor Right motor of the robot.
+   * @param WHEEL_RADIUS Wheel radius of the robot's wheels measured in centimeters.
+   * @param TRACK Measurement of the robot's track in centimeters.
+   * @param MOTOR_OFFSET Ratio between the speeds of the left and right motors.
+   */
+  public DifferentialDrive(Motor leftMotor, Motor rightMotor, final double WHEEL_RADIUS,
+      final double TRACK, final double MOTOR_OFFSET) {
+    this.leftMotor = leftMotor;
+    this.rightMotor = rightMotor;
+    this.WHEEL_RADIUS = WHEEL_RADIUS;
+    this.TRACK = TRACK;
+    this.MOTOR_OFFSET = MOTOR_OFFSET;
+    this.speed = 0;
+    this.profile = new MotionProfile(DEFAULT_ACCELERATION);
+
+    leftMotor.synchronizeWith(new Motor[] {rightMotor});
+  }
+
+  /**
+   * Returns the left motor of the robot, for movements of a single wheel.
+   * 
+   * @return Left motor of the robot.
+   */
+  public Motor getLeftMotor() {
+    return leftMotor;
+  }
+
+  /**
+   * Returns the right motor of the robot, for movements of a single wheel.
+   * 
+   * @return Right motor of the robot.
+   */
+  public Motor getRightMotor() {
+    return rightMotor;
+  }
+
+  /**
+   * Returns the wheel radius of the robot.
+   * 
+   * @return Wheel radius in centimeters.
+   */
+  public double getWheelRadius() {
+    return WHEEL_RADIUS;
+  }
+
+  /**
+   * Returns the track of the robot.
+   * 
+   * @return Track in centimeters.
+   */
+  public double getTrack() {
+    return TRACK;
+  }
+
+  /**
+   * Returns the ratio between the speeds of the left and right motors applied by the drive.
+   * 
+   * @return Motor offset of the robot.
+   */
+  public double getMotorOffset() {
+    return MOTOR_OFFSET;
+  }
+
+  /**
+   * Sets the speed of the robot. The new speed applies immediately if the robot is moving.
+   * 
+   * @param speed Speed in degrees per second of the right wheel.
+   */
+  public synchronized void setSpeed(int speed) {
+    this.speed = speed;
+    leftMotor.startSynchronization();
+    applySpeeds(1, 1);
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Returns the speed of the robot.
+   * 
+   * @return Speed in degrees per second of the right wheel.
+   */
+  public synchronized int getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Sets the acceleration of the robot, which applies from the next movement.
+   * 
+   * @param acceleration Acceleration in degrees per second squared of the right wheel.
+   */
+  public synchronized void setAcceleration(int acceleration) {
+    profile = new MotionProfile(acceleration);
+  }
+
+  /**
+   * Returns the speed profile followed by the movements of the robot.
+   * 
+   * @return The {@code MotionProfile} of the current acceleration.
+   */
+  public synchronized MotionProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Moves the robot forward until it is stopped.
+   */
+  public void forward() {
+    move(1, 1);
+  }
+
+  /**
+   * Moves the robot backward until it is stopped.
+   */
+  public void backward() {
+    move(-1, -1);
+  }
+
+  /**
+   * Turns the robot clockwise in place until it is stopped.
+   */
+  public void spinClockwise() {
+    move(1, -1);
+  }
+
+  /**
+   * Turns the robot counter-clockwise in place until it is stopped.
+   */
+  public void spinCounterClockwise() {
+    move(-1, 1);
+  }
+
+  /**
+   * Pivots the robot around one of its wheels by moving the other wheel alone until it is stopped.
+   * The moving wheel runs at the speed of the drive, with the offset if it is the left one.
+   * 
+   * @param side Wheel that moves, 0 for the left one and 1 for the right one.
+   * @param forward True to move the wheel forward, false to move it backward.
+   */
+  public synchronized void pivot(int side, boolean forward) {
+    if (side != 0 && side != 1)
+      throw new IllegalArgumentException("The side of a pivot must be 0 or 1.");
+
+    Motor motor = side == 0 ? leftMotor : rightMotor;
+    leftMotor.startSynchronization();
+    applySpeeds(1, 1);
+    if (forward)
+      motor.forward();
+    else
+      motor.backward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Moves the robot forward along a circle until it is stopped or steered again. The center of the
+   * robot moves at the speed of the drive, the outer wheel faster and the inner one slower. Calling
+   * this method periodically with new curvatures makes the robot follow a smooth path.
+   * 
+   * @param curvature Inverse of the radius of the circle in 1/cm, positive to turn clockwise. Its
+   *        magnitude cannot exceed {@code 2 / TRACK}, which would stop the inner wheel.
+   */
+  public synchronized void steer(double curvature) {
+    double ratio = curvature * TRACK / 2;
+    if (Math.abs(ratio) > 1)
+      throw new IllegalArgumentException("The curvature would make a wheel move backward.");
+
+    leftMotor.startSynchronization();
+    applySpeeds(1 + ratio, 1 - ratio);
+    leftMotor.forward();
+    rightMotor.forward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Stops both motors at the same time and waits until they are stopped. The motors decelerate with
+   * the acceleration of the drive.
+   */
+  public void stop() {
+    synchronized (this) {
+      leftMotor.startSynchronization();
+      leftMotor.stop(true);
+      rightMotor.stop(true);
+      leftMotor.endSynchronization();
+    }
+
+    waitComplete();
+  }
+
+  /**
+   * Moves the robot in a straight line and waits until the movement is completed.
+   * 
+   * @param distance Distance in centimeters, negative to move backward.
+   */
+  public void drive(double distance) {
+    drive(distance, false);
+  }
+
+  /**
+   * Moves the robot in a straight line.
+   * 
+   * @param distance Distance in centimeters, negative to move backward.
+   * @param immediateReturn If true, returns as soon as the movement starts.
+   */
+  public void drive(double distance, boolean immediateReturn) {
+    int angle = Navigation.convertDistance(WHEEL_RADIUS, distance);
+    rotate(angle, angle, 1, immediateReturn);
+  }
+
+  /**
+   * Turns the robot in place and waits until the rotation is completed.
+   * 
+   * @param angle Angle of the rotation in degrees, positive for clockwise rotations.
+   */
+  public void spin(double angle) {
+    spin(angle, false);
+  }
+
+  /**
+   * Turns the robot in place.
+   * 
+   * @param angle Angle of the rotation in degrees, positive for clockwise rotations.
+   * @param immediateReturn If true, returns as soon as the rotation starts.
+   */
+  public void spin(double angle, boolean immediateReturn) {
+    int wheelAngle = Navigation.convertAngle(WHEEL_RADIUS, TRACK, angle);
+    rotate(wheelAngle, -wheelAngle, 1, immediateReturn);
+  }
+
+  /**
+   * Moves the robot forward along a circle and waits until the movement is completed.
+   * 
+   * @param radius Radius of the circle followed by the center of the robot in centimeters.
+   * @param angle Change of heading in degrees, positive to turn clockwise.
+   */
+  public void arc(double radius, double angle) {
+    arc(radius, angle, false);
+  }
+
+  /**
+   * Moves the robot forward along a circle. The wheel on the outside of the turn runs at the speed
+   * of the robot and the inner one proportionally slower, so both finish at the same time.
+   * 
+   * @param radius Radius of the circle followed by the center of the robot in centimeters.
+   * @param angle Change of heading in degrees, positive to turn clockwise.
+   * @param immediateReturn If true, returns as soon as the movement starts.
+   */
+  public void arc(double radius, double angle, boolean immediateReturn) {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius of an arc cannot be negative.");
+
+    double radians = Math.toRadians(angle);
+    double leftDistance = radius * Math.abs(radians) + TRACK / 2 * radians;
+    double rightDistance = radius * Math.abs(radians) - TRACK / 2 * radians;
+    double outer = Math.max(Math.abs(leftDistance), Math.abs(rightDistance));
+    if (outer == 0)
+      return;
+
+    int leftAngle = Navigation.convertDistance(WHEEL_RADIUS, leftDistance);
+    int rightAngle = Navigation.convertDistance(WHEEL_RADIUS, rightDistance);
+    rotate(leftAngle, rightAngle, Math.abs(leftDistance) / outer, Math.abs(rightDistance) / outer,
+        immediateReturn);
+  }
+
+  /**
+   * Rotates the wheels back to previously read tacho counts, such as to undo a movement. The
+   * counts already include the offset of the left motor.
+   * 
+   * @param leftTacho Tacho count of the left motor to return to.
+   * @param rightTacho Tacho count of the right motor to return to.
+   * @param immediateReturn If true, returns as soon as the movement starts.
+   */
+  public void returnTo(int leftTacho, int rightTacho, boolean immediateReturn) {
+    synchronized (this) {
+      leftMotor.startSynchronization();
+      applySpeeds(1, 1);
+      leftMotor.rotate(leftTacho - leftMotor.getTachoCount(), true);
+      rightMotor.rotate(rightTacho - rightMotor.getTachoCount(), true);
+      leftMotor.endSynchronization();
+    }
+
+    if (!immediateReturn)
+      waitComplete();
+  }
+
+  /**
+   * Indicates whether the robot is moving.
+   * 
+   * @return True if any of the motors is moving.
+   */
+  public boolean isMoving() {
+    return leftMotor.isMoving() || rightMotor.isMoving();
+  }
+
+  /**
+   * Waits until the current movement is completed.
+   */
+  public void waitComplete() {
+    leftMotor.waitComplete();
+    rightMotor.waitComplete();
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Starts a continuous movement with the given direction for each wheel.
+   */
+  private synchronized void move(int leftDirection, int rightDirection) {
+    leftMotor.startSynchronization();
+    applySpeeds(1, 1);
+    if (leftDirection > 0)
+      leftMotor.forward();
+    else
+      leftMotor.backward();
+    if (rightDirection > 0)
+      rightMotor.forward();
+    else
+      rightMotor.backward();
+    leftMotor.endSynchronization();
+  }
+
+  private void rotate(int leftAngle, int rightAngle, double speedRatio, boolean immediateReturn) {
+    rotate(leftAngle, rightAngle, speedRatio, speedRatio, immediateReturn);
+  }
+
+  /*
+   * Rotates both wheels by the given angles of the right wheel, scaling the speed of each wheel by
+   * the given ratio. The offset is applied to the left wheel.
+   */
+  private void rotate(int leftAngle, int rightAngle, double leftRatio, double rightRatio,
+      boolean immediateReturn) {
+    synchronized (this) {
+      leftMotor.startSynchronization();
+      applySpeeds(leftRatio, rightRatio);
+      leftMotor.rotate((int) Math.round(leftAngle * MOTOR_OFFSET), true);
+      rightMotor.rotate(rightAngle, true);
+      leftMotor.endSynchronization();
+    }
+
+    if (!immediateReturn)
+      waitComplete();
+  }
+
+  /*
+   * Sets the speed and acceleration of each wheel scaled by the given ratio. The offset is applied
+   * to the left wheel, and the acceleration is kept positive so a stopped wheel does not switch to
+   * instant speed changes. Must be called within a synchronization block.
+   */
+  private void applySpeeds(double leftRatio, double rightRatio) {
+    int acceleration = profile.getAcceleration();
+    leftMotor.setSpeed((int) Math.round(speed * leftRatio * MOTOR_OFFSET));
+    rightMotor.setSpeed((int) Math.round(speed * rightRatio));
+    leftMotor.setAcceleration(
+        Math.max(1, (int) Math.round(acceleration * leftRatio * MOTOR_OFFSET)));
+    rightMotor.setAcceleration(Math.max(1, (int) Math.round(acceleration * rightRatio)));
+  }
+
+}
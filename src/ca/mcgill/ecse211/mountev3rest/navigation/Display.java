@@ -3,6 +3,7 @@ package ca.mcgill.ecse211.mountev3rest.navigation;
 import java.text.DecimalFormat;
 import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
 import ca.mcgill.ecse211.mountev3rest.navigation.OdometerException;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
 import lejos.hardware.lcd.TextLCD;
 import lejos.hardware.sensor.EV3GyroSensor;
 import lejos.robotics.SampleProvider;
@@ -15,9 +16,13 @@ public class Display implements Runnable {
   private Odometer odo;
   private TextLCD lcd;
   private OdometryCorrector corrector;
-  private double[] position;
-  private final long DISPLAY_PERIOD = 25;
-  private long timeout = Long.MAX_VALUE;
+  private PoseMailbox mailbox = new PoseMailbox();
+  private double[] position = new double[3];
+  private boolean correctorShown;
+  private DecimalFormat numberFormat = new DecimalFormat("######0.00");
+  public static final long DISPLAY_PERIOD = 25;
+  private static final double MIN_DISTANCE = 0.01; // Smallest change visible on the display
+  private static final double MIN_ROTATION = 0.01;
 
   /**
    * Created a display object.
@@ -27,55 +32,57 @@ public class Display implements Runnable {
    * @throws OdometerException If the odometed has not been instantiated.
    */
   public Display(TextLCD lcd) throws OdometerException {
-    odo = Odometer.getOdometer();
+    this(RobotContext.getDefault(), lcd);
+  }
+
+  /**
+   * Creates a display object showing the odometer of the given robot context.
+   * 
+   * @param context Context holding the odometer of the robot.
+   * @param lcd LCD display to use to display the odometer parameters.
+   * 
+   * @throws OdometerException If the context does not provide an {@code Odometer}.
+   */
+  public Display(RobotContext context, TextLCD lcd) throws OdometerException {
+    odo = context.getOdometer();
+    odo.addPoseListener(mailbox, MIN_DISTANCE, MIN_ROTATION);
     this.lcd = lcd;
+    lcd.clear();
   }
   
   //REMOVE
   public Display(TextLCD lcd, OdometryCorrector corrector) throws OdometerException {
     odo = Odometer.getOdometer();
+    odo.addPoseListener(mailbox, MIN_DISTANCE, MIN_ROTATION);
     this.corrector = corrector;
     this.lcd = lcd;
+    lcd.clear();
+    drawCorrector();
   }
 
-  /*
-   * Main logic of the Display class where the odometer values are constantly polled and displayed.
+  /**
+   * Main logic of the Display class where the odometer values are displayed. Each call refreshes
+   * the display once if the odometer published a new pose, the method is meant to be run every
+   * {@code DISPLAY_PERIOD} milliseconds by a {@code PeriodicScheduler}.
    * 
-   * (non-Javadoc)
-   * @see java.lang.Runnable#run()
+   * @see ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler
    */
   public void run() {
-    lcd.clear();
-    
-    long updateStart, updateEnd;
-
-    long tStart = System.currentTimeMillis();
-    do {
-      updateStart = System.currentTimeMillis();
-
-      // Retrieve x, y and Theta information
-      position = odo.getXYT();
-      
+    // Retrieve x, y and Theta information if the robot moved
+    if (mailbox.poll(position)) {
       // Print x,y, and theta information
-      DecimalFormat numberFormat = new DecimalFormat("######0.00");
       lcd.drawString("X: " + numberFormat.format(position[0]), 0, 0);
       lcd.drawString("Y: " + numberFormat.format(position[1]), 0, 1);
       lcd.drawString("T: " + numberFormat.format(position[2]), 0, 2);
-      
-      if (corrector != null)
-        lcd.drawString("Corrector: " + (corrector.isEnabled() ? "ON " : "OFF"), 0, 4);
-      
-      // this ensures that the data is updated only once every period
-      updateEnd = System.currentTimeMillis();
-      if (updateEnd - updateStart < DISPLAY_PERIOD) {
-        try {
-          Thread.sleep(DISPLAY_PERIOD - (updateEnd - updateStart));
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
-    } while ((updateEnd - tStart) <= timeout);
+    }
+
+    if (corrector != null && corrector.isEnabled() != correctorShown)
+      drawCorrector();
+  }
 
+  private void drawCorrector() {
+    correctorShown = corrector.isEnabled();
+    lcd.drawString("Corrector: " + (correctorShown ? "ON " : "OFF"), 0, 4);
   }
 
 }
@@ -0,0 +1,41 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Original odometry model of the {@code Odometer}. The distance travelled during an update is
+ * applied along the heading of the robot at the end of the update, using double precision
+ * trigonometry.
+ * 
+ * @see Odometer
+ * @author angelortiz
+ *
+ */
+public class EulerIntegrator implements OdometryIntegrator {
+
+  // Constants
+  private final double WHEEL_RAD;
+  private final double TRACK;
+
+  /**
+   * Creates an integrator for a robot with the given dimensions.
+   * 
+   * @param WHEEL_RAD Wheel radius measurement of the robot.
+   * @param TRACK Distance between the left and right wheels.
+   */
+  public EulerIntegrator(final double WHEEL_RAD, final double TRACK) {
+    this.WHEEL_RAD = WHEEL_RAD;
+    this.TRACK = TRACK;
+  }
+
+  @Override
+  public void integrate(int deltaLeft, int deltaRight, double theta, double[] delta) {
+    double distL = Math.PI * WHEEL_RAD * deltaLeft / 180;
+    double distR = Math.PI * WHEEL_RAD * deltaRight / 180;
+    double deltaD = 0.5 * (distL + distR);
+    double deltaT = Math.toDegrees((distL - distR) / TRACK);
+
+    delta[0] = deltaD * Math.sin(Math.toRadians(theta + deltaT));
+    delta[1] = deltaD * Math.cos(Math.toRadians(theta + deltaT));
+    delta[2] = deltaT;
+  }
+
+}
@@ -1,11 +1,11 @@
 package ca.mcgill.ecse211.mountev3rest.navigation;
 
 import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.LineEvent;
+import ca.mcgill.ecse211.mountev3rest.sensor.LineEventQueue;
 import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
 import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
-import lejos.hardware.Button;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
 
 /**
  * Provides localization functionality, which allows the robot to compute its initial location when
@@ -27,6 +27,7 @@ public class Localizer {
   private static final int ROTATE_SPEED = 200;
   private static final int FORWARD_SPEED = 100;
   private static final int APROX_DIST = 7;
+  private static final int LINE_EVENT_CAPACITY = 16;
   private final double SENSOR_OFFSET;
   private final double TILE_SIZE;
 
@@ -36,20 +37,21 @@ public class Localizer {
   private UltrasonicPoller usPoller;
   private LightPoller lightPoller;
   private Navigation navigation;
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private DifferentialDrive drive;
 
   // Localization Attributes
   private int prevDistance;
   private int currDistance;
   private double alpha;
   private double beta;
+  private double[] pose = new double[3];
+  private LineEventQueue lineEvents = new LineEventQueue(LINE_EVENT_CAPACITY);
+  private LineEvent lineEvent = new LineEvent();
 
   /**
-   * Creates a {@code Localizator} that will operate on the singleton {@code Odometer} class.
+   * Creates a {@code Localizator} that will operate on the singleton {@code Odometer} class. The
+   * robot is moved through the drive of the given navigation.
    * 
-   * @param leftMotor Lower left motor of the robot.
-   * @param rightMotor Lower right motor of the robot.
    * @param navigation Navigation object to move the robot on the grid.
    * @param odometryCorrector Object used to align the robot to a line during light localization.
    * @param SENSOR_OFFSET Distance between the lower light sensor and the robot's center.
@@ -61,17 +63,37 @@ public class Localizer {
    * 
    * @see Odometer
    */
-  public Localizer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-      Navigation navigation, OdometryCorrector odometryCorrector, final double SENSOR_OFFSET,
-      final double TILE_SIZE) throws OdometerException, PollerException {
-    usPoller = UltrasonicPoller.getUltrasonicPoller();
-    lightPoller = LightPoller.getLightPoller();
-    odometer = Odometer.getOdometer();
+  public Localizer(Navigation navigation, OdometryCorrector odometryCorrector,
+      final double SENSOR_OFFSET, final double TILE_SIZE)
+      throws OdometerException, PollerException {
+    this(RobotContext.getDefault(), navigation, odometryCorrector, SENSOR_OFFSET, TILE_SIZE);
+  }
+
+  /**
+   * Creates a {@code Localizator} that will operate on the components of the given robot context.
+   * The robot is moved through the drive of the given navigation.
+   * 
+   * @param context Context holding the odometer and sensor pollers of the robot.
+   * @param navigation Navigation object to move the robot on the grid.
+   * @param odometryCorrector Object used to align the robot to a line during light localization.
+   * @param SENSOR_OFFSET Distance between the lower light sensor and the robot's center.
+   * @param TILE_SIZE Size of a tile in the grid in centimeters.
+   * 
+   * @throws OdometerException If the context does not provide an {@code Odometer}.
+   * @throws PollerException If the context does not provide an {@code UltrasonicPoller} or a
+   *         {@code LightPoller}.
+   */
+  public Localizer(RobotContext context, Navigation navigation,
+      OdometryCorrector odometryCorrector, final double SENSOR_OFFSET, final double TILE_SIZE)
+      throws OdometerException, PollerException {
+    usPoller = context.getUltrasonicPoller();
+    lightPoller = context.getLightPoller();
+    lightPoller.addLineEventQueue(lineEvents);
+    odometer = context.getOdometer();
     this.odometryCorrector = odometryCorrector;
 
     this.navigation = navigation;
-    this.leftMotor = leftMotor;
-    this.rightMotor = rightMotor;
+    this.drive = navigation.getDrive();
 
     this.SENSOR_OFFSET = SENSOR_OFFSET;
     this.TILE_SIZE = TILE_SIZE;
@@ -113,10 +135,8 @@ public class Localizer {
     boolean firstSearch = true;
     int counter = 0;
 
-    leftMotor.setSpeed(ROTATE_SPEED);
-    rightMotor.setSpeed(ROTATE_SPEED);
-    leftMotor.forward();
-    rightMotor.backward();
+    drive.setSpeed(ROTATE_SPEED);
+    drive.spinClockwise();
 
     boolean highDelta = false;
 
@@ -124,6 +144,7 @@ public class Localizer {
     while (true) {
       updateStart = System.currentTimeMillis();
       currDistance = usPoller.poll();
+      long pollTime = usPoller.getTimestamp(); // Time at which the filtered reading was measured
       if (prevDistance < 0) {
         prevDistance = currDistance;
         continue;
@@ -148,9 +169,8 @@ public class Localizer {
       // Check if edge conditions are met
       if /*(counter >= MIN_US_DETECTIONS && highDelta && currDistance < 35)*/ (currDistance < 25 && prevDistance > 25) {
         if (firstSearch) {
-          beta = odometer.getXYT()[2];
-          leftMotor.backward();
-          rightMotor.forward();
+          beta = odometer.poseAt(pollTime, pose)[2];
+          drive.spinCounterClockwise();
 
           firstSearch = false;
           counter = 0;
@@ -165,9 +185,8 @@ public class Localizer {
             e.printStackTrace();
           }
         } else {
-          alpha = odometer.getXYT()[2];
-          leftMotor.setSpeed(0);
-          rightMotor.setSpeed(0);
+          alpha = odometer.poseAt(pollTime, pose)[2];
+          drive.stop();
 
           //System.out.println("SECOND");
           
@@ -231,32 +250,30 @@ public class Localizer {
     // Try to get closer to the nearest intersection
     switch ((int) startingCorner) {
       case 0:
-        navigation.turnTo(90);
+        navigation.turnTo(90).await();
         break;
       case 1:
-        navigation.turnTo(0);
+        navigation.turnTo(0).await();
         break;
       case 2:
-        navigation.turnTo(270);
+        navigation.turnTo(270).await();
         break;
       case 3:
-        navigation.turnTo(180);
+        navigation.turnTo(180).await();
         break;
     }
     
-    /*leftMotor.setSpeed((int)(FORWARD_SPEED * navigation.MOTOR_OFFSET));
-    rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.forward();
-    rightMotor.forward();
+    /*drive.setSpeed(FORWARD_SPEED);
+    drive.forward();
     
-    lightPoller.poll();
-    while(!lightPoller.leftInLine && !lightPoller.rightInLine) {
+    lightPoller.pollLines();
+    while(!lightPoller.isLeftInLine() && !lightPoller.isRightInLine()) {
       try {
         Thread.sleep(LOCALIZATION_PERIOD);
       } catch (InterruptedException e) {
         e.printStackTrace();
       }
-      lightPoller.poll();
+      lightPoller.pollLines();
     }*/
     
     navigation.advanceDist(APROX_DIST);
@@ -266,16 +283,16 @@ public class Localizer {
     // Rotate to look into the +Y direction
     switch ((int) startingCorner) {
       case 0:
-        navigation.turnTo(0);
+        navigation.turnTo(0).await();
         break;
       case 1:
-        navigation.turnTo(0);
+        navigation.turnTo(0).await();
         break;
       case 2:
-        navigation.turnTo(180);
+        navigation.turnTo(180).await();
         break;
       case 3:
-        navigation.turnTo(180);
+        navigation.turnTo(180).await();
         break;
     }
 
@@ -283,42 +300,40 @@ public class Localizer {
     findLine();
 
     // Now correct the values of the odometer.
-    double[] currPosition = odometer.getXYT();
+    double currX = odometer.getX();
     switch ((int) startingCorner) {
       case 0:
-        odometer.setXYT(currPosition[0], SENSOR_OFFSET, 0);
+        odometer.setXYT(currX, SENSOR_OFFSET, 0);
         break;
       case 1:
-        odometer.setXYT(currPosition[0], SENSOR_OFFSET, 0);
+        odometer.setXYT(currX, SENSOR_OFFSET, 0);
         break;
       case 2:
-        odometer.setXYT(currPosition[0], -SENSOR_OFFSET, 180);
+        odometer.setXYT(currX, -SENSOR_OFFSET, 180);
         break;
       case 3:
-        odometer.setXYT(currPosition[0], -SENSOR_OFFSET, 180);
+        odometer.setXYT(currX, -SENSOR_OFFSET, 180);
         break;
     }
 
     // Position the axis of the robot back on the line
-    leftMotor.setSpeed(FORWARD_SPEED);
-    rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, -SENSOR_OFFSET), true);
-    rightMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, -SENSOR_OFFSET), false);
+    drive.setSpeed(FORWARD_SPEED);
+    drive.drive(-SENSOR_OFFSET);
 
     // Localize in X
     // Rotate to look into the +X direction
     switch ((int) startingCorner) {
       case 0:
-        navigation.turnTo(90);
+        navigation.turnTo(90).await();
         break;
       case 1:
-        navigation.turnTo(270);
+        navigation.turnTo(270).await();
         break;
       case 2:
-        navigation.turnTo(270);
+        navigation.turnTo(270).await();
         break;
       case 3:
-        navigation.turnTo(90);
+        navigation.turnTo(90).await();
         break;
     }
 
@@ -326,27 +341,25 @@ public class Localizer {
     findLine();
 
     // Now correct the values of the odometer.
-    currPosition = odometer.getXYT();
+    double currY = odometer.getY();
     switch ((int) startingCorner) {
       case 0:
-        odometer.setXYT(SENSOR_OFFSET, currPosition[1], 90);
+        odometer.setXYT(SENSOR_OFFSET, currY, 90);
         break;
       case 1:
-        odometer.setXYT(-SENSOR_OFFSET, currPosition[1], 270);
+        odometer.setXYT(-SENSOR_OFFSET, currY, 270);
         break;
       case 2:
-        odometer.setXYT(-SENSOR_OFFSET, currPosition[1], 270);
+        odometer.setXYT(-SENSOR_OFFSET, currY, 270);
         break;
       case 3:
-        odometer.setXYT(SENSOR_OFFSET, currPosition[1], 90);
+        odometer.setXYT(SENSOR_OFFSET, currY, 90);
         break;
     }
 
     // Position the axis of the robot back on the line
-    leftMotor.setSpeed(FORWARD_SPEED);
-    rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, -SENSOR_OFFSET), true);
-    rightMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, -SENSOR_OFFSET), false);
+    drive.setSpeed(FORWARD_SPEED);
+    drive.drive(-SENSOR_OFFSET);
 
 
     // Adjust the correction for the starting corner of the robot
@@ -374,34 +387,39 @@ public class Localizer {
    * {@code OdometryCorrector} method is called to align the other side.
    */
   private void findLine() {
-    leftMotor.setSpeed((int) (FORWARD_SPEED * navigation.MOTOR_OFFSET));
-    rightMotor.setSpeed(FORWARD_SPEED);
-
-    leftMotor.forward();
-    rightMotor.forward();
-
-    lightPoller.poll();
-    while (!lightPoller.leftInLine && !lightPoller.rightInLine) {
+    drive.setSpeed(FORWARD_SPEED);
+    drive.forward();
+
+    // Wait for the first sensor to cross a line. The crossings are queued by the light poller, so
+    // a line crossed between two polls is not missed.
+    lineEvents.clear();
+    lightPoller.pollLines();
+    while (!lineEvents.poll(lineEvent) || !lineEvent.isRising()) {
+      if (lineEvents.size() > 0)
+        continue;
       try {
         Thread.sleep(LOCALIZATION_PERIOD);
       } catch (InterruptedException e) {
         e.printStackTrace();
       }
-      lightPoller.poll();
+      lightPoller.pollLines();
     }
 
     boolean lineDetected = false;
+    boolean leftInLine = lineEvent.isLeftInLine();
+    boolean rightInLine = lineEvent.isRightInLine();
 
-    lightPoller.poll();
     while (!lineDetected) {
-      if (lightPoller.leftInLine && lightPoller.rightInLine) {
+      if (leftInLine && rightInLine) {
         return;
-      } else if (lightPoller.leftInLine)
+      } else if (leftInLine)
         lineDetected = odometryCorrector.rotateUntilDetection(1);
-      else if (lightPoller.rightInLine)
+      else if (rightInLine)
         lineDetected = odometryCorrector.rotateUntilDetection(0);
 
-      lightPoller.poll();
+      lightPoller.pollLines();
+      leftInLine = lightPoller.isLeftInLine();
+      rightInLine = lightPoller.isRightInLine();
     }
   }
 
@@ -410,12 +428,12 @@ public class Localizer {
    * reading.
    */
   private void correctAngle() {
-    double[] position = odometer.getXYT();
+    double theta = odometer.getTheta();
     double correctedTheta;
     if (alpha < beta) {
-      correctedTheta = position[2] + 45 - ((alpha + beta) / 2);
+      correctedTheta = theta + 45 - ((alpha + beta) / 2);
     } else {
-      correctedTheta = position[2] + 225 - ((alpha + beta) / 2);
+      correctedTheta = theta + 225 - ((alpha + beta) / 2);
     }
 
     correctedTheta = (correctedTheta + 180) % 360;
@@ -0,0 +1,94 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Odometry model equivalent to the {@code EulerIntegrator} that avoids transcendental functions
+ * and most floating point divisions, which are expensive on the EV3 since its processor has no
+ * floating point unit.
+ * <p>
+ * The tacho deltas are combined as integers and scaled by constants computed once at construction,
+ * and the sine and cosine of the heading are read from a precomputed table with linear
+ * interpolation. The table has {@code TABLE_SIZE} entries per turn, which keeps the error of the
+ * trigonometric values below one part in a million.
+ * 
+ * @see Odometer
+ * @author angelortiz
+ *
+ */
+public class LookupTableIntegrator implements OdometryIntegrator {
+
+  // Constants
+  private static final int TABLE_SIZE = 4096; // Must be a power of two
+  private static final int TABLE_MASK = TABLE_SIZE - 1;
+  private static final int QUARTER_TURN = TABLE_SIZE / 4;
+  private static final double INDEX_PER_DEGREE = TABLE_SIZE / 360.0;
+  private static final double[] SINE = new double[TABLE_SIZE + 1];
+
+  static {
+    for (int i = 0; i <= TABLE_SIZE; i++)
+      SINE[i] = Math.sin(2 * Math.PI * i / TABLE_SIZE);
+  }
+
+  private final double HALF_DIST_PER_COUNT; // Distance travelled by the center per count of sum
+  private final double DEGREES_PER_COUNT; // Rotation of the robot per count of difference
+
+  /**
+   * Creates an integrator for a robot with the given dimensions.
+   * 
+   * @param WHEEL_RAD Wheel radius measurement of the robot.
+   * @param TRACK Distance between the left and right wheels.
+   */
+  public LookupTableIntegrator(final double WHEEL_RAD, final double TRACK) {
+    double distPerCount = Math.PI * WHEEL_RAD / 180;
+    HALF_DIST_PER_COUNT = 0.5 * distPerCount;
+    DEGREES_PER_COUNT = Math.toDegrees(distPerCount / TRACK);
+  }
+
+  @Override
+  public void integrate(int deltaLeft, int deltaRight, double theta, double[] delta) {
+    double deltaD = HALF_DIST_PER_COUNT * (deltaLeft + deltaRight);
+    double deltaT = DEGREES_PER_COUNT * (deltaLeft - deltaRight);
+
+    double heading = theta + deltaT;
+    double sin = sin(heading);
+    double cos = cos(heading);
+
+    delta[0] = deltaD * sin;
+    delta[1] = deltaD * cos;
+    delta[2] = deltaT;
+  }
+
+  /**
+   * Sine of an angle read from the lookup table.
+   * 
+   * @param degrees Angle in degrees. Any value is accepted, including negative ones.
+   * @return Sine of the angle.
+   */
+  static double sin(double degrees) {
+    return lookup(degrees * INDEX_PER_DEGREE);
+  }
+
+  /**
+   * Cosine of an angle read from the lookup table.
+   * 
+   * @param degrees Angle in degrees. Any value is accepted, including negative ones.
+   * @return Cosine of the angle.
+   */
+  static double cos(double degrees) {
+    return lookup(degrees * INDEX_PER_DEGREE + QUARTER_TURN);
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Interpolates the table at a fractional index, wrapping around full turns.
+   */
+  private static double lookup(double index) {
+    int i = (int) index;
+    if (index < i) // Round towards negative infinity
+      i--;
+    double fraction = index - i;
+    i &= TABLE_MASK;
+    return SINE[i] + fraction * (SINE[i + 1] - SINE[i]);
+  }
+
+}
@@ -0,0 +1,90 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Describes the acceleration-limited trapezoidal speed profile followed by the wheels of the robot.
+ * <p>
+ * A movement accelerates at a constant rate up to its cruise speed, keeps that speed and then
+ * decelerates at the same rate so that it ends at rest on its target. A movement too short to
+ * reach the requested speed follows a triangular profile instead, whose peak speed is
+ * {@code sqrt(acceleration * angle)}. The profile itself is executed by the motors through their
+ * acceleration setting, this class is used to choose the cruise speed of each movement and to
+ * estimate its duration.
+ * <p>
+ * All the quantities are given for the rotation of a wheel: angles in degrees, speeds in degrees
+ * per second and accelerations in degrees per second squared.
+ * 
+ * @see DifferentialDrive
+ * @author angelortiz
+ *
+ */
+public class MotionProfile {
+
+  // Attributes
+  private final int acceleration;
+
+  /**
+   * Creates a profile with the given acceleration.
+   * 
+   * @param acceleration Acceleration of the wheels in degrees per second squared.
+   */
+  public MotionProfile(int acceleration) {
+    if (acceleration <= 0)
+      throw new IllegalArgumentException("The acceleration must be positive.");
+    this.acceleration = acceleration;
+  }
+
+  /**
+   * Returns the acceleration of the profile.
+   * 
+   * @return Acceleration of the wheels in degrees per second squared.
+   */
+  public int getAcceleration() {
+    return acceleration;
+  }
+
+  /**
+   * Computes the highest speed reached when rotating a wheel by the given angle, that is, the
+   * cruise speed of the movement.
+   * 
+   * @param angle Rotation of the wheel in degrees. The sign is ignored.
+   * @param maxSpeed Speed requested for the movement in degrees per second.
+   * @return The requested speed if the movement is long enough to reach it, or the peak speed of
+   *         the triangular profile otherwise.
+   */
+  public int getPeakSpeed(double angle, int maxSpeed) {
+    return (int) Math.min(maxSpeed, Math.sqrt(acceleration * Math.abs(angle)));
+  }
+
+  /**
+   * Computes the highest speed from which a wheel can still stop within the given angle, used to
+   * slow down at the end of a movement whose speed is updated continuously.
+   * 
+   * @param angle Rotation of the wheel left until it must be at rest, in degrees. The sign is
+   *        ignored.
+   * @param maxSpeed Speed requested for the movement in degrees per second.
+   * @return The requested speed if it allows stopping in time, or the highest speed that does.
+   */
+  public int getStoppingSpeed(double angle, int maxSpeed) {
+    return (int) Math.min(maxSpeed, Math.sqrt(2.0 * acceleration * Math.abs(angle)));
+  }
+
+  /**
+   * Computes the time required to rotate a wheel by the given angle, starting and ending at rest.
+   * 
+   * @param angle Rotation of the wheel in degrees. The sign is ignored.
+   * @param maxSpeed Speed requested for the movement in degrees per second.
+   * @return Duration of the movement in seconds.
+   */
+  public double getDuration(double angle, int maxSpeed) {
+    angle = Math.abs(angle);
+    if (angle == 0)
+      return 0;
+    if (maxSpeed <= 0)
+      return Double.POSITIVE_INFINITY;
+
+    // Accelerating and decelerating take speed / acceleration each and cover speed^2 / acceleration
+    double speed = Math.min(maxSpeed, Math.sqrt(acceleration * angle));
+    return angle / speed + speed / acceleration;
+  }
+
+}
@@ -1,7 +1,10 @@
 package ca.mcgill.ecse211.mountev3rest.navigation;
 
 import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides an interface to move the robot to an arbitrary point on the grid.
@@ -12,6 +15,27 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  * <p>
  * Additionally, the {@code Navigation} class invokes the {@code OdometryCorrector} class while
  * navigating to reduce the error introduced by the motors and other external factors.
+ * <p>
+ * The wheels are moved through a {@code DifferentialDrive}, which starts both of them at the same
+ * time and applies the motor offset to every movement. The speed of the wheels ramps up and down
+ * following the {@code MotionProfile} of the drive, and the cruise speed of every turn and straight
+ * segment is chosen from its length: short movements are limited to the peak their profile
+ * reaches, and only segments whose error the {@code OdometryCorrector} can remove on the next line
+ * run at the high speed.
+ * <p>
+ * Besides the turn-then-drive movements of {@code travelTo()}, the robot can follow a polyline of
+ * waypoints with {@code followPath()}. The path is tracked by pure pursuit: every period the robot
+ * steers along the arc that reaches the point of the path {@code LOOKAHEAD} centimeters ahead of
+ * it, so corners are blended into curves instead of requiring a stop and a turn in place.
+ * <p>
+ * Movements can also be queued as {@code NavigationCommand} objects through {@code enqueue()}. The
+ * navigation thread starts each queued command as soon as the previous one is completed, so a
+ * whole leg can be preloaded and waited for once, instead of calling {@code waitNavigation()}
+ * after every movement. The direct movement methods, turns included, publish a command as well,
+ * which replaces the current and queued ones, and {@code cancel()} stops the robot and discards
+ * them all. Only the navigation thread changes the target and state of the robot, so a movement is
+ * never applied partially. Commands are numbered in the order they are published, and any thread
+ * can wait for one of them with {@code awaitCommand()}.
  * 
  * @author angelortiz
  *
@@ -19,73 +43,115 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
 public class Navigation implements Runnable {
 
   // Class constants
-  private static int FORWARD_SPEED = 200;
+  private static final int FORWARD_SPEED = 200; // Forward speed until the high speed is toggled
   private static final int DEFAULT_SPEED = 220;
   private static final int HIGH_SPEED = 400;
   private static final int ROTATE_SPEED = 80;
-  private static final int NAVIGATION_PERIOD = 50;
-  private static final int WAIT_PERIOD = 120;
+  public static final long NAVIGATION_PERIOD = 50;
   private static final double TILE_SIZE = 30.48;
   private static final double MIN_TRAVEL_DISTANCE = 0.5;
-  private static final int MIN_STATIC_INTERVAL = 400;
+  private static final double LOOKAHEAD = 15; // Distance to the pursued point of a path in cm
+  private static final double MIN_TURN_RADIUS = 15; // Tightest arc used to follow a path in cm
+  private static final double MAX_PURSUIT_ANGLE = 60; // Larger deviations are turned in place
+  private static final double GOAL_TOLERANCE = 1; // Distance to the end of a path to stop in cm
+  private static final int MIN_PATH_SPEED = 40; // Slowest speed while approaching a path's end
+  private static final int COMMAND_CAPACITY = 16; // Commands that can be queued at once
   public final double MOTOR_OFFSET;
   public final double WHEEL_RADIUS;
   public final double TRACK;
 
   // Class attributes
-  // Motors
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private DifferentialDrive drive;
+  private volatile int forwardSpeed;
 
   // Information about the robot and target
   private Odometer odometer;
   private OdometryCorrector odometryCorrector;
   private double[] target;
+  private double[] position;
+  private double[] realTarget;
   public double targetAngle;
 
+  // Path following
+  private double[][] path; // Waypoints in centimeters, starting at the initial position
+  private int pathIndex; // Segment followed, from path[pathIndex] to path[pathIndex + 1]
+  private double[] pursuit; // Pursued point and distance left to the end of the path
+
+  // Command queue
+  private BlockingQueue<NavigationCommand> commands;
+  private NavigationCommand command; // Command being executed, null if none
+  private final Object publication; // Held while numbering and queuing commands
+  private final AtomicLong sequence; // Id of the last command published
+  private long queued; // Id of the last command queued, guarded by publication
+  private volatile long replacedBefore; // Commands with a lower id are discarded
+  private long replaced; // Last value of replacedBefore applied by the navigation thread
+
+  // Completion signaling
+  private final Object completion; // Notified whenever a command is finished
+  private long finished; // Id of the last command finished
+
   // State machine flags
   private boolean directionChanged;
   private boolean isNavigating;
+  private boolean followingPath;
 
   /**
-   * Creates a navigator that will operate using the specified track and wheel radius values.
+   * Creates a navigator that will operate using the track and wheel radius of the given drive.
    * 
-   * @param leftMotor Left motor of the robot.
-   * @param rightMotor Right motor of the robot.
+   * @param drive Drive moving the wheels of the robot.
    * @param odometryCorrector Object used by the class to reduce the error while navigating.
-   * @param WHEEL_RADIUS Wheel radius of the robot't wheels measured in centimeters.
-   * @param TRACK Measurement of the robot's track in centimeter.
-   * @param MOTOR_OFFSET Ratio between the speeds of the left and right motors. This value allows
-   *        the system to compensate for differences in the motors' performances.
    * 
    * @throws OdometerException If the singleton {@code Odometer} class has not been instantiated.
    * @throws PollerException If the {@code LightPoller} has not been instantiated.
    */
-  public Navigation(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-      OdometryCorrector odometryCorrector, final double WHEEL_RADIUS, final double TRACK,
-      final double MOTOR_OFFSET) throws OdometerException, PollerException {
+  public Navigation(DifferentialDrive drive, OdometryCorrector odometryCorrector)
+      throws OdometerException, PollerException {
+    this(RobotContext.getDefault(), drive, odometryCorrector);
+  }
+
+  /**
+   * Creates a navigator that uses the odometer of the given robot context.
+   * 
+   * @param context Context holding the odometer of the robot.
+   * @param drive Drive moving the wheels of the robot.
+   * @param odometryCorrector Object used by the class to reduce the error while navigating.
+   * 
+   * @throws OdometerException If the context does not provide an {@code Odometer}.
+   */
+  public Navigation(RobotContext context, DifferentialDrive drive,
+      OdometryCorrector odometryCorrector) throws OdometerException {
 
     // Get navigation related objects
-    this.odometer = Odometer.getOdometer();
+    this.odometer = context.getOdometer();
     this.odometryCorrector = odometryCorrector;
 
-    // Set the motors
-    this.leftMotor = leftMotor;
-    this.rightMotor = rightMotor;
+    // Set the drive
+    this.drive = drive;
+    this.forwardSpeed = FORWARD_SPEED;
 
     // Populate the constants
-    this.WHEEL_RADIUS = WHEEL_RADIUS;
-    this.TRACK = TRACK;
-    this.MOTOR_OFFSET = MOTOR_OFFSET;
+    this.WHEEL_RADIUS = drive.getWheelRadius();
+    this.TRACK = drive.getTrack();
+    this.MOTOR_OFFSET = drive.getMotorOffset();
 
     // Instantiate the target
     target = new double[2];
     target[0] = -1;
     target[1] = -1;
 
+    // Buffers reused by the navigation thread to avoid allocating on every trajectory update
+    position = new double[3];
+    realTarget = new double[2];
+    pursuit = new double[3];
+    commands = new ArrayBlockingQueue<NavigationCommand>(COMMAND_CAPACITY);
+    publication = new Object();
+    sequence = new AtomicLong();
+    completion = new Object();
+
     // Initiate the state machine variables
     isNavigating = false;
     directionChanged = false;
+    followingPath = false;
   }
 
 
@@ -95,18 +161,27 @@ public class Navigation implements Runnable {
    * Runs the state machine main logic.
    * <p>
    * This involves setting the direction of the robot to a new target if required and optionally
-   * applying trajectory correction.
+   * applying trajectory correction. Each call performs a single step of the state machine, the
+   * method is meant to be run every {@code NAVIGATION_PERIOD} milliseconds by a
+   * {@code PeriodicScheduler}.
+   * 
+   * @see ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler
    */
   @Override
   public void run() {
-    long updateStart, updateEnd;
-    boolean corrected = false;
-
-    while (true) {
-      updateStart = System.currentTimeMillis();
+    // Main navigator state machine flow
 
-      // Main navigator state machine flow
+    // Discard the commands replaced by a direct movement or by a cancellation
+    long replace = replacedBefore;
+    if (replace > replaced) {
+      replaced = replace;
+      discard(replace);
+    }
 
+    // Paths are tracked on every step, without the odometry correction
+    if (followingPath) {
+      followPath();
+    } else {
       // If the direction has changed recompute the trajectory of the robot
       if (directionChanged) {
         goToTarget();
@@ -115,27 +190,34 @@ public class Navigation implements Runnable {
       }
 
       // Set this flag to let other threads know that the robot is currently reaching a waypoint
-      if (!leftMotor.isMoving() && !rightMotor.isMoving())
+      if (!drive.isMoving())
         isNavigating = false;
 
       // Correct the trajectory if necessary
       if (isNavigating && odometryCorrector.isEnabled()) {
-        corrected = odometryCorrector.applyCorrection();
-        if (corrected) {
+        if (odometryCorrector.applyCorrection()) {
           directionChanged = true;
           isNavigating = true;
         }
       }
+    }
 
-      // This ensures that the navigator only runs once every period
-      updateEnd = System.currentTimeMillis();
-      if (updateEnd - updateStart < NAVIGATION_PERIOD) {
-        try {
-          Thread.sleep(NAVIGATION_PERIOD - (updateEnd - updateStart));
-        } catch (InterruptedException e) {
-          // there is nothing to be done
-        }
+    // Complete the current command once the robot is idle and start the next ones
+    while (!isNavigating && !directionChanged && !followingPath && replacedBefore == replaced) {
+      if (command != null)
+        finish(command, false);
+      command = commands.poll();
+      if (command == null)
+        break;
+      freeSpace();
+
+      // Commands of a batch that was waiting for space when it was replaced
+      if (command.getId() < replaced) {
+        finish(command, true);
+        command = null;
+        continue;
       }
+      execute(command);
     }
   }
 
@@ -147,13 +229,10 @@ public class Navigation implements Runnable {
    * 
    * @param x New target X position.
    * @param y New target Y position.
+   * @return The command published to the navigation thread.
    */
-  public void travelTo(double x, double y) {
-    target[0] = x;
-    target[1] = y;
-
-    directionChanged = true;
-    isNavigating = true;
+  public NavigationCommand travelTo(double x, double y) {
+    return publish(true, NavigationCommand.travelTo(x, y));
   }
 
   /**
@@ -161,13 +240,10 @@ public class Navigation implements Runnable {
    * only move the robot in the ±X direction.
    * 
    * @param x New target X position.
+   * @return The command published to the navigation thread.
    */
-  public void travelToX(double x) {
-    target[0] = x;
-    target[1] = -1;
-
-    directionChanged = true;
-    isNavigating = true;
+  public NavigationCommand travelToX(double x) {
+    return publish(true, NavigationCommand.travelToX(x));
   }
 
   /**
@@ -175,123 +251,187 @@ public class Navigation implements Runnable {
    * only move the robot in the ±Y direction.
    * 
    * @param y New target Y position.
+   * @return The command published to the navigation thread.
    */
-  public void travelToY(double y) {
-    target[0] = -1;
-    target[1] = y;
+  public NavigationCommand travelToY(double y) {
+    return publish(true, NavigationCommand.travelToY(y));
+  }
 
-    directionChanged = true;
-    isNavigating = true;
+  /**
+   * Follows a path through the given waypoints, blending the corners into arcs instead of stopping
+   * to turn at each of them. The robot only turns in place if a waypoint lies too far to a side,
+   * such as when the path starts behind it. It stops at the last waypoint without any particular
+   * heading, so movements requiring a precise heading should use {@code travelTo()} and
+   * {@code turnTo()} instead.
+   * <p>
+   * The {@code OdometryCorrector} assumes that lines are crossed at right angles, so it is not
+   * applied while following a path.
+   * 
+   * @param waypoints Coordinates of the waypoints, as {x, y} pairs in tiles.
+   * @return The command published to the navigation thread.
+   * @throws IllegalArgumentException If the path has no waypoint.
+   */
+  public NavigationCommand followPath(double[][] waypoints) {
+    return publish(true, NavigationCommand.followPath(waypoints));
   }
 
   /**
    * Turns to an absolute angle with respect to the grid ensuring minimal rotation. Positive angles
    * are defined as counter-clockwise rotation and vice-versa. The accuracy of this method heavily
    * relies on the accuracy of the track measurement provided during the instantiation of the class.
+   * <p>
+   * The turn is performed by the navigation thread, without the odometry correction, so callers
+   * that need the new heading should wait for the returned command.
    * 
    * @param theta Desired angle of rotation.
+   * @return The command published to the navigation thread.
    */
-  public void turnTo(double theta) {
-    double currTheta = odometer.getXYT()[2];
-    double targetRotation = 0;
-    int direction = 1; // 1 for right turn, -1 for left turn
-
-    // Ensure that the minimal turn is taken
-    if (theta < currTheta) {
-      targetRotation = currTheta - theta;
-      if (targetRotation < 180)
-        direction = -1;
-      else
-        targetRotation = 360 - targetRotation;
-    } else {
-      targetRotation = theta - currTheta;
-      if (targetRotation > 180) {
-        targetRotation = 360 - targetRotation;
-        direction = -1;
-      }
-    }
-
-    boolean wasEnabled = odometryCorrector.isEnabled();
-    odometryCorrector.disable();
-
-    leftMotor.setSpeed((int) (ROTATE_SPEED * MOTOR_OFFSET));
-    rightMotor.setSpeed(ROTATE_SPEED);
-    leftMotor.rotate(
-        (int) (convertAngle(WHEEL_RADIUS, TRACK, targetRotation) * MOTOR_OFFSET) * direction, true);
-    rightMotor.rotate(-convertAngle(WHEEL_RADIUS, TRACK, targetRotation) * direction, false);
-
-    if (wasEnabled)
-      odometryCorrector.enable();
+  public NavigationCommand turnTo(double theta) {
+    return publish(true, NavigationCommand.turnTo(theta));
   }
 
   /**
    * Turns to an relative angle with respect to the current position ensuring minimal rotation.
-   * Positive angles are defined as counter-clockwise rotation and vice-versa.
+   * Positive angles are defined as counter-clockwise rotation and vice-versa. The turn is performed
+   * by the navigation thread, like {@code turnTo()}.
    * 
    * @param theta Desired angle of rotation.
+   * @return The command published to the navigation thread.
    */
-  public void turnToRelative(double theta) {
-    leftMotor.setSpeed((int) (ROTATE_SPEED * MOTOR_OFFSET));
-    rightMotor.setSpeed(ROTATE_SPEED);
-    leftMotor.rotate(convertAngle(WHEEL_RADIUS, TRACK, theta), true);
-    rightMotor.rotate(-convertAngle(WHEEL_RADIUS, TRACK, theta), false);
+  public NavigationCommand turnToRelative(double theta) {
+    return publish(true, NavigationCommand.turnToRelative(theta));
   }
 
   /**
    * Makes the robot move forward a determined distance in centimeters.
    * 
    * @param dist Distance to travel forward in centimeters.
+   * @return The command published to the navigation thread.
    */
-  public void advanceDist(double dist) {
-    leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-    rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.rotate(Navigation.convertDistance(WHEEL_RADIUS, dist * MOTOR_OFFSET), true);
-    rightMotor.rotate(Navigation.convertDistance(WHEEL_RADIUS, dist), true);
-    isNavigating = true;
+  public NavigationCommand advanceDist(double dist) {
+    return publish(true, NavigationCommand.advance(dist));
   }
   
   /**
    * TODO
    */
   public void highSpeedOn() {
-    FORWARD_SPEED = HIGH_SPEED;
+    forwardSpeed = HIGH_SPEED;
   }
   
   /**
    * TODO
    */
   public void highSpeedOff() {
-    FORWARD_SPEED = DEFAULT_SPEED;
+    forwardSpeed = DEFAULT_SPEED;
+  }
+
+
+  /**
+   * Queues commands to be executed by the navigation thread after the ones already queued. This
+   * method returns immediately unless the queue is full, in which case it waits for space. Other
+   * threads can replace or cancel the batch meanwhile, and its remaining commands are then queued
+   * only to be cancelled.
+   * 
+   * @param batch Commands to execute, in order.
+   * @return The last command queued, which is completed once the whole batch is.
+   */
+  public NavigationCommand enqueue(NavigationCommand... batch) {
+    return publish(false, batch);
+  }
+
+  /**
+   * Stops the robot and discards its current target, path and queued commands. The discarded
+   * commands are completed and marked as cancelled, which releases the threads waiting for them.
+   * This method returns once the navigation thread has stopped the robot.
+   */
+  public void cancel() {
+    long last;
+    synchronized (publication) {
+      last = sequence.get();
+      replacedBefore = last + 1;
+    }
+    drive.stop(); // Interrupts a turn in progress on the navigation thread
+    awaitCommand(last);
   }
 
 
   /* ---NAVIGATION STATUS INTERFACE--- */
 
+  /**
+   * Returns the drive used to move the wheels of the robot.
+   * 
+   * @return The {@code DifferentialDrive} of the robot.
+   */
+  public DifferentialDrive getDrive() {
+    return drive;
+  }
+
   /**
    * Indicates whether the robot is still navigating.
    * 
    * @return Boolean values indicating if the robot is moving.
    */
   public boolean isNavigating() {
-    return isNavigating;
+    synchronized (completion) {
+      return finished < sequence.get();
+    }
   }
 
   /**
    * This method does not return until the {@code Navigation} class reaches its current target.
    */
   public void waitNavigation() {
-    long time = System.currentTimeMillis();
-    while (true) {
-      if (isNavigating)
-        time = System.currentTimeMillis();
-      else if (System.currentTimeMillis() - time > MIN_STATIC_INTERVAL) {
-        break;
-      }
-      try {
-        Thread.sleep(WAIT_PERIOD);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+    waitNavigation(0);
+  }
+
+  /**
+   * Waits until the robot completes the movements requested so far, or until the timeout expires.
+   * The navigation thread signals the completion in the period the robot stops, so this method
+   * returns at most one {@code NAVIGATION_PERIOD} after the end of the movement.
+   * 
+   * @param timeout Maximum time to wait in milliseconds, 0 to wait indefinitely.
+   * @return True if the movements are completed, false if the timeout expired first.
+   */
+  public boolean waitNavigation(long timeout) {
+    return awaitCommand(sequence.get(), timeout);
+  }
+
+  /**
+   * Waits until the command with the given id is completed or cancelled. Commands are finished in
+   * the order of their ids, so this also waits for every command published before it.
+   * 
+   * @param id Id of the command, as returned by {@code NavigationCommand.getId()}.
+   */
+  public void awaitCommand(long id) {
+    awaitCommand(id, 0);
+  }
+
+  /**
+   * Waits until the command with the given id is completed or cancelled, or until the timeout
+   * expires.
+   * 
+   * @param id Id of the command, as returned by {@code NavigationCommand.getId()}.
+   * @param timeout Maximum time to wait in milliseconds, 0 to wait indefinitely.
+   * @return True if the command is finished, false if the timeout expired first.
+   */
+  public boolean awaitCommand(long id, long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (completion) {
+      while (finished < id) {
+        long remaining = 0;
+        if (timeout > 0) {
+          remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0)
+            return false;
+        }
+        try {
+          completion.wait(remaining);
+        } catch (InterruptedException e) {
+          // there is nothing to be done
+        }
       }
+      return true;
     }
   }
 
@@ -305,7 +445,8 @@ public class Navigation implements Runnable {
    */
   public double computeDistance(double x, double y) {
     double[] position = odometer.getXYT();
-    return computeRealTarget(position[0], position[1], x * TILE_SIZE, y * TILE_SIZE)[0];
+    return computeRealTarget(position[0], position[1], x * TILE_SIZE, y * TILE_SIZE,
+        new double[2])[0];
   }
 
 
@@ -315,31 +456,26 @@ public class Navigation implements Runnable {
    * TODO
    */
   private void goToTarget() {
-    double[] position = odometer.getXYT();
+    odometer.getXYT(position);
     if (target[0] != -1 && target[1] != -1) {
-      double[] realTarget = computeRealTarget(position[0], position[1], target[0] * TILE_SIZE, target[1] * TILE_SIZE);
-      turnTo(realTarget[1]);
-      leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-      rightMotor.setSpeed(FORWARD_SPEED);
-      leftMotor.rotate((int) (convertDistance(WHEEL_RADIUS, realTarget[0]) * MOTOR_OFFSET), true);
-      rightMotor.rotate(convertDistance(WHEEL_RADIUS, realTarget[0]), true);
+      computeRealTarget(position[0], position[1], target[0] * TILE_SIZE, target[1] * TILE_SIZE,
+          realTarget);
+      spinTo(realTarget[1]);
+      drive.setSpeed(driveSpeed(realTarget[0]));
+      drive.drive(realTarget[0], true);
     } else if (target[0] != -1) {
       double dist = target[0] * TILE_SIZE - position[0];
       if (Math.abs(dist) < MIN_TRAVEL_DISTANCE) {
         return;
       }
       if (dist < 0) {
-        turnTo(270);
-        leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate((int) (convertDistance(WHEEL_RADIUS, -dist) * MOTOR_OFFSET), true);
-        rightMotor.rotate(convertDistance(WHEEL_RADIUS, -dist), true);
+        spinTo(270);
+        drive.setSpeed(driveSpeed(-dist));
+        drive.drive(-dist, true);
       } else {
-        turnTo(90);
-        leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate((int) (convertDistance(WHEEL_RADIUS, dist) * MOTOR_OFFSET), true);
-        rightMotor.rotate(convertDistance(WHEEL_RADIUS, dist), true);
+        spinTo(90);
+        drive.setSpeed(driveSpeed(dist));
+        drive.drive(dist, true);
       }
     } else if (target[1] != -1) {
       double dist = target[1] * TILE_SIZE - position[1];
@@ -347,19 +483,345 @@ public class Navigation implements Runnable {
         return;
       }
       if (dist < 0) {
-        turnTo(180);
-        leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate((int) (convertDistance(WHEEL_RADIUS, -dist) * MOTOR_OFFSET), true);
-        rightMotor.rotate(convertDistance(WHEEL_RADIUS, -dist), true);
+        spinTo(180);
+        drive.setSpeed(driveSpeed(-dist));
+        drive.drive(-dist, true);
       } else {
-        turnTo(0);
-        leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate((int) (convertDistance(WHEEL_RADIUS, dist) * MOTOR_OFFSET), true);
-        rightMotor.rotate(convertDistance(WHEEL_RADIUS, dist), true);
+        spinTo(0);
+        drive.setSpeed(driveSpeed(dist));
+        drive.drive(dist, true);
+      }
+    }
+  }
+
+  /*
+   * Numbers the given commands and queues them contiguously. If replace is true, the commands
+   * replace every command published before them.
+   */
+  private NavigationCommand publish(boolean replace, NavigationCommand... batch) {
+    for (NavigationCommand published : batch)
+      if (published.getId() != 0)
+        throw new IllegalArgumentException("A command can only be published once.");
+
+    synchronized (publication) {
+      // Mark the previous commands as replaced before queuing, so the navigation thread discards
+      // them and frees the queue instead of executing them first
+      if (replace)
+        replacedBefore = sequence.get() + 1;
+      for (NavigationCommand published : batch)
+        published.publish(sequence.incrementAndGet());
+
+      // Queue the commands in the order of their ids. Waiting for space releases the lock, so
+      // another thread can replace or cancel the commands of a full queue meanwhile.
+      for (NavigationCommand published : batch) {
+        while (published.getId() != queued + 1 || !commands.offer(published)) {
+          try {
+            publication.wait();
+          } catch (InterruptedException e) {
+            // there is nothing to be done
+          }
+        }
+        queued = published.getId();
+        publication.notifyAll(); // The next batch may be waiting for its turn
+      }
+    }
+    return batch[batch.length - 1];
+  }
+
+  /*
+   * Wakes the publishers waiting for space in the queue.
+   */
+  private void freeSpace() {
+    synchronized (publication) {
+      publication.notifyAll();
+    }
+  }
+
+  /*
+   * Cancels the current command and the queued ones with an id lower than the given one. The robot
+   * is stopped unless the current or a queued command replaces them, before any thread waiting for
+   * them returns. The current command is the replacement if it was started before the replaced
+   * ones were discarded.
+   */
+  private void discard(long id) {
+    boolean replacement = command != null && command.getId() >= id;
+    for (NavigationCommand queued : commands)
+      replacement |= queued.getId() >= id;
+    if (!replacement)
+      drive.stop();
+
+    if (command != null && command.getId() < id) {
+      finish(command, true);
+      command = null;
+      followingPath = false;
+      directionChanged = false;
+      isNavigating = false;
+    }
+    NavigationCommand head;
+    boolean freed = false;
+    while ((head = commands.peek()) != null && head.getId() < id) {
+      finish(commands.poll(), true);
+      freed = true;
+    }
+    if (freed)
+      freeSpace();
+  }
+
+  /*
+   * Completes or cancels a command and releases the threads waiting for its id. Commands are
+   * finished in the order of their ids.
+   */
+  private void finish(NavigationCommand finished, boolean cancelled) {
+    if (cancelled)
+      finished.cancel();
+    else
+      finished.complete();
+    synchronized (completion) {
+      this.finished = finished.getId();
+      completion.notifyAll();
+    }
+  }
+
+  /*
+   * Sets the target of the state machine, -1 for a coordinate that should not change.
+   */
+  private void setTarget(double x, double y) {
+    followingPath = false;
+    target[0] = x;
+    target[1] = y;
+
+    directionChanged = true;
+    isNavigating = true;
+  }
+
+  /*
+   * Starts following a path from the current position of the robot.
+   */
+  private void startPath(double[][] waypoints) {
+    double[] start = odometer.getXYT();
+    double[][] path = new double[waypoints.length + 1][];
+    path[0] = new double[] {start[0], start[1]};
+    for (int i = 0; i < waypoints.length; i++)
+      path[i + 1] = new double[] {waypoints[i][0] * TILE_SIZE, waypoints[i][1] * TILE_SIZE};
+
+    this.path = path;
+    pathIndex = 0;
+    directionChanged = false;
+    followingPath = true;
+    isNavigating = true;
+  }
+
+  /*
+   * Starts moving the robot straight by the given distance.
+   */
+  private void startAdvance(double dist) {
+    drive.setSpeed(driveSpeed(dist));
+    drive.drive(dist, true);
+    isNavigating = true;
+  }
+
+  /*
+   * Turns the robot to an absolute angle through the smallest rotation, without the odometry
+   * correction, and returns once the turn is completed.
+   */
+  private void spinTo(double theta) {
+    double currTheta = odometer.getTheta();
+    double targetRotation = 0;
+    int direction = 1; // 1 for right turn, -1 for left turn
+
+    // Ensure that the minimal turn is taken
+    if (theta < currTheta) {
+      targetRotation = currTheta - theta;
+      if (targetRotation < 180)
+        direction = -1;
+      else
+        targetRotation = 360 - targetRotation;
+    } else {
+      targetRotation = theta - currTheta;
+      if (targetRotation > 180) {
+        targetRotation = 360 - targetRotation;
+        direction = -1;
+      }
+    }
+
+    boolean wasEnabled = odometryCorrector.isEnabled();
+    odometryCorrector.disable();
+
+    drive.setSpeed(turnSpeed(targetRotation));
+    drive.spin(targetRotation * direction);
+
+    if (wasEnabled)
+      odometryCorrector.enable();
+  }
+
+  /*
+   * Turns the robot by the given angle and returns once the turn is completed.
+   */
+  private void spinBy(double theta) {
+    drive.setSpeed(turnSpeed(theta));
+    drive.spin(theta);
+  }
+
+  /*
+   * Starts the movement of a queued command. Turns and speed changes are completed when this method
+   * returns, the other movements once the robot stops.
+   */
+  private void execute(NavigationCommand command) {
+    switch (command.getType()) {
+      case TRAVEL:
+        setTarget(command.getArgument(0), command.getArgument(1));
+        break;
+      case TRAVEL_X:
+        setTarget(command.getArgument(0), -1);
+        break;
+      case TRAVEL_Y:
+        setTarget(-1, command.getArgument(0));
+        break;
+      case PATH:
+        startPath(command.getWaypoints());
+        break;
+      case TURN:
+        spinTo(command.getArgument(0));
+        break;
+      case TURN_RELATIVE:
+        spinBy(command.getArgument(0));
+        break;
+      case ADVANCE:
+        startAdvance(command.getArgument(0));
+        break;
+      case SPEED:
+        forwardSpeed = command.getArgument(0) != 0 ? HIGH_SPEED : DEFAULT_SPEED;
+        break;
+    }
+  }
+
+  /*
+   * Performs one step of pure pursuit along the current path: finds the pursued point, steers
+   * towards it and stops once the end of the path is reached.
+   */
+  private void followPath() {
+    odometer.getXYT(position);
+    findPursuitPoint(position[0], position[1]);
+
+    double dx = pursuit[0] - position[0];
+    double dy = pursuit[1] - position[1];
+    double distance = Math.hypot(dx, dy);
+    if (pathIndex == path.length - 2 && (distance < GOAL_TOLERANCE || pursuit[2] == 0)) {
+      drive.stop();
+      followingPath = false;
+      isNavigating = false;
+      return;
+    }
+
+    // Position of the pursued point relative to the robot, lateral being positive to the right
+    double theta = Math.toRadians(position[2]);
+    double forward = dx * Math.sin(theta) + dy * Math.cos(theta);
+    double lateral = dx * Math.cos(theta) - dy * Math.sin(theta);
+
+    // Turn in place if the point is too far to a side for an arc to reach it
+    if (Math.toDegrees(Math.abs(Math.atan2(lateral, forward))) > MAX_PURSUIT_ANGLE) {
+      drive.stop();
+      spinTo(computeRealTarget(position[0], position[1], pursuit[0], pursuit[1], realTarget)[1]);
+      return;
+    }
+
+    // Arc through the pursued point, limited to the tightest turn allowed
+    double curvature = 2 * lateral / (distance * distance);
+    curvature = Math.max(-1 / MIN_TURN_RADIUS, Math.min(1 / MIN_TURN_RADIUS, curvature));
+
+    // Slow down so the robot can stop at the end of the path
+    int speed = drive.getProfile().getStoppingSpeed(convertDistance(WHEEL_RADIUS, pursuit[2]),
+        forwardSpeed);
+    drive.setSpeed(Math.max(MIN_PATH_SPEED, speed));
+    drive.steer(curvature);
+  }
+
+  /*
+   * Finds the point of the path LOOKAHEAD centimeters ahead of the projection of the robot and the
+   * distance from that projection to the end of the path, moving to the next segment once the
+   * robot passes the end of the current one or gets closer to the next one, as it does when
+   * cutting a corner. The results are written into pursuit.
+   */
+  private void findPursuitPoint(double x, double y) {
+    double t = projectOnSegment(pathIndex, x, y);
+    while (pathIndex < path.length - 2 && (t >= 1
+        || distanceToSegment(pathIndex + 1, x, y) <= distanceToSegment(pathIndex, x, y)))
+      t = projectOnSegment(++pathIndex, x, y);
+    t = Math.max(0, Math.min(1, t));
+
+    double[] a = path[pathIndex];
+    double[] b = path[pathIndex + 1];
+    double pointX = a[0] + t * (b[0] - a[0]);
+    double pointY = a[1] + t * (b[1] - a[1]);
+    double lookahead = LOOKAHEAD;
+    double remaining = 0;
+    boolean found = false;
+
+    for (int i = pathIndex; i < path.length - 1; i++) {
+      double[] end = path[i + 1];
+      double length = Math.hypot(end[0] - pointX, end[1] - pointY);
+      if (!found && lookahead <= length) {
+        pursuit[0] = pointX + (end[0] - pointX) * lookahead / length;
+        pursuit[1] = pointY + (end[1] - pointY) * lookahead / length;
+        found = true;
       }
+      lookahead -= length;
+      remaining += length;
+      pointX = end[0];
+      pointY = end[1];
     }
+
+    // Pursue the end of the path once it is closer than the lookahead distance
+    if (!found) {
+      pursuit[0] = pointX;
+      pursuit[1] = pointY;
+    }
+    pursuit[2] = remaining;
+  }
+
+  /*
+   * Computes the position of the projection of a point along a segment of the path, 0 being its
+   * start and 1 its end. Empty segments are considered already passed.
+   */
+  private double projectOnSegment(int segment, double x, double y) {
+    double[] a = path[segment];
+    double[] b = path[segment + 1];
+    double dx = b[0] - a[0];
+    double dy = b[1] - a[1];
+    double length = dx * dx + dy * dy;
+    if (length == 0)
+      return 1;
+    return ((x - a[0]) * dx + (y - a[1]) * dy) / length;
+  }
+
+  /*
+   * Computes the distance from a point to the closest point of a segment of the path.
+   */
+  private double distanceToSegment(int segment, double x, double y) {
+    double t = Math.max(0, Math.min(1, projectOnSegment(segment, x, y)));
+    double[] a = path[segment];
+    double[] b = path[segment + 1];
+    return Math.hypot(a[0] + t * (b[0] - a[0]) - x, a[1] + t * (b[1] - a[1]) - y);
+  }
+
+  /*
+   * Chooses the cruise speed of a straight segment. Wheel slip makes the odometer drift faster at
+   * high speeds, which is only acceptable if the correction is enabled and the segment is long
+   * enough to cross a line where the drift is removed.
+   */
+  private int driveSpeed(double distance) {
+    int maxSpeed = forwardSpeed;
+    if (odometryCorrector.isEnabled() && Math.abs(distance) >= TILE_SIZE)
+      maxSpeed = Math.max(maxSpeed, HIGH_SPEED);
+    return drive.getProfile().getPeakSpeed(convertDistance(WHEEL_RADIUS, distance), maxSpeed);
+  }
+
+  /*
+   * Chooses the cruise speed of a turn in place. The heading is never corrected by the lines while
+   * turning, so turns are limited to the rotation speed.
+   */
+  private int turnSpeed(double angle) {
+    return drive.getProfile().getPeakSpeed(convertAngle(WHEEL_RADIUS, TRACK, angle), ROTATE_SPEED);
   }
 
   /**
@@ -370,13 +832,14 @@ public class Navigation implements Runnable {
    * @param currY Current Y position in centimeters.
    * @param targetX Target X position in centimeters.
    * @param targetY Target Y position in centimeters.
+   * @param computedTarget Array of at least two elements where the result is written.
    * @return Array containing the distance and angle required to reach the target in that order.
    */
-  private double[] computeRealTarget(double currX, double currY, double targetX, double targetY) {
+  private double[] computeRealTarget(double currX, double currY, double targetX, double targetY,
+      double[] computedTarget) {
     double deltaX = targetX - currX;
     double deltaY = targetY - currY;
     int quadrant = 0;
-    double[] computedTarget = new double[2];
 
     // Determine the quadrant of the target with respect to the current position
     if (deltaX >= 0 && deltaY >= 0)
@@ -0,0 +1,245 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command published to the navigation thread, either queued through {@code Navigation.enqueue()}
+ * or replacing the previous ones through the movement methods of {@code Navigation}.
+ * <p>
+ * Commands are created through the static factory methods, one per movement of the
+ * {@code Navigation} class. Their arguments cannot change once created, and each command
+ * receives an id when it is published, increasing in the order of publication. Each command is
+ * also the handle of its own completion: {@code await()} blocks until the navigation thread
+ * finished executing it. Commands are executed in the order in which they were queued, so waiting
+ * for the last command of a batch waits for the whole batch. Commands replaced by a direct
+ * movement or discarded by {@code Navigation.cancel()} are completed as well, and report it
+ * through {@code isCancelled()}.
+ * 
+ * @see Navigation
+ * @author angelortiz
+ *
+ */
+public class NavigationCommand {
+
+  /**
+   * Movements that can be queued.
+   */
+  public enum Type {
+    TRAVEL, TRAVEL_X, TRAVEL_Y, PATH, TURN, TURN_RELATIVE, ADVANCE, SPEED
+  }
+
+  // Attributes
+  private final Type type;
+  private final double[] arguments;
+  private final double[][] waypoints;
+  private final CountDownLatch done;
+  private volatile long id; // 0 until the command is published
+  private volatile boolean cancelled;
+
+  private NavigationCommand(Type type, double[] arguments, double[][] waypoints) {
+    this.type = type;
+    this.arguments = arguments;
+    this.waypoints = waypoints;
+    this.done = new CountDownLatch(1);
+    this.id = 0;
+    this.cancelled = false;
+  }
+
+  /**
+   * Creates a command moving the robot to a point, as {@code Navigation.travelTo()} does.
+   * 
+   * @param x Target X position in tiles.
+   * @param y Target Y position in tiles.
+   * @return A new command.
+   */
+  public static NavigationCommand travelTo(double x, double y) {
+    return new NavigationCommand(Type.TRAVEL, new double[] {x, y}, null);
+  }
+
+  /**
+   * Creates a command moving the robot in the ±X direction, as {@code Navigation.travelToX()}
+   * does.
+   * 
+   * @param x Target X position in tiles.
+   * @return A new command.
+   */
+  public static NavigationCommand travelToX(double x) {
+    return new NavigationCommand(Type.TRAVEL_X, new double[] {x}, null);
+  }
+
+  /**
+   * Creates a command moving the robot in the ±Y direction, as {@code Navigation.travelToY()}
+   * does.
+   * 
+   * @param y Target Y position in tiles.
+   * @return A new command.
+   */
+  public static NavigationCommand travelToY(double y) {
+    return new NavigationCommand(Type.TRAVEL_Y, new double[] {y}, null);
+  }
+
+  /**
+   * Creates a command following a path, as {@code Navigation.followPath()} does.
+   * 
+   * @param waypoints Coordinates of the waypoints, as {x, y} pairs in tiles.
+   * @return A new command.
+   * @throws IllegalArgumentException If the path has no waypoint.
+   */
+  public static NavigationCommand followPath(double[][] waypoints) {
+    if (waypoints.length == 0)
+      throw new IllegalArgumentException("A path must have at least one waypoint.");
+    double[][] copy = new double[waypoints.length][];
+    for (int i = 0; i < waypoints.length; i++)
+      copy[i] = new double[] {waypoints[i][0], waypoints[i][1]};
+    return new NavigationCommand(Type.PATH, null, copy);
+  }
+
+  /**
+   * Creates a command turning the robot to an absolute angle, as {@code Navigation.turnTo()} does.
+   * 
+   * @param theta Desired angle in degrees.
+   * @return A new command.
+   */
+  public static NavigationCommand turnTo(double theta) {
+    return new NavigationCommand(Type.TURN, new double[] {theta}, null);
+  }
+
+  /**
+   * Creates a command turning the robot by a relative angle, as {@code Navigation.turnToRelative()}
+   * does.
+   * 
+   * @param theta Angle of rotation in degrees, positive counter-clockwise.
+   * @return A new command.
+   */
+  public static NavigationCommand turnToRelative(double theta) {
+    return new NavigationCommand(Type.TURN_RELATIVE, new double[] {theta}, null);
+  }
+
+  /**
+   * Creates a command moving the robot straight, as {@code Navigation.advanceDist()} does.
+   * 
+   * @param distance Distance to travel in centimeters, negative to move backward.
+   * @return A new command.
+   */
+  public static NavigationCommand advance(double distance) {
+    return new NavigationCommand(Type.ADVANCE, new double[] {distance}, null);
+  }
+
+  /**
+   * Creates a command changing the forward speed of the robot, as {@code Navigation.highSpeedOn()}
+   * and {@code Navigation.highSpeedOff()} do.
+   * 
+   * @param enabled True to use the high speed, false to go back to the default one.
+   * @return A new command.
+   */
+  public static NavigationCommand highSpeed(boolean enabled) {
+    return new NavigationCommand(Type.SPEED, new double[] {enabled ? 1 : 0}, null);
+  }
+
+  /**
+   * Returns the movement performed by the command.
+   * 
+   * @return Type of the command.
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the id of the command, which can be given to {@code Navigation.awaitCommand()}.
+   * 
+   * @return Id of the command, or 0 if it was not published yet.
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Indicates whether the navigation thread finished executing the command.
+   * 
+   * @return True if the command is completed.
+   */
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * Indicates whether the command was replaced or discarded by {@code Navigation.cancel()} before
+   * it could be completed.
+   * 
+   * @return True if the command was cancelled.
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Waits until the navigation thread finished executing the command.
+   */
+  public void await() {
+    while (true) {
+      try {
+        done.await();
+        return;
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+    }
+  }
+
+  /**
+   * Waits until the navigation thread finished executing the command, or until the timeout expires.
+   * 
+   * @param timeout Maximum time to wait in milliseconds.
+   * @return True if the command is completed, false if the timeout expired first.
+   */
+  public boolean await(long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        return done.await(remaining, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+    }
+  }
+
+  /*
+   * Returns an argument of the command, in the order of its factory method.
+   */
+  double getArgument(int index) {
+    return arguments[index];
+  }
+
+  /*
+   * Returns the waypoints of a path command.
+   */
+  double[][] getWaypoints() {
+    return waypoints;
+  }
+
+  /*
+   * Assigns the id of the command as it is published.
+   */
+  void publish(long id) {
+    this.id = id;
+  }
+
+  /*
+   * Marks the command as completed, releasing the threads waiting for it.
+   */
+  void complete() {
+    done.countDown();
+  }
+
+  /*
+   * Completes the command without executing it.
+   */
+  void cancel() {
+    cancelled = true;
+    done.countDown();
+  }
+
+}
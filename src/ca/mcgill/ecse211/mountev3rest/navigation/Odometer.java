@@ -1,6 +1,10 @@
 package ca.mcgill.ecse211.mountev3rest.navigation;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import ca.mcgill.ecse211.mountev3rest.sensor.SensorRecorder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Uses the measurements of the wheel radius and tacho meter readings to provide a real time
@@ -12,58 +16,69 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
 public class Odometer extends OdometerData implements Runnable {
 
   // Constants
-  private final double TRACK;
-  private final double WHEEL_RAD;
   private final double MOTOR_OFFSET;
-  private static final long ODOMETER_PERIOD = 25;
+  private final long PERIOD;
+  public static final long ODOMETER_PERIOD = 25; // Default update period in milliseconds
+  private static final int HISTORY_LENGTH = 2000; // Time span of the pose history in milliseconds
+  private static final int MIN_HISTORY_SIZE = 2; // Poses needed to interpolate between updates
 
   // Attributes
-  private OdometerData odoData;
   private static Odometer odo = null; // Returned as singleton
+  private PoseHistory history;
+  private OdometryIntegrator integrator;
+  private double[] position;
+  private double[] delta;
+  private List<Subscription> subscriptions;
+  private AtomicBoolean overwritten; // Odometer values were set from outside since last update
+  private volatile SensorRecorder recorder; // Null unless the tacho counts are being recorded
 
   // Motors and related variables
   private int leftMotorTachoCount;
   private int rightMotorTachoCount;
   private int prevLeftMotorTachoCount = 0;
   private int prevRightMotorTachoCount = 0;
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private Motor leftMotor;
+  private Motor rightMotor;
 
   /**
-   * This is the default constructor of this class. It initiates all motors and variables once. It
-   * cannot be accessed externally.
+   * Creates an odometer for the given motors starting at X, Y and Theta equal to 0. Unlike the
+   * factory methods, the constructor always creates a new instance, which allows every robot
+   * running in the same JVM to own its odometer through a {@code RobotContext}.
    * 
    * @param leftMotor Left motor of the robot.
    * @param rightMotor Right motor of the robot.
-   * @param TRACK Distance between the left and right wheels.
-   * @param WHEEL_RADIUS Wheel radius measurement of the robot.
    * @param MOTOR_OFFSET Ratio between the speed of the left and right motors.
+   * @param integrator Model used to convert the wheel rotations into displacements.
+   * @param PERIOD Time between updates in milliseconds.
+   * @throws IllegalArgumentException If the period is not positive.
    * 
-   * @throws OdometerException If there is a problem while instantiating the new {@code Odometer}
-   *         object.
+   * @see ca.mcgill.ecse211.mountev3rest.util.RobotContext
    */
-  private Odometer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-      final double TRACK, final double WHEEL_RAD, final double MOTOR_OFFSET)
-      throws OdometerException {
-    odoData = OdometerData.getOdometerData(); // Allows access to x,y,z
-                                              // manipulation methods
+  public Odometer(Motor leftMotor, Motor rightMotor,
+      final double MOTOR_OFFSET, OdometryIntegrator integrator, final long PERIOD) {
+    if (PERIOD <= 0)
+      throw new IllegalArgumentException("The odometer period must be positive.");
     this.leftMotor = leftMotor;
     this.rightMotor = rightMotor;
 
-    // Reset the values of x, y and z to 0
-    odoData.setXYT(0, 0, 0);
-
     this.leftMotorTachoCount = 0;
     this.rightMotorTachoCount = 0;
 
-    this.TRACK = TRACK;
-    this.WHEEL_RAD = WHEEL_RAD;
+    this.history = new PoseHistory((int) Math.max(MIN_HISTORY_SIZE, HISTORY_LENGTH / PERIOD));
+    this.position = new double[3];
+    this.delta = new double[3];
+    this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+    this.overwritten = new AtomicBoolean(false);
+
+    this.integrator = integrator;
     this.MOTOR_OFFSET = MOTOR_OFFSET;
+    this.PERIOD = PERIOD;
   }
 
   /**
    * {@code Odometer} factory method. Creates and instance of the {@code Odometer} class if it has
-   * not been instantiated yet, otherwise it returns the existing instance.
+   * not been instantiated yet, otherwise it returns the existing instance. The created odometer
+   * uses an {@code EulerIntegrator}.
    * 
    * @param leftMotor Left motor of the robot.
    * @param rightMotor Right motor of the robot.
@@ -75,13 +90,61 @@ public class Odometer extends OdometerData implements Runnable {
    * @throws OdometerException If there is a problem while instantiating the new {@code Odometer}
    *         object.
    */
-  public synchronized static Odometer getOdometer(EV3LargeRegulatedMotor leftMotor,
-      EV3LargeRegulatedMotor rightMotor, final double TRACK, final double WHEEL_RADIUS,
+  public synchronized static Odometer getOdometer(Motor leftMotor,
+      Motor rightMotor, final double TRACK, final double WHEEL_RADIUS,
       double MOTOR_OFFSET) throws OdometerException {
+    return getOdometer(leftMotor, rightMotor, MOTOR_OFFSET,
+        new EulerIntegrator(WHEEL_RADIUS, TRACK));
+  }
+
+  /**
+   * {@code Odometer} factory method that allows selecting the model used to integrate the wheel
+   * rotations. Creates and instance of the {@code Odometer} class if it has not been instantiated
+   * yet, otherwise it returns the existing instance.
+   * 
+   * @param leftMotor Left motor of the robot.
+   * @param rightMotor Right motor of the robot.
+   * @param MOTOR_OFFSET Ratio between the speed of the left and right motors.
+   * @param integrator Model used to convert the wheel rotations into displacements, such as a
+   *        {@code LookupTableIntegrator}.
+   * 
+   * @return New or existing {@code Odometer} object.
+   * @throws OdometerException If there is a problem while instantiating the new {@code Odometer}
+   *         object.
+   */
+  public synchronized static Odometer getOdometer(Motor leftMotor,
+      Motor rightMotor, double MOTOR_OFFSET, OdometryIntegrator integrator)
+      throws OdometerException {
+    return getOdometer(leftMotor, rightMotor, MOTOR_OFFSET, integrator, ODOMETER_PERIOD);
+  }
+
+  /**
+   * {@code Odometer} factory method that allows selecting both the integration model and the
+   * update rate. Creates and instance of the {@code Odometer} class if it has not been instantiated
+   * yet, otherwise it returns the existing instance.
+   * <p>
+   * The period only sizes the pose history and is reported by {@code getPeriod()}, the caller is
+   * responsible for scheduling {@code run()} at that rate. Models such as the {@code ArcIntegrator}
+   * remain accurate at longer periods than the {@code EulerIntegrator}.
+   * 
+   * @param leftMotor Left motor of the robot.
+   * @param rightMotor Right motor of the robot.
+   * @param MOTOR_OFFSET Ratio between the speed of the left and right motors.
+   * @param integrator Model used to convert the wheel rotations into displacements.
+   * @param PERIOD Time between updates in milliseconds.
+   * 
+   * @return New or existing {@code Odometer} object.
+   * @throws OdometerException If there is a problem while instantiating the new {@code Odometer}
+   *         object.
+   * @throws IllegalArgumentException If the period is not positive.
+   */
+  public synchronized static Odometer getOdometer(Motor leftMotor,
+      Motor rightMotor, double MOTOR_OFFSET, OdometryIntegrator integrator,
+      final long PERIOD) throws OdometerException {
     if (odo != null) { // Return existing object
       return odo;
     } else { // create object and return it
-      odo = new Odometer(leftMotor, rightMotor, TRACK, WHEEL_RADIUS, MOTOR_OFFSET);
+      odo = new Odometer(leftMotor, rightMotor, MOTOR_OFFSET, integrator, PERIOD);
       return odo;
     }
   }
@@ -104,45 +167,222 @@ public class Odometer extends OdometerData implements Runnable {
   /**
    * Uses the wheel radius measurement and tacho meter measurements from the motors to update the X
    * and Y values as well the angle Theta of the cart's current position.
+   * <p>
+   * Each call performs a single update, the method is meant to be run every {@code getPeriod()}
+   * milliseconds by a {@code PeriodicScheduler}.
+   * 
+   * @see ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler
    */
   @Override
   public void run() {
-    long updateStart, updateEnd;
+    // Cleared atomically so that an overwrite made during this update is seen by the next one
+    boolean force = overwritten.getAndSet(false);
+    double theta = getTheta();
+
+    long sampleTime = System.nanoTime();
+    int leftTacho = leftMotor.getTachoCount();
+    int rightTacho = rightMotor.getTachoCount();
+    SensorRecorder recorder = this.recorder;
+    if (recorder != null)
+      recorder.recordTachos(sampleTime, leftTacho, rightTacho);
+
+    leftMotorTachoCount = (int) (leftTacho / MOTOR_OFFSET);
+    rightMotorTachoCount = rightTacho;
+
+    // Calculate the displacement of the robot based on tachometer counts
+    integrator.integrate(leftMotorTachoCount - prevLeftMotorTachoCount,
+        rightMotorTachoCount - prevRightMotorTachoCount, theta, delta);
+
+    // Update odometer values with new calculated values and record the resulting pose
+    super.update(delta[0], delta[1], delta[2]);
+    getXYT(position);
+    history.record(sampleTime, position[0], position[1], position[2], leftMotorTachoCount,
+        rightMotorTachoCount);
+    notifyListeners(position, force);
+
+    // Set current values to be the old values
+    prevLeftMotorTachoCount = leftMotorTachoCount;
+    prevRightMotorTachoCount = rightMotorTachoCount;
+  }
+
+  /**
+   * Returns the pose of the robot at the given time. The pose is interpolated from the recorded
+   * history, which allows the caller to use the location of the robot at the moment a sensor
+   * reading was taken. If the time is newer than the last update, or the history does not cover it
+   * because the odometer values were overwritten since then, the current pose is returned.
+   * 
+   * @param timestampNanos Time of interest as given by {@code System.nanoTime()}.
+   * @return The X, Y and Theta odometer values at the given time.
+   */
+  public double[] poseAt(long timestampNanos) {
+    return poseAt(timestampNanos, new double[3]);
+  }
+
+  /**
+   * Non-allocating version of {@code poseAt(long)}.
+   * 
+   * @param timestampNanos Time of interest as given by {@code System.nanoTime()}.
+   * @param position Array of at least three elements where the X, Y and Theta values are written.
+   * @return The same {@code position} array.
+   */
+  public double[] poseAt(long timestampNanos, double[] position) {
+    if (!history.poseAt(timestampNanos, position))
+      getXYT(position);
+    return position;
+  }
+
+  /**
+   * Returns the time between updates this odometer was configured for.
+   * 
+   * @return Update period in milliseconds.
+   */
+  public long getPeriod() {
+    return PERIOD;
+  }
+
+  /**
+   * Returns the history of poses computed by the odometer.
+   * 
+   * @return The {@code PoseHistory} of this odometer.
+   */
+  public PoseHistory getHistory() {
+    return history;
+  }
+
+  /**
+   * Registers a listener to be notified of the pose updates. The listener is called from the
+   * odometer thread after an update in which the robot moved farther than {@code minDistance} or
+   * rotated more than {@code minRotation} since the previous notification of that listener. It is
+   * also called after the odometer values are overwritten, and on the first update after it is
+   * registered.
+   * 
+   * @param listener Listener to notify.
+   * @param minDistance Minimum distance travelled in centimeters between notifications. Zero
+   *        notifies on every change of position.
+   * @param minRotation Minimum rotation in degrees between notifications. Zero notifies on every
+   *        change of heading.
+   */
+  public void addPoseListener(PoseListener listener, double minDistance, double minRotation) {
+    subscriptions.add(new Subscription(listener, minDistance, minRotation));
+  }
+
+  /**
+   * Stops notifying the given listener.
+   * 
+   * @param listener Listener previously registered with {@code addPoseListener()}.
+   */
+  public void removePoseListener(PoseListener listener) {
+    for (Subscription subscription : subscriptions)
+      if (subscription.listener == listener)
+        subscriptions.remove(subscription);
+  }
+
+  /**
+   * Sets the recorder to which the raw tacho counts read on every update are written.
+   * 
+   * @param recorder Recorder of the tacho counts, or null to stop recording.
+   * 
+   * @see SensorRecorder
+   */
+  public void setRecorder(SensorRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  /*
+   * The methods below overwrite the odometer values from outside the odometer thread. The recorded
+   * history no longer matches the new coordinate frame, so it is discarded.
+   */
+
+  @Override
+  public void update(double dx, double dy, double dtheta) {
+    super.update(dx, dy, dtheta);
+    history.clear();
+    overwritten.set(true);
+  }
+
+  @Override
+  public void setXYT(double x, double y, double theta) {
+    super.setXYT(x, y, theta);
+    history.clear();
+    overwritten.set(true);
+  }
+
+  @Override
+  public void setX(double x) {
+    super.setX(x);
+    history.clear();
+    overwritten.set(true);
+  }
+
+  @Override
+  public void setY(double y) {
+    super.setY(y);
+    history.clear();
+    overwritten.set(true);
+  }
 
-    while (true) {
-      updateStart = System.currentTimeMillis();
+  @Override
+  public void setTheta(double theta) {
+    super.setTheta(theta);
+    history.clear();
+    overwritten.set(true);
+  }
 
-      double[] position = odo.getXYT();
+  // ---PRIVATE METHODS---
 
-      leftMotorTachoCount = (int) (leftMotor.getTachoCount() / MOTOR_OFFSET);
-      rightMotorTachoCount = rightMotor.getTachoCount();
+  /*
+   * Notifies the listeners whose thresholds were exceeded by the given pose, or all of them if
+   * forced.
+   */
+  private void notifyListeners(double[] position, boolean force) {
+    for (Subscription subscription : subscriptions)
+      subscription.offer(position[0], position[1], position[2], force);
+  }
 
-      // Calculate new robot position based on tachometer counts
-      double distL = Math.PI * WHEEL_RAD * (leftMotorTachoCount - prevLeftMotorTachoCount) / 180;
-      double distR = Math.PI * WHEEL_RAD * (rightMotorTachoCount - prevRightMotorTachoCount) / 180;
-      double deltaD = 0.5 * (distL + distR);
-      double deltaT = Math.toDegrees((distL - distR) / TRACK);
+  /*
+   * Listener registered with its thresholds and the pose it was last notified of.
+   */
+  private static class Subscription {
 
-      // Get the current odometer values
-      double deltaX = deltaD * Math.sin(Math.toRadians(position[2] + deltaT));
-      double deltaY = deltaD * Math.cos(Math.toRadians(position[2] + deltaT));
+    private final PoseListener listener;
+    private final double minDistanceSquared;
+    private final double minRotation;
+    private boolean notified; // False until the first notification
+    private double lastX;
+    private double lastY;
+    private double lastTheta;
 
-      // Update odometer values with new calculated values
-      odo.update(deltaX, deltaY, deltaT);
+    private Subscription(PoseListener listener, double minDistance, double minRotation) {
+      this.listener = listener;
+      this.minDistanceSquared = minDistance * minDistance;
+      this.minRotation = minRotation;
+      this.notified = false;
+    }
 
-      // Set current values to be the old values
-      prevLeftMotorTachoCount = leftMotorTachoCount;
-      prevRightMotorTachoCount = rightMotorTachoCount;
+    /*
+     * Notifies the listener if the pose moved past the thresholds. Only called by the odometer
+     * thread.
+     */
+    private void offer(double x, double y, double theta, boolean force) {
+      if (notified && !force) {
+        double dx = x - lastX;
+        double dy = y - lastY;
+        double dtheta = Math.abs(theta - lastTheta);
+        if (dtheta > 180)
+          dtheta = 360 - dtheta;
 
-      // this ensures that the odometer only runs once every period
-      updateEnd = System.currentTimeMillis();
-      if (updateEnd - updateStart < ODOMETER_PERIOD) {
-        try {
-          Thread.sleep(ODOMETER_PERIOD - (updateEnd - updateStart));
-        } catch (InterruptedException e) {
-          // there is nothing to be done
-        }
+        boolean moved = dx * dx + dy * dy > minDistanceSquared || (minDistanceSquared == 0
+            && (dx != 0 || dy != 0));
+        boolean rotated = dtheta > minRotation || (minRotation == 0 && dtheta != 0);
+        if (!moved && !rotated)
+          return;
       }
+
+      notified = true;
+      lastX = x;
+      lastY = y;
+      lastTheta = theta;
+      listener.poseChanged(x, y, theta);
     }
   }
 
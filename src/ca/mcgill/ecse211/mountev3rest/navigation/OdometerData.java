@@ -1,14 +1,15 @@
 package ca.mcgill.ecse211.mountev3rest.navigation;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
 /**
- * Singleton class representation of the odometer's data.
+ * Representation of the odometer's data.
  * <p>
  * The {@code OdometerData} class holds the relevant information regarding the location of the
  * robot. Additionally, it provides a thread safe interface to get and set this values.
+ * <p>
+ * Access to the position is coordinated through a sequence lock. Writers are serialized among
+ * themselves and bump a sequence counter before and after modifying the position, while readers
+ * never block: they simply retry if the counter changed or was odd (write in progress) while they
+ * were copying the values. This guarantees that X, Y and Theta are always read as a consistent set.
  * 
  * @see Odometer
  * @author angelortiz
@@ -17,7 +18,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public class OdometerData {
 
   // Attributes
-  // Singleton instance
+  // Default instance
   private static OdometerData odoData = null;
 
   // Position parameters
@@ -25,86 +26,97 @@ public class OdometerData {
   private volatile double y; // y-axis position
   private volatile double theta; // Head angle
 
-  // Class control variables
-  private volatile static int numberOfIntances = 0; // Number of OdometerData
-                                                    // objects instantiated
-                                                    // so far
-  private static final int MAX_INSTANCES = 1; // Maximum number of
-                                              // OdometerData instances
-
-  // Thread control flags
-  private static Lock lock = new ReentrantLock(true); // Fair lock for
-                                                      // concurrent writing
-  private volatile boolean isReseting = false; // Indicates if a thread is
-                                               // trying to reset any
-                                               // position parameters
-  private Condition doneReseting = lock.newCondition(); // Let other threads
-                                                        // know that a reset
-                                                        // operation is
-                                                        // over.
+  // Thread control variables
+  private volatile int sequence = 0; // Incremented before and after every write, an odd value
+                                     // indicates that a write is in progress
+  private final Object writeLock = new Object(); // Serializes the writers
 
 
   /**
-   * Private default constructor. A factory is used instead to preserve the singleton class
-   * condition.
+   * Creates an {@code OdometerData} object with X, Y and Theta equal to 0. Each robot running in
+   * the same JVM holds its own instance, usually through its {@code Odometer}.
    */
-  protected OdometerData() {
+  public OdometerData() {
     this.x = 0;
     this.y = 0;
     this.theta = 0;
   }
 
   /**
-   * OdometerData factory method. Returns an OdometerData instance and makes sure that only one
-   * instance is ever created. If the user tries to instantiate multiple objects, the method throws
-   * a MultipleOdometerDataException.
+   * OdometerData factory method. Returns the shared default instance, creating it on the first
+   * call.
    * 
-   * @return An {@code OdometerData} object.
-   * @throws OdometerException If instantiated more than once.
+   * @return The default {@code OdometerData} object.
+   * @throws OdometerException Kept for compatibility, no longer thrown.
    */
   public synchronized static OdometerData getOdometerData() throws OdometerException {
-    if (odoData != null) { // Return existing object
-      return odoData;
-    } else if (numberOfIntances < MAX_INSTANCES) { // create object and
-                                                   // return it
+    if (odoData == null) // create object and return it
       odoData = new OdometerData();
-      numberOfIntances += 1;
-      return odoData;
-    } else {
-      throw new OdometerException("Only one intance of the Odometer can be created.");
-    }
-
+    return odoData;
   }
 
   /**
-   * Returns the Odometer data, while making sure that no other object is manipulating the data at
-   * the time.
+   * Returns the Odometer data, while making sure that the values are not being modified at the
+   * time. This method never blocks, if a write happens while the values are being read the read is
+   * simply retried.
    * 
    * @return The X, Y and Theta odometer values.
    */
   public double[] getXYT() {
-    double[] position = new double[3];
-    lock.lock();
-    try {
-      while (isReseting) { // If a reset operation is being executed, wait
-        // until it is over.
-        doneReseting.await(); // Using await() is lighter on the CPU
-        // than simple busy wait.
+    return getXYT(new double[3]);
+  }
+
+  /**
+   * Copies the Odometer data into the provided array, while making sure that the values are not
+   * being modified at the time. Unlike {@code getXYT()} this method does not allocate, which makes
+   * it suitable for periodic control loops.
+   * 
+   * @param position Array of at least three elements where the X, Y and Theta values are written.
+   * @return The same {@code position} array.
+   */
+  public double[] getXYT(double[] position) {
+    int start;
+
+    do {
+      start = sequence;
+      if ((start & 1) != 0) { // A write is in progress, let the writer finish
+        Thread.yield();
+        continue;
       }
 
       position[0] = x;
       position[1] = y;
       position[2] = theta;
-
-    } catch (InterruptedException e) {
-      // Print exception to screen
-      e.printStackTrace();
-    } finally {
-      lock.unlock();
-    }
+    } while ((start & 1) != 0 || start != sequence);
 
     return position;
+  }
+
+  /**
+   * Returns the current value of X.
+   * 
+   * @return The X odometer value.
+   */
+  public double getX() {
+    return x;
+  }
 
+  /**
+   * Returns the current value of Y.
+   * 
+   * @return The Y odometer value.
+   */
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * Returns the current value of Theta.
+   * 
+   * @return The Theta odometer value.
+   */
+  public double getTheta() {
+    return theta;
   }
 
   /**
@@ -116,21 +128,15 @@ public class OdometerData {
    * @param dtheta Delta value to add to Theta.
    */
   public void update(double dx, double dy, double dtheta) {
-    lock.lock();
-    isReseting = true;
-    try {
-      x += dx;
-      y += dy;
-      theta = (theta + (360 + dtheta) % 360) % 360; // keeps the updates
-                                                    // within 360
-                                                    // degrees
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
-    } finally {
-      lock.unlock();
+    synchronized (writeLock) {
+      // Keep theta within 360 degrees without using the floating point remainder
+      double newTheta = theta + dtheta;
+      while (newTheta >= 360)
+        newTheta -= 360;
+      while (newTheta < 0)
+        newTheta += 360;
+      write(x + dx, y + dy, newTheta);
     }
-
   }
 
   /**
@@ -141,17 +147,8 @@ public class OdometerData {
    * @param theta New value for Theta.
    */
   public void setXYT(double x, double y, double theta) {
-    lock.lock();
-    isReseting = true;
-    try {
-      this.x = x;
-      this.y = y;
-      this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
-    } finally {
-      lock.unlock();
+    synchronized (writeLock) {
+      write(x, y, theta);
     }
   }
 
@@ -161,15 +158,8 @@ public class OdometerData {
    * @param x New value of X.
    */
   public void setX(double x) {
-    lock.lock();
-    isReseting = true;
-    try {
-      this.x = x;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
-    } finally {
-      lock.unlock();
+    synchronized (writeLock) {
+      write(x, this.y, this.theta);
     }
   }
 
@@ -179,15 +169,8 @@ public class OdometerData {
    * @param y New value of Y.
    */
   public void setY(double y) {
-    lock.lock();
-    isReseting = true;
-    try {
-      this.y = y;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
-    } finally {
-      lock.unlock();
+    synchronized (writeLock) {
+      write(this.x, y, this.theta);
     }
   }
 
@@ -197,16 +180,25 @@ public class OdometerData {
    * @param theta New value of theta.
    */
   public void setTheta(double theta) {
-    lock.lock();
-    isReseting = true;
-    try {
-      this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
-    } finally {
-      lock.unlock();
+    synchronized (writeLock) {
+      write(this.x, this.y, theta);
     }
   }
 
+  /**
+   * Single write path for the position values. Bumps the sequence counter around the write so that
+   * concurrent readers can detect it and retry. The caller must hold the write lock.
+   * 
+   * @param x New value for X.
+   * @param y New value for Y.
+   * @param theta New value for Theta.
+   */
+  private void write(double x, double y, double theta) {
+    sequence++; // Odd, write in progress
+    this.x = x;
+    this.y = y;
+    this.theta = theta;
+    sequence++; // Even, write done
+  }
+
 }
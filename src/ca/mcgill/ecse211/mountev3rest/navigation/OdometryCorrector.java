@@ -1,9 +1,12 @@
 package ca.mcgill.ecse211.mountev3rest.navigation;
 
+import ca.mcgill.ecse211.mountev3rest.hardware.Feedback;
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
 import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.LineEvent;
+import ca.mcgill.ecse211.mountev3rest.sensor.LineEventQueue;
 import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
 
 /**
  * This class used line detection on the lower light sensor of the robot to provide periodic
@@ -27,56 +30,77 @@ public class OdometryCorrector {
   private static final int CORRECTION_SPEED = 80;
   private static final int SAFETY_PAUSE = 200;
   private static final int CORRECTION_PERIOD = 50;
+  private static final int LINE_EVENT_CAPACITY = 32;
+  private static final long MAX_EVENT_AGE = 200000000L; // Line crossings older than this are
+                                                        // ignored, in nanoseconds
   private final double TILE_SIZE;
-  private final double MOTOR_OFFSET;
   private final double SENSOR_OFFSET;
 
   // Attributes
-  EV3LargeRegulatedMotor leftMotor;
-  EV3LargeRegulatedMotor rightMotor;
+  Motor leftMotor;
+  Motor rightMotor;
+  private DifferentialDrive drive;
   private Odometer odometer;
   private LightPoller lightPoller;
+  private Feedback feedback;
 
   public Direction direction;
   private boolean correctionEnabled;
-  private boolean leftInLine;
-  private boolean rightInLine;
+  private LineEventQueue lineEvents;
+  private LineEvent lineEvent;
   private int lastXCorrection;
   private int lastYCorrection;
+  private double[] pose;
 
   /**
    * Creates an {@code OdometryCorrector} that can be called during navigation.
    * 
-   * @param leftMotor Left motor used to correct the trajectory.
-   * @param rightMotor Right motor used to correct the trajectory.
+   * @param drive Drive used to correct the trajectory.
    * @param TILE_SIZE Length of the tiles on the grid in centimeters.
    * @param SENSOR_OFFSET Vertical distance from the robot's axis to the lower light sensors in
    *        centimeters.
-   * @param MOTOR_OFFSET Ratio between the speed of the left and right motors used to reduce the
-   *        error between the motors' different performances.
    * 
    * @throws PollerException If the {@code LightPoller} has not been instantiated.
    * @throws OdometerException If the {@code Odometer} has not been instantiated.
    */
-  public OdometryCorrector(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-      final double TILE_SIZE, final double SENSOR_OFFSET, final double MOTOR_OFFSET)
-      throws PollerException, OdometerException {
+  public OdometryCorrector(DifferentialDrive drive, final double TILE_SIZE,
+      final double SENSOR_OFFSET) throws PollerException, OdometerException {
+    this(RobotContext.getDefault(), drive, TILE_SIZE, SENSOR_OFFSET);
+  }
+
+  /**
+   * Creates an {@code OdometryCorrector} that uses the components of the given robot context.
+   * 
+   * @param context Context holding the odometer, light poller and feedback of the robot.
+   * @param drive Drive used to correct the trajectory.
+   * @param TILE_SIZE Length of the tiles on the grid in centimeters.
+   * @param SENSOR_OFFSET Vertical distance from the robot's axis to the lower light sensors in
+   *        centimeters.
+   * 
+   * @throws PollerException If the context does not provide a {@code LightPoller}.
+   * @throws OdometerException If the context does not provide an {@code Odometer}.
+   */
+  public OdometryCorrector(RobotContext context, DifferentialDrive drive, final double TILE_SIZE,
+      final double SENSOR_OFFSET) throws PollerException, OdometerException {
 
     // Get navigation objects
-    this.leftMotor = leftMotor;
-    this.rightMotor = rightMotor;
-    odometer = Odometer.getOdometer();
-    lightPoller = LightPoller.getLightPoller();
+    this.drive = drive;
+    this.leftMotor = drive.getLeftMotor();
+    this.rightMotor = drive.getRightMotor();
+    odometer = context.getOdometer();
+    lightPoller = context.getLightPoller();
+    feedback = context.getFeedback();
 
     // Initialize correction objects
     this.TILE_SIZE = TILE_SIZE;
     this.SENSOR_OFFSET = SENSOR_OFFSET;
-    this.MOTOR_OFFSET = MOTOR_OFFSET;
 
-    leftInLine = false;
-    leftInLine = false;
+    lineEvents = new LineEventQueue(LINE_EVENT_CAPACITY);
+    lineEvent = new LineEvent();
+    lightPoller.addLineEventQueue(lineEvents);
     lastXCorrection = -1;
     lastYCorrection = -1;
+    pose = new double[3];
     correctionEnabled = true;
     direction = Direction.INIT;
   }
@@ -94,40 +118,33 @@ public class OdometryCorrector {
    */
   public boolean applyCorrection() {
     // Return if correction is disabled.
-    if (!correctionEnabled)
+    if (!correctionEnabled) {
+      lineEvents.clear();
       return false;
-
-    lightPoller.poll(); // Update the sensor readings
-    boolean ret = false;
-
-    if (lightPoller.leftInLine && lightPoller.rightInLine) {
-      return ret;
     }
 
-    if (lightPoller.leftInLine) {
-      if (!leftInLine) {
-        leftInLine = true;
-        if (!lightPoller.rightInLine)
-          ret = adjustTrajectory(1);
-      }
-    } else {
-      leftInLine = false;
-    }
+    // Update the sensor readings. The sampling thread already keeps them current if it is running.
+    if (!lightPoller.isSampling(LightPoller.LINES))
+      lightPoller.pollLines();
+
+    // Go through the crossings detected since the last call
+    long now = System.nanoTime();
+    while (lineEvents.poll(lineEvent)) {
+      if (!lineEvent.isRising() || now - lineEvent.getTimestampNanos() > MAX_EVENT_AGE)
+        continue;
 
-    if (ret)
-      return ret;
+      // Both sensors on the line means the robot is already aligned to it
+      if (lineEvent.isLeftInLine() && lineEvent.isRightInLine())
+        continue;
 
-    if (lightPoller.rightInLine) {
-      if (!rightInLine) {
-        rightInLine = true;
-        if (!lightPoller.leftInLine)
-          ret = adjustTrajectory(0);
+      int laggingSide = lineEvent.getChannel() == LightPoller.LEFT ? 1 : 0;
+      if (adjustTrajectory(laggingSide, false, true, lineEvent.getTimestampNanos())) {
+        lineEvents.clear(); // The crossings detected during the adjustment are not relevant
+        return true;
       }
-    } else {
-      rightInLine = false;
     }
 
-    return ret;
+    return false;
   }
 
   /**
@@ -138,30 +155,39 @@ public class OdometryCorrector {
    *         robot's current heading.
    */
   public int estimateCurrentLine() {
-    updateDirection();
-    double position[] = odometer.getXYT();
+    return estimateCurrentLine(System.nanoTime());
+  }
+
+  /**
+   * Estimates the closest line to the robot according to the odometer's readings and the heading at
+   * the given time. This allows the estimation to use the location of the robot at the moment a
+   * line was seen rather than after the robot stopped.
+   * 
+   * @param timestampNanos Time of interest as given by {@code System.nanoTime()}.
+   * @return An integer indicating the closest line to the robot on the grid according to the
+   *         robot's heading at the given time.
+   */
+  public int estimateCurrentLine(long timestampNanos) {
+    odometer.poseAt(timestampNanos, pose);
+    updateDirection(pose[2]);
     double distInTile;
     double odoReading;
     switch (direction) {
       case NORTH:
-        position[1] -= SENSOR_OFFSET;
-        odoReading = position[1];
-        distInTile = position[1] % TILE_SIZE;
+        odoReading = pose[1] - SENSOR_OFFSET;
+        distInTile = odoReading % TILE_SIZE;
         break;
       case EAST:
-        position[0] -= SENSOR_OFFSET;
-        odoReading = position[0];
-        distInTile = position[0] % TILE_SIZE;
+        odoReading = pose[0] - SENSOR_OFFSET;
+        distInTile = odoReading % TILE_SIZE;
         break;
       case SOUTH:
-        position[1] += SENSOR_OFFSET;
-        odoReading = position[1];
-        distInTile = position[1] % TILE_SIZE;
+        odoReading = pose[1] + SENSOR_OFFSET;
+        distInTile = odoReading % TILE_SIZE;
         break;
       case WEST:
-        position[0] += SENSOR_OFFSET;
-        odoReading = position[0];
-        distInTile = position[0] % TILE_SIZE;
+        odoReading = pose[0] + SENSOR_OFFSET;
+        distInTile = odoReading % TILE_SIZE;
         break;
       default:
         distInTile = 0;
@@ -185,23 +211,19 @@ public class OdometryCorrector {
     long startTime = System.currentTimeMillis();
     boolean goBack = false;
     
-    leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-    rightMotor.setSpeed(FORWARD_SPEED);
-    if (goBackwards) {
-      leftMotor.backward();
-      rightMotor.backward();
-    } else {
-      leftMotor.forward();
-      rightMotor.forward();
-    }
+    drive.setSpeed(FORWARD_SPEED);
+    if (goBackwards)
+      drive.backward();
+    else
+      drive.forward();
     
     while (true) {
-      lightPoller.poll();
-      if (lightPoller.leftInLine) {
-        adjustTrajectory(1, goBackwards, false);
+      lightPoller.pollLines();
+      if (lightPoller.isLeftInLine()) {
+        adjustTrajectory(1, goBackwards, false, lightPoller.getLeftTimestamp());
         break;
-      } else if (lightPoller.rightInLine) {
-        adjustTrajectory(0, goBackwards, false);
+      } else if (lightPoller.isRightInLine()) {
+        adjustTrajectory(0, goBackwards, false, lightPoller.getRightTimestamp());
         break;
       } else if (System.currentTimeMillis() - startTime > ISOLATED_CORRECTION_LIMIT) {
         goBack = true;
@@ -216,10 +238,8 @@ public class OdometryCorrector {
     }
     
     if (goBack) {
-      leftMotor.setSpeed((int) (FORWARD_SPEED * MOTOR_OFFSET));
-      rightMotor.setSpeed(FORWARD_SPEED);
-      leftMotor.rotate(prevTachoLeft - leftMotor.getTachoCount(), true);
-      rightMotor.rotate(prevTachoRight - rightMotor.getTachoCount(), false);
+      drive.setSpeed(FORWARD_SPEED);
+      drive.returnTo(prevTachoLeft, prevTachoRight, false);
     }
     
   }
@@ -248,6 +268,24 @@ public class OdometryCorrector {
    */
   public boolean adjustTrajectory(int laggingSide, boolean goingBackwards,
       boolean checkForRepeats) {
+    return adjustTrajectory(laggingSide, goingBackwards, checkForRepeats, System.nanoTime());
+  }
+
+  /**
+   * Adjusts the trajectory of the robot as described in {@code adjustTrajectory(int, boolean,
+   * boolean)}, estimating the line that was crossed from the pose of the robot at the time the line
+   * was detected.
+   * 
+   * @param laggingSide Integer denoting which side is lagging. The encoding is 0 for left and 1 for
+   *        right.
+   * @param goingBackwards Whether the robot was moving backwards when the line was detected.
+   * @param checkForRepeats Whether to skip the correction if the line was just used.
+   * @param detectionTime Time at which the line was detected as given by {@code System.nanoTime()}.
+   * 
+   * @return True if a correction was actually applied to the odometer, false otherwise.
+   */
+  public boolean adjustTrajectory(int laggingSide, boolean goingBackwards,
+      boolean checkForRepeats, long detectionTime) {
     // Check that this line is no the same as the one for the past correction.
     int lastCorrection = -1;
     if (direction == Direction.NORTH || direction == Direction.SOUTH)
@@ -255,7 +293,7 @@ public class OdometryCorrector {
     else if (direction == Direction.EAST || direction == Direction.WEST)
       lastCorrection = lastXCorrection;
 
-    int currentLine = estimateCurrentLine();
+    int currentLine = estimateCurrentLine(detectionTime);
 
     /*
      * System.out.println("Current line: " + currentLine + "Direction: " + direction);
@@ -268,17 +306,16 @@ public class OdometryCorrector {
       return false;
     }
 
-    Sound.beep();
+    feedback.beep();
 
     boolean lineDetected = false;
 
     // Correct the trajectory
-    rightMotor.stop(true);
-    leftMotor.stop(false);
+    drive.stop();
 
     // Lagging side is left
     if (laggingSide == 0) {
-      lightPoller.poll();
+      lightPoller.pollLines();
 
       int prevTachoLeft = leftMotor.getTachoCount();
       int prevTachoRight = rightMotor.getTachoCount();
@@ -286,18 +323,14 @@ public class OdometryCorrector {
       boolean goBack = false;
 
       // Make sure you didn't skip the line while stopping
-      while (!lightPoller.rightInLine) {
-        lightPoller.poll();
-        leftMotor.setSpeed((int) (CORRECTION_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(CORRECTION_SPEED);
-
-        if (goingBackwards) {
-          leftMotor.forward();
-          rightMotor.forward();
-        } else {
-          leftMotor.backward();
-          rightMotor.backward();
-        }
+      while (!lightPoller.isRightInLine()) {
+        lightPoller.pollLines();
+        drive.setSpeed(CORRECTION_SPEED);
+
+        if (goingBackwards)
+          drive.forward();
+        else
+          drive.backward();
 
         if (System.currentTimeMillis() - startTime > CORRECTION_TIME_LIMIT) {
           goBack = true; // If the line is never seen signal the method to undo the turning
@@ -312,13 +345,10 @@ public class OdometryCorrector {
       }
 
       // Undo the previous travel
-      if (goBack) {
-        leftMotor.rotate(prevTachoLeft - leftMotor.getTachoCount());
-        rightMotor.rotate(prevTachoRight - rightMotor.getTachoCount());
-      }
+      if (goBack)
+        drive.returnTo(prevTachoLeft, prevTachoRight, false);
 
-      rightMotor.stop(true);
-      leftMotor.stop(false);
+      drive.stop();
 
       try {
         Thread.sleep(SAFETY_PAUSE);
@@ -339,7 +369,7 @@ public class OdometryCorrector {
 
       // Lagging side is right
     } else if (laggingSide == 1) {
-      lightPoller.poll();
+      lightPoller.pollLines();
 
       int prevTachoLeft = leftMotor.getTachoCount();
       int prevTachoRight = rightMotor.getTachoCount();
@@ -347,18 +377,14 @@ public class OdometryCorrector {
       boolean goBack = false;
 
       // Make sure you didn't skip the line while stopping
-      while (!lightPoller.leftInLine) {
-        lightPoller.poll();
-        leftMotor.setSpeed((int) (CORRECTION_SPEED * MOTOR_OFFSET));
-        rightMotor.setSpeed(CORRECTION_SPEED);
-
-        if (goingBackwards) {
-          leftMotor.forward();
-          rightMotor.forward();
-        } else {
-          leftMotor.backward();
-          rightMotor.backward();
-        }
+      while (!lightPoller.isLeftInLine()) {
+        lightPoller.pollLines();
+        drive.setSpeed(CORRECTION_SPEED);
+
+        if (goingBackwards)
+          drive.forward();
+        else
+          drive.backward();
 
         if (System.currentTimeMillis() - startTime > CORRECTION_TIME_LIMIT) {
           goBack = true; // If the line is never seen signal the method to undo the turning
@@ -373,13 +399,10 @@ public class OdometryCorrector {
       }
 
       // Undo the previous travel
-      if (goBack) {
-        leftMotor.rotate(prevTachoLeft - leftMotor.getTachoCount());
-        rightMotor.rotate(prevTachoRight - rightMotor.getTachoCount());
-      }
+      if (goBack)
+        drive.returnTo(prevTachoLeft, prevTachoRight, false);
 
-      leftMotor.stop(true);
-      rightMotor.stop(false);
+      drive.stop();
 
       try {
         Thread.sleep(SAFETY_PAUSE);
@@ -426,36 +449,28 @@ public class OdometryCorrector {
    */
   public boolean rotateUntilDetection(int side, int timeLimit, boolean startBackwards) {
     // Stop both motors
-    leftMotor.stop(true);
-    rightMotor.stop(false);
+    drive.stop();
     try {
       Thread.sleep(SAFETY_PAUSE);
     } catch (InterruptedException e2) {
       e2.printStackTrace();
     }
 
-    // Adjust for the requested side of rotation
-    EV3LargeRegulatedMotor motor = side == 0 ? leftMotor : rightMotor;
-    int speed = side == 0 ? (int) (CORRECTION_SPEED * MOTOR_OFFSET) : CORRECTION_SPEED;
-
     boolean inLine;
     boolean goBack = false;
 
     // Rotate forward until a line is detected of the time limit exceeded
-    long prevTacho = motor.getTachoCount();
+    int prevTachoLeft = leftMotor.getTachoCount();
+    int prevTachoRight = rightMotor.getTachoCount();
     long startTime = System.currentTimeMillis();
-    motor.setSpeed(speed);
-    
-    if (startBackwards)
-      motor.backward();
-    else 
-      motor.forward();  
+    drive.setSpeed(CORRECTION_SPEED);
+    drive.pivot(side, !startBackwards);
 
     while (true) {
-      lightPoller.poll();
-      inLine = side == 0 ? lightPoller.leftInLine : lightPoller.rightInLine;
+      lightPoller.pollLines();
+      inLine = side == 0 ? lightPoller.isLeftInLine() : lightPoller.isRightInLine();
       if (inLine) {
-        motor.stop(false);
+        drive.stop();
         break;
       } else if (System.currentTimeMillis() - startTime > timeLimit) {
         goBack = true; // If the line is never seen signal the method to undo the turning
@@ -476,10 +491,7 @@ public class OdometryCorrector {
 
     // Undo the turning since a line was never seen
     if (goBack) {
-      motor.setSpeed(speed);
-      int reverseRotation = side == 0 ? (int) ((prevTacho - motor.getTachoCount()) * MOTOR_OFFSET)
-          : (int) (prevTacho - motor.getTachoCount());
-      motor.rotate(reverseRotation);
+      drive.returnTo(prevTachoLeft, prevTachoRight, false);
       goBack = false;
     }
     // If a line was seen return
@@ -487,20 +499,16 @@ public class OdometryCorrector {
       return true;
 
     // If no line was seen try going backwards
-    prevTacho = motor.getTachoCount();
+    prevTachoLeft = leftMotor.getTachoCount();
+    prevTachoRight = rightMotor.getTachoCount();
     startTime = System.currentTimeMillis();
-
-    motor.setSpeed(speed);
-    if (startBackwards)
-      motor.forward();
-    else 
-      motor.backward();  
+    drive.pivot(side, startBackwards);
 
     while (true) {
-      lightPoller.poll();
-      inLine = side == 0 ? lightPoller.leftInLine : lightPoller.rightInLine;
+      lightPoller.pollLines();
+      inLine = side == 0 ? lightPoller.isLeftInLine() : lightPoller.isRightInLine();
       if (inLine) {
-        motor.stop(false);
+        drive.stop();
         break;
       } else if (System.currentTimeMillis() - startTime > timeLimit) {
         goBack = true; // If the line is never seen signal the method to undo the turning
@@ -521,10 +529,7 @@ public class OdometryCorrector {
 
     // Undo the turning since a line was never seen
     if (goBack) {
-      motor.setSpeed(speed);
-      int reverseRotation = side == 0 ? (int) ((prevTacho - motor.getTachoCount()) * MOTOR_OFFSET)
-          : (int) (prevTacho - motor.getTachoCount());
-      motor.rotate(reverseRotation);
+      drive.returnTo(prevTachoLeft, prevTachoRight, false);
       return false;
     }
 
@@ -535,7 +540,13 @@ public class OdometryCorrector {
    * Updates the internal direction variable according to the odometer's reading.
    */
   public void updateDirection() {
-    double theta = odometer.getXYT()[2];
+    updateDirection(odometer.getTheta());
+  }
+
+  /*
+   * Updates the internal direction variable according to the given heading.
+   */
+  private void updateDirection(double theta) {
     if (theta > 45 && theta < 135)
       direction = Direction.EAST;
     else if (theta > 135 && theta < 225)
@@ -587,22 +598,21 @@ public class OdometryCorrector {
    */
   private void correctOdometer(int currentLine) {
     updateDirection();
-    double[] position = odometer.getXYT();
     switch (direction) {
       case NORTH:
-        odometer.setXYT(position[0], (currentLine * TILE_SIZE) + SENSOR_OFFSET, 0);
+        odometer.setXYT(odometer.getX(), (currentLine * TILE_SIZE) + SENSOR_OFFSET, 0);
         break;
       case EAST:
         odometer.setTheta(90);
-        odometer.setXYT((currentLine * TILE_SIZE) + SENSOR_OFFSET, position[1], 90);
+        odometer.setXYT((currentLine * TILE_SIZE) + SENSOR_OFFSET, odometer.getY(), 90);
         break;
       case SOUTH:
         odometer.setTheta(180);
-        odometer.setXYT(position[0], (currentLine * TILE_SIZE) - SENSOR_OFFSET, 180);
+        odometer.setXYT(odometer.getX(), (currentLine * TILE_SIZE) - SENSOR_OFFSET, 180);
         break;
       case WEST:
         odometer.setTheta(270);
-        odometer.setXYT((currentLine * TILE_SIZE) - SENSOR_OFFSET, position[1], 270);
+        odometer.setXYT((currentLine * TILE_SIZE) - SENSOR_OFFSET, odometer.getY(), 270);
         break;
       default:
     }
@@ -0,0 +1,27 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Model used by the {@code Odometer} to turn the rotation of the wheels into a displacement of the
+ * robot on the grid.
+ * <p>
+ * Implementations receive the change in tacho counts of each wheel since the previous update and
+ * the heading of the robot before the movement, and compute the resulting change in X, Y and
+ * Theta. Headings are expressed in degrees, measured clockwise from the +Y axis.
+ * 
+ * @see Odometer
+ * @author angelortiz
+ *
+ */
+public interface OdometryIntegrator {
+
+  /**
+   * Computes the displacement of the robot produced by the given wheel rotations.
+   * 
+   * @param deltaLeft Rotation of the left wheel since the last update in tacho counts.
+   * @param deltaRight Rotation of the right wheel since the last update in tacho counts.
+   * @param theta Heading of the robot before the movement in degrees.
+   * @param delta Array of at least three elements where the changes in X, Y and Theta are written.
+   */
+  void integrate(int deltaLeft, int deltaRight, double theta, double[] delta);
+
+}
@@ -0,0 +1,206 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Fixed size record of the most recent poses computed by the {@code Odometer}.
+ * <p>
+ * Every entry holds the time at which the tacho counts were read along with the resulting X, Y and
+ * Theta values and the raw tacho counts themselves. The entries are stored in preallocated
+ * primitive arrays used as a ring buffer, so recording a pose never allocates. The history allows
+ * other classes to query where the robot was at the moment a sensor reading was taken, instead of
+ * using the pose after the reading was processed.
+ * 
+ * @see Odometer
+ * @author angelortiz
+ * 
+ */
+public class PoseHistory {
+
+  // Ring buffer storage
+  private final long[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+  private final int[] leftTachos;
+  private final int[] rightTachos;
+
+  // Ring buffer state
+  private int next; // Index of the slot that will be written next
+  private int count; // Number of valid entries
+
+  /**
+   * Creates an empty history able to hold the given number of poses.
+   * 
+   * @param capacity Maximum number of poses kept, at least two. Older poses are overwritten.
+   * @throws IllegalArgumentException If the capacity is lower than two.
+   */
+  public PoseHistory(int capacity) {
+    if (capacity < 2)
+      throw new IllegalArgumentException("A pose history must hold at least two poses.");
+    timestamps = new long[capacity];
+    xs = new double[capacity];
+    ys = new double[capacity];
+    thetas = new double[capacity];
+    leftTachos = new int[capacity];
+    rightTachos = new int[capacity];
+    next = 0;
+    count = 0;
+  }
+
+  /**
+   * Appends a pose to the history, overwriting the oldest entry if the history is full.
+   * 
+   * @param timestampNanos Time at which the pose was measured, as given by
+   *        {@code System.nanoTime()}.
+   * @param x X value of the pose.
+   * @param y Y value of the pose.
+   * @param theta Theta value of the pose.
+   * @param leftTacho Tacho count of the left motor.
+   * @param rightTacho Tacho count of the right motor.
+   */
+  public synchronized void record(long timestampNanos, double x, double y, double theta,
+      int leftTacho, int rightTacho) {
+    timestamps[next] = timestampNanos;
+    xs[next] = x;
+    ys[next] = y;
+    thetas[next] = theta;
+    leftTachos[next] = leftTacho;
+    rightTachos[next] = rightTacho;
+
+    next = (next + 1) % timestamps.length;
+    if (count < timestamps.length)
+      count++;
+  }
+
+  /**
+   * Discards every recorded pose. This is required whenever the odometer values are overwritten,
+   * since the recorded poses no longer belong to the same coordinate frame.
+   */
+  public synchronized void clear() {
+    next = 0;
+    count = 0;
+  }
+
+  /**
+   * Computes the pose at the given time by interpolating between the two recorded poses around it.
+   * Times older than the oldest entry are clamped to the oldest entry.
+   * 
+   * @param timestampNanos Time of interest as given by {@code System.nanoTime()}.
+   * @param position Array of at least three elements where X, Y and Theta are written.
+   * @return False if the history is empty or the time is newer than the last recorded pose, in
+   *         which case {@code position} is left untouched. True otherwise.
+   */
+  public synchronized boolean poseAt(long timestampNanos, double[] position) {
+    int newer = findNewer(timestampNanos);
+    if (newer < 0)
+      return false;
+
+    int older = previous(newer);
+    if (newer == oldest() || timestamps[newer] == timestampNanos) {
+      position[0] = xs[newer];
+      position[1] = ys[newer];
+      position[2] = thetas[newer];
+      return true;
+    }
+
+    double fraction = fraction(older, newer, timestampNanos);
+
+    // Interpolate theta along the shortest rotation
+    double deltaTheta = thetas[newer] - thetas[older];
+    if (deltaTheta > 180)
+      deltaTheta -= 360;
+    else if (deltaTheta < -180)
+      deltaTheta += 360;
+
+    double theta = thetas[older] + fraction * deltaTheta;
+    if (theta < 0)
+      theta += 360;
+    else if (theta >= 360)
+      theta -= 360;
+
+    position[0] = xs[older] + fraction * (xs[newer] - xs[older]);
+    position[1] = ys[older] + fraction * (ys[newer] - ys[older]);
+    position[2] = theta;
+    return true;
+  }
+
+  /**
+   * Computes the tacho counts of both motors at the given time by interpolating between the two
+   * recorded entries around it. Times older than the oldest entry are clamped to the oldest entry.
+   * 
+   * @param timestampNanos Time of interest as given by {@code System.nanoTime()}.
+   * @param tachoCounts Array of at least two elements where the left and right counts are written.
+   * @return False if the history is empty or the time is newer than the last recorded pose, in
+   *         which case {@code tachoCounts} is left untouched. True otherwise.
+   */
+  public synchronized boolean tachoAt(long timestampNanos, int[] tachoCounts) {
+    int newer = findNewer(timestampNanos);
+    if (newer < 0)
+      return false;
+
+    int older = previous(newer);
+    if (newer == oldest() || timestamps[newer] == timestampNanos) {
+      tachoCounts[0] = leftTachos[newer];
+      tachoCounts[1] = rightTachos[newer];
+      return true;
+    }
+
+    double fraction = fraction(older, newer, timestampNanos);
+    tachoCounts[0] =
+        (int) Math.round(leftTachos[older] + fraction * (leftTachos[newer] - leftTachos[older]));
+    tachoCounts[1] =
+        (int) Math.round(rightTachos[older] + fraction * (rightTachos[newer] - rightTachos[older]));
+    return true;
+  }
+
+  /**
+   * Returns the number of poses currently held by the history.
+   * 
+   * @return Number of valid entries.
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Returns the index of the oldest entry whose timestamp is not older than the given time, the
+   * oldest entry if every entry is newer, or -1 if the time is past the newest entry.
+   */
+  private int findNewer(long timestampNanos) {
+    if (count == 0)
+      return -1;
+
+    int index = previous(next);
+    if (timestamps[index] - timestampNanos < 0) // Newer than the last recorded pose
+      return -1;
+
+    for (int i = 1; i < count; i++) {
+      int prev = previous(index);
+      if (timestamps[prev] - timestampNanos < 0)
+        break;
+      index = prev;
+    }
+
+    return index;
+  }
+
+  /*
+   * Position of the given time between two entries as a value in the range [0, 1].
+   */
+  private double fraction(int older, int newer, long timestampNanos) {
+    long span = timestamps[newer] - timestamps[older];
+    if (span <= 0)
+      return 1;
+    return (double) (timestampNanos - timestamps[older]) / span;
+  }
+
+  private int oldest() {
+    return (next - count + timestamps.length) % timestamps.length;
+  }
+
+  private int previous(int index) {
+    return (index - 1 + timestamps.length) % timestamps.length;
+  }
+
+}
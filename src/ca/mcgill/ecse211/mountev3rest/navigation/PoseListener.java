@@ -0,0 +1,28 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+/**
+ * Receives the pose updates published by the {@code Odometer}.
+ * <p>
+ * Listeners are registered through {@code Odometer.addPoseListener()} along with the minimum
+ * movement that must occur between two notifications. The callback runs on the odometer thread, so
+ * implementations must return quickly and must not block. Consumers that need to do more work
+ * should use a {@code PoseMailbox}, which stores the latest pose for another thread to pick up.
+ * 
+ * @see Odometer
+ * @see PoseMailbox
+ * @author angelortiz
+ *
+ */
+public interface PoseListener {
+
+  /**
+   * Called by the odometer when the robot moved more than the thresholds of the listener since the
+   * previous notification, or when the odometer values were overwritten.
+   * 
+   * @param x New X value of the odometer.
+   * @param y New Y value of the odometer.
+   * @param theta New Theta value of the odometer.
+   */
+  void poseChanged(double x, double y, double theta);
+
+}
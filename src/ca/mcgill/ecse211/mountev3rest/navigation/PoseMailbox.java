@@ -0,0 +1,106 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single slot mailbox holding the latest pose published by the {@code Odometer}.
+ * <p>
+ * Every notification overwrites the slot, so a slow consumer only ever sees the most recent pose
+ * and the odometer never waits for it. The slot is protected by a sequence counter in the same way
+ * as the {@code OdometerData}: the odometer thread is the only writer and never takes a lock, and
+ * readers retry if the pose changed while they were copying it. A consumer can either check the
+ * mailbox periodically with {@code poll()} or sleep until a new pose arrives with {@code take()}.
+ * 
+ * @see PoseListener
+ * @author angelortiz
+ *
+ */
+public class PoseMailbox implements PoseListener {
+
+  // Attributes
+  private volatile int sequence; // Odd while the slot is being written
+  private volatile double x;
+  private volatile double y;
+  private volatile double theta;
+  private int lastRead; // Sequence of the last pose returned to the consumer
+  private volatile Thread waiter;
+
+  /**
+   * Creates an empty mailbox.
+   */
+  public PoseMailbox() {
+    sequence = 0;
+    lastRead = 0;
+  }
+
+  /**
+   * Stores the given pose, replacing any pose that was not read yet, and wakes up the consumer if
+   * it is waiting in {@code take()}.
+   */
+  @Override
+  public void poseChanged(double x, double y, double theta) {
+    sequence++;
+    this.x = x;
+    this.y = y;
+    this.theta = theta;
+    sequence++;
+
+    Thread consumer = waiter;
+    if (consumer != null)
+      LockSupport.unpark(consumer);
+  }
+
+  /**
+   * Copies the latest pose if it was not read before. Only one thread should consume from a given
+   * mailbox.
+   * 
+   * @param position Array of at least three elements where X, Y and Theta are written.
+   * @return True if a new pose was copied, false if the mailbox has not changed since the last
+   *         read.
+   */
+  public boolean poll(double[] position) {
+    int seq;
+    do {
+      seq = sequence;
+      if (seq == lastRead)
+        return false;
+      if ((seq & 1) != 0) { // Writer in progress
+        Thread.yield();
+        continue;
+      }
+      position[0] = x;
+      position[1] = y;
+      position[2] = theta;
+    } while (seq != sequence || (seq & 1) != 0);
+
+    lastRead = seq;
+    return true;
+  }
+
+  /**
+   * Waits until a new pose is available and copies it. Only one thread should consume from a given
+   * mailbox.
+   * 
+   * @param position Array of at least three elements where X, Y and Theta are written.
+   * @param timeoutMillis Maximum time to wait in milliseconds.
+   * @return True if a new pose was copied, false if the timeout expired or the thread was
+   *         interrupted.
+   */
+  public boolean take(double[] position, long timeoutMillis) {
+    long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+
+    waiter = Thread.currentThread();
+    try {
+      while (!poll(position)) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || Thread.interrupted())
+          return false;
+        LockSupport.parkNanos(this, remaining);
+      }
+      return true;
+    } finally {
+      waiter = null;
+    }
+  }
+
+}
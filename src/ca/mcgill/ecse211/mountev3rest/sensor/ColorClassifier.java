@@ -0,0 +1,231 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Classifies the {@code RGB} readings of a light sensor by comparing them against a set of
+ * reference colors.
+ * <p>
+ * Readings are normalized so that only their hue and saturation matter, and a reading matches a
+ * reference if the Euclidean distance between the normalized reading and the reference mean is
+ * below the threshold of the reference. References are checked in the order in which they were
+ * added and the first match wins, so references that are easy to confuse should be added from the
+ * most to the least reliable.
+ * <p>
+ * The test is computed without normalizing the reading or taking square roots. Since a normalized
+ * reading {@code n = v / |v|} has unit length, the squared distance to a reference {@code m} is
+ * {@code |m|^2 - 2 m.n + 1}, and the condition {@code |m - n| < t} is equivalent to
+ * {@code m.v > k |v|} with {@code k = (|m|^2 + 1 - t^2) / 2}. Squaring both sides removes the
+ * remaining root, and {@code k} is precomputed when the reference is added, so classifying a
+ * reading takes a handful of multiplications per reference and never allocates.
+ * <p>
+ * The references can be stored in a {@code Properties} object, which allows them to be recalibrated
+ * without modifying the code.
+ * 
+ * @see ColorDetector
+ * @author angelortiz
+ *
+ */
+public class ColorClassifier {
+
+  // Constants
+  private static final int COMPONENTS = 3; // Number of values in an RGB reading
+  private static final int INITIAL_CAPACITY = 4;
+
+  // Attributes
+  private final int noMatch;
+  private int count; // Number of references
+  private int[] codes;
+  private double[] means; // Reference means, COMPONENTS values per reference
+  private double[] thresholds;
+  private double[] bounds; // Precomputed k of every reference
+  private double[] squaredBounds;
+
+  /**
+   * Creates a classifier with no references.
+   * 
+   * @param noMatch Code returned for readings that do not match any reference.
+   */
+  public ColorClassifier(int noMatch) {
+    this.noMatch = noMatch;
+    codes = new int[INITIAL_CAPACITY];
+    means = new double[INITIAL_CAPACITY * COMPONENTS];
+    thresholds = new double[INITIAL_CAPACITY];
+    bounds = new double[INITIAL_CAPACITY];
+    squaredBounds = new double[INITIAL_CAPACITY];
+    count = 0;
+  }
+
+  /**
+   * Adds a reference color with a lower priority than the references already added.
+   * 
+   * @param code Code returned when a reading matches the reference.
+   * @param mean Normalized {@code RGB} mean of the reference.
+   * @param threshold Maximum distance between a normalized reading and the mean.
+   */
+  public void addReference(int code, double[] mean, double threshold) {
+    if (mean.length != COMPONENTS)
+      throw new IllegalArgumentException("A reference must have one value per RGB component.");
+    if (!(threshold > 0))
+      throw new IllegalArgumentException("The threshold of a reference must be positive.");
+
+    if (count == codes.length) {
+      int capacity = 2 * codes.length;
+      codes = Arrays.copyOf(codes, capacity);
+      means = Arrays.copyOf(means, capacity * COMPONENTS);
+      thresholds = Arrays.copyOf(thresholds, capacity);
+      bounds = Arrays.copyOf(bounds, capacity);
+      squaredBounds = Arrays.copyOf(squaredBounds, capacity);
+    }
+
+    double squaredNorm = 0;
+    for (int i = 0; i < COMPONENTS; i++) {
+      means[count * COMPONENTS + i] = mean[i];
+      squaredNorm += mean[i] * mean[i];
+    }
+
+    codes[count] = code;
+    thresholds[count] = threshold;
+    bounds[count] = (squaredNorm + 1 - threshold * threshold) / 2;
+    squaredBounds[count] = bounds[count] * bounds[count];
+    count++;
+  }
+
+  /**
+   * Removes every reference.
+   */
+  public void clear() {
+    count = 0;
+  }
+
+  /**
+   * Returns the number of references of the classifier.
+   * 
+   * @return Number of references.
+   */
+  public int getReferenceCount() {
+    return count;
+  }
+
+  /**
+   * Returns the code returned for readings that do not match any reference.
+   * 
+   * @return Code of the readings with no match.
+   */
+  public int getNoMatch() {
+    return noMatch;
+  }
+
+  /*
+   * Accessors of the references used to build a ColorLookupTable.
+   */
+  int getCode(int reference) {
+    return codes[reference];
+  }
+
+  double getMean(int reference, int component) {
+    return means[reference * COMPONENTS + component];
+  }
+
+  double getThreshold(int reference) {
+    return thresholds[reference];
+  }
+
+  /**
+   * Finds the first reference matched by a reading.
+   * 
+   * @param reading Raw {@code RGB} reading of the sensor.
+   * @return Code of the first reference matched, or the no match code if there is none or the
+   *         reading is zero.
+   */
+  public int classify(float[] reading) {
+    double r = reading[0];
+    double g = reading[1];
+    double b = reading[2];
+    double squaredNorm = r * r + g * g + b * b;
+    if (!(squaredNorm > 0)) // The reading cannot be normalized
+      return noMatch;
+
+    for (int i = 0, j = 0; i < count; i++, j += COMPONENTS) {
+      double dot = means[j] * r + means[j + 1] * g + means[j + 2] * b;
+      double bound = bounds[i];
+      double squaredDot = dot * dot;
+      double squaredLimit = squaredBounds[i] * squaredNorm;
+
+      // Test dot > bound * |reading| taking the signs into account
+      boolean match = bound < 0 ? dot >= 0 || squaredDot < squaredLimit
+          : dot > 0 && squaredDot > squaredLimit;
+      if (match)
+        return codes[i];
+    }
+
+    return noMatch;
+  }
+
+  /**
+   * Stores the references in the given properties.
+   * 
+   * @param properties Properties where the references are stored.
+   * @param prefix Prefix of the keys, which allows several classifiers to share a file.
+   */
+  public void save(Properties properties, String prefix) {
+    properties.setProperty(prefix + ".count", Integer.toString(count));
+    for (int i = 0; i < count; i++) {
+      String key = prefix + "." + i;
+      StringBuilder mean = new StringBuilder();
+      for (int j = 0; j < COMPONENTS; j++) {
+        if (j > 0)
+          mean.append(',');
+        mean.append(means[i * COMPONENTS + j]);
+      }
+      properties.setProperty(key + ".code", Integer.toString(codes[i]));
+      properties.setProperty(key + ".mean", mean.toString());
+      properties.setProperty(key + ".threshold", Double.toString(thresholds[i]));
+    }
+  }
+
+  /**
+   * Replaces the references with the ones stored in the given properties. Each reference is stored
+   * under the keys {@code <prefix>.<index>.code}, {@code <prefix>.<index>.mean}, holding the three
+   * components separated by commas, and {@code <prefix>.<index>.threshold}, where the index gives
+   * the priority of the reference. The number of references is stored in {@code <prefix>.count}.
+   * 
+   * @param properties Properties previously written by {@code save()} or by hand.
+   * @param prefix Prefix of the keys.
+   * @return True if the references were loaded, false if they are missing or invalid, in which case
+   *         the classifier is left unchanged.
+   */
+  public boolean load(Properties properties, String prefix) {
+    try {
+      int size = Integer.parseInt(properties.getProperty(prefix + ".count"));
+      if (size < 0)
+        return false;
+
+      // Parse every reference before modifying the classifier
+      int[] codes = new int[size];
+      double[][] means = new double[size][COMPONENTS];
+      double[] thresholds = new double[size];
+      for (int i = 0; i < size; i++) {
+        String key = prefix + "." + i;
+        codes[i] = Integer.parseInt(properties.getProperty(key + ".code").trim());
+        thresholds[i] = Double.parseDouble(properties.getProperty(key + ".threshold"));
+        String[] values = properties.getProperty(key + ".mean").split(",");
+        if (values.length != COMPONENTS || !(thresholds[i] > 0))
+          return false;
+        for (int j = 0; j < COMPONENTS; j++)
+          means[i][j] = Double.parseDouble(values[j]);
+      }
+
+      clear();
+      for (int i = 0; i < size; i++)
+        addReference(codes[i], means[i], thresholds[i]);
+      return true;
+    } catch (NullPointerException e) {
+      return false;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+}
@@ -1,6 +1,10 @@
 package ca.mcgill.ecse211.mountev3rest.sensor;
 
-import lejos.hardware.Sound;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
 import lejos.hardware.lcd.TextLCD;
 
 /**
@@ -21,6 +25,20 @@ import lejos.hardware.lcd.TextLCD;
  * In addition to simple color classification, the {@code ColorDetection} class provides a set of
  * methods for particular modes of operation. Some of these methods are color detection demo mode
  * and raw red value printing.
+ * <p>
+ * The readings are classified by a {@code ColorClassifier}. By default it holds the references
+ * measured for the rings, which can be replaced by the ones of a file through
+ * {@code loadReferences()}. Optionally, a {@code ColorLookupTable} built from the same references
+ * can be set to replace the classification by a table lookup.
+ * <p>
+ * Single classifications are noisy, so {@code getColor()} takes a sequential decision over several
+ * readings. Every reading is assumed to be classified correctly with probability
+ * {@code SAMPLE_ACCURACY} and as any other color with equal probability otherwise. Under this model
+ * the likelihood ratio between two colors only depends on the difference of their counts, each
+ * reading adding {@code log(SAMPLE_ACCURACY (N - 1) / (1 - SAMPLE_ACCURACY))} of evidence for the
+ * color it was classified as. Readings are taken until the posterior probability of the leading
+ * color reaches the configured confidence, so clear readings are decided after a few samples while
+ * a noisy reading only delays the decision instead of restarting it.
  * 
  * @author angelortiz
  *
@@ -29,7 +47,8 @@ public class ColorDetector {
 
   // Constants
   private static final int COLOR_DETECTION_PERIOD = 50;
-  private static final int MINIMUM_DETECTIONS = 5;
+  private static final double SAMPLE_ACCURACY = 0.85; // Probability of classifying a reading right
+  private static final double DEFAULT_CONFIDENCE = 0.99999; // Posterior required to decide
 
   // Color mean RGB references
   private static final double[] ORANGE_MEANS = {0.9578, 0.2786, 0.0696};
@@ -37,15 +56,32 @@ public class ColorDetector {
   private static final double[] YELLOW_MEANS = {0.8221, 0.5516, 0.1406};
   private static final double[] GREEN_MEANS = {0.4180, 0.8995, 0.1266};
 
+  /** Code of the blue rings. */
+  public static final int BLUE = 1;
+  /** Code of the green rings. */
+  public static final int GREEN = 2;
+  /** Code of the yellow rings. */
+  public static final int YELLOW = 3;
+  /** Code of the orange rings. */
+  public static final int ORANGE = 4;
+  /** Code returned when no ring is detected. */
+  public static final int NONE = 5;
+
   // Attributes
   private TextLCD lcd;
   private LightPoller lightPoller;
+  private ColorClassifier classifier;
+  private volatile ColorLookupTable lookupTable; // Null unless the lookup table mode is enabled
+  private float[] reading = new float[3]; // Latest RGB reading of the front sensor
+  private int[] counts = new int[NONE]; // Readings classified as every color in this decision
+  private final double evidence; // Log likelihood ratio added by each reading
+  private volatile double maxOdds; // Largest odds of the other colors accepted for a decision
+  private volatile double lastConfidence;
 
   /**
    * Creates a color detector that can display its results into the LCD display of the robot.
    * 
    * @param lcd         {@code TextLCD} representing the display of the robot.
-   * @param lightPoller {@code LightPoller} object containing the light sensors of the robot.
    * 
    * @throws PollerException If the light poller has not been instantiated.
    * 
@@ -53,59 +89,150 @@ public class ColorDetector {
    * @see   TextLCD
    */
   public ColorDetector(TextLCD lcd) throws PollerException {
+    this(lcd, LightPoller.getLightPoller());
+  }
+
+  /**
+   * Creates a color detector that reads the front sensor of the given light poller.
+   * 
+   * @param lcd         {@code TextLCD} representing the display of the robot.
+   * @param lightPoller {@code LightPoller} object containing the light sensors of the robot.
+   * 
+   * @see   LightPoller 
+   * @see   TextLCD
+   */
+  public ColorDetector(TextLCD lcd, LightPoller lightPoller) {
+    this(lcd, lightPoller, createDefaultClassifier());
+  }
+
+  /**
+   * Creates a color detector that classifies the readings of the front sensor with the given
+   * classifier.
+   * 
+   * @param lcd         {@code TextLCD} representing the display of the robot.
+   * @param lightPoller {@code LightPoller} object containing the light sensors of the robot.
+   * @param classifier  {@code ColorClassifier} returning codes in the range [1, 5].
+   * 
+   * @see   ColorClassifier
+   */
+  public ColorDetector(TextLCD lcd, LightPoller lightPoller, ColorClassifier classifier) {
     this.lcd = lcd;
-    this.lightPoller = LightPoller.getLightPoller();
+    this.lightPoller = lightPoller;
+    this.classifier = classifier;
+    this.evidence = Math.log(SAMPLE_ACCURACY * (NONE - 1) / (1 - SAMPLE_ACCURACY));
+    this.lastConfidence = 0;
+    setConfidence(DEFAULT_CONFIDENCE);
+  }
+
+  /**
+   * Creates a classifier holding the references measured for the rings, in the order in which they
+   * are checked.
+   * 
+   * @return A new {@code ColorClassifier}.
+   */
+  public static ColorClassifier createDefaultClassifier() {
+    ColorClassifier classifier = new ColorClassifier(NONE);
+    classifier.addReference(BLUE, BLUE_MEANS, 0.17);
+    classifier.addReference(GREEN, GREEN_MEANS, 0.15);
+    classifier.addReference(YELLOW, YELLOW_MEANS, 0.15);
+    classifier.addReference(ORANGE, ORANGE_MEANS, 0.2);
+    return classifier;
+  }
+
+  /**
+   * Replaces the color references with the ones stored in a file, written in the format described
+   * by {@code ColorClassifier.load()} with the {@code color} prefix.
+   * 
+   * @param path Path of the references file.
+   * @return True if the references were loaded. If the file does not exist or is invalid, the
+   *         current references are kept.
+   */
+  public boolean loadReferences(String path) {
+    Properties properties = new Properties();
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(path);
+      properties.load(in);
+    } catch (FileNotFoundException e) {
+      return false;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      close(in);
+    }
+
+    return classifier.load(properties, "color");
+  }
+
+  /**
+   * Returns the classifier used by the detector.
+   * 
+   * @return The {@code ColorClassifier} of the detector.
+   */
+  public ColorClassifier getClassifier() {
+    return classifier;
+  }
+
+  /**
+   * Sets the lookup table used to classify the readings. The table should be built from the
+   * classifier of the detector, or loaded from a file that was.
+   * 
+   * @param lookupTable Table used to classify the readings, or null to go back to the classifier.
+   * 
+   * @see   ColorLookupTable
+   */
+  public void setLookupTable(ColorLookupTable lookupTable) {
+    this.lookupTable = lookupTable;
+  }
+
+  /**
+   * Sets the confidence required by {@code getColor()} to return a color. Higher values reduce the
+   * misclassifications at the cost of more readings per decision.
+   * 
+   * @param confidence Posterior probability of the color returned, in the range (0, 1).
+   */
+  public void setConfidence(double confidence) {
+    if (!(confidence > 0 && confidence < 1))
+      throw new IllegalArgumentException("The confidence must be in the range (0, 1).");
+    maxOdds = (1 - confidence) / confidence;
+  }
+
+  /**
+   * Returns the posterior probability of the color returned by the last call to
+   * {@code getColor()}.
+   * 
+   * @return Confidence of the last decision, or 0 if no decision was taken yet.
+   */
+  public double getLastConfidence() {
+    return lastConfidence;
   }
 
   /**
    * Uses the light sensor to detect the color of an object placed in front of the central light
-   * sensor.
+   * sensor. Readings are taken until one color reaches the configured confidence, whose value can
+   * then be obtained through {@code getLastConfidence()}.
    * 
    * @return A number in the range [1, 5] representing the color detected.
    */
   public int getColor() {
     long correctionStart, correctionEnd;
 
-    int[] counters = new int[5];
-    int colorDetected = -1;
+    startDecision();
 
     while (true) {
       correctionStart = System.currentTimeMillis();
       
-      lightPoller.poll();
-
-      // Compute the distances of the readings with respect to the reference means
-      boolean blue = computeDistance(BLUE_MEANS, lightPoller.front) < 0.17;
-      boolean green = computeDistance(GREEN_MEANS, lightPoller.front) < 0.15;
-      boolean yellow = computeDistance(YELLOW_MEANS, lightPoller.front) < 0.15;
-      boolean orange = computeDistance(ORANGE_MEANS, lightPoller.front) < 0.2;
+      lightPoller.pollFront();
+      lightPoller.getFront(reading);
 
       // Determine which color is detected if any
-      if (blue) {
-        colorDetected = 0;
-      } else if (green) {
-        colorDetected = 1;
-      } else if (yellow) {
-        colorDetected = 2;
-      } else if (orange) {
-        colorDetected = 3;
-      } else {
-        colorDetected = 4;
-      }
-
-      // Adjust the color counts
-      for (int i = 0; i < counters.length; i++) {
-        if (i == colorDetected) {
-          counters[i] = counters[i] > 0 ? counters[i] + 1 : 1;
+      ColorLookupTable table = lookupTable;
+      int colorDetected = table == null ? classifier.classify(reading) : table.classify(reading);
 
-          // If a color count reaches the MINIMUM_DETECTION constant, that color is returned
-          if (counters[i] == MINIMUM_DETECTIONS)
-            return i + 1;
-
-        } else {
-          counters[i] = 0;
-        }
-      }
+      // Accumulate the evidence and return the leading color once it is confident enough
+      if (addEvidence(colorDetected))
+        return colorDetected;
 
       // this ensure the odometry correction occurs only once every period
       correctionEnd = System.currentTimeMillis();
@@ -173,13 +300,13 @@ public class ColorDetector {
   public void printRed() {
     long correctionStart, correctionEnd;
     
-    lightPoller.poll();
+    lightPoller.pollLines();
 
     while (true) {
       correctionStart = System.currentTimeMillis();
 
-      double L = lightPoller.leftMean[0];
-      double R = lightPoller.rightMean[0];
+      double L = lightPoller.getLeftMean();
+      double R = lightPoller.getRightMean();
 
       System.out.println(String.format("L: %f | R: %f", L, R));
 
@@ -190,42 +317,55 @@ public class ColorDetector {
         } catch (InterruptedException e) {
         }
       }
-      lightPoller.poll();
+      lightPoller.pollLines();
     }
   }
 
   /*
-   * Computes the Euclidean distance of the normalized color reading with respect to the stored mean
-   * references.
+   * Steps of the decision taken by getColor(), also driven by the tests on recorded readings.
+   * startDecision() discards the evidence of the previous decision, and addEvidence() adds the one
+   * of a reading classified as the given color, returning true once that color is confident enough.
    */
-  private double computeDistance(double[] reference, float[] reading) {
-    double[] normReading = normalize(reading);
-    double ret = 0;
-
-    for (int i = 0; i < reference.length; i++)
-      ret += Math.pow((reference[i] - normReading[i]), 2);
-
-    return Math.sqrt(ret);
+  void startDecision() {
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = 0;
   }
 
-  /**
-   * Normalizes a set of RGB values with respect to each other.
-   * 
-   * @param  values List containing RGB values.
-   * @return        List of normalized RGB values.
-   */
-  private double[] normalize(float[] values) {
-    double[] ret = new double[values.length];
-    double geometricMean = 0;
+  boolean addEvidence(int color) {
+    counts[color - 1]++;
+    double odds = computeOdds(color - 1);
+    if (odds > maxOdds)
+      return false;
+    lastConfidence = 1 / (1 + odds);
+    return true;
+  }
 
-    for (double v : values)
-      geometricMean += Math.pow(v, 2);
-    geometricMean = Math.sqrt(geometricMean);
+  // ---PRIVATE METHODS---
 
-    for (int i = 0; i < ret.length; i++)
-      ret[i] = values[i] / geometricMean;
+  /*
+   * Computes the ratio between the posterior probability of the other colors and the one of the
+   * given color. Only the color of the latest reading can have become confident, since the evidence
+   * of the others did not increase.
+   */
+  private double computeOdds(int color) {
+    double odds = 0;
+    for (int i = 0; i < counts.length; i++)
+      if (i != color)
+        odds += Math.exp((counts[i] - counts[color]) * evidence);
+    return odds;
+  }
 
-    return ret;
+  /*
+   * Closes a references file, ignoring errors.
+   */
+  private static void close(Closeable stream) {
+    if (stream == null)
+      return;
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // there is nothing to be done
+    }
   }
 
 }
@@ -0,0 +1,260 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Precomputed color classification over a quantized {@code RGB} space.
+ * <p>
+ * Normalized readings have components in the range [0, 1], which the table divides into
+ * {@code RESOLUTION} intervals per component. Every cell of the resulting grid stores the code of
+ * the color of the readings that fall in it, so classifying a reading takes one normalization and
+ * one array access.
+ * <p>
+ * A cell crossed by the boundary of a reference holds readings of different colors. Such cells are
+ * marked as ambiguous and readings falling in them are classified by the {@code ColorClassifier}
+ * the table was created with. When the table is built from the references of the classifier, a
+ * cell is only assigned a code if the whole cell lies inside or outside the threshold of every
+ * reference checked before the match, which makes the table reproduce the decisions of the
+ * classifier exactly.
+ * <p>
+ * The table can also be trained from recorded calibration readings, and stored in a binary file of
+ * {@code RESOLUTION^3} bytes so that it does not need to be rebuilt on the robot.
+ * 
+ * @see ColorClassifier
+ * @see ColorDetector
+ * @author angelortiz
+ *
+ */
+public class ColorLookupTable {
+
+  // Constants
+  private static final int RESOLUTION = 32; // Intervals per component
+  private static final int CELLS = RESOLUTION * RESOLUTION * RESOLUTION;
+  private static final byte AMBIGUOUS = -1; // Cell classified by the fallback classifier
+  private static final byte UNSET = -2; // Cell with no readings while training
+  private static final int FILE_MAGIC = 0x434c5554; // "CLUT"
+  private static final double MARGIN = 1e-9; // Absorbs rounding errors at the cell boundaries
+
+  // Attributes
+  private final ColorClassifier fallback;
+  private final byte[] cells;
+
+  /**
+   * Creates a table where every cell is ambiguous, so every reading is classified by the given
+   * classifier until the table is built, trained or loaded.
+   * 
+   * @param fallback Classifier used for the ambiguous cells. Its codes must be in the range
+   *        [0, 127].
+   */
+  public ColorLookupTable(ColorClassifier fallback) {
+    this.fallback = fallback;
+    this.cells = new byte[CELLS];
+    Arrays.fill(cells, AMBIGUOUS);
+  }
+
+  /**
+   * Fills the table from the references of the fallback classifier.
+   */
+  public void build() {
+    int references = fallback.getReferenceCount();
+    double[] lower = new double[3];
+    double[] upper = new double[3];
+
+    for (int cell = 0; cell < CELLS; cell++) {
+      bounds(cell, lower, upper);
+
+      byte code = (byte) fallback.getNoMatch();
+      for (int i = 0; i < references; i++) {
+        double squaredThreshold = fallback.getThreshold(i) * fallback.getThreshold(i);
+        double nearest = 0; // Squared distances from the reference to the cell
+        double farthest = 0;
+        for (int j = 0; j < 3; j++) {
+          double mean = fallback.getMean(i, j);
+          double toLower = mean - lower[j];
+          double toUpper = upper[j] - mean;
+          double inside = Math.max(0, Math.max(-toLower, -toUpper)); // Zero if within the interval
+          double outside = Math.max(Math.abs(toLower), Math.abs(toUpper));
+          nearest += inside * inside;
+          farthest += outside * outside;
+        }
+
+        if (farthest < squaredThreshold - MARGIN) { // Whole cell matches the reference
+          code = (byte) fallback.getCode(i);
+          break;
+        } else if (nearest <= squaredThreshold + MARGIN) { // The boundary crosses the cell
+          code = AMBIGUOUS;
+          break;
+        }
+      }
+      cells[cell] = code;
+    }
+  }
+
+  /**
+   * Fills the table from labelled calibration readings. Each cell takes the code of the readings
+   * that fall in it. Cells with no readings, or with readings of different colors, are left to the
+   * fallback classifier.
+   * 
+   * @param readings Raw {@code RGB} readings of the sensor.
+   * @param codes Code of the color of every reading.
+   */
+  public void train(float[][] readings, int[] codes) {
+    if (readings.length != codes.length)
+      throw new IllegalArgumentException("Every reading must have a code.");
+
+    Arrays.fill(cells, UNSET);
+    for (int i = 0; i < readings.length; i++) {
+      int cell = cellOf(readings[i]);
+      if (cell < 0)
+        continue;
+
+      byte code = (byte) codes[i];
+      if (cells[cell] == UNSET)
+        cells[cell] = code;
+      else if (cells[cell] != code)
+        cells[cell] = AMBIGUOUS;
+    }
+
+    for (int cell = 0; cell < CELLS; cell++)
+      if (cells[cell] == UNSET)
+        cells[cell] = AMBIGUOUS;
+  }
+
+  /**
+   * Classifies a reading.
+   * 
+   * @param reading Raw {@code RGB} reading of the sensor.
+   * @return Code of the color of the reading.
+   */
+  public int classify(float[] reading) {
+    int cell = cellOf(reading);
+    if (cell < 0 || cells[cell] == AMBIGUOUS)
+      return fallback.classify(reading);
+    return cells[cell];
+  }
+
+  /**
+   * Returns the number of cells classified by the fallback classifier.
+   * 
+   * @return Number of ambiguous cells.
+   */
+  public int getAmbiguousCount() {
+    int count = 0;
+    for (int cell = 0; cell < CELLS; cell++)
+      if (cells[cell] == AMBIGUOUS)
+        count++;
+    return count;
+  }
+
+  /**
+   * Replaces the table with the one stored in a binary file written by {@code save()}.
+   * 
+   * @param path Path of the table file.
+   * @return True if the table was loaded. If the file does not exist or is invalid the table is
+   *         left unchanged.
+   */
+  public boolean load(String path) {
+    byte[] loaded = new byte[CELLS];
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+      if (in.readInt() != FILE_MAGIC || in.readInt() != RESOLUTION)
+        return false;
+      in.readFully(loaded);
+    } catch (FileNotFoundException e) {
+      return false;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      close(in);
+    }
+
+    System.arraycopy(loaded, 0, cells, 0, CELLS);
+    return true;
+  }
+
+  /**
+   * Stores the table in a binary file made of a small header followed by one byte per cell.
+   * 
+   * @param path Path of the table file.
+   * @return True if the file was written.
+   */
+  public boolean save(String path) {
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(RESOLUTION);
+      out.write(cells);
+      out.flush();
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      close(out);
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Computes the cell of a reading, or -1 if the reading cannot be normalized.
+   */
+  private static int cellOf(float[] reading) {
+    double r = reading[0];
+    double g = reading[1];
+    double b = reading[2];
+    if (!(r >= 0 && g >= 0 && b >= 0))
+      return -1;
+    double norm = Math.sqrt(r * r + g * g + b * b);
+    if (!(norm > 0) || Double.isInfinite(norm))
+      return -1;
+
+    double scale = RESOLUTION / norm;
+    return (index(r * scale) * RESOLUTION + index(g * scale)) * RESOLUTION + index(b * scale);
+  }
+
+  private static int index(double scaled) {
+    return Math.min((int) scaled, RESOLUTION - 1);
+  }
+
+  /*
+   * Computes the bounds of a cell in the normalized space.
+   */
+  private static void bounds(int cell, double[] lower, double[] upper) {
+    int b = cell % RESOLUTION;
+    int g = (cell / RESOLUTION) % RESOLUTION;
+    int r = cell / (RESOLUTION * RESOLUTION);
+    lower[0] = (double) r / RESOLUTION;
+    lower[1] = (double) g / RESOLUTION;
+    lower[2] = (double) b / RESOLUTION;
+    upper[0] = (double) (r + 1) / RESOLUTION;
+    upper[1] = (double) (g + 1) / RESOLUTION;
+    upper[2] = (double) (b + 1) / RESOLUTION;
+  }
+
+  /*
+   * Closes a table file, ignoring errors.
+   */
+  private static void close(Closeable stream) {
+    if (stream == null)
+      return;
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // there is nothing to be done
+    }
+  }
+
+}
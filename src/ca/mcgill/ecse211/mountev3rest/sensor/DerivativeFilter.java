@@ -0,0 +1,61 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Computes the change of the readings of a sensor over a fixed number of samples.
+ * <p>
+ * The output is the difference between the newest reading and the one received {@code lag}
+ * samples before it, so it is close to zero while the sensor sees a uniform surface and shows a
+ * pronounced negative or positive peak when it crosses the border of a darker or lighter area.
+ * Comparing readings a few samples apart rather than consecutive ones makes the peak stand out
+ * from the sample to sample noise. Until {@code lag} readings were received, the difference is
+ * taken against the oldest reading available.
+ * 
+ * @see SampleFilter
+ * @author angelortiz
+ *
+ */
+public class DerivativeFilter implements SampleFilter {
+
+  // Attributes
+  private final float[] window; // The last lag + 1 readings
+  private int next; // Index of the slot that will be written next
+  private int count; // Number of valid readings
+  private float value;
+
+  /**
+   * Creates a filter comparing readings the given number of samples apart.
+   * 
+   * @param lag Number of samples between the compared readings.
+   */
+  public DerivativeFilter(int lag) {
+    if (lag < 1)
+      throw new IllegalArgumentException("The lag must be of at least one sample.");
+    window = new float[lag + 1];
+    reset();
+  }
+
+  @Override
+  public float update(float value) {
+    window[next] = value;
+    next = (next + 1) % window.length;
+    if (count < window.length)
+      count++;
+
+    int oldest = (next - count + window.length) % window.length;
+    this.value = value - window[oldest];
+    return this.value;
+  }
+
+  @Override
+  public float getValue() {
+    return count == 0 ? Float.NaN : value;
+  }
+
+  @Override
+  public void reset() {
+    next = 0;
+    count = 0;
+    value = 0;
+  }
+
+}
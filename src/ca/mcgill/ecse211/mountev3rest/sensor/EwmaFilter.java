@@ -0,0 +1,56 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Computes an exponentially weighted moving average of the readings of a sensor.
+ * <p>
+ * Every new reading moves the output by a fraction {@code alpha} of its distance to the current
+ * output. The filter smooths the readings like a moving mean but only stores a single value, and
+ * its response can be tuned continuously through {@code alpha}. The first reading after a reset is
+ * taken as is.
+ * 
+ * @see SampleFilter
+ * @author angelortiz
+ *
+ */
+public class EwmaFilter implements SampleFilter {
+
+  // Attributes
+  private final float alpha;
+  private float value;
+  private boolean empty;
+
+  /**
+   * Creates a filter with the given weight for new readings.
+   * 
+   * @param alpha Weight of a new reading, in the range (0, 1]. A weight of 1 disables the filter.
+   */
+  public EwmaFilter(float alpha) {
+    if (!(alpha > 0 && alpha <= 1))
+      throw new IllegalArgumentException("The weight must be in the range (0, 1].");
+    this.alpha = alpha;
+    reset();
+  }
+
+  @Override
+  public float update(float value) {
+    if (empty) {
+      this.value = value;
+      empty = false;
+    } else {
+      this.value += alpha * (value - this.value);
+    }
+    return this.value;
+  }
+
+  @Override
+  public float getValue() {
+    return empty ? Float.NaN : value;
+  }
+
+  @Override
+  public void reset() {
+    value = 0;
+    empty = true;
+  }
+
+}
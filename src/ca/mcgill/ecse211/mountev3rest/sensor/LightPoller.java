@@ -1,9 +1,17 @@
 package ca.mcgill.ecse211.mountev3rest.sensor;
 
-import lejos.hardware.Sound;
-import lejos.hardware.sensor.EV3ColorSensor;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
 import lejos.robotics.SampleProvider;
-import lejos.robotics.filter.MeanFilter;
 
 
 /**
@@ -12,6 +20,27 @@ import lejos.robotics.filter.MeanFilter;
  * The class is implemented as a singleton to facilitate access to the sensors to different parts of
  * the code. Additionally, the {@code LightPoller} class also provides line detection for the left
  * and right sensors.
+ * <p>
+ * The readings are stored in a {@code SampleSlot} per sensor, so they can be read from any thread
+ * without blocking. By default the sensors are only read when {@code poll()} is called, on the
+ * thread of the caller. Once {@code startSampling()} is called, a task of the scheduler of the
+ * robot, usually the one of its {@code RobotContext}, reads the sensors periodically and the
+ * accessors always return the latest readings, which removes the latency of the sensor I/O from
+ * the control loops.
+ * <p>
+ * Each sensor is a separate channel. Both polling and background sampling can be restricted to a
+ * subset of the channels, for instance {@code LINES} while following lines or {@code FRONT} while
+ * detecting colors, so that sensors whose readings are not needed are not read.
+ * <p>
+ * Line detection uses a {@code LineEdgeDetector} per side. Every time a sensor enters or leaves a
+ * line an event is published, with the time of the reading and the tacho counts of the motors, on
+ * each {@code LineEventQueue} registered through {@code addLineEventQueue()}. Consumers draining
+ * their queue see every crossing, even the ones that happened between two of their polls.
+ * <p>
+ * The thresholds of the detectors are not fixed. A {@code LineThresholdEstimator} per side follows
+ * the readings of the floor and of the lines and adjusts them continuously. The hard-coded line
+ * values are only used as a starting point, and the estimates can be saved to a calibration file
+ * with {@code saveCalibration()} and restored on the next run with {@code loadCalibration()}.
  * 
  * @author angelortiz
  *
@@ -25,85 +54,111 @@ public class LightPoller {
   
   private static final int MEAN_SIZE = 1;
 
+  /** Channel of the front light sensor. */
+  public static final int FRONT = 1;
+  /** Channel of the left light sensor. */
+  public static final int LEFT = 2;
+  /** Channel of the right light sensor. */
+  public static final int RIGHT = 4;
+  /** Channels of both line detection sensors. */
+  public static final int LINES = LEFT | RIGHT;
+  /** Channels of all the sensors. */
+  public static final int ALL = FRONT | LINES;
+
   // Attributes
   // Singleton instance
   private static LightPoller lightPoller = null;
 
-  // SampleProvider and MeanFilter objects
+  // SampleProvider and SampleFilter objects
   private SampleProvider frontProvider;
   private SampleProvider leftProvider;
   private SampleProvider rightProvider;
-  private MeanFilter frontFilter;
-  private MeanFilter leftFilter;
-  private MeanFilter rightFilter;
+  private SampleFilter[] frontFilters; // One filter per RGB component
+  private SampleFilter leftFilter;
+  private SampleFilter rightFilter;
 
-  // Public attributes used to access the sensors' readings
-  
-  /**
-   * Front light sensor reading. Since this sensor is in {@code RGB} mode this is a three element array with
-   * the corresponding values.
-   */
-  public float[] front;
-  /**
-   * Left light sensor reading. This is a one element sample containing a {@code Red} value only.
-   */
-  public float[] left;
-  /**
-   * Right light sensor reading. This is a one element sample containing a {@code Red} value only.
-   */
-  public float[] right;
-  /**
-   * Mean of the last three readings of the front light sensor.
-   */
-  public float[] frontMean;
-  /**
-   * Mean of the last three readings of the left light sensor.
-   */
-  public float[] leftMean;
-  /**
-   * Mean of the last three readings of the right light sensor.
-   */
-  public float[] rightMean;
+  // Buffers used by the thread reading the sensors. Each holds the raw reading followed by the
+  // filtered one.
+  private float[] front;
+  private float[] left;
+  private float[] right;
 
-  // Public attributes to access line detection results for line and right sensors
-  
-  /**
-   * Indicates whether the left light sensor is currently seeing a line.
-   */
-  public boolean leftInLine;
-  /**
-   * Indicates whether the right light sensor is currently seeing a line.
-   */
-  public boolean rightInLine;
+  // Latest readings, stored in the same layout as the buffers
+  private SampleSlot frontSlot;
+  private SampleSlot leftSlot;
+  private SampleSlot rightSlot;
+  private int frontSize;
+
+  // Line detection results for line and right sensors
+  private LineEdgeDetector leftDetector;
+  private LineEdgeDetector rightDetector;
+  private LineThresholdEstimator leftEstimator;
+  private LineThresholdEstimator rightEstimator;
+  private volatile boolean leftInLine;
+  private volatile boolean rightInLine;
+  private List<LineEventQueue> lineEventQueues;
+  private Motor leftMotor; // Motors used to timestamp the line events
+  private Motor rightMotor;
+
+  // Background sampling
+  private PeriodicScheduler.Task samplingTask;
+  private volatile boolean sampling;
+  private volatile int samplingChannels; // Channels read by the sampling thread
+  private volatile int waiters; // Number of threads waiting for a sample in poll()
+  private final Object sampleMonitor = new Object();
+
+  private volatile SensorRecorder recorder; // Null unless the readings are being recorded
 
   /**
-   * Creates a light poller that uses the provided sensors for polling.
+   * Creates a light poller that reads its samples from the given providers. On the robot these are
+   * the {@code RGB} mode of the front {@code EV3ColorSensor} and the {@code Red} mode of the side
+   * ones, but they can also be the providers of a {@code SensorReplay} or {@code SimulatedSensor}
+   * objects. Unlike the factory method, the constructor always creates a new instance, so each
+   * robot can own its poller through a {@code RobotContext}.
    * 
-   * @param frontSensor Light sensor placed on the robot arm, set to {@code RGB} mode.
-   * @param leftSensor Light sensor placed to the left of the robot's center, set to {@code Red}
-   *        mode.
-   * @param rightSensor Light sensor placed to the right of the robot's center, set to {@code Red}
-   *        mode.
+   * @param frontProvider Provider of the {@code RGB} readings of the sensor placed on the robot
+   *        arm.
+   * @param leftProvider Provider of the {@code Red} readings of the sensor placed to the left of
+   *        the robot's center.
+   * @param rightProvider Provider of the {@code Red} readings of the sensor placed to the right of
+   *        the robot's center.
    */
-  private LightPoller(EV3ColorSensor frontSensor, EV3ColorSensor leftSensor,
-      EV3ColorSensor rightSensor) {
+  public LightPoller(SampleProvider frontProvider, SampleProvider leftProvider,
+      SampleProvider rightProvider) {
     // Initialize front sensor values
-    frontProvider = frontSensor.getMode("RGB");
-    frontFilter = new MeanFilter(frontProvider, MEAN_SIZE);
-    front = new float[frontProvider.sampleSize()];
-    frontMean = new float[frontFilter.sampleSize()];
+    this.frontProvider = frontProvider;
+    frontSize = frontProvider.sampleSize();
+    frontFilters = new SampleFilter[frontSize];
+    for (int i = 0; i < frontSize; i++)
+      frontFilters[i] = new MovingMeanFilter(MEAN_SIZE);
+    front = new float[2 * frontSize];
+    frontSlot = new SampleSlot(front.length);
 
     // Initialize left sensor values
-    leftProvider = leftSensor.getMode("Red");
-    leftFilter = new MeanFilter(leftProvider, MEAN_SIZE);
-    left = new float[leftProvider.sampleSize()];
-    leftMean = new float[leftFilter.sampleSize()];
+    this.leftProvider = leftProvider;
+    leftFilter = new MovingMeanFilter(MEAN_SIZE);
+    left = new float[2];
+    leftSlot = new SampleSlot(left.length);
 
     // Initialize right sensor values
-    rightProvider = rightSensor.getMode("Red");
-    rightFilter = new MeanFilter(rightProvider, MEAN_SIZE);
-    right = new float[rightProvider.sampleSize()];
-    rightMean = new float[rightFilter.sampleSize()];
+    this.rightProvider = rightProvider;
+    rightFilter = new MovingMeanFilter(MEAN_SIZE);
+    right = new float[2];
+    rightSlot = new SampleSlot(right.length);
+
+    // Initialize line detection
+    leftEstimator = new LineThresholdEstimator(LINE_COLOR_VALUE_LEFT);
+    rightEstimator = new LineThresholdEstimator(LINE_COLOR_VALUE_RIGHT);
+    leftDetector = new LineEdgeDetector(leftEstimator.getEnterThreshold(),
+        leftEstimator.getExitThreshold());
+    rightDetector = new LineEdgeDetector(rightEstimator.getEnterThreshold(),
+        rightEstimator.getExitThreshold());
+    lineEventQueues = new CopyOnWriteArrayList<LineEventQueue>();
+
+    sampling = false;
+    samplingChannels = 0;
+    waiters = 0;
+    recorder = null;
   }
 
   /**
@@ -111,18 +166,19 @@ public class LightPoller {
    * returns the existing instance. This method is the factory method for the singleton
    * {@code LightPoller} class.
    * 
-   * @param frontSensor Light sensor placed on the robot arm, set to {@code RGB} mode.
-   * @param leftSensor Light sensor placed to the left of the robot's center, set to {@code Red}
-   *        mode.
-   * @param rightSensor Light sensor placed to the right of the robot's center, set to {@code Red}
-   *        mode.
+   * @param frontProvider Provider of the {@code RGB} readings of the sensor placed on the robot
+   *        arm.
+   * @param leftProvider Provider of the {@code Red} readings of the sensor placed to the left of
+   *        the robot's center.
+   * @param rightProvider Provider of the {@code Red} readings of the sensor placed to the right of
+   *        the robot's center.
    * 
    * @return New or existing instance of the {@code LightPoller} object.
    */
-  public static LightPoller getLightPoller(EV3ColorSensor frontSensor, EV3ColorSensor leftSensor,
-      EV3ColorSensor rightSensor) {
+  public static LightPoller getLightPoller(SampleProvider frontProvider,
+      SampleProvider leftProvider, SampleProvider rightProvider) {
     if (lightPoller == null) {
-      lightPoller = new LightPoller(frontSensor, leftSensor, rightSensor);
+      lightPoller = new LightPoller(frontProvider, leftProvider, rightProvider);
       return lightPoller;
     } else {
       return lightPoller;
@@ -138,46 +194,501 @@ public class LightPoller {
   public static LightPoller getLightPoller() throws PollerException {
     if (lightPoller == null)
       throw new PollerException("The singleton LightPoller class has not been instantiated yet."
-          + "Three EV3ColorSensor instances must be provided to the factory method.");
+          + "Three SampleProvider instances must be provided to the factory method.");
     else
       return lightPoller;
   }
 
-  /*
+  /**
+   * Schedules a task that reads all the sensors every {@code periodMillis} milliseconds. From then
+   * on {@code poll()} no longer reads the sensors itself and the accessors return the readings of
+   * the sampling task.
+   * 
+   * @param scheduler Scheduler running the periodic tasks of the robot, such as the one returned by
+   *        {@code RobotContext.getScheduler()}. The sensors are read once it is started.
+   * @param periodMillis Time between readings in milliseconds.
+   */
+  public void startSampling(PeriodicScheduler scheduler, long periodMillis) {
+    startSampling(scheduler, periodMillis, ALL);
+  }
+
+  /**
+   * Schedules a task that reads the given channels every {@code periodMillis} milliseconds.
+   * Channels that are not sampled are still read by {@code poll()} on request. The task runs at
+   * the {@code SAMPLING} priority of the scheduler, so the time spent waiting for the sensors does
+   * not delay the odometer.
+   * 
+   * @param scheduler Scheduler running the periodic tasks of the robot, such as the one returned by
+   *        {@code RobotContext.getScheduler()}. The sensors are read once it is started.
+   * @param periodMillis Time between readings in milliseconds.
+   * @param channels Combination of {@code FRONT}, {@code LEFT} and {@code RIGHT} to sample.
+   */
+  public synchronized void startSampling(PeriodicScheduler scheduler, long periodMillis,
+      final int channels) {
+    if (sampling)
+      return;
+
+    samplingTask = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        sample(channels);
+      }
+    }, periodMillis, Priority.SAMPLING);
+    samplingChannels = channels;
+    sampling = true;
+  }
+
+  /**
+   * Cancels the sampling task. The sensors are read by {@code poll()} again afterwards.
+   */
+  public synchronized void stopSampling() {
+    if (!sampling)
+      return;
+
+    samplingTask.cancel();
+    samplingTask = null;
+    sampling = false;
+    samplingChannels = 0;
+  }
+
+  /**
+   * Indicates whether the sensors are being read by the sampling task.
+   * 
+   * @return True if {@code startSampling()} was called and sampling was not stopped.
+   */
+  public boolean isSampling() {
+    return sampling;
+  }
+
+  /**
+   * Indicates whether the given channels are all being read by the sampling task.
+   * 
+   * @param channels Combination of {@code FRONT}, {@code LEFT} and {@code RIGHT}.
+   * @return True if every requested channel is sampled in the background.
+   */
+  public boolean isSampling(int channels) {
+    return sampling && (samplingChannels & channels) == channels;
+  }
+
+  /**
    * Updates the light sensor readings and checks for any line detections.
+   * <p>
+   * If the sampling thread is running, the sensors are not read by the caller. Instead the method
+   * waits until the sampling thread publishes its next reading, so that loops alternating calls to
+   * {@code poll()} with checks of the readings keep observing fresh values.
    */
   public void poll() {
+    poll(ALL);
+  }
+
+  /**
+   * Updates the readings of the line detection sensors only.
+   */
+  public void pollLines() {
+    poll(LINES);
+  }
+
+  /**
+   * Updates the reading of the front sensor only.
+   */
+  public void pollFront() {
+    poll(FRONT);
+  }
+
+  /**
+   * Updates the readings of the given channels. Channels read by the sampling thread are not read
+   * by the caller, the method waits for their next reading instead. The remaining channels are read
+   * on the thread of the caller.
+   * 
+   * @param channels Combination of {@code FRONT}, {@code LEFT} and {@code RIGHT} to update.
+   */
+  public void poll(int channels) {
+    PeriodicScheduler.Task task = samplingTask;
+    int sampled = sampling && task != null ? samplingChannels & channels : 0;
+    if (sampled != channels)
+      sample(channels & ~sampled);
+    if (sampled == 0)
+      return;
+
+    // Wait for the next reading of the last channel published by the sampling thread
+    SampleSlot slot = (sampled & LEFT) != 0 ? leftSlot : (sampled & RIGHT) != 0 ? rightSlot
+        : frontSlot;
+    long current = slot.getSequence();
+    long timeout = 2 * task.getPeriodNanos() / 1000000L + 1;
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (sampleMonitor) {
+      waiters++;
+      try {
+        long remaining = timeout;
+        while (slot.getSequence() == current && remaining > 0 && sampling) {
+          sampleMonitor.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      } finally {
+        waiters--;
+      }
+    }
+  }
+
+  /**
+   * Sets the motors whose tacho counts are recorded in the line events.
+   * 
+   * @param leftMotor Left motor of the robot.
+   * @param rightMotor Right motor of the robot.
+   */
+  public synchronized void attachMotors(Motor leftMotor,
+      Motor rightMotor) {
+    this.leftMotor = leftMotor;
+    this.rightMotor = rightMotor;
+  }
+
+  /**
+   * Registers a queue to receive the line crossings detected from now on. Each consumer must
+   * register its own queue.
+   * 
+   * @param queue Queue where the events are published.
+   */
+  public void addLineEventQueue(LineEventQueue queue) {
+    lineEventQueues.add(queue);
+  }
+
+  /**
+   * Stops publishing line crossings on the given queue.
+   * 
+   * @param queue Queue previously registered with {@code addLineEventQueue()}.
+   */
+  public void removeLineEventQueue(LineEventQueue queue) {
+    lineEventQueues.remove(queue);
+  }
+
+  /**
+   * Returns the estimator of the line thresholds of the left sensor, which exposes the statistics
+   * of the floor and line readings.
+   * 
+   * @return Estimator of the left sensor.
+   */
+  public LineThresholdEstimator getLeftEstimator() {
+    return leftEstimator;
+  }
+
+  /**
+   * Returns the estimator of the line thresholds of the right sensor, which exposes the statistics
+   * of the floor and line readings.
+   * 
+   * @return Estimator of the right sensor.
+   */
+  public LineThresholdEstimator getRightEstimator() {
+    return rightEstimator;
+  }
+
+  /**
+   * Seeds the line threshold estimators with a calibration saved on a previous run.
+   * 
+   * @param path Path of the calibration file.
+   * @return True if the calibration of both sensors was loaded, false if the file does not exist or
+   *         is invalid, in which case the sensors that could not be loaded keep their estimates.
+   */
+  public synchronized boolean loadCalibration(String path) {
+    Properties properties = new Properties();
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(path);
+      properties.load(in);
+    } catch (FileNotFoundException e) {
+      return false;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      close(in);
+    }
+
+    boolean loaded = leftEstimator.load(properties, "left");
+    loaded &= rightEstimator.load(properties, "right");
+    leftDetector.setThresholds(leftEstimator.getEnterThreshold(),
+        leftEstimator.getExitThreshold());
+    rightDetector.setThresholds(rightEstimator.getEnterThreshold(),
+        rightEstimator.getExitThreshold());
+    return loaded;
+  }
+
+  /**
+   * Saves the current estimates of the line thresholds so that they can seed the next run.
+   * 
+   * @param path Path of the calibration file.
+   * @return True if the file was written.
+   */
+  public synchronized boolean saveCalibration(String path) {
+    Properties properties = new Properties();
+    leftEstimator.save(properties, "left");
+    rightEstimator.save(properties, "right");
+
+    FileOutputStream out = null;
+    try {
+      out = new FileOutputStream(path);
+      properties.store(out, "Line detection calibration");
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      close(out);
+    }
+  }
+
+  /* ---LATEST READINGS--- */
+
+  /**
+   * Copies the latest reading of the front light sensor.
+   * 
+   * @param dst Array with one element per {@code RGB} component where the reading is copied.
+   * @return The same {@code dst} array.
+   */
+  public float[] getFront(float[] dst) {
+    frontSlot.read(dst, 0, frontSize);
+    return dst;
+  }
+
+  /**
+   * Copies the latest filtered reading of the front light sensor.
+   * 
+   * @param dst Array with one element per {@code RGB} component where the reading is copied.
+   * @return The same {@code dst} array.
+   */
+  public float[] getFrontMean(float[] dst) {
+    frontSlot.read(dst, frontSize, frontSize);
+    return dst;
+  }
+
+  /**
+   * Returns the latest {@code Red} reading of the left light sensor.
+   * 
+   * @return Left sensor reading, or {@code NaN} if the sensor has not been read yet.
+   */
+  public float getLeft() {
+    return leftSlot.get(0);
+  }
+
+  /**
+   * Returns the latest filtered {@code Red} reading of the left light sensor.
+   * 
+   * @return Filtered left sensor reading, or {@code NaN} if the sensor has not been read yet.
+   */
+  public float getLeftMean() {
+    return leftSlot.get(1);
+  }
+
+  /**
+   * Returns the latest {@code Red} reading of the right light sensor.
+   * 
+   * @return Right sensor reading, or {@code NaN} if the sensor has not been read yet.
+   */
+  public float getRight() {
+    return rightSlot.get(0);
+  }
+
+  /**
+   * Returns the latest filtered {@code Red} reading of the right light sensor.
+   * 
+   * @return Filtered right sensor reading, or {@code NaN} if the sensor has not been read yet.
+   */
+  public float getRightMean() {
+    return rightSlot.get(1);
+  }
+
+  /**
+   * Indicates whether the left light sensor is currently seeing a line.
+   * 
+   * @return True if the latest reading of the left sensor is a line.
+   */
+  public boolean isLeftInLine() {
+    return leftInLine;
+  }
+
+  /**
+   * Indicates whether the right light sensor is currently seeing a line.
+   * 
+   * @return True if the latest reading of the right sensor is a line.
+   */
+  public boolean isRightInLine() {
+    return rightInLine;
+  }
+
+  /**
+   * Returns the time at which the latest reading of the front sensor was taken.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}.
+   */
+  public long getFrontTimestamp() {
+    return frontSlot.getTimestamp();
+  }
+
+  /**
+   * Returns the time at which the latest reading of the left sensor was taken.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}.
+   */
+  public long getLeftTimestamp() {
+    return leftSlot.getTimestamp();
+  }
+
+  /**
+   * Returns the time at which the latest reading of the right sensor was taken.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}.
+   */
+  public long getRightTimestamp() {
+    return rightSlot.getTimestamp();
+  }
+
+  /**
+   * Returns the age of the oldest of the latest readings of the given channels, which measures the
+   * freshness of the values returned by the accessors.
+   * 
+   * @param channels Combination of {@code FRONT}, {@code LEFT} and {@code RIGHT}.
+   * @return Age of the readings in nanoseconds.
+   */
+  public long getSampleAgeNanos(int channels) {
+    long age = 0;
+    if ((channels & FRONT) != 0)
+      age = Math.max(age, frontSlot.getAgeNanos());
+    if ((channels & LEFT) != 0)
+      age = Math.max(age, leftSlot.getAgeNanos());
+    if ((channels & RIGHT) != 0)
+      age = Math.max(age, rightSlot.getAgeNanos());
+    return age;
+  }
+
+  /**
+   * Returns the number of times the sensor of a channel was read.
+   * 
+   * @param channel One of {@code FRONT}, {@code LEFT} or {@code RIGHT}.
+   * @return Number of readings published for the channel.
+   */
+  public long getSampleCount(int channel) {
+    return channel == FRONT ? frontSlot.getSequence()
+        : channel == LEFT ? leftSlot.getSequence() : rightSlot.getSequence();
+  }
+
+  /**
+   * Sets the recorder to which the raw readings of the sensors are written.
+   * 
+   * @param recorder Recorder of the readings, or null to stop recording.
+   * 
+   * @see SensorRecorder
+   */
+  public void setRecorder(SensorRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Reads the sensors of the given channels and publishes their readings. Synchronized so that the
+   * slots only ever have one writer.
+   */
+  private synchronized void sample(int channels) {
+    SensorRecorder recorder = this.recorder;
+
     // Front sensor
-    frontProvider.fetchSample(front, 0);
-    frontFilter.fetchSample(frontMean, 0);
+    if ((channels & FRONT) != 0) {
+      long frontTime = System.nanoTime();
+      frontProvider.fetchSample(front, 0);
+      if (recorder != null)
+        recorder.record(SensorRecorder.FRONT_LIGHT, frontTime, front, 0, frontSize);
+      for (int i = 0; i < frontSize; i++)
+        front[frontSize + i] = frontFilters[i].update(front[i]);
+      frontSlot.publish(front, frontTime);
+    }
 
     // Left sensor
-    leftProvider.fetchSample(left, 0);
-    leftFilter.fetchSample(leftMean, 0);
+    long leftTime = 0;
+    if ((channels & LEFT) != 0) {
+      leftTime = System.nanoTime();
+      leftProvider.fetchSample(left, 0);
+      if (recorder != null)
+        recorder.record(SensorRecorder.LEFT_LIGHT, leftTime, left, 0, 1);
+      left[1] = leftFilter.update(left[0]);
+    }
 
     // Right sensor
-    rightProvider.fetchSample(right, 0);
-    rightFilter.fetchSample(rightMean, 0);
+    long rightTime = 0;
+    if ((channels & RIGHT) != 0) {
+      rightTime = System.nanoTime();
+      rightProvider.fetchSample(right, 0);
+      if (recorder != null)
+        recorder.record(SensorRecorder.RIGHT_LIGHT, rightTime, right, 0, 1);
+      right[1] = rightFilter.update(right[0]);
+    }
 
-    // Update line detection values
-    lineDetection();
+    // Update line detection values before publishing so that they are current once a new sample
+    // is observed
+    lineDetection(channels, leftTime, rightTime);
+    if ((channels & RIGHT) != 0)
+      rightSlot.publish(right, rightTime);
+    if ((channels & LEFT) != 0)
+      leftSlot.publish(left, leftTime);
+
+    if (waiters > 0) {
+      synchronized (sampleMonitor) {
+        sampleMonitor.notifyAll();
+      }
+    }
   }
 
   /**
-   * Updates the line detection values for the line sensor.
+   * Updates the line detection values for the line sensor and publishes the edges detected.
    */
-  private void lineDetection() {
-    if (leftMean[0] < LINE_COLOR_VALUE_LEFT) {
-      if (!leftInLine)
-      leftInLine = true;
-    } else {
-      leftInLine = false;
+  private void lineDetection(int channels, long leftTime, long rightTime) {
+    boolean leftEdge = false;
+    if ((channels & LEFT) != 0) {
+      leftEstimator.update(left[1]);
+      leftDetector.setThresholds(leftEstimator.getEnterThreshold(),
+          leftEstimator.getExitThreshold());
+      leftEdge = leftDetector.update(left[1]);
     }
 
-    if (rightMean[0] < LINE_COLOR_VALUE_RIGHT) {
-      rightInLine = true;
-    } else {
-      rightInLine = false;
+    boolean rightEdge = false;
+    if ((channels & RIGHT) != 0) {
+      rightEstimator.update(right[1]);
+      rightDetector.setThresholds(rightEstimator.getEnterThreshold(),
+          rightEstimator.getExitThreshold());
+      rightEdge = rightDetector.update(right[1]);
+    }
+
+    leftInLine = leftDetector.isInLine();
+    rightInLine = rightDetector.isInLine();
+
+    if (leftEdge)
+      publishEdge(LEFT, leftDetector.isInLine(), leftTime, left[1]);
+    if (rightEdge)
+      publishEdge(RIGHT, rightDetector.isInLine(), rightTime, right[1]);
+  }
+
+  /*
+   * Publishes a line crossing on every registered queue.
+   */
+  private void publishEdge(int channel, boolean rising, long timestamp, float value) {
+    int leftTacho = leftMotor == null ? 0 : leftMotor.getTachoCount();
+    int rightTacho = rightMotor == null ? 0 : rightMotor.getTachoCount();
+
+    for (LineEventQueue queue : lineEventQueues)
+      queue.offer(channel, rising, timestamp, value, leftTacho, rightTacho, leftInLine,
+          rightInLine);
+  }
+
+  /*
+   * Closes a calibration file, ignoring errors.
+   */
+  private static void close(Closeable stream) {
+    if (stream == null)
+      return;
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // there is nothing to be done
     }
   }
 
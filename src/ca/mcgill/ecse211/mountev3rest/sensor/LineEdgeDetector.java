@@ -0,0 +1,76 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Detects the edges of a line under a light sensor in {@code Red} mode.
+ * <p>
+ * A single threshold makes the detection flicker when the reading hovers around it, which happens
+ * at the border of every line. The detector therefore uses two thresholds: the sensor enters a line
+ * when its reading drops below {@code enterThreshold}, and only leaves it once the reading rises
+ * above {@code exitThreshold}. Readings between the two thresholds keep the previous state.
+ * <p>
+ * The thresholds can be changed at any time, which allows them to follow the estimates of a
+ * {@code LineThresholdEstimator}.
+ * 
+ * @see LightPoller
+ * @author angelortiz
+ *
+ */
+public class LineEdgeDetector {
+
+  // Attributes
+  private double enterThreshold;
+  private double exitThreshold;
+  private boolean inLine;
+
+  /**
+   * Creates a detector with the given hysteresis band. Lines are darker than the board, so
+   * {@code enterThreshold} must not be greater than {@code exitThreshold}.
+   * 
+   * @param enterThreshold Reading below which the sensor is considered to be on a line.
+   * @param exitThreshold Reading above which the sensor is considered to be off the line.
+   */
+  public LineEdgeDetector(double enterThreshold, double exitThreshold) {
+    setThresholds(enterThreshold, exitThreshold);
+    this.inLine = false;
+  }
+
+  /**
+   * Changes the thresholds of the detector. The current state is kept.
+   * 
+   * @param enterThreshold Reading below which the sensor is considered to be on a line.
+   * @param exitThreshold Reading above which the sensor is considered to be off the line.
+   */
+  public void setThresholds(double enterThreshold, double exitThreshold) {
+    if (enterThreshold > exitThreshold)
+      throw new IllegalArgumentException("The enter threshold cannot exceed the exit threshold.");
+    this.enterThreshold = enterThreshold;
+    this.exitThreshold = exitThreshold;
+  }
+
+  /**
+   * Updates the state of the detector with a new reading.
+   * 
+   * @param value New reading of the sensor.
+   * @return True if the reading produced an edge, that is, if the sensor entered or left a line.
+   */
+  public boolean update(double value) {
+    if (!inLine && value < enterThreshold) {
+      inLine = true;
+      return true;
+    } else if (inLine && value > exitThreshold) {
+      inLine = false;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Indicates whether the sensor is currently on a line.
+   * 
+   * @return True if the last edge detected was a rising edge, that is, the sensor entered a line.
+   */
+  public boolean isInLine() {
+    return inLine;
+  }
+
+}
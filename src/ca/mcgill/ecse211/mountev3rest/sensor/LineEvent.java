@@ -0,0 +1,97 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Line crossing detected by one of the line detection sensors of the {@code LightPoller}.
+ * <p>
+ * Events are read from a {@code LineEventQueue} into a {@code LineEvent} owned by the consumer, so
+ * the same object is reused for every event and no allocation happens while draining the queue.
+ * 
+ * @see LineEventQueue
+ * @author angelortiz
+ *
+ */
+public class LineEvent {
+
+  // Attributes
+  int channel;
+  boolean rising;
+  long timestampNanos;
+  float value;
+  int leftTacho;
+  int rightTacho;
+  boolean leftInLine;
+  boolean rightInLine;
+
+  /**
+   * Returns the sensor that produced the event.
+   * 
+   * @return {@code LightPoller.LEFT} or {@code LightPoller.RIGHT}.
+   */
+  public int getChannel() {
+    return channel;
+  }
+
+  /**
+   * Indicates the direction of the edge.
+   * 
+   * @return True if the sensor entered a line, false if it left it.
+   */
+  public boolean isRising() {
+    return rising;
+  }
+
+  /**
+   * Returns the time at which the reading that produced the edge was taken.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}.
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /**
+   * Returns the reading that produced the edge.
+   * 
+   * @return Filtered {@code Red} reading of the sensor.
+   */
+  public float getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the tacho count of the left motor when the edge was detected.
+   * 
+   * @return Left tacho count, or 0 if no motors are attached to the {@code LightPoller}.
+   */
+  public int getLeftTacho() {
+    return leftTacho;
+  }
+
+  /**
+   * Returns the tacho count of the right motor when the edge was detected.
+   * 
+   * @return Right tacho count, or 0 if no motors are attached to the {@code LightPoller}.
+   */
+  public int getRightTacho() {
+    return rightTacho;
+  }
+
+  /**
+   * Indicates whether the left sensor was on a line right after the edge.
+   * 
+   * @return State of the left sensor.
+   */
+  public boolean isLeftInLine() {
+    return leftInLine;
+  }
+
+  /**
+   * Indicates whether the right sensor was on a line right after the edge.
+   * 
+   * @return State of the right sensor.
+   */
+  public boolean isRightInLine() {
+    return rightInLine;
+  }
+
+}
@@ -0,0 +1,131 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Bounded queue of line crossings published by the {@code LightPoller}.
+ * <p>
+ * The queue is a ring buffer over primitive arrays with one producer, the thread reading the light
+ * sensors, and one consumer, the class that registered it through
+ * {@code LightPoller.addLineEventQueue()}. Both sides only communicate through two volatile
+ * counters, so neither of them ever blocks. When the queue is full new events are dropped and
+ * counted, which only happens if the consumer stops draining it. Consumers that only drain the
+ * queue occasionally should {@code clear()} it before waiting for a new crossing.
+ * 
+ * @see LightPoller
+ * @author angelortiz
+ *
+ */
+public class LineEventQueue {
+
+  // Ring buffer storage
+  private final int[] channels;
+  private final boolean[] risings;
+  private final long[] timestamps;
+  private final float[] values;
+  private final int[] leftTachos;
+  private final int[] rightTachos;
+  private final boolean[] leftInLines;
+  private final boolean[] rightInLines;
+  private final int mask;
+
+  // Ring buffer state
+  private volatile long head; // Next event to read, only written by the consumer
+  private volatile long tail; // Next slot to write, only written by the producer
+  private volatile long dropped;
+
+  /**
+   * Creates an empty queue.
+   * 
+   * @param capacity Maximum number of events held. Rounded up to a power of two.
+   */
+  public LineEventQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    channels = new int[size];
+    risings = new boolean[size];
+    timestamps = new long[size];
+    values = new float[size];
+    leftTachos = new int[size];
+    rightTachos = new int[size];
+    leftInLines = new boolean[size];
+    rightInLines = new boolean[size];
+    mask = size - 1;
+    head = 0;
+    tail = 0;
+    dropped = 0;
+  }
+
+  /**
+   * Removes the oldest event from the queue. Must only be called by the consumer.
+   * 
+   * @param event Object where the event is copied.
+   * @return True if an event was copied, false if the queue is empty.
+   */
+  public boolean poll(LineEvent event) {
+    long h = head;
+    if (h == tail)
+      return false;
+
+    int i = (int) (h & mask);
+    event.channel = channels[i];
+    event.rising = risings[i];
+    event.timestampNanos = timestamps[i];
+    event.value = values[i];
+    event.leftTacho = leftTachos[i];
+    event.rightTacho = rightTachos[i];
+    event.leftInLine = leftInLines[i];
+    event.rightInLine = rightInLines[i];
+
+    head = h + 1; // Releases the slot to the producer
+    return true;
+  }
+
+  /**
+   * Discards every event in the queue. Must only be called by the consumer.
+   */
+  public void clear() {
+    head = tail;
+  }
+
+  /**
+   * Returns the number of events waiting in the queue.
+   * 
+   * @return Number of events.
+   */
+  public int size() {
+    return (int) (tail - head);
+  }
+
+  /**
+   * Returns the number of events that were dropped because the queue was full.
+   * 
+   * @return Number of dropped events.
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /*
+   * Appends an event to the queue. Only called by the producer.
+   */
+  boolean offer(int channel, boolean rising, long timestampNanos, float value, int leftTacho,
+      int rightTacho, boolean leftInLine, boolean rightInLine) {
+    long t = tail;
+    if (t - head > mask) {
+      dropped++;
+      return false;
+    }
+
+    int i = (int) (t & mask);
+    channels[i] = channel;
+    risings[i] = rising;
+    timestamps[i] = timestampNanos;
+    values[i] = value;
+    leftTachos[i] = leftTacho;
+    rightTachos[i] = rightTacho;
+    leftInLines[i] = leftInLine;
+    rightInLines[i] = rightInLine;
+
+    tail = t + 1; // Publishes the event to the consumer
+    return true;
+  }
+
+}
@@ -0,0 +1,226 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.util.Properties;
+
+/**
+ * Estimates the line detection thresholds of a light sensor from the readings it produces.
+ * <p>
+ * The readings of a sensor facing the board form two clusters: the floor, which covers most of the
+ * board, and the darker lines. The estimator keeps an exponentially weighted mean and variance of
+ * each cluster and assigns every new reading to the closest one, so the statistics follow slow
+ * changes in ambient light or in the surface of the table. The detection threshold is placed
+ * between the two clusters, weighted by their spread, and the exit threshold of the hysteresis is a
+ * fixed fraction of the gap above it.
+ * <p>
+ * Readings are assigned by their distance to the two means rather than by the threshold. The
+ * threshold leans towards the cluster with the smaller spread, so after a change of lighting has
+ * widened one cluster it can move next to the other one, which would then lose all its readings.
+ * Lines are seen much less often than the floor, so the two means are also kept at least
+ * {@code MIN_SEPARATION} apart so that the clusters cannot merge when the sensor stays on the floor
+ * for a long time.
+ * <p>
+ * The statistics can be stored in a {@code Properties} object, which allows a calibration obtained
+ * during a run to seed the estimator on the next one.
+ * 
+ * @see LightPoller
+ * @author angelortiz
+ *
+ */
+public class LineThresholdEstimator {
+
+  // Constants
+  private static final double ALPHA = 0.02; // Weight of a new reading in the cluster statistics
+  private static final double MIN_SEPARATION = 0.08; // Minimum gap between the cluster means
+  private static final double HYSTERESIS_RATIO = 0.1; // Hysteresis band as a fraction of the gap
+  private static final double INITIAL_HALF_GAP = 0.15; // Distance of the seeded means to the
+                                                      // threshold
+  private static final double INITIAL_VARIANCE = 0.0004;
+
+  // Cluster statistics
+  private volatile double floorMean;
+  private volatile double floorVariance;
+  private volatile double lineMean;
+  private volatile double lineVariance;
+  private volatile long floorCount;
+  private volatile long lineCount;
+
+  // Derived thresholds
+  private volatile double enterThreshold;
+  private volatile double exitThreshold;
+
+  /**
+   * Creates an estimator seeded with a known threshold. The cluster means start at an equal
+   * distance below and above it.
+   * 
+   * @param initialThreshold Threshold used until the estimator adapts to the readings.
+   */
+  public LineThresholdEstimator(double initialThreshold) {
+    floorMean = initialThreshold + INITIAL_HALF_GAP;
+    lineMean = initialThreshold - INITIAL_HALF_GAP;
+    floorVariance = INITIAL_VARIANCE;
+    lineVariance = INITIAL_VARIANCE;
+    floorCount = 0;
+    lineCount = 0;
+    computeThresholds();
+  }
+
+  /**
+   * Updates the statistics with a new reading. Must only be called by the thread reading the
+   * sensor.
+   * 
+   * @param value Filtered {@code Red} reading of the sensor.
+   */
+  public void update(double value) {
+    if (value < (floorMean + lineMean) / 2) {
+      double delta = value - lineMean;
+      double mean = lineMean + ALPHA * delta;
+      lineMean = Math.min(mean, floorMean - MIN_SEPARATION);
+      lineVariance += ALPHA * (delta * delta - lineVariance);
+      lineCount++;
+    } else {
+      double delta = value - floorMean;
+      double mean = floorMean + ALPHA * delta;
+      floorMean = Math.max(mean, lineMean + MIN_SEPARATION);
+      floorVariance += ALPHA * (delta * delta - floorVariance);
+      floorCount++;
+    }
+
+    computeThresholds();
+  }
+
+  /**
+   * Returns the reading below which the sensor is considered to be on a line.
+   * 
+   * @return Current enter threshold.
+   */
+  public double getEnterThreshold() {
+    return enterThreshold;
+  }
+
+  /**
+   * Returns the reading above which the sensor is considered to be off a line.
+   * 
+   * @return Current exit threshold.
+   */
+  public double getExitThreshold() {
+    return exitThreshold;
+  }
+
+  /**
+   * Returns the estimated mean reading of the floor.
+   * 
+   * @return Mean of the floor cluster.
+   */
+  public double getFloorMean() {
+    return floorMean;
+  }
+
+  /**
+   * Returns the estimated standard deviation of the readings of the floor.
+   * 
+   * @return Standard deviation of the floor cluster.
+   */
+  public double getFloorDeviation() {
+    return Math.sqrt(floorVariance);
+  }
+
+  /**
+   * Returns the estimated mean reading of a line.
+   * 
+   * @return Mean of the line cluster.
+   */
+  public double getLineMean() {
+    return lineMean;
+  }
+
+  /**
+   * Returns the estimated standard deviation of the readings of a line.
+   * 
+   * @return Standard deviation of the line cluster.
+   */
+  public double getLineDeviation() {
+    return Math.sqrt(lineVariance);
+  }
+
+  /**
+   * Returns the number of readings assigned to the floor since the estimator was created.
+   * 
+   * @return Number of floor readings.
+   */
+  public long getFloorCount() {
+    return floorCount;
+  }
+
+  /**
+   * Returns the number of readings assigned to a line since the estimator was created.
+   * 
+   * @return Number of line readings.
+   */
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Stores the cluster statistics in the given properties.
+   * 
+   * @param properties Properties where the statistics are written.
+   * @param prefix Prefix of the keys, used to store several estimators in the same properties.
+   */
+  public void save(Properties properties, String prefix) {
+    properties.setProperty(prefix + ".floorMean", Double.toString(floorMean));
+    properties.setProperty(prefix + ".floorVariance", Double.toString(floorVariance));
+    properties.setProperty(prefix + ".lineMean", Double.toString(lineMean));
+    properties.setProperty(prefix + ".lineVariance", Double.toString(lineVariance));
+  }
+
+  /**
+   * Replaces the cluster statistics with the ones stored in the given properties. Must not be
+   * called while the sensor is being read.
+   * 
+   * @param properties Properties previously written by {@code save()}.
+   * @param prefix Prefix of the keys.
+   * @return True if the statistics were loaded, false if they are missing or invalid, in which case
+   *         the estimator is left unchanged.
+   */
+  public boolean load(Properties properties, String prefix) {
+    try {
+      double floorMean = Double.parseDouble(properties.getProperty(prefix + ".floorMean"));
+      double floorVariance = Double.parseDouble(properties.getProperty(prefix + ".floorVariance"));
+      double lineMean = Double.parseDouble(properties.getProperty(prefix + ".lineMean"));
+      double lineVariance = Double.parseDouble(properties.getProperty(prefix + ".lineVariance"));
+      if (floorMean - lineMean < MIN_SEPARATION || floorVariance < 0 || lineVariance < 0)
+        return false;
+
+      this.floorMean = floorMean;
+      this.floorVariance = floorVariance;
+      this.lineMean = lineMean;
+      this.lineVariance = lineVariance;
+      computeThresholds();
+      return true;
+    } catch (NullPointerException e) {
+      return false;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Places the threshold between the clusters so that it is the same number of standard deviations
+   * away from both means.
+   */
+  private void computeThresholds() {
+    double floorDeviation = Math.sqrt(floorVariance);
+    double lineDeviation = Math.sqrt(lineVariance);
+    double gap = floorMean - lineMean;
+
+    double weight = floorDeviation + lineDeviation > 0
+        ? lineDeviation / (floorDeviation + lineDeviation) : 0.5;
+    double threshold = lineMean + weight * gap;
+
+    enterThreshold = threshold;
+    exitThreshold = Math.min(threshold + HYSTERESIS_RATIO * gap, floorMean);
+  }
+
+}
@@ -0,0 +1,86 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Computes the median of the most recent readings of a sensor.
+ * <p>
+ * The median discards isolated spikes completely instead of spreading them over the window like a
+ * mean does. Besides the ring buffer of readings, the filter keeps a sorted copy of the window.
+ * Every update removes the oldest reading from the sorted copy and inserts the new one in place,
+ * which takes time linear in the size of the window but is cheap for the small windows used on the
+ * sensors. Until the window is full the median is taken over the readings received so far, using
+ * the upper middle reading when their number is even.
+ * 
+ * @see SampleFilter
+ * @author angelortiz
+ *
+ */
+public class MedianFilter implements SampleFilter {
+
+  // Attributes
+  private final float[] window; // Readings in arrival order
+  private final float[] sorted; // First count readings of the window in ascending order
+  private int next; // Index of the slot that will be written next
+  private int count; // Number of valid readings
+
+  /**
+   * Creates a filter taking the median of the given number of readings.
+   * 
+   * @param size Number of readings in the window. Odd sizes give a true median.
+   */
+  public MedianFilter(int size) {
+    if (size < 1)
+      throw new IllegalArgumentException("The window must hold at least one reading.");
+    window = new float[size];
+    sorted = new float[size];
+    reset();
+  }
+
+  @Override
+  public float update(float value) {
+    // Remove the reading that leaves the window from the sorted copy
+    int position;
+    if (count == window.length) {
+      position = indexOf(window[next]);
+      System.arraycopy(sorted, position + 1, sorted, position, count - position - 1);
+      count--;
+    }
+
+    // Insert the new reading in place
+    position = count;
+    while (position > 0 && sorted[position - 1] > value) {
+      sorted[position] = sorted[position - 1];
+      position--;
+    }
+    sorted[position] = value;
+    count++;
+
+    window[next] = value;
+    next = (next + 1) % window.length;
+
+    return sorted[count / 2];
+  }
+
+  @Override
+  public float getValue() {
+    return count == 0 ? Float.NaN : sorted[count / 2];
+  }
+
+  @Override
+  public void reset() {
+    next = 0;
+    count = 0;
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Finds a reading in the sorted copy of the window.
+   */
+  private int indexOf(float value) {
+    for (int i = 0; i < count; i++)
+      if (Float.compare(sorted[i], value) == 0)
+        return i;
+    return count - 1; // Not reached, every reading of the window is in the sorted copy
+  }
+
+}
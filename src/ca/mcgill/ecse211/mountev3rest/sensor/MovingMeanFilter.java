@@ -0,0 +1,60 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Computes the mean of the most recent readings of a sensor.
+ * <p>
+ * The readings are kept in a ring buffer along with their running sum, so each update takes
+ * constant time regardless of the size of the window. Until the window is full the mean is taken
+ * over the readings received so far.
+ * 
+ * @see SampleFilter
+ * @author angelortiz
+ *
+ */
+public class MovingMeanFilter implements SampleFilter {
+
+  // Attributes
+  private final float[] window;
+  private int next; // Index of the slot that will be written next
+  private int count; // Number of valid readings
+  private double sum; // Kept in double precision to limit the drift of the running sum
+
+  /**
+   * Creates a filter averaging over the given number of readings.
+   * 
+   * @param size Number of readings in the window.
+   */
+  public MovingMeanFilter(int size) {
+    if (size < 1)
+      throw new IllegalArgumentException("The window must hold at least one reading.");
+    window = new float[size];
+    reset();
+  }
+
+  @Override
+  public float update(float value) {
+    if (count == window.length)
+      sum -= window[next];
+    else
+      count++;
+
+    window[next] = value;
+    sum += value;
+    next = (next + 1) % window.length;
+
+    return (float) (sum / count);
+  }
+
+  @Override
+  public float getValue() {
+    return count == 0 ? Float.NaN : (float) (sum / count);
+  }
+
+  @Override
+  public void reset() {
+    next = 0;
+    count = 0;
+    sum = 0;
+  }
+
+}
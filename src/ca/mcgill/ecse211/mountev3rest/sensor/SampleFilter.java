@@ -0,0 +1,40 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Streaming filter applied to the readings of a sensor.
+ * <p>
+ * Unlike the filters provided by leJOS, which wrap a {@code SampleProvider} and fetch a new reading
+ * every time they are queried, a {@code SampleFilter} is fed readings that were already fetched.
+ * This allows the pollers to read each sensor only once per sample and still publish both the raw
+ * and the filtered values. Implementations store their state in preallocated primitive arrays, so
+ * updating a filter never allocates.
+ * <p>
+ * Filters are not thread safe. They must only be updated by the thread reading the sensor.
+ * 
+ * @see LightPoller
+ * @author angelortiz
+ *
+ */
+public interface SampleFilter {
+
+  /**
+   * Adds a new reading to the filter.
+   * 
+   * @param value New reading of the sensor.
+   * @return Output of the filter after the reading was added.
+   */
+  public float update(float value);
+
+  /**
+   * Returns the current output of the filter without modifying it.
+   * 
+   * @return Output of the filter, or {@code NaN} if no reading was added since the last reset.
+   */
+  public float getValue();
+
+  /**
+   * Discards every reading added to the filter.
+   */
+  public void reset();
+
+}
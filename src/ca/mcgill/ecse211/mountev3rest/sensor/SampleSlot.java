@@ -0,0 +1,160 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the latest sample of a sensor so that it can be read by any thread without blocking.
+ * <p>
+ * The slot is double buffered. The writer fills the buffer that readers are not using and then
+ * publishes it by incrementing a sequence number, so a reader copying the current sample is only
+ * disturbed if two new samples are written while it copies. In that case the read is retried.
+ * Every sample is stored along with its sequence number and the time at which it was taken, which
+ * allows consumers to detect new samples and measure their age.
+ * <p>
+ * Only one thread may write to a slot at a time. Any number of threads can read from it.
+ * 
+ * @see LightPoller
+ * @author angelortiz
+ *
+ */
+public class SampleSlot {
+
+  // Attributes
+  private final AtomicIntegerArray[] buffers; // Sample values stored as float bits
+  private final AtomicLongArray timestamps;
+  private volatile long writeSequence; // Sequence of the sample being written
+  private volatile long sequence; // Sequence of the last published sample, 0 if none
+
+  /**
+   * Creates an empty slot for samples of the given size.
+   * 
+   * @param size Number of values in a sample.
+   */
+  public SampleSlot(int size) {
+    buffers = new AtomicIntegerArray[] {new AtomicIntegerArray(size), new AtomicIntegerArray(size)};
+    timestamps = new AtomicLongArray(2);
+    writeSequence = 0;
+    sequence = 0;
+  }
+
+  /**
+   * Publishes a new sample. Must only be called by the writer thread.
+   * 
+   * @param sample Values of the sample, at least as many as the size of the slot.
+   * @param timestampNanos Time at which the sample was taken, as given by
+   *        {@code System.nanoTime()}.
+   */
+  public void publish(float[] sample, long timestampNanos) {
+    long next = sequence + 1;
+    writeSequence = next;
+
+    int index = (int) (next & 1);
+    AtomicIntegerArray buffer = buffers[index];
+    for (int i = 0; i < buffer.length(); i++)
+      buffer.set(i, Float.floatToRawIntBits(sample[i]));
+    timestamps.set(index, timestampNanos);
+
+    sequence = next;
+  }
+
+  /**
+   * Copies part of the latest sample without blocking.
+   * 
+   * @param dst Array where the values are copied.
+   * @param from Index of the first value of the sample to copy.
+   * @param length Number of values to copy. They are written at the beginning of {@code dst}.
+   * @return Time at which the copied sample was taken, or {@code Long.MIN_VALUE} if no sample has
+   *         been published yet, in which case {@code dst} is left untouched.
+   */
+  public long read(float[] dst, int from, int length) {
+    long seq;
+    long timestamp;
+    do {
+      seq = sequence;
+      if (seq == 0)
+        return Long.MIN_VALUE;
+
+      int index = (int) (seq & 1);
+      AtomicIntegerArray buffer = buffers[index];
+      for (int i = 0; i < length; i++)
+        dst[i] = Float.intBitsToFloat(buffer.get(from + i));
+      timestamp = timestamps.get(index);
+    } while (writeSequence - seq >= 2); // The buffer was reused while copying
+
+    return timestamp;
+  }
+
+  /**
+   * Copies the latest sample without blocking.
+   * 
+   * @param dst Array of at least the size of the slot where the values are copied.
+   * @return Time at which the copied sample was taken, or {@code Long.MIN_VALUE} if no sample has
+   *         been published yet.
+   */
+  public long read(float[] dst) {
+    return read(dst, 0, buffers[0].length());
+  }
+
+  /**
+   * Reads a single value of the latest sample without blocking.
+   * 
+   * @param index Index of the value in the sample.
+   * @return The value, or {@code Float.NaN} if no sample has been published yet.
+   */
+  public float get(int index) {
+    long seq;
+    float value;
+    do {
+      seq = sequence;
+      if (seq == 0)
+        return Float.NaN;
+      value = Float.intBitsToFloat(buffers[(int) (seq & 1)].get(index));
+    } while (writeSequence - seq >= 2);
+
+    return value;
+  }
+
+  /**
+   * Returns the sequence number of the latest sample. The number increases by one with every
+   * sample published, which allows consumers to tell whether a new sample arrived.
+   * 
+   * @return Sequence number of the latest sample, 0 if no sample has been published.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Returns the time at which the latest sample was taken.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}, or {@code Long.MIN_VALUE} if no
+   *         sample has been published yet.
+   */
+  public long getTimestamp() {
+    long seq;
+    long timestamp;
+    do {
+      seq = sequence;
+      if (seq == 0)
+        return Long.MIN_VALUE;
+      timestamp = timestamps.get((int) (seq & 1));
+    } while (writeSequence - seq >= 2);
+
+    return timestamp;
+  }
+
+  /**
+   * Returns the age of the latest sample.
+   * 
+   * @return Time elapsed since the latest sample was taken in nanoseconds, or
+   *         {@code Long.MAX_VALUE} if no sample has been published yet.
+   */
+  public long getAgeNanos() {
+    long timestamp = getTimestamp();
+    if (timestamp == Long.MIN_VALUE && sequence == 0)
+      return Long.MAX_VALUE;
+    return System.nanoTime() - timestamp;
+  }
+
+}
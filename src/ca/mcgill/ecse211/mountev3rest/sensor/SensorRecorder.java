@@ -0,0 +1,190 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the readings of the sensors and the tacho counts of the motors into a binary log file so
+ * that a run can be analyzed or replayed later through a {@code SensorReplay}.
+ * <p>
+ * The log is preallocated and memory mapped when the recorder is created, so recording a sample is
+ * a handful of writes to memory that never allocate nor block on the file system. The file starts
+ * with a header of {@code HEADER_SIZE} bytes followed by records of {@code RECORD_SIZE} bytes. Each
+ * record holds the timestamp of the sample, its source with its number of values in the upper 16
+ * bits, and up to {@code MAX_VALUES} values. Readings of the sensors are stored exactly as returned
+ * by their {@code SampleProvider}, as float bits, and tacho counts as integers.
+ * <p>
+ * Records can be written by several threads at once. Every writer reserves its record through an
+ * atomic counter and writes the source last, so a reader can recognize the end of the log, even
+ * after the robot was stopped abruptly, as the first record with no source. Once the log is full
+ * new samples are dropped and counted.
+ * 
+ * @see SensorReplay
+ * @author angelortiz
+ *
+ */
+public class SensorRecorder {
+
+  // Constants
+  static final int FILE_MAGIC = 0x53524543; // "SREC"
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 32;
+  static final int MAX_VALUES = 5;
+
+  /** Source of the {@code RGB} readings of the front light sensor. */
+  public static final int FRONT_LIGHT = 1;
+  /** Source of the {@code Red} readings of the left light sensor. */
+  public static final int LEFT_LIGHT = 2;
+  /** Source of the {@code Red} readings of the right light sensor. */
+  public static final int RIGHT_LIGHT = 3;
+  /** Source of the {@code Distance} readings of the ultrasonic sensor, in meters. */
+  public static final int ULTRASONIC = 4;
+  /** Source of the tacho counts of the left and right motors. */
+  public static final int TACHOS = 5;
+
+  // Attributes
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final AtomicInteger next; // Index of the next record to reserve
+  private final AtomicInteger dropped;
+  private volatile boolean closed;
+
+  /**
+   * Creates a recorder writing to the given file. Any previous content of the file is discarded.
+   * 
+   * @param path Path of the log file.
+   * @param capacity Maximum number of records in the log.
+   * @throws IOException If the file cannot be created or mapped.
+   */
+  public SensorRecorder(String path, int capacity) throws IOException {
+    if (capacity < 1)
+      throw new IllegalArgumentException("The log must hold at least one record.");
+
+    long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    file = new RandomAccessFile(path, "rw");
+    try {
+      file.setLength(0); // Clear the records of a previous run
+      file.setLength(size);
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0, FILE_MAGIC);
+    buffer.putInt(4, RECORD_SIZE);
+    buffer.putInt(8, capacity);
+
+    this.capacity = capacity;
+    this.next = new AtomicInteger(0);
+    this.dropped = new AtomicInteger(0);
+    this.closed = false;
+  }
+
+  /**
+   * Records a sensor reading.
+   * 
+   * @param source Source of the reading, such as {@code LEFT_LIGHT}.
+   * @param timestampNanos Time at which the reading was taken, as given by
+   *        {@code System.nanoTime()}.
+   * @param sample Array holding the reading.
+   * @param offset Index of the first value of the reading in {@code sample}.
+   * @param length Number of values of the reading, at most {@code MAX_VALUES}.
+   */
+  public void record(int source, long timestampNanos, float[] sample, int offset, int length) {
+    int position = reserve();
+    if (position < 0)
+      return;
+
+    int count = Math.min(length, MAX_VALUES);
+    for (int i = 0; i < count; i++)
+      buffer.putFloat(position + 12 + 4 * i, sample[offset + i]);
+    commit(position, source | count << 16, timestampNanos);
+  }
+
+  /**
+   * Records the tacho counts of the motors.
+   * 
+   * @param timestampNanos Time at which the counts were read, as given by
+   *        {@code System.nanoTime()}.
+   * @param leftTacho Tacho count of the left motor.
+   * @param rightTacho Tacho count of the right motor.
+   */
+  public void recordTachos(long timestampNanos, int leftTacho, int rightTacho) {
+    int position = reserve();
+    if (position < 0)
+      return;
+
+    buffer.putInt(position + 12, leftTacho);
+    buffer.putInt(position + 16, rightTacho);
+    commit(position, TACHOS | 2 << 16, timestampNanos);
+  }
+
+  /**
+   * Returns the number of records written so far.
+   * 
+   * @return Number of records in the log.
+   */
+  public int getRecordCount() {
+    return Math.min(next.get(), capacity);
+  }
+
+  /**
+   * Returns the number of samples dropped because the log was full or closed.
+   * 
+   * @return Number of dropped samples.
+   */
+  public int getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Flushes the log to the file and closes it. Samples recorded afterwards are dropped.
+   */
+  public synchronized void close() {
+    if (closed)
+      return;
+    closed = true;
+
+    buffer.force();
+    try {
+      file.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Reserves a record and returns its position in the buffer, or -1 if the log is full or closed.
+   */
+  private int reserve() {
+    if (closed) {
+      dropped.incrementAndGet();
+      return -1;
+    }
+
+    int index = next.getAndIncrement();
+    if (index >= capacity) {
+      next.set(capacity); // Keep the counter from overflowing on long runs
+      dropped.incrementAndGet();
+      return -1;
+    }
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  /*
+   * Completes a record by writing its timestamp and then its source and size.
+   */
+  private void commit(int position, int header, long timestampNanos) {
+    buffer.putLong(position, timestampNanos);
+    buffer.putInt(position + 8, header);
+  }
+
+}
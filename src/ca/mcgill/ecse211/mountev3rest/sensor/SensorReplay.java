@@ -0,0 +1,347 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import lejos.robotics.SampleProvider;
+
+/**
+ * Plays back a log written by a {@code SensorRecorder}.
+ * <p>
+ * Every source of the log is exposed as a {@code SampleProvider}, so the pollers can be created on
+ * top of the replay instead of the sensors and the rest of the code runs unchanged on the recorded
+ * data, on the robot or on any computer. Tacho counts are provided as a two value sample holding
+ * the left and right counts, and through two read-only {@code Motor} objects, so an
+ * {@code Odometer} can be created on the replay as well and the logic that depends on the pose,
+ * such as the odometry correction or the localization, can be run again on a log.
+ * <p>
+ * The replay runs in one of two modes. In timed mode, the log is played back at a multiple of the
+ * speed at which it was recorded, and every provider returns the latest sample recorded before the
+ * current replay time. In step mode, selected with a speed of 0, every fetch of a provider returns
+ * the next sample of its source regardless of the time, which makes the replay deterministic. In
+ * both modes the last sample of a source is repeated once the log is exhausted.
+ * 
+ * @see SensorRecorder
+ * @author angelortiz
+ *
+ */
+public class SensorReplay {
+
+  // Constants
+  private static final int SOURCES = SensorRecorder.TACHOS + 1;
+
+  // Attributes
+  private final Track[] tracks;
+  private final double speed;
+  private final long firstTimestamp; // Timestamp of the first record of the log
+  private long startNanos; // Time at which the replay started
+  private boolean started;
+  private boolean pairPending; // First pair reached by the right motor, not read by the left one
+
+  /**
+   * Loads a log into memory.
+   * 
+   * @param path Path of the log file.
+   * @param speed Speed of the replay relative to the recording, or 0 to replay in step mode.
+   * @throws IOException If the file cannot be read or is not a sensor log.
+   */
+  public SensorReplay(String path, double speed) throws IOException {
+    if (!(speed >= 0))
+      throw new IllegalArgumentException("The replay speed cannot be negative.");
+    this.speed = speed;
+    this.started = false;
+
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      MappedByteBuffer buffer =
+          file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.limit() < SensorRecorder.HEADER_SIZE
+          || buffer.getInt(0) != SensorRecorder.FILE_MAGIC
+          || buffer.getInt(4) != SensorRecorder.RECORD_SIZE)
+        throw new IOException("Not a sensor log: " + path);
+
+      int records = (buffer.limit() - SensorRecorder.HEADER_SIZE) / SensorRecorder.RECORD_SIZE;
+
+      // First pass to size the tracks, stopping at the first incomplete record
+      int[] counts = new int[SOURCES];
+      int[] sizes = new int[SOURCES];
+      int total = 0;
+      for (; total < records; total++) {
+        int header = buffer.getInt(position(total) + 8);
+        int source = header & 0xFFFF;
+        if (source <= 0 || source >= SOURCES)
+          break;
+        counts[source]++;
+        sizes[source] = Math.max(sizes[source], header >>> 16);
+      }
+
+      tracks = new Track[SOURCES];
+      for (int source = 1; source < SOURCES; source++)
+        tracks[source] = new Track(counts[source],
+            sizes[source] > 0 ? sizes[source] : defaultSize(source));
+
+      // Second pass to load the samples
+      long first = 0;
+      for (int i = 0; i < total; i++) {
+        int position = position(i);
+        int source = buffer.getInt(position + 8) & 0xFFFF;
+        long timestamp = buffer.getLong(position);
+        if (i == 0)
+          first = timestamp;
+
+        Track track = tracks[source];
+        int offset = track.count * track.size;
+        for (int j = 0; j < track.size; j++) {
+          if (source == SensorRecorder.TACHOS)
+            track.values[offset + j] = buffer.getInt(position + 12 + 4 * j);
+          else
+            track.values[offset + j] = buffer.getFloat(position + 12 + 4 * j);
+        }
+        track.timestamps[track.count++] = timestamp;
+      }
+      firstTimestamp = first;
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Starts the replay. In timed mode, the replay time is measured from this call. If it is not
+   * called explicitly, the replay starts on the first fetch.
+   */
+  public synchronized void start() {
+    startNanos = System.nanoTime();
+    started = true;
+    for (int source = 1; source < SOURCES; source++)
+      tracks[source].cursor = -1;
+  }
+
+  /**
+   * Returns a provider of the samples of a source.
+   * 
+   * @param source One of the sources defined by {@code SensorRecorder}.
+   * @return Provider of the recorded samples.
+   */
+  public SampleProvider getProvider(int source) {
+    if (source <= 0 || source >= SOURCES)
+      throw new IllegalArgumentException("Unknown source: " + source);
+    return tracks[source];
+  }
+
+  /**
+   * Returns a motor whose tacho count is the left count of the {@code TACHOS} source. Reading it
+   * moves the replay of that source to its next pair of counts, or to the pair of the current time,
+   * as a fetch of its provider does, so the left motor must be read before the right one, as the
+   * {@code Odometer} does. Movement commands are ignored, since the recorded counts already include
+   * the movements of the run.
+   * 
+   * @return Read-only motor replaying the left tacho counts.
+   */
+  public Motor getLeftMotor() {
+    return new TachoMotor(0);
+  }
+
+  /**
+   * Returns a motor whose tacho count is the right count of the pair last read through the left
+   * motor, or the first pair if the left motor was not read yet.
+   * 
+   * @return Read-only motor replaying the right tacho counts.
+   * @see #getLeftMotor()
+   */
+  public Motor getRightMotor() {
+    return new TachoMotor(1);
+  }
+
+  /**
+   * Returns the number of samples of a source in the log.
+   * 
+   * @param source One of the sources defined by {@code SensorRecorder}.
+   * @return Number of recorded samples.
+   */
+  public int getSampleCount(int source) {
+    return tracks[source].count;
+  }
+
+  /**
+   * Returns the time at which the sample last returned by the provider of a source was recorded.
+   * Code analyzing the log can use it in place of the current time.
+   * 
+   * @param source One of the sources defined by {@code SensorRecorder}.
+   * @return Recorded timestamp, or {@code Long.MIN_VALUE} if no sample was returned yet.
+   */
+  public synchronized long getTimestamp(int source) {
+    Track track = tracks[source];
+    return track.cursor < 0 ? Long.MIN_VALUE : track.timestamps[track.cursor];
+  }
+
+  /**
+   * Indicates whether every sample of the log was returned.
+   * 
+   * @return True if every provider reached the last sample of its source.
+   */
+  public synchronized boolean isFinished() {
+    for (int source = 1; source < SOURCES; source++)
+      if (tracks[source].cursor < tracks[source].count - 1)
+        return false;
+    return true;
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static int position(int record) {
+    return SensorRecorder.HEADER_SIZE + record * SensorRecorder.RECORD_SIZE;
+  }
+
+  /*
+   * Number of values of the sources that are missing from the log.
+   */
+  private static int defaultSize(int source) {
+    return source == SensorRecorder.FRONT_LIGHT ? 3 : source == SensorRecorder.TACHOS ? 2 : 1;
+  }
+
+  /*
+   * Motor reporting one of the counts of the TACHOS source. Only the left motor advances the
+   * replay, so both counts of a pair are read together.
+   */
+  private class TachoMotor implements Motor {
+
+    private final int index; // Index of the count in the pair
+
+    private TachoMotor(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public int getTachoCount() {
+      Track track = tracks[SensorRecorder.TACHOS];
+      synchronized (SensorReplay.this) {
+        if (!started)
+          start();
+        if (index == 1 && track.cursor < 0) {
+          track.advance();
+          pairPending = true;
+        } else if (index == 0) {
+          if (!pairPending)
+            track.advance();
+          pairPending = false;
+        }
+        return track.cursor < 0 ? 0 : (int) track.values[track.cursor * track.size + index];
+      }
+    }
+
+    @Override
+    public boolean isMoving() {
+      return false;
+    }
+
+    @Override
+    public void forward() {
+    }
+
+    @Override
+    public void backward() {
+    }
+
+    @Override
+    public void stop(boolean immediateReturn) {
+    }
+
+    @Override
+    public void rotate(int angle) {
+    }
+
+    @Override
+    public void rotate(int angle, boolean immediateReturn) {
+    }
+
+    @Override
+    public void setSpeed(int speed) {
+    }
+
+    @Override
+    public void setAcceleration(int acceleration) {
+    }
+
+    @Override
+    public void waitComplete() {
+    }
+
+    @Override
+    public void synchronizeWith(Motor[] motors) {
+    }
+
+    @Override
+    public void startSynchronization() {
+    }
+
+    @Override
+    public void endSynchronization() {
+    }
+  }
+
+  /*
+   * Recorded samples of a single source.
+   */
+  private class Track implements SampleProvider {
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final int size;
+    private int count;
+    private int cursor; // Index of the sample last returned, -1 if none
+
+    private Track(int capacity, int size) {
+      this.timestamps = new long[capacity];
+      this.values = new float[capacity * size];
+      this.size = size;
+      this.count = 0;
+      this.cursor = -1;
+    }
+
+    @Override
+    public int sampleSize() {
+      return size;
+    }
+
+    @Override
+    public void fetchSample(float[] sample, int offset) {
+      synchronized (SensorReplay.this) {
+        if (!started)
+          start();
+        advance();
+
+        if (cursor < 0) {
+          for (int i = 0; i < size; i++)
+            sample[offset + i] = Float.NaN;
+        } else {
+          System.arraycopy(values, cursor * size, sample, offset, size);
+        }
+      }
+    }
+
+    /*
+     * Moves the cursor to the sample that must be returned now.
+     */
+    private void advance() {
+      if (count == 0)
+        return;
+
+      if (speed == 0) {
+        if (cursor < count - 1)
+          cursor++;
+        return;
+      }
+
+      long replayTime = firstTimestamp + (long) ((System.nanoTime() - startNanos) * speed);
+      if (cursor < 0)
+        cursor = 0; // Samples recorded before the first one of the source are not available
+      while (cursor < count - 1 && timestamps[cursor + 1] - replayTime <= 0)
+        cursor++;
+    }
+  }
+
+}
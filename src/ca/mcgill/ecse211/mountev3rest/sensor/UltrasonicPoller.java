@@ -1,43 +1,88 @@
 package ca.mcgill.ecse211.mountev3rest.sensor;
 
-import lejos.hardware.sensor.EV3UltrasonicSensor;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
 import lejos.robotics.SampleProvider;
-import lejos.robotics.filter.MeanFilter;
 
 /**
  * Provides an interface to obtain distance measurements from the ultrasonic sensor in centimeters.
  * <p>
  * The {@code UltrasonicPoller} class is implemented as a singleton to facilitate access to the
  * sensor to different parts of the code.
+ * <p>
+ * Readings go through a median filter over the last {@code WINDOW_SIZE} valid readings. Readings
+ * above {@code MAX_DISTANCE} are usually spurious echoes, so they are rejected unless
+ * {@code MAX_OUTLIERS} of them arrive in a row, in which case there really is nothing in front of
+ * the sensor and {@code MAX_DISTANCE} is reported. The filtered distance, the mean of the window
+ * and the timestamp of the reading selected by the median are published in a {@code SampleSlot},
+ * so reading them never blocks.
+ * <p>
+ * By default the sensor is read once per call to {@code poll()}. Once {@code startSampling()} is
+ * called, a task of the scheduler of the robot reads it periodically and {@code poll()} simply
+ * returns the latest filtered distance.
  * 
  * @author angelortiz
  *
  */
 public class UltrasonicPoller {
 
+  // Constants
+  private static final int MAX_DISTANCE = 255; // Largest meaningful distance in centimeters
+  private static final int MAX_OUTLIERS = 5; // Consecutive readings past MAX_DISTANCE accepted
+  private static final int WINDOW_SIZE = 5; // Number of readings in the median filter
+
+  // Indexes of the published values
+  private static final int RAW = 0;
+  private static final int MEDIAN = 1;
+  private static final int MEAN = 2;
+
   // Attributes
   // Singleton instance
   private static UltrasonicPoller usPoller = null;
-  private int filter;
-  private static final int FILTER_MIN = 30;
 
   private SampleProvider sp;
-  private MeanFilter mf;
   private float[] buffer;
 
-  // Constants
-  private final static int MEAN_SIZE = 3;
+  // Filter state, only accessed while holding the lock of the poller
+  private final int[] window; // Ring buffer of the last valid readings
+  private final long[] windowTimes;
+  private final int[] order; // Indexes of the window sorted by distance
+  private int windowNext;
+  private int windowCount;
+  private int outliers; // Number of consecutive readings past MAX_DISTANCE
+  private float[] published;
+
+  // Latest filtered values
+  private SampleSlot slot;
+
+  // Background sampling
+  private PeriodicScheduler.Task samplingTask;
+  private volatile boolean sampling;
+
+  private volatile SensorRecorder recorder; // Null unless the readings are being recorded
 
   /**
-   * Creates a poller that used the provided ultrasonic sensor to get samples.
+   * Creates a poller that reads its samples from the given provider. On the robot this is the
+   * {@code Distance} mode of the {@code EV3UltrasonicSensor}, but it can also be a
+   * {@code SensorReplay} or {@code SimulatedSensor} object. Unlike the factory method, the
+   * constructor always creates a new instance, so each robot can own its poller through a
+   * {@code RobotContext}.
    * 
-   * @param usSensor
+   * @param provider Provider of the {@code Distance} readings of the sensor, in meters.
    */
-  private UltrasonicPoller(EV3UltrasonicSensor usSensor) {
-    sp = usSensor.getMode("Distance");
-    mf = new MeanFilter(sp, MEAN_SIZE);
-
+  public UltrasonicPoller(SampleProvider provider) {
+    sp = provider;
     buffer = new float[sp.sampleSize()];
+
+    window = new int[WINDOW_SIZE];
+    windowTimes = new long[WINDOW_SIZE];
+    order = new int[WINDOW_SIZE];
+    windowNext = 0;
+    windowCount = 0;
+    outliers = 0;
+    published = new float[3];
+    slot = new SampleSlot(published.length);
+    sampling = false;
   }
 
   /**
@@ -45,12 +90,12 @@ public class UltrasonicPoller {
    * returns the existing instance. This method is the factory method for the singleton
    * {@code LightPoller} class.
    * 
-   * @param usSensor Ultrasonic sensor that will be used for polling.
+   * @param provider Provider of the {@code Distance} readings of the sensor, in meters.
    * @return New or existing instance of the {@code UltrasonicPoller} object.
    */
-  public static UltrasonicPoller getUltrasonicPoller(EV3UltrasonicSensor usSensor) {
+  public static UltrasonicPoller getUltrasonicPoller(SampleProvider provider) {
     if (usPoller == null) {
-      usPoller = new UltrasonicPoller(usSensor);
+      usPoller = new UltrasonicPoller(provider);
       return usPoller;
     } else {
       return usPoller;
@@ -67,51 +112,195 @@ public class UltrasonicPoller {
     if (usPoller == null)
       throw new PollerException(
           "The singleton UltrasonicPoller class has not been instantiated yet."
-              + "Three EV3ColorSensor instances must be provided to the factory method.");
+              + "A SampleProvider instance must be provided to the factory method.");
     else
       return usPoller;
   }
 
   /**
-   * Gets an updated reading of the ultrasonic sensor in centimeters.
+   * Schedules a task that reads the sensor every {@code periodMillis} milliseconds. From then on
+   * {@code poll()} and {@code pollMean()} return the latest filtered values without accessing the
+   * sensor. The task runs at the {@code SAMPLING} priority of the scheduler, so the time spent
+   * waiting for the sensor does not delay the odometer.
    * 
-   * @return Updated raw reading in centimeters.
+   * @param scheduler Scheduler running the periodic tasks of the robot, such as the one returned by
+   *        {@code RobotContext.getScheduler()}. The sensor is read once it is started.
+   * @param periodMillis Time between readings in milliseconds.
    */
-  public int poll() {
-    sp.fetchSample(buffer, 0);
-    int distance = (int) (buffer[0] * 100);
-    
-    while(distance > 255 && filter <= FILTER_MIN) {
-      sp.fetchSample(buffer, 0);
-      distance = (int) (buffer[0] * 100);
-    
-      if (distance > 255)
-        filter++;
-      else
-        filter = 0;
-      
-      try {
-        Thread.sleep(50);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+  public synchronized void startSampling(PeriodicScheduler scheduler, long periodMillis) {
+    if (sampling)
+      return;
+
+    samplingTask = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        sample();
       }
-    }
-    
-    return distance > 255? 255 : distance;
+    }, periodMillis, Priority.SAMPLING);
+    sampling = true;
+  }
+
+  /**
+   * Cancels the sampling task. The sensor is read by {@code poll()} again afterwards.
+   */
+  public synchronized void stopSampling() {
+    if (!sampling)
+      return;
+
+    samplingTask.cancel();
+    samplingTask = null;
+    sampling = false;
+  }
+
+  /**
+   * Indicates whether the sensor is being read by the sampling task.
+   * 
+   * @return True if {@code startSampling()} was called and sampling was not stopped.
+   */
+  public boolean isSampling() {
+    return sampling;
   }
 
   /**
-   * Gets an updated mean of the most recent ultrasonic sensor readings in centimeters.
+   * Gets an updated reading of the ultrasonic sensor in centimeters. The method never waits: if the
+   * sampling thread is running it returns the latest filtered distance, otherwise it reads the
+   * sensor once.
+   * 
+   * @return Median of the most recent valid readings in centimeters.
+   */
+  public int poll() {
+    if (!sampling)
+      sample();
+    return getDistance();
+  }
+
+  /**
+   * Gets an updated mean of the most recent ultrasonic sensor readings in centimeters. The method
+   * never waits: if the sampling thread is running it returns the latest mean, otherwise it reads
+   * the sensor once.
    * 
    * @return Updated mean reading in centimeters.
    */
   public int pollMean() {
-    // Poll MEAN_SIZE times to get an updated mean
-    for (int i = 0; i < MEAN_SIZE; i++) {
-      mf.fetchSample(buffer, 0);
+    if (!sampling)
+      sample();
+    float mean = slot.get(MEAN);
+    return Float.isNaN(mean) ? MAX_DISTANCE : Math.round(mean);
+  }
+
+  /**
+   * Returns the latest filtered distance without accessing the sensor.
+   * 
+   * @return Median of the most recent valid readings in centimeters, or {@code MAX_DISTANCE} if the
+   *         sensor has not been read yet.
+   */
+  public int getDistance() {
+    float median = slot.get(MEDIAN);
+    return Float.isNaN(median) ? MAX_DISTANCE : (int) median;
+  }
+
+  /**
+   * Returns the latest reading of the sensor before filtering.
+   * 
+   * @return Raw reading in centimeters, which may exceed {@code MAX_DISTANCE}.
+   */
+  public int getRawDistance() {
+    float raw = slot.get(RAW);
+    return Float.isNaN(raw) ? MAX_DISTANCE : (int) raw;
+  }
+
+  /**
+   * Returns the time at which the reading selected by the median filter was taken. This is the
+   * moment the distance returned by {@code getDistance()} was measured.
+   * 
+   * @return Timestamp as given by {@code System.nanoTime()}.
+   */
+  public long getTimestamp() {
+    return slot.getTimestamp();
+  }
+
+  /**
+   * Returns the number of times the sensor was read.
+   * 
+   * @return Number of readings.
+   */
+  public long getSampleCount() {
+    return slot.getSequence();
+  }
+
+  /**
+   * Sets the recorder to which the raw readings of the sensor are written.
+   * 
+   * @param recorder Recorder of the readings, or null to stop recording.
+   * 
+   * @see SensorRecorder
+   */
+  public void setRecorder(SensorRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Reads the sensor, updates the filter and publishes the result. Synchronized so that the slot
+   * only ever has one writer.
+   */
+  private synchronized void sample() {
+    long time = System.nanoTime();
+    sp.fetchSample(buffer, 0);
+    SensorRecorder recorder = this.recorder;
+    if (recorder != null)
+      recorder.record(SensorRecorder.ULTRASONIC, time, buffer, 0, 1);
+    float raw = buffer[0] * 100;
+
+    // Reject isolated readings past the maximum distance
+    if (!(raw <= MAX_DISTANCE)) { // Also catches NaN and infinity
+      if (++outliers < MAX_OUTLIERS && windowCount > 0) {
+        publish(raw);
+        return;
+      }
+      add(MAX_DISTANCE, time);
+    } else {
+      outliers = 0;
+      add((int) raw, time);
+    }
+
+    publish(raw);
+  }
+
+  /*
+   * Appends a valid reading to the window.
+   */
+  private void add(int distance, long time) {
+    window[windowNext] = distance;
+    windowTimes[windowNext] = time;
+    windowNext = (windowNext + 1) % WINDOW_SIZE;
+    if (windowCount < WINDOW_SIZE)
+      windowCount++;
+  }
+
+  /*
+   * Computes the median and mean of the window and publishes them.
+   */
+  private void publish(float raw) {
+    // Insertion sort of the window indexes by distance
+    int sum = 0;
+    for (int i = 0; i < windowCount; i++) {
+      int index = i;
+      int j = i - 1;
+      while (j >= 0 && window[order[j]] > window[index]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = index;
+      sum += window[index];
     }
-    return (int) (buffer[0] * 100);
+
+    int median = order[windowCount / 2];
+    published[RAW] = raw;
+    published[MEDIAN] = window[median];
+    published[MEAN] = (float) sum / windowCount;
+    slot.publish(published, windowTimes[median]);
   }
 
 }
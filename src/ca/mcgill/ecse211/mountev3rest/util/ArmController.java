@@ -1,10 +1,10 @@
 package ca.mcgill.ecse211.mountev3rest.util;
 
+import ca.mcgill.ecse211.mountev3rest.hardware.Feedback;
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import ca.mcgill.ecse211.mountev3rest.navigation.DifferentialDrive;
 import ca.mcgill.ecse211.mountev3rest.navigation.Navigation;
 import ca.mcgill.ecse211.mountev3rest.sensor.ColorDetector;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
 
 /**
  * Provides a set of methods to perform the basic subtasks required for ring collection.
@@ -19,42 +19,36 @@ public class ArmController {
 
   // Constants
   private static final double DISTANCE_TO_TREE = 16.8;
-  private static final int COLOR_DETECTION_PERIOD = 15;
   private static final int FORWARD_SPEED = 100;
   private static final int OPEN_ANGLE = 83;
   private final double SENSOR_OFFSET;
   private static final double BACK_CORRECTION = -2;
 
-  private EV3MediumRegulatedMotor colorSensorMotor;
-  private EV3MediumRegulatedMotor armMotor;
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
-  private Navigation navigation;
+  private Motor colorSensorMotor;
+  private Motor armMotor;
+  private DifferentialDrive drive;
   private ColorDetector colorDetector;
+  private Feedback feedback;
 
   /**
    * Creates an {@code ArmController} that will operate on the provided motors.
    * 
    * @param colorSensorMotor Motor that will be used to control the light sensor.
    * @param armMotor Motor that will be used to control movement of the arm's claw.
-   * @param leftMotor Left motor used to displace the robot.
-   * @param rightMotor Right motor used to displace the robot.
-   * @param navigation Navigation object used to move the robot the robot to different points on the
-   *        grid.
+   * @param navigation Navigation object whose drive is used to approach the tree.
    * @param colorDetector Object used to classify the reading of the light sensor into colors.
+   * @param feedback Feedback through which the color of a ring is signaled.
    * 
    * @see ColorDetector
    */
-  public ArmController(EV3MediumRegulatedMotor colorSensorMotor, EV3MediumRegulatedMotor armMotor,
-      EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor, Navigation navigation,
-      ColorDetector colorDetector, final double SENSOR_OFFSET) {
+  public ArmController(Motor colorSensorMotor, Motor armMotor, Navigation navigation,
+      ColorDetector colorDetector, final double SENSOR_OFFSET, Feedback feedback) {
     this.colorSensorMotor = colorSensorMotor;
     this.armMotor = armMotor;
-    this.leftMotor = leftMotor;
-    this.rightMotor = rightMotor;
-    this.navigation = navigation;
+    this.drive = navigation.getDrive();
     this.colorDetector = colorDetector;
     this.SENSOR_OFFSET = SENSOR_OFFSET;
+    this.feedback = feedback;
   }
 
   /**
@@ -76,38 +70,31 @@ public class ArmController {
     colorSensorMotor.rotate(-45, false);
 
     // Approach the tree
-    leftMotor.setSpeed((int) (FORWARD_SPEED * navigation.MOTOR_OFFSET));
-    rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, DISTANCE_TO_TREE), true);
-    rightMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS, DISTANCE_TO_TREE), false);
+    drive.setSpeed(FORWARD_SPEED);
+    drive.drive(DISTANCE_TO_TREE);
 
     // Sweep the color sensor to detect the ring color
     colorSensorMotor.setSpeed(10);
-    int colorDetected = 5; // 5 means no detection
+    int colorDetected = ColorDetector.NONE;
     int startTacho = colorSensorMotor.getTachoCount();
 
     colorSensorMotor.rotate(80, true);
 
-    // Check for color until the motor finished the sweep
+    // Check for color until the motor finished the sweep. The detector paces its own readings, so
+    // a new decision is started as soon as the previous one is taken.
     while (colorSensorMotor.isMoving()) {
       // Keep checking for color if no one has been detected
       colorDetected = colorDetector.getColor();
-      if (colorDetected != 5) {
+      if (colorDetected != ColorDetector.NONE) {
         colorSensorMotor.stop(true);
         break;
       }
-
-      try {
-        Thread.sleep(COLOR_DETECTION_PERIOD);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
     }
 
     // If a color is detected stop the sweeping and beep
-    if (colorDetected != 5) {
+    if (colorDetected != ColorDetector.NONE) {
       for (int j = 0; j < colorDetected; j++)
-        Sound.beep();
+        feedback.beep();
     }
 
     // Reverse the rotation of the motor location
@@ -122,10 +109,7 @@ public class ArmController {
     colorSensorMotor.rotate(45, false);
 
     // Go back to the original point
-    leftMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS,
-        -(DISTANCE_TO_TREE + BACK_CORRECTION)), true);
-    rightMotor.rotate(Navigation.convertDistance(navigation.WHEEL_RADIUS,
-        -(DISTANCE_TO_TREE + BACK_CORRECTION)), false);
+    drive.drive(-(DISTANCE_TO_TREE + BACK_CORRECTION));
   }
 
   /**
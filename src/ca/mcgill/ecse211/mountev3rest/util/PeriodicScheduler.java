@@ -0,0 +1,364 @@
+package ca.mcgill.ecse211.mountev3rest.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a set of periodic tasks at a fixed rate using absolute deadlines.
+ * <p>
+ * Each task is executed once per period. The deadlines are computed from {@code System.nanoTime()}
+ * by adding the period to the previous deadline rather than to the time at which the task finished,
+ * so the execution time of the task and the resolution of the sleep do not accumulate into drift.
+ * If a task takes longer than its period, the missed periods are skipped and counted as overruns.
+ * <p>
+ * Tasks are grouped by {@code Priority}. Every priority level is served by a single worker thread
+ * running at the corresponding thread priority, and tasks sharing a level are interleaved on that
+ * thread in deadline order. Tasks that block for long periods of time (such as the navigation
+ * turning in place) should therefore not share a level with tasks that must run on time (such as
+ * the odometer). Reading a sensor also blocks for up to a few milliseconds on its serial port, so
+ * the pollers sample on a level of their own.
+ * <p>
+ * A worker thread exits once all the tasks of its level are cancelled, and {@code shutdown()}
+ * cancels every task and waits for the workers to exit, so a scheduler does not keep the JVM
+ * running after the robot it served is done. A task that keeps throwing exceptions is cancelled
+ * after {@code MAX_CONSECUTIVE_FAILURES} failed iterations in a row, and its failures are counted
+ * next to its timing statistics.
+ * 
+ * @author angelortiz
+ * 
+ */
+public class PeriodicScheduler {
+
+  // Constants
+  public static final int MAX_CONSECUTIVE_FAILURES = 10; // Failed iterations before cancelling
+
+  // Attributes
+  private final Worker[] workers;
+  private boolean started;
+  private boolean shutdown;
+
+  /**
+   * Creates a scheduler with no tasks. Tasks are added through {@code schedule()} and start running
+   * once {@code start()} is called.
+   */
+  public PeriodicScheduler() {
+    workers = new Worker[Priority.values().length];
+    started = false;
+    shutdown = false;
+  }
+
+  /**
+   * Adds a task to the scheduler. If the scheduler is already running the task starts on its next
+   * deadline, which is one period from now.
+   * 
+   * @param task Task to run. Its {@code run()} method must perform a single iteration and return.
+   * @param periodMillis Period of the task in milliseconds.
+   * @param priority Priority of the task.
+   * @return Handle used to query the timing statistics of the task or cancel it.
+   * @throws IllegalStateException If the scheduler was shut down.
+   */
+  public synchronized Task schedule(Runnable task, long periodMillis, Priority priority) {
+    if (shutdown)
+      throw new IllegalStateException("The scheduler was shut down.");
+    Task handle = new Task(task, periodMillis * 1000000L);
+
+    // Replace the worker of the level if it exited after its last task was cancelled
+    Worker worker = workers[priority.ordinal()];
+    if (worker == null || !worker.add(handle)) {
+      worker = new Worker(priority);
+      workers[priority.ordinal()] = worker;
+      worker.add(handle);
+      if (started)
+        worker.start();
+    }
+
+    return handle;
+  }
+
+  /**
+   * Starts running the scheduled tasks.
+   */
+  public synchronized void start() {
+    if (started || shutdown)
+      return;
+    started = true;
+
+    for (Worker worker : workers)
+      if (worker != null)
+        worker.start();
+  }
+
+  /**
+   * Cancels every task and waits for the iterations in progress to finish. The worker threads exit
+   * and no task can be scheduled afterwards. If called from one of the tasks, the method does not
+   * wait for the iteration of that task.
+   */
+  public void shutdown() {
+    Worker[] stopped;
+    synchronized (this) {
+      shutdown = true;
+      stopped = workers.clone();
+    }
+
+    for (Worker worker : stopped)
+      if (worker != null)
+        worker.shutdown();
+
+    for (Worker worker : stopped) {
+      if (worker == null || worker == Thread.currentThread() || !worker.isAlive())
+        continue;
+      while (true) {
+        try {
+          worker.join();
+          break;
+        } catch (InterruptedException e) {
+          // there is nothing to be done
+        }
+      }
+    }
+  }
+
+  /**
+   * Indicates whether {@code shutdown()} was called.
+   * 
+   * @return True if the scheduler was shut down.
+   */
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * Priority levels of the scheduled tasks. Each level runs on its own thread.
+   */
+  public enum Priority {
+    /** Time critical tasks such as odometry. */
+    HIGH(Thread.MAX_PRIORITY),
+    /** Sampling of the sensors, which blocks while the sensors are read. */
+    SAMPLING(Thread.MAX_PRIORITY - 1),
+    /** Control tasks such as navigation. */
+    NORMAL(Thread.NORM_PRIORITY),
+    /** Tasks that can tolerate delays such as the display. */
+    LOW(Thread.MIN_PRIORITY);
+
+    private final int threadPriority;
+
+    private Priority(int threadPriority) {
+      this.threadPriority = threadPriority;
+    }
+  }
+
+  /**
+   * Handle to a scheduled task. Provides the timing statistics collected while running the task.
+   * The jitter of an iteration is the delay between its deadline and the moment it actually
+   * started.
+   */
+  public static class Task {
+
+    private final Runnable runnable;
+    private final long period;
+    private long deadline;
+    private volatile boolean cancelled;
+
+    // Statistics
+    private volatile long iterations;
+    private volatile long overruns;
+    private volatile long maxJitter;
+    private volatile long totalJitter;
+    private volatile long failures;
+    private volatile RuntimeException lastFailure;
+    private int consecutiveFailures;
+
+    private Task(Runnable runnable, long period) {
+      this.runnable = runnable;
+      this.period = period;
+      this.deadline = System.nanoTime() + period;
+      this.cancelled = false;
+    }
+
+    /**
+     * Stops running the task. An iteration already in progress is allowed to finish.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Indicates whether the task was cancelled.
+     * 
+     * @return True if {@code cancel()} was called on this task.
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Returns the period of the task.
+     * 
+     * @return Period in nanoseconds.
+     */
+    public long getPeriodNanos() {
+      return period;
+    }
+
+    /**
+     * Returns the number of iterations executed so far.
+     * 
+     * @return Number of iterations.
+     */
+    public long getIterations() {
+      return iterations;
+    }
+
+    /**
+     * Returns the number of times an iteration finished after the deadline of the next one.
+     * 
+     * @return Number of overruns.
+     */
+    public long getOverruns() {
+      return overruns;
+    }
+
+    /**
+     * Returns the number of iterations that threw an exception.
+     * 
+     * @return Number of failed iterations.
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    /**
+     * Returns the exception thrown by the last failed iteration.
+     * 
+     * @return Last exception thrown by the task, or null if it never failed.
+     */
+    public RuntimeException getLastFailure() {
+      return lastFailure;
+    }
+
+    /**
+     * Returns the largest delay observed between a deadline and the start of its iteration.
+     * 
+     * @return Maximum jitter in nanoseconds.
+     */
+    public long getMaxJitterNanos() {
+      return maxJitter;
+    }
+
+    /**
+     * Returns the average delay between a deadline and the start of its iteration.
+     * 
+     * @return Mean jitter in nanoseconds.
+     */
+    public long getMeanJitterNanos() {
+      long n = iterations;
+      return n == 0 ? 0 : totalJitter / n;
+    }
+
+    /*
+     * Runs one iteration and computes the next deadline. Only called by the worker thread.
+     */
+    private void execute() {
+      long start = System.nanoTime();
+      long jitter = start - deadline;
+      if (jitter > maxJitter)
+        maxJitter = jitter;
+      totalJitter += jitter;
+
+      try {
+        runnable.run();
+        consecutiveFailures = 0;
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        lastFailure = e;
+        failures++;
+        if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES)
+          cancelled = true;
+      }
+      iterations++;
+
+      // Advance to the next deadline, skipping the periods that were missed
+      long end = System.nanoTime();
+      deadline += period;
+      if (end - deadline > 0) {
+        overruns++;
+        deadline += ((end - deadline) / period + 1) * period;
+      }
+    }
+  }
+
+  /*
+   * Thread serving all the tasks of a single priority level.
+   */
+  private static class Worker extends Thread {
+
+    private final List<Task> tasks;
+    private boolean exited; // True once the worker has no task left and no longer accepts any
+
+    private Worker(Priority priority) {
+      super("scheduler-" + priority.name().toLowerCase());
+      this.tasks = new ArrayList<Task>();
+      setPriority(priority.threadPriority);
+    }
+
+    /*
+     * Adds a task to the worker. Returns false if the worker already exited, in which case the task
+     * must be given to a new worker.
+     */
+    private synchronized boolean add(Task task) {
+      if (exited)
+        return false;
+      tasks.add(task);
+      notifyAll(); // Let the worker recompute its next deadline
+      return true;
+    }
+
+    /*
+     * Cancels the tasks of the worker and wakes it up so it exits.
+     */
+    private synchronized void shutdown() {
+      for (Task task : tasks)
+        task.cancel();
+      notifyAll();
+    }
+
+    @Override
+    public void run() {
+      Task next;
+      while ((next = waitNextTask()) != null)
+        next.execute();
+    }
+
+    /*
+     * Blocks until the deadline of the earliest task and returns it, or returns null once every
+     * task was cancelled.
+     */
+    private synchronized Task waitNextTask() {
+      while (true) {
+        Task next = null;
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+          Task task = tasks.get(i);
+          if (task.cancelled)
+            tasks.remove(i);
+          else if (next == null || task.deadline - next.deadline <= 0)
+            next = task;
+        }
+        if (next == null) {
+          exited = true;
+          return null;
+        }
+
+        long remaining = next.deadline - System.nanoTime();
+        if (remaining <= 0)
+          return next;
+
+        try {
+          wait(remaining / 1000000L, (int) (remaining % 1000000L));
+        } catch (InterruptedException e) {
+          // there is nothing to be done
+        }
+      }
+    }
+  }
+
+}
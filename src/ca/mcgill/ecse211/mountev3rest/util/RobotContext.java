@@ -0,0 +1,214 @@
+package ca.mcgill.ecse211.mountev3rest.util;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.EV3Feedback;
+import ca.mcgill.ecse211.mountev3rest.hardware.Feedback;
+import ca.mcgill.ecse211.mountev3rest.hardware.SilentFeedback;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.navigation.OdometerException;
+import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
+import ca.mcgill.ecse211.mountev3rest.sensor.SensorRecorder;
+import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
+
+/**
+ * Groups the components shared by the classes that control a single robot: the {@code Odometer},
+ * the {@code LightPoller}, the {@code UltrasonicPoller} and the {@code PeriodicScheduler} running
+ * their periodic tasks.
+ * <p>
+ * Classes such as the {@code Navigation} or the {@code Localizer} obtain these components from the
+ * context they are created with instead of from the singleton factories. Creating a separate
+ * context for each robot therefore allows several robots, for instance simulated ones, to run in
+ * the same JVM without sharing any state.
+ * <p>
+ * The context returned by {@code getDefault()} resolves its components through the singleton
+ * factories, which keeps the behavior of the constructors that do not take a context unchanged.
+ * <p>
+ * Once the robot is done, {@code close()} stops the sampling of the pollers and shuts down the
+ * scheduler, so no thread of the robot is left running. This allows a JVM to run one simulated
+ * robot after another, each in its own context. It also closes the {@code SensorRecorder} set
+ * through {@code setRecorder()}, which flushes the log of the run to its file.
+ * 
+ * @see ca.mcgill.ecse211.mountev3rest.controller.DomainController
+ * @author angelortiz
+ *
+ */
+public class RobotContext implements AutoCloseable {
+
+  // Attributes
+  private static final RobotContext DEFAULT = new RobotContext();
+  private final Odometer odometer;
+  private final LightPoller lightPoller;
+  private final UltrasonicPoller usPoller;
+  private final PeriodicScheduler scheduler;
+  private final Feedback feedback;
+  private final boolean useSingletons;
+  private SensorRecorder recorder;
+
+  /**
+   * Creates a context holding the given components, for a robot that gives no feedback. Components
+   * that a robot does not use can be left {@code null}, in which case requesting them throws the
+   * corresponding exception.
+   * 
+   * @param odometer Odometer of the robot.
+   * @param lightPoller Poller for the light sensors of the robot.
+   * @param usPoller Poller for the ultrasonic sensor of the robot.
+   */
+  public RobotContext(Odometer odometer, LightPoller lightPoller, UltrasonicPoller usPoller) {
+    this(odometer, lightPoller, usPoller, new SilentFeedback());
+  }
+
+  /**
+   * Creates a context holding the given components and giving feedback through the given object.
+   * 
+   * @param odometer Odometer of the robot.
+   * @param lightPoller Poller for the light sensors of the robot.
+   * @param usPoller Poller for the ultrasonic sensor of the robot.
+   * @param feedback Feedback given by the robot, such as an {@code EV3Feedback} on the brick.
+   */
+  public RobotContext(Odometer odometer, LightPoller lightPoller, UltrasonicPoller usPoller,
+      Feedback feedback) {
+    this.odometer = odometer;
+    this.lightPoller = lightPoller;
+    this.usPoller = usPoller;
+    this.scheduler = new PeriodicScheduler();
+    this.feedback = feedback;
+    this.useSingletons = false;
+  }
+
+  /*
+   * Creates the default context.
+   */
+  private RobotContext() {
+    this.odometer = null;
+    this.lightPoller = null;
+    this.usPoller = null;
+    this.scheduler = new PeriodicScheduler();
+    this.feedback = new EV3Feedback();
+    this.useSingletons = true;
+  }
+
+  /**
+   * Returns the context backed by the singleton instances of the components.
+   * 
+   * @return Default {@code RobotContext}.
+   */
+  public static RobotContext getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the odometer of the robot.
+   * 
+   * @return The {@code Odometer} of this context.
+   * @throws OdometerException If the context has no odometer.
+   */
+  public Odometer getOdometer() throws OdometerException {
+    if (useSingletons)
+      return Odometer.getOdometer();
+    if (odometer == null)
+      throw new OdometerException("This RobotContext was created without an Odometer.");
+    return odometer;
+  }
+
+  /**
+   * Returns the poller for the light sensors of the robot.
+   * 
+   * @return The {@code LightPoller} of this context.
+   * @throws PollerException If the context has no light poller.
+   */
+  public LightPoller getLightPoller() throws PollerException {
+    if (useSingletons)
+      return LightPoller.getLightPoller();
+    if (lightPoller == null)
+      throw new PollerException("This RobotContext was created without a LightPoller.");
+    return lightPoller;
+  }
+
+  /**
+   * Returns the poller for the ultrasonic sensor of the robot.
+   * 
+   * @return The {@code UltrasonicPoller} of this context.
+   * @throws PollerException If the context has no ultrasonic poller.
+   */
+  public UltrasonicPoller getUltrasonicPoller() throws PollerException {
+    if (useSingletons)
+      return UltrasonicPoller.getUltrasonicPoller();
+    if (usPoller == null)
+      throw new PollerException("This RobotContext was created without an UltrasonicPoller.");
+    return usPoller;
+  }
+
+  /**
+   * Returns the scheduler running the periodic tasks of the robot, such as the odometer, the
+   * navigation and the sampling of the sensors.
+   * 
+   * @return The {@code PeriodicScheduler} of this context.
+   */
+  public PeriodicScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Returns the feedback given by the robot. The default context beeps through the speaker of the
+   * brick.
+   * 
+   * @return The {@code Feedback} of this context.
+   */
+  public Feedback getFeedback() {
+    return feedback;
+  }
+
+  /**
+   * Records the readings of the pollers and the tacho counts read by the odometer of the robot.
+   * Components missing from the context are not recorded. The recorder is closed along with the
+   * context.
+   * 
+   * @param recorder Recorder where the readings are written.
+   */
+  public synchronized void setRecorder(SensorRecorder recorder) {
+    this.recorder = recorder;
+    try {
+      getOdometer().setRecorder(recorder);
+    } catch (OdometerException e) {
+      // there is nothing to be done
+    }
+    try {
+      getLightPoller().setRecorder(recorder);
+    } catch (PollerException e) {
+      // there is nothing to be done
+    }
+    try {
+      getUltrasonicPoller().setRecorder(recorder);
+    } catch (PollerException e) {
+      // there is nothing to be done
+    }
+  }
+
+  /**
+   * Stops the sampling of the pollers and shuts down the scheduler, which cancels every periodic
+   * task of the robot and waits for the iterations in progress to finish. The context cannot run
+   * periodic tasks afterwards. The recorder of the context, if any, is then closed.
+   */
+  @Override
+  public void close() {
+    try {
+      getLightPoller().stopSampling();
+    } catch (PollerException e) {
+      // there is nothing to be done
+    }
+    try {
+      getUltrasonicPoller().stopSampling();
+    } catch (PollerException e) {
+      // there is nothing to be done
+    }
+    scheduler.shutdown();
+
+    SensorRecorder recorder;
+    synchronized (this) {
+      recorder = this.recorder;
+    }
+    if (recorder != null)
+      recorder.close();
+  }
+
+}
@@ -0,0 +1,121 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
+import ca.mcgill.ecse211.mountev3rest.testing.Allocations;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+
+/**
+ * Checks that the steps of the control loops do not allocate once the robot is moving, so the
+ * garbage collector of the EV3 never pauses them.
+ * <p>
+ * Every loop is run {@code ITERATIONS} times as a warm-up and then {@code ITERATIONS} times while
+ * counting the bytes allocated by the thread, against simulated motors and sensors.
+ *
+ * @author angelortiz
+ *
+ */
+public class ControlLoopAllocationTest {
+
+  // Constants
+  private static final int ITERATIONS = 100000;
+  private static final int MEASUREMENTS = 3;
+
+  public static void main(String[] args) throws Exception {
+    if (!Allocations.isSupported()) {
+      System.out.println("skipped: this JVM cannot count the allocations of a thread");
+      return;
+    }
+
+    SimulatedRobot robot = new SimulatedRobot(1);
+    DifferentialDrive drive = robot.getDrive();
+    final Odometer odometer = robot.getOdometer();
+    final LightPoller lightPoller = robot.getLightPoller();
+    final UltrasonicPoller usPoller = robot.getUltrasonicPoller();
+    final OdometryCorrector corrector = robot.getCorrector();
+    final Navigation navigation = robot.getNavigation();
+    final double[] position = new double[3];
+    corrector.enable(); // Measured while correcting, then disabled to follow the path
+
+    // Keep the wheels turning so the odometer integrates actual displacements
+    drive.setSpeed(100);
+    drive.forward();
+
+    checkLoop("Odometer.run", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++)
+          odometer.run();
+      }
+    });
+
+    checkLoop("pose reads", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++) {
+          odometer.getXYT(position);
+          odometer.poseAt(System.nanoTime() - 5000000, position);
+          position[0] += odometer.getX() + odometer.getY() + odometer.getTheta();
+        }
+      }
+    });
+
+    checkLoop("LightPoller.poll", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++)
+          lightPoller.poll(LightPoller.ALL);
+      }
+    });
+
+    checkLoop("UltrasonicPoller.poll", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++)
+          usPoller.poll();
+      }
+    });
+
+    checkLoop("OdometryCorrector.applyCorrection", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++)
+          corrector.applyCorrection();
+      }
+    });
+
+    // Follow a path straight ahead, long enough to last the whole measurement
+    corrector.disable();
+    navigation.followPath(new double[][] {{0, 1000}});
+    checkLoop("Navigation.run following a path", new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ITERATIONS; i++) {
+          odometer.run();
+          navigation.run();
+        }
+      }
+    });
+    Check.isTrue(navigation.isNavigating(), "the path is still being followed");
+    drive.stop();
+  }
+
+  /*
+   * Warms the loop up and fails unless it runs without allocating. The loop is measured up to
+   * MEASUREMENTS times, since the JVM may allocate on the thread once while compiling it, whereas a
+   * loop that allocates on every iteration never measures zero.
+   */
+  private static void checkLoop(String name, Runnable loop) {
+    loop.run();
+    long bytes = 0;
+    for (int i = 0; i < MEASUREMENTS; i++) {
+      bytes = Allocations.measure(loop);
+      if (bytes == 0)
+        break;
+    }
+    System.out.println(name + ": " + bytes + " bytes allocated in " + ITERATIONS + " iterations");
+    Check.equal(0, bytes, name + " allocated bytes");
+  }
+
+}
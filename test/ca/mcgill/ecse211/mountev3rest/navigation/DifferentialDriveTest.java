@@ -0,0 +1,220 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import java.util.Random;
+
+/**
+ * Checks that the {@code DifferentialDrive} issues the commands of both wheels at the same time,
+ * even when several threads move the robot, and that it applies the offset of the left motor
+ * without biasing it towards either wheel.
+ * <p>
+ * The skew between the wheels is the difference between the command times of the simulated
+ * motors. It is compared with the skew of commands issued to each motor one after the other, as
+ * the robot did before the drive.
+ *
+ * @author angelortiz
+ *
+ */
+public class DifferentialDriveTest {
+
+  // Constants
+  private static final double TIME_SCALE = 1000;
+  private static final int COMMANDS = 20000;
+  private static final int THREADS = 4;
+  private static final int MOVES = 500;
+  private static final long PIVOT_MILLIS = 20;
+
+  public static void main(String[] args) throws InterruptedException {
+    measureSequentialSkew();
+    synchronizesEveryCommand();
+    synchronizesConcurrentCommands();
+    roundsBothWheelsAlike();
+    pivotsAroundEitherWheel();
+  }
+
+  /*
+   * Skew of the commands issued to each motor in turn, for reference.
+   */
+  private static void measureSequentialSkew() {
+    SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    long[] skews = new long[COMMANDS];
+    for (int i = 0; i < COMMANDS; i++) {
+      if (i % 2 == 0) {
+        leftMotor.forward();
+        rightMotor.forward();
+      } else {
+        leftMotor.stop(true);
+        rightMotor.stop(true);
+      }
+      skews[i] = rightMotor.getCommandTime() - leftMotor.getCommandTime();
+    }
+
+    long[] sorted = Benchmark.sorted(skews, COMMANDS);
+    System.out.println("commands issued to each motor in turn");
+    Benchmark.report("  median skew", Benchmark.percentile(sorted, 0.5), "ns");
+    Benchmark.report("  maximum skew", sorted[COMMANDS - 1], "ns");
+  }
+
+  private static void synchronizesEveryCommand() {
+    SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 1);
+    drive.setSpeed(200);
+
+    for (int i = 0; i < COMMANDS; i++) {
+      switch (i % 8) {
+        case 0:
+          drive.forward();
+          break;
+        case 1:
+          drive.backward();
+          break;
+        case 2:
+          drive.spinClockwise();
+          break;
+        case 3:
+          drive.steer(0.1);
+          break;
+        case 4:
+          drive.drive(10, true);
+          break;
+        case 5:
+          drive.spin(-30, true);
+          break;
+        case 6:
+          drive.arc(20, 45, true);
+          break;
+        default:
+          drive.returnTo(0, 0, true);
+          break;
+      }
+      Check.equal(0, rightMotor.getCommandTime() - leftMotor.getCommandTime(),
+          "skew of command " + i);
+    }
+    drive.stop();
+    Check.equal(0, rightMotor.getCommandTime() - leftMotor.getCommandTime(), "skew of the stop");
+    System.out.println("drive: " + COMMANDS + " commands without skew");
+  }
+
+  /*
+   * Threads moving the robot at the same time never interleave their commands to the wheels. The
+   * command times are read while holding the lock of the drive, between two commands.
+   */
+  private static void synchronizesConcurrentCommands() throws InterruptedException {
+    final SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    final SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    final DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 1);
+    final long[] skewed = new long[THREADS];
+
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < COMMANDS / THREADS; i++) {
+            if ((i + thread) % 2 == 0)
+              drive.spinClockwise();
+            else
+              drive.drive(5, true);
+            synchronized (drive) {
+              if (rightMotor.getCommandTime() != leftMotor.getCommandTime())
+                skewed[thread]++;
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+
+    long total = 0;
+    for (int t = 0; t < THREADS; t++) {
+      threads[t].join();
+      total += skewed[t];
+    }
+    drive.stop();
+    System.out.println(THREADS + " threads: " + COMMANDS + " commands, " + total + " skewed");
+    Check.equal(0, total, "skewed commands from concurrent threads");
+  }
+
+  /*
+   * The left wheel turns the angle of the right one multiplied by the offset, rounded to the
+   * nearest degree like the speeds of both wheels, so the offset does not drift in either
+   * direction over many movements.
+   */
+  private static void roundsBothWheelsAlike() {
+    double offset = 1.037;
+    SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, offset);
+    drive.setSpeed(300);
+
+    Random random = new Random(211);
+    double bias = 0;
+    for (int i = 0; i < MOVES; i++) {
+      int left = leftMotor.getTachoCount();
+      int right = rightMotor.getTachoCount();
+      drive.drive((random.nextBoolean() ? 1 : -1) * (1 + 30 * random.nextDouble()));
+
+      double expected = (rightMotor.getTachoCount() - right) * offset;
+      double error = leftMotor.getTachoCount() - left - expected;
+      Check.atMost(0.5 + 1e-9, Math.abs(error), "left wheel rounding error of move " + i);
+      bias += error;
+    }
+
+    bias /= MOVES;
+    System.out.println(String.format("offset %.3f: mean rounding error of the left wheel %.3f deg",
+        offset, bias));
+    Check.atMost(0.05, Math.abs(bias), "mean rounding error of the left wheel");
+  }
+
+  /*
+   * A pivot moves a single wheel, the left one with the offset, and returning to the counts read
+   * before it puts that wheel back exactly where it started.
+   */
+  private static void pivotsAroundEitherWheel() throws InterruptedException {
+    double offset = 1.037;
+    SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, offset);
+    drive.setSpeed(100);
+
+    for (int side = 0; side < 2; side++) {
+      SimulatedMotor moving = side == 0 ? leftMotor : rightMotor;
+      SimulatedMotor still = side == 0 ? rightMotor : leftMotor;
+      for (boolean forward : new boolean[] {true, false}) {
+        String name = "pivot of side " + side + (forward ? " forward" : " backward");
+        int left = leftMotor.getTachoCount();
+        int right = rightMotor.getTachoCount();
+        drive.pivot(side, forward);
+        Thread.sleep(PIVOT_MILLIS);
+
+        double speed = Math.round(100 * (side == 0 ? offset : 1));
+        Check.near(forward ? speed : -speed, moving.getRotationSpeed(), 1e-9, "speed, " + name);
+        Check.isTrue(!still.isMoving(), "other wheel still, " + name);
+        drive.stop();
+        Check.isTrue(moving.getTachoCount() != (side == 0 ? left : right), "wheel moved, " + name);
+
+        drive.returnTo(left, right, false);
+        Check.equal(left, leftMotor.getTachoCount(), "left count after undoing the " + name);
+        Check.equal(right, rightMotor.getTachoCount(), "right count after undoing the " + name);
+      }
+    }
+
+    try {
+      drive.pivot(2, true);
+      throw new AssertionError("a pivot on an unknown side should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
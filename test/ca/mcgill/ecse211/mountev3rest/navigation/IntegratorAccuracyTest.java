@@ -0,0 +1,180 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import java.util.Random;
+
+/**
+ * Compares the odometry models over long synthetic trajectories.
+ * <p>
+ * A trajectory is a sequence of segments during which each wheel turns at a random constant speed,
+ * sampled every {@code PERIOD} milliseconds into integer tacho counts as the odometer reads them.
+ * Every model integrates the same tacho deltas into its own {@code OdometerData}, so the
+ * difference between the final poses is only caused by the models.
+ * <p>
+ * The arc model is also compared with the closed-form pose of a robot moving at constant wheel
+ * speeds, which is a circle. Its trigonometric values come from the lookup table, so it matches the
+ * circle up to the interpolation error of the table rather than exactly.
+ *
+ * @author angelortiz
+ *
+ */
+public class IntegratorAccuracyTest {
+
+  // Constants
+  private static final int PERIOD = 25; // Odometer period in milliseconds
+  private static final int UPDATES = 144000; // One hour of updates per trajectory
+  private static final int TRAJECTORIES = 5;
+  private static final int MAX_SPEED = 400; // Wheel speed in degrees per second
+
+  public static void main(String[] args) {
+    Random random = new Random(211);
+    for (int i = 0; i < TRAJECTORIES; i++)
+      lookupTableMatchesEuler(random.nextLong());
+
+    // Tacho counts per update of each wheel, up to a quarter turn of the robot per update
+    int[][] steps = {{10, 9}, {10, 6}, {40, 20}, {60, -60}, {120, 40}, {200, -100}};
+    for (int[] step : steps)
+      arcMatchesCircle(step[0], step[1]);
+  }
+
+  /*
+   * The lookup table model computes the same displacements as the double precision one up to the
+   * interpolation error of the table, below one part in a million.
+   */
+  private static void lookupTableMatchesEuler(long seed) {
+    OdometryIntegrator euler =
+        new EulerIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK);
+    OdometryIntegrator table =
+        new LookupTableIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK);
+    OdometerData eulerPose = new OdometerData();
+    OdometerData tablePose = new OdometerData();
+    double[] eulerDelta = new double[3];
+    double[] tableDelta = new double[3];
+    double maxStepError = 0;
+    double travelled = 0;
+
+    int[] deltas = new int[2];
+    Trajectory trajectory = new Trajectory(seed);
+    for (int i = 0; i < UPDATES; i++) {
+      trajectory.next(deltas);
+      euler.integrate(deltas[0], deltas[1], eulerPose.getTheta(), eulerDelta);
+      table.integrate(deltas[0], deltas[1], tablePose.getTheta(), tableDelta);
+      eulerPose.update(eulerDelta[0], eulerDelta[1], eulerDelta[2]);
+      tablePose.update(tableDelta[0], tableDelta[1], tableDelta[2]);
+
+      double length = Math.hypot(eulerDelta[0], eulerDelta[1]);
+      maxStepError = Math.max(maxStepError, Math.hypot(tableDelta[0] - eulerDelta[0],
+          tableDelta[1] - eulerDelta[1]) / Math.max(length, 1e-9));
+      travelled += length;
+    }
+
+    double drift = Math.hypot(tablePose.getX() - eulerPose.getX(),
+        tablePose.getY() - eulerPose.getY());
+    double headingDrift = Math.abs(tablePose.getTheta() - eulerPose.getTheta());
+    headingDrift = Math.min(headingDrift, 360 - headingDrift);
+    System.out.println(String.format(
+        "trajectory %d: %.0f cm travelled, drift %.2e cm, heading drift %.2e deg,"
+            + " step error %.2e", seed, travelled, drift, headingDrift, maxStepError));
+
+    Check.atMost(1e-6, maxStepError, "relative error of a step");
+    Check.atMost(1e-6 * travelled, drift, "position drift over the trajectory");
+    Check.atMost(1e-6, headingDrift, "heading drift over the trajectory");
+  }
+
+  /*
+   * At constant wheel speeds the robot follows a circle, which the arc model reproduces whatever
+   * the rotation per update, while the error of the Euler model grows with it.
+   */
+  private static void arcMatchesCircle(int deltaLeft, int deltaRight) {
+    OdometryIntegrator arc = new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK);
+    OdometryIntegrator euler =
+        new EulerIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK);
+    OdometerData arcPose = new OdometerData();
+    OdometerData eulerPose = new OdometerData();
+    double[] delta = new double[3];
+
+    double wheelArc = Math.PI * SimulatedRobot.WHEEL_RADIUS / 180; // Distance per degree
+    double distance = wheelArc * 0.5 * (deltaLeft + deltaRight);
+    double rotation =
+        Math.toRadians(Math.toDegrees(wheelArc / SimulatedRobot.TRACK) * (deltaLeft - deltaRight));
+    int updates = (int) Math.ceil(10 * 2 * Math.PI / Math.abs(rotation)); // Ten turns
+
+    double maxError = 0;
+    double maxEulerError = 0;
+    for (int i = 1; i <= updates; i++) {
+      arc.integrate(deltaLeft, deltaRight, arcPose.getTheta(), delta);
+      arcPose.update(delta[0], delta[1], delta[2]);
+      euler.integrate(deltaLeft, deltaRight, eulerPose.getTheta(), delta);
+      eulerPose.update(delta[0], delta[1], delta[2]);
+
+      // Circle of radius distance / rotation starting at the origin heading along +Y
+      double theta = i * rotation;
+      double radius = distance / rotation;
+      double x = radius * (1 - Math.cos(theta));
+      double y = radius * Math.sin(theta);
+      maxError = Math.max(maxError, Math.hypot(arcPose.getX() - x, arcPose.getY() - y));
+      maxEulerError =
+          Math.max(maxEulerError, Math.hypot(eulerPose.getX() - x, eulerPose.getY() - y));
+    }
+
+    double travelled = Math.abs(distance) * updates;
+    System.out.println(String.format(
+        "arc of %d/%d counts per update: %.1f deg per update, %.0f cm travelled,"
+            + " arc error %.2e cm, euler error %.2e cm", deltaLeft, deltaRight,
+        Math.toDegrees(rotation), travelled, maxError, maxEulerError));
+    Check.atMost(1e-6 * travelled + 1e-9, maxError, "arc model error on a circle");
+  }
+
+  /*
+   * Random sequence of constant wheel speed segments, sampled into integer tacho deltas.
+   */
+  private static class Trajectory {
+
+    private final Random random;
+    private double left; // Exact rotation of each wheel in degrees
+    private double right;
+    private double leftSpeed; // Degrees per update
+    private double rightSpeed;
+    private int remaining; // Updates left in the current segment
+
+    private Trajectory(long seed) {
+      random = new Random(seed);
+    }
+
+    private void next(int[] deltas) {
+      if (remaining == 0) {
+        // Straight lines, turns in place and arcs, for 1 to 10 seconds
+        double speed = speed();
+        switch (random.nextInt(3)) {
+          case 0:
+            leftSpeed = speed;
+            rightSpeed = speed;
+            break;
+          case 1:
+            leftSpeed = speed;
+            rightSpeed = -speed;
+            break;
+          default:
+            leftSpeed = speed;
+            rightSpeed = speed();
+            break;
+        }
+        remaining = (1000 + random.nextInt(9000)) / PERIOD;
+      }
+      remaining--;
+
+      int previousLeft = (int) Math.round(left);
+      int previousRight = (int) Math.round(right);
+      left += leftSpeed;
+      right += rightSpeed;
+      deltas[0] = (int) Math.round(left) - previousLeft;
+      deltas[1] = (int) Math.round(right) - previousRight;
+    }
+
+    private double speed() {
+      return (2 * random.nextDouble() - 1) * MAX_SPEED * PERIOD / 1000;
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+
+/**
+ * Checks the {@code MotionProfile} against the wheels of a {@code DifferentialDrive} driving
+ * simulated motors, and measures the effect of the profile on a mission.
+ * <p>
+ * The position, peak speed and duration predicted by the profile are compared with the movements
+ * of the simulated motors. The mission drives a square of four two-tile sides with a turn at every
+ * corner, once with the default acceleration of the EV3 motors and the former fixed speeds, and
+ * once with the acceleration of the robot and the cruise speeds chosen by the profile. While it
+ * runs, the ground under each wheel follows the speed of the wheel with an acceleration limited by
+ * the traction of the tires, so the wheels slip when their speed changes faster than that. The
+ * profiled mission must be faster and its largest slip, the distance between a wheel and the ground
+ * under it, smaller.
+ *
+ * @author angelortiz
+ *
+ */
+public class MotionProfileTest {
+
+  // Constants
+  private static final double TIME_SCALE = 4;
+  private static final int ACCELERATION = 800; // Acceleration of the robot, in degrees per s^2
+  private static final int DEFAULT_ACCELERATION = 6000; // Acceleration of the EV3 motors
+  private static final double TRACTION = 2000; // Largest change of ground speed, in degrees per s^2
+  private static final long SAMPLING_PERIOD = 3; // Milliseconds between two samples of the wheels
+  private static final double SIDE = 2 * SimulatedRobot.TILE_SIZE;
+
+  public static void main(String[] args) throws InterruptedException {
+    int[][] movements = {{90, 400}, {360, 400}, {720, 200}, {1800, 400}};
+    for (int[] movement : movements)
+      matchesMotors(movement[0], movement[1]);
+
+    Mission steps = runMission(false);
+    Mission profiled = runMission(true);
+    Check.isTrue(profiled.seconds < steps.seconds, "the profiled mission is faster");
+    Check.isTrue(profiled.slip < steps.slip, "the profiled mission slips less");
+  }
+
+  /*
+   * The simulated wheels follow the trapezoid of the profile, with the peak speed it gives, and
+   * complete the rotation in the duration it predicts.
+   */
+  private static void matchesMotors(int angle, int maxSpeed) throws InterruptedException {
+    SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 1);
+    drive.setAcceleration(ACCELERATION);
+    MotionProfile profile = drive.getProfile();
+    int peak = profile.getPeakSpeed(angle, maxSpeed);
+    drive.setSpeed(maxSpeed);
+
+    long start = System.nanoTime();
+    leftMotor.startSynchronization();
+    leftMotor.rotate(angle, true);
+    rightMotor.rotate(angle, true);
+    leftMotor.endSynchronization();
+
+    // Largest distance between the wheel and the position given by the profile, each sample
+    // being timed at the middle of the read of the tacho count
+    double deviation = 0;
+    while (drive.isMoving()) {
+      long before = System.nanoTime();
+      int tacho = rightMotor.getTachoCount();
+      double time = (before + (System.nanoTime() - before) / 2 - start) * 1e-9 * TIME_SCALE;
+      deviation = Math.max(deviation, Math.abs(tacho - position(profile, angle, peak, time)));
+      Thread.sleep(SAMPLING_PERIOD);
+    }
+    double seconds = (System.nanoTime() - start) * 1e-9 * TIME_SCALE;
+    double expected = profile.getDuration(angle, maxSpeed);
+
+    System.out.println(String.format("%d deg at up to %d deg/s: peak %d deg/s, duration %.2f s,"
+        + " observed %.2f s, largest deviation %.1f deg", angle, maxSpeed, peak, expected, seconds,
+        deviation));
+    Check.equal(angle, rightMotor.getTachoCount(), "rotation of the wheel");
+    Check.atMost(0.02 * angle + 2, deviation, "deviation of the wheel from the profile");
+    Check.near(expected, seconds, 0.05 * expected + 0.1, "duration of the rotation");
+  }
+
+  /*
+   * Position of a wheel following the trapezoid of the profile at the given time, in seconds from
+   * the start of the rotation.
+   */
+  private static double position(MotionProfile profile, int angle, int peak, double time) {
+    double acceleration = profile.getAcceleration();
+    double duration = angle / (double) peak + peak / acceleration;
+    double ramp = peak / acceleration; // Duration of the acceleration and of the deceleration
+    if (time <= 0)
+      return 0;
+    if (time < ramp)
+      return acceleration * time * time / 2;
+    if (time < duration - ramp)
+      return peak * ramp / 2 + peak * (time - ramp);
+    if (time < duration)
+      return angle - acceleration * (duration - time) * (duration - time) / 2;
+    return angle;
+  }
+
+  private static Mission runMission(final boolean profiled) throws InterruptedException {
+    final SimulatedMotor leftMotor = new SimulatedMotor(TIME_SCALE);
+    final SimulatedMotor rightMotor = new SimulatedMotor(TIME_SCALE);
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 1);
+    drive.setAcceleration(profiled ? ACCELERATION : DEFAULT_ACCELERATION);
+    final Mission mission = new Mission();
+
+    Thread ground = new Thread() {
+      @Override
+      public void run() {
+        mission.follow(leftMotor, rightMotor);
+      }
+    };
+    ground.start();
+
+    long start = System.nanoTime();
+    int side = Navigation.convertDistance(SimulatedRobot.WHEEL_RADIUS, SIDE);
+    int turn = Navigation.convertAngle(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 90);
+    for (int i = 0; i < 4; i++) {
+      drive.setSpeed(profiled ? drive.getProfile().getPeakSpeed(side, 400) : 200);
+      drive.drive(SIDE);
+      drive.setSpeed(profiled ? drive.getProfile().getPeakSpeed(turn, 80) : 80);
+      drive.spin(90);
+    }
+    mission.seconds = (System.nanoTime() - start) * 1e-9 * TIME_SCALE;
+
+    Thread.sleep(10 * SAMPLING_PERIOD);
+    ground.interrupt();
+    ground.join();
+
+    System.out.println(String.format("%s: mission %.1f s, largest slip %.1f deg",
+        profiled ? "profile of " + ACCELERATION + " deg/s^2, cruise up to 400 deg/s"
+            : "default acceleration, speeds of 200 and 80 deg/s",
+        mission.seconds, mission.slip));
+    return mission;
+  }
+
+  /*
+   * Rotation of the wheels and of the ground under them during a mission.
+   */
+  private static class Mission {
+
+    private final double[] wheels = new double[2]; // Degrees turned by each wheel
+    private final double[] ground = new double[2]; // Degrees of each wheel covered on the ground
+    private final double[] groundSpeeds = new double[2]; // Degrees per second of each wheel
+    private double slip; // Largest difference between a wheel and the ground, in degrees
+    private double seconds;
+
+    /*
+     * Samples the speed of the wheels until interrupted. The ground speed of each wheel moves
+     * towards the speed of the wheel by at most the traction limit.
+     */
+    private void follow(SimulatedMotor leftMotor, SimulatedMotor rightMotor) {
+      SimulatedMotor[] motors = {leftMotor, rightMotor};
+      long last = System.nanoTime();
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          Thread.sleep(SAMPLING_PERIOD);
+        } catch (InterruptedException e) {
+          break;
+        }
+        long now = System.nanoTime();
+        double dt = (now - last) * 1e-9 * TIME_SCALE;
+        last = now;
+
+        for (int i = 0; i < 2; i++) {
+          double speed = motors[i].getRotationSpeed();
+          double change = speed - groundSpeeds[i];
+          groundSpeeds[i] += Math.max(-TRACTION * dt, Math.min(TRACTION * dt, change));
+          wheels[i] += speed * dt;
+          ground[i] += groundSpeeds[i] * dt;
+          slip = Math.max(slip, Math.abs(wheels[i] - ground[i]));
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import java.util.Arrays;
+
+/**
+ * Checks the arguments accepted by the {@code NavigationCommand} paths, and that paths are
+ * completed by the navigation thread against simulated motors, from a single waypoint to a path
+ * whose corners are blended into curves or turned in place depending on their angle.
+ *
+ * @author angelortiz
+ *
+ */
+public class NavigationCommandTest {
+
+  // Constants
+  private static final double TIME_SCALE = 4; // Faster and the path ends between two periods
+  private static final double[][] CORNERS = {{0, 2}, {2, 2}, {2, 4}, {4, 3}}; // Path in tiles
+  private static final long PATH_TIMEOUT = 30000;
+  private static final long TRACE_PERIOD = 5;
+  private static final int SHARP_CORNER = 2; // Index of the corner sharper than 60 degrees
+  private static final double MAX_DEVIATION = 6; // Distance from the path, in cm
+  private static final double CORNER_DISTANCE = 10; // Distance from a corner to check the speed
+  private static final double MIN_CORNER_SPEED = 100; // Speed of the center at a corner, deg/s
+  private static final double GOAL_TOLERANCE = 1.5; // Distance to the end of the path, in cm
+
+  public static void main(String[] args) throws Exception {
+    rejectsEmptyPaths();
+    copiesWaypoints();
+    followsSingleWaypoint();
+    followsCorners();
+  }
+
+  /*
+   * A path without waypoints is rejected when the command is created, so the navigation thread
+   * never receives it.
+   */
+  private static void rejectsEmptyPaths() {
+    try {
+      NavigationCommand.followPath(new double[0][]);
+      throw new AssertionError("a path without waypoints should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void copiesWaypoints() {
+    double[][] waypoints = {{1, 2}, {3, 4}};
+    NavigationCommand command = NavigationCommand.followPath(waypoints);
+    waypoints[0][0] = 5;
+    Check.equal(1, (long) command.getWaypoints()[0][0], "waypoint after changing the array");
+    Check.equal(2, command.getWaypoints().length, "waypoints of the command");
+  }
+
+  private static void followsSingleWaypoint() throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(TIME_SCALE);
+    try {
+      robot.start();
+      Odometer odometer = robot.getOdometer();
+
+      NavigationCommand command = robot.getNavigation().followPath(new double[][] {{0, 1}});
+      Check.isTrue(command.await(10000), "path of a single waypoint completed");
+      Check.isTrue(!command.isCancelled(), "path of a single waypoint executed");
+      Check.near(0, odometer.getX(), 1, "X position at the end of the path");
+      Check.near(SimulatedRobot.TILE_SIZE, odometer.getY(), 1, "Y position at the end of the path");
+    } finally {
+      robot.close();
+    }
+  }
+
+  /*
+   * Path turning right, left, then right by 117 degrees. The robot must stay close to the
+   * segments, blend the right angles into curves without stopping, turn in place at the last
+   * corner, whose pursued point lies more than 60 degrees to the side, end at the last waypoint
+   * and take less time than moving to every waypoint with travelTo().
+   */
+  private static void followsCorners() throws Exception {
+    double pathTime;
+    SimulatedRobot robot = new SimulatedRobot(TIME_SCALE);
+    Trace trace = new Trace(robot);
+    Thread tracer = new Thread(trace);
+    try {
+      robot.start();
+      tracer.start();
+      long start = System.nanoTime();
+      NavigationCommand command = robot.getNavigation().followPath(CORNERS);
+      Check.isTrue(command.await(PATH_TIMEOUT), "path through the corners completed");
+      pathTime = (System.nanoTime() - start) * TIME_SCALE / 1e9;
+      Check.isTrue(!command.isCancelled(), "path through the corners executed");
+    } finally {
+      trace.stop();
+      tracer.join();
+      robot.close();
+    }
+
+    double[] end = CORNERS[CORNERS.length - 1];
+    double error = Math.hypot(trace.x - end[0] * SimulatedRobot.TILE_SIZE,
+        trace.y - end[1] * SimulatedRobot.TILE_SIZE);
+    System.out.println(String.format(
+        "path through the corners: %.1f s, deviation %.2f cm, corner speeds %s, error %.2f cm",
+        pathTime, trace.maxDeviation, Arrays.toString(trace.cornerSpeeds), error));
+    Check.atMost(MAX_DEVIATION, trace.maxDeviation, "distance from the path");
+    for (int i = 0; i < CORNERS.length - 1; i++) {
+      if (i == SHARP_CORNER) {
+        Check.isTrue(trace.spun[i], "sharp corner " + i + " turned in place");
+      } else {
+        Check.isTrue(trace.cornerSpeeds[i] >= MIN_CORNER_SPEED, "full stop at corner " + i);
+        Check.isTrue(!trace.spun[i], "corner " + i + " blended without turning in place");
+      }
+    }
+    Check.atMost(GOAL_TOLERANCE, error, "distance to the end of the path");
+
+    double travelTime;
+    robot = new SimulatedRobot(TIME_SCALE);
+    try {
+      robot.start();
+      long start = System.nanoTime();
+      for (double[] waypoint : CORNERS)
+        Check.isTrue(robot.getNavigation().travelTo(waypoint[0], waypoint[1]).await(PATH_TIMEOUT),
+            "travel to a corner completed");
+      travelTime = (System.nanoTime() - start) * TIME_SCALE / 1e9;
+    } finally {
+      robot.close();
+    }
+    System.out.println(String.format("travel through the corners: %.1f s", travelTime));
+    Check.atMost(travelTime, pathTime, "time of the path compared with travelTo()");
+  }
+
+  /*
+   * Samples the pose and the wheel speeds of a robot following the corners. It keeps the largest
+   * distance from the path and, for each intermediate waypoint, the lowest speed of the center of
+   * the robot within CORNER_DISTANCE of it and whether the wheels turned in opposite directions
+   * there.
+   */
+  private static class Trace implements Runnable {
+
+    private final Odometer odometer;
+    private final SimulatedRobot robot;
+    private final double[][] path;
+    private volatile boolean running = true;
+    private double x;
+    private double y;
+    private double maxDeviation;
+    private final double[] cornerSpeeds;
+    private final boolean[] spun;
+
+    private Trace(SimulatedRobot robot) {
+      this.robot = robot;
+      this.odometer = robot.getOdometer();
+      path = new double[CORNERS.length + 1][];
+      path[0] = new double[] {0, 0};
+      for (int i = 0; i < CORNERS.length; i++)
+        path[i + 1] = new double[] {CORNERS[i][0] * SimulatedRobot.TILE_SIZE,
+            CORNERS[i][1] * SimulatedRobot.TILE_SIZE};
+      cornerSpeeds = new double[CORNERS.length - 1];
+      Arrays.fill(cornerSpeeds, Double.MAX_VALUE);
+      spun = new boolean[CORNERS.length - 1];
+    }
+
+    private void stop() {
+      running = false;
+    }
+
+    @Override
+    public void run() {
+      double[] pose = new double[3];
+      while (running) {
+        odometer.getXYT(pose);
+        x = pose[0];
+        y = pose[1];
+        double deviation = Double.MAX_VALUE;
+        for (int i = 0; i < path.length - 1; i++)
+          deviation = Math.min(deviation, distanceToSegment(path[i], path[i + 1], x, y));
+        maxDeviation = Math.max(maxDeviation, deviation);
+
+        double left = robot.getLeftMotor().getRotationSpeed();
+        double right = robot.getRightMotor().getRotationSpeed();
+        for (int i = 1; i < path.length - 1; i++) {
+          if (Math.hypot(path[i][0] - x, path[i][1] - y) <= CORNER_DISTANCE) {
+            cornerSpeeds[i - 1] = Math.min(cornerSpeeds[i - 1], (left + right) / 2);
+            spun[i - 1] |= left * right < 0;
+          }
+        }
+
+        try {
+          Thread.sleep(TRACE_PERIOD);
+        } catch (InterruptedException e) {
+          // there is nothing to be done
+        }
+      }
+    }
+
+    private static double distanceToSegment(double[] a, double[] b, double x, double y) {
+      double dx = b[0] - a[0];
+      double dy = b[1] - a[1];
+      double t = ((x - a[0]) * dx + (y - a[1]) * dy) / (dx * dx + dy * dy);
+      t = Math.max(0, Math.min(1, t));
+      return Math.hypot(a[0] + t * dx - x, a[1] + t * dy - y);
+    }
+  }
+
+}
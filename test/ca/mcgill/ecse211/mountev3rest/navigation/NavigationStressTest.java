@@ -0,0 +1,250 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes navigation commands from several threads at once against simulated motors, and checks
+ * that every command is numbered once, finished in the order of its id and executed completely
+ * unless it was replaced.
+ * <p>
+ * The navigation thread runs its state machine continuously instead of every
+ * {@code NAVIGATION_PERIOD}, so it polls the queue as often as possible while commands are being
+ * published. This exposes the interleavings of a publication with the steps of the navigation
+ * thread: a direct movement started on an idle robot must not be stopped as if it were replaced,
+ * and neither a direct movement nor a cancellation published while the queue is full must wait
+ * for the queued commands to be executed.
+ *
+ * @author angelortiz
+ *
+ */
+public class NavigationStressTest {
+
+  // Constants
+  private static final double TIME_SCALE = 20;
+  private static final int THREADS = 4;
+  private static final int COMMANDS = 1000; // Commands published by each thread
+  private static final int ADVANCES = 300;
+  private static final double ADVANCE_DISTANCE = 5;
+  private static final int QUEUE_CAPACITY = 16; // Commands that can be queued at once
+  private static final long MAX_PUBLICATION = 2 * Navigation.NAVIGATION_PERIOD;
+  private static final long PUBLISHING_TIMEOUT = 60000;
+
+  public static void main(String[] args) throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(TIME_SCALE);
+    final Navigation navigation = robot.getNavigation();
+    Thread navigationThread = new Thread() {
+      @Override
+      public void run() {
+        while (!isInterrupted()) {
+          navigation.run();
+          Thread.yield();
+        }
+      }
+    };
+
+    try {
+      robot.startOdometer();
+      navigationThread.start();
+
+      executesIdleReplacements(navigation, robot.getRightMotor());
+      replacesFullQueue(navigation);
+      cancelsBlockedBatch(navigation);
+      handlesConcurrentPublishers(navigation, robot.getOdometer());
+    } finally {
+      navigationThread.interrupt();
+      navigationThread.join();
+      robot.close();
+    }
+  }
+
+  /*
+   * Direct movements published while the robot is idle are often started by the navigation thread
+   * before their publication completes. They must still be executed completely, which is checked
+   * on the rotation of a wheel.
+   */
+  private static void executesIdleReplacements(Navigation navigation, SimulatedMotor motor) {
+    int expected = Navigation.convertDistance(SimulatedRobot.WHEEL_RADIUS, ADVANCE_DISTANCE);
+    int shortened = 0;
+    for (int i = 0; i < ADVANCES; i++) {
+      int direction = i % 2 == 0 ? 1 : -1;
+      int before = motor.getTachoCount();
+      NavigationCommand command = navigation.advanceDist(direction * ADVANCE_DISTANCE);
+      command.await();
+
+      Check.isTrue(!command.isCancelled(), "advance " + i + " executed");
+      if (direction * (motor.getTachoCount() - before) != expected)
+        shortened++;
+    }
+    System.out.println("idle robot: " + ADVANCES + " advances, " + shortened + " not completed");
+    Check.equal(0, shortened, "advances stopped before their distance");
+  }
+
+  /*
+   * A direct movement replaces the queued commands without waiting for space in the queue, and
+   * the threads waiting for the replaced commands are released.
+   */
+  private static void replacesFullQueue(final Navigation navigation) throws InterruptedException {
+    NavigationCommand[] batch = new NavigationCommand[QUEUE_CAPACITY];
+    for (int i = 0; i < QUEUE_CAPACITY; i++)
+      batch[i] = NavigationCommand.travelTo(0, i % 2 == 0 ? 8 : 1);
+    navigation.enqueue(batch);
+    navigation.enqueue(NavigationCommand.travelTo(1, 1)); // Queued once the first one started
+
+    // Published from another thread, so a blocked publication fails instead of hanging the test
+    final NavigationCommand[] replacement = new NavigationCommand[1];
+    Thread publisher = new Thread() {
+      @Override
+      public void run() {
+        replacement[0] = navigation.travelTo(1, 1);
+      }
+    };
+    long start = System.nanoTime();
+    publisher.start();
+    publisher.join(MAX_PUBLICATION);
+    long millis = (System.nanoTime() - start) / 1000000;
+    Check.isTrue(!publisher.isAlive(), "full queue replaced within " + MAX_PUBLICATION + " ms");
+    System.out.println("full queue: replaced in " + millis + " ms");
+
+    Check.isTrue(batch[QUEUE_CAPACITY - 1].await(MAX_PUBLICATION), "replaced commands released");
+    for (NavigationCommand command : batch)
+      Check.isTrue(command.isCancelled(), "queued command " + command.getId() + " replaced");
+    replacement[0].await();
+    Check.isTrue(!replacement[0].isCancelled(), "replacement executed");
+  }
+
+  /*
+   * A batch larger than the queue waits for space in enqueue() while the robot executes it. A
+   * cancellation from another thread must not wait for the batch: it returns once the robot is
+   * stopped, and releases the batch, whose commands are all cancelled, queued or not.
+   */
+  private static void cancelsBlockedBatch(final Navigation navigation)
+      throws InterruptedException {
+    final NavigationCommand[] batch = new NavigationCommand[3 * QUEUE_CAPACITY];
+    for (int i = 0; i < batch.length; i++)
+      batch[i] = NavigationCommand.travelTo(0, i % 2 == 0 ? 8 : 1);
+    Thread enqueuer = new Thread() {
+      @Override
+      public void run() {
+        navigation.enqueue(batch);
+      }
+    };
+    enqueuer.start();
+    Thread.sleep(MAX_PUBLICATION);
+    Check.isTrue(enqueuer.isAlive(), "batch larger than the queue waiting for space");
+
+    Thread canceller = new Thread() {
+      @Override
+      public void run() {
+        navigation.cancel();
+      }
+    };
+    long start = System.nanoTime();
+    canceller.start();
+    canceller.join(MAX_PUBLICATION);
+    long millis = (System.nanoTime() - start) / 1000000;
+    Check.isTrue(!canceller.isAlive(), "blocked batch cancelled within " + MAX_PUBLICATION + " ms");
+    System.out.println("blocked batch: cancelled in " + millis + " ms");
+
+    enqueuer.join(MAX_PUBLICATION);
+    Check.isTrue(!enqueuer.isAlive(), "blocked batch released");
+    for (NavigationCommand command : batch)
+      Check.isTrue(command.isCancelled(), "command " + command.getId() + " of the batch cancelled");
+    Check.isTrue(!navigation.isNavigating(), "robot idle after the cancellation");
+  }
+
+  /*
+   * Threads publishing direct movements, batches and cancellations at random. Waiting for a
+   * command always returns once it is finished, and every command is finished once the robot is
+   * idle. The robot must then reach each target it is sent to.
+   */
+  private static void handlesConcurrentPublishers(final Navigation navigation, Odometer odometer)
+      throws InterruptedException {
+    final ConcurrentLinkedQueue<NavigationCommand> published =
+        new ConcurrentLinkedQueue<NavigationCommand>();
+    final AtomicInteger unfinished = new AtomicInteger(); // Awaited but not finished
+
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final Random random = new Random(t);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < COMMANDS; i++) {
+            NavigationCommand command = publishRandom(navigation, random);
+            published.add(command);
+            if (random.nextInt(50) == 0)
+              navigation.cancel();
+            if (random.nextInt(4) == 0) {
+              navigation.awaitCommand(command.getId());
+              if (!command.isDone())
+                unfinished.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join(PUBLISHING_TIMEOUT);
+      Check.isTrue(!thread.isAlive(), "publishers finished");
+    }
+
+    Check.isTrue(navigation.waitNavigation(PUBLISHING_TIMEOUT), "every command finished");
+    Set<Long> ids = new HashSet<Long>();
+    int cancelled = 0;
+    for (NavigationCommand command : published) {
+      ids.add(command.getId());
+      Check.isTrue(command.isDone(), "command " + command.getId() + " finished");
+      if (command.isCancelled())
+        cancelled++;
+    }
+    System.out.println(String.format("%d threads: %d commands, %d cancelled", THREADS,
+        published.size(), cancelled));
+    Check.equal(THREADS * COMMANDS, ids.size(), "distinct command ids");
+    Check.equal(0, unfinished.get(), "awaited commands left unfinished");
+    Check.isTrue(!navigation.isNavigating(), "robot idle");
+
+    double[] position = new double[3];
+    for (int i = 0; i < 9; i++) {
+      double x = 1 + i % 3;
+      double y = 1 + i / 3;
+      NavigationCommand command = navigation.travelTo(x, y);
+      command.await();
+      Thread.sleep(2 * odometer.getPeriod()); // Let the odometer integrate the end of the travel
+      odometer.getXYT(position);
+      Check.isTrue(!command.isCancelled(), "travel " + i + " executed");
+      Check.atMost(1.5, Math.hypot(position[0] - x * SimulatedRobot.TILE_SIZE,
+          position[1] - y * SimulatedRobot.TILE_SIZE), "distance to the target of travel " + i);
+    }
+  }
+
+  private static NavigationCommand publishRandom(Navigation navigation, Random random) {
+    double x = 1 + random.nextInt(2);
+    double y = 1 + random.nextInt(2);
+    switch (random.nextInt(7)) {
+      case 0:
+        return navigation.travelTo(x, y);
+      case 1:
+        return navigation.advanceDist(random.nextInt(3) - 1);
+      case 2:
+        return navigation.enqueue(NavigationCommand.highSpeed(random.nextBoolean()),
+            NavigationCommand.travelTo(x, y));
+      case 3:
+        return navigation.enqueue(NavigationCommand.turnTo(90 * random.nextInt(4)));
+      case 4:
+        return navigation.turnTo(90 * random.nextInt(4));
+      case 5:
+        return navigation.turnToRelative(random.nextBoolean() ? 30 : -30);
+      default:
+        return navigation.travelToY(y);
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+
+/**
+ * Measures the dead time between the end of a movement and the return of
+ * {@code Navigation.waitNavigation()}, against simulated motors, and checks the timeout and the
+ * cancellation of the waits.
+ * <p>
+ * A monitor thread records the last time the wheels were seen moving. The robot travels the same
+ * legs once waiting through the polling loop that {@code waitNavigation()} used before, which
+ * returned after the robot had been idle for {@code MIN_STATIC_INTERVAL} milliseconds, and once
+ * waiting for the signal of the navigation thread, which must return within a period of the stop
+ * on average.
+ *
+ * @author angelortiz
+ *
+ */
+public class NavigationWaitTest {
+
+  // Constants
+  private static final double TIME_SCALE = 4;
+  private static final int WAIT_PERIOD = 120; // Polling period of the former wait
+  private static final int MIN_STATIC_INTERVAL = 400; // Idle time awaited by the former wait
+  private static final double[][] LEGS = {{0, 1}, {1, 1}, {1, 2}, {2, 2}, {2, 1}, {1, 1}};
+
+  private static volatile long lastMoving; // Last time the wheels were seen moving, in ns
+
+  public static void main(String[] args) throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(TIME_SCALE);
+    final DifferentialDrive drive = robot.getDrive();
+    Navigation navigation = robot.getNavigation();
+    Thread monitor = new Thread() {
+      @Override
+      public void run() {
+        while (!isInterrupted()) {
+          if (drive.isMoving())
+            lastMoving = System.nanoTime();
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+    };
+
+    try {
+      robot.start();
+      monitor.start();
+
+      double polling = measureDeadTime(navigation, true);
+      double signaled = measureDeadTime(navigation, false);
+      Check.isTrue(signaled < polling, "signaled waits return sooner than polling ones");
+      Check.atMost(Navigation.NAVIGATION_PERIOD + 10, signaled, "dead time of a signaled wait");
+
+      timesOut(navigation);
+      cancelsQueuedCommands(navigation, drive);
+    } finally {
+      monitor.interrupt();
+      monitor.join();
+      robot.close();
+    }
+  }
+
+  /*
+   * Travels every leg, waiting for each one, and returns the mean time in milliseconds between
+   * the stop of the wheels and the return of the wait.
+   */
+  private static double measureDeadTime(Navigation navigation, boolean polling)
+      throws InterruptedException {
+    long dead = 0;
+    for (double[] leg : LEGS) {
+      navigation.travelTo(leg[0], leg[1]);
+      if (polling)
+        pollNavigation(navigation);
+      else
+        navigation.waitNavigation();
+      dead += System.nanoTime() - lastMoving;
+    }
+
+    double perLeg = dead / 1e6 / LEGS.length;
+    System.out.println(String.format("%s wait: dead time %.0f ms per leg",
+        polling ? "polling" : "signaled", perLeg));
+    return perLeg;
+  }
+
+  /*
+   * Former implementation of waitNavigation().
+   */
+  private static void pollNavigation(Navigation navigation) throws InterruptedException {
+    long time = System.currentTimeMillis();
+    while (true) {
+      if (navigation.isNavigating())
+        time = System.currentTimeMillis();
+      else if (System.currentTimeMillis() - time > MIN_STATIC_INTERVAL)
+        break;
+      Thread.sleep(WAIT_PERIOD);
+    }
+  }
+
+  private static void timesOut(Navigation navigation) {
+    navigation.travelTo(0, 3);
+    Check.isTrue(!navigation.waitNavigation(100), "wait timed out during a long travel");
+    Check.isTrue(navigation.isNavigating(), "robot navigating after the timeout");
+    navigation.cancel();
+  }
+
+  /*
+   * Cancelling stops the robot and releases the threads waiting for the running and queued
+   * commands, which report that they were cancelled.
+   */
+  private static void cancelsQueuedCommands(Navigation navigation, DifferentialDrive drive)
+      throws InterruptedException {
+    NavigationCommand first = NavigationCommand.travelTo(3, 3);
+    NavigationCommand second = NavigationCommand.travelTo(3, 0);
+    navigation.enqueue(first, second);
+    Thread.sleep(300);
+
+    long start = System.nanoTime();
+    navigation.cancel();
+    double millis = (System.nanoTime() - start) / 1e6;
+    System.out.println(String.format("cancel: returned after %.0f ms", millis));
+
+    Check.isTrue(!drive.isMoving(), "robot stopped by the cancellation");
+    Check.isTrue(first.isDone() && first.isCancelled(), "running command cancelled");
+    Check.isTrue(second.isDone() && second.isCancelled(), "queued command cancelled");
+    Check.isTrue(navigation.waitNavigation(100), "nothing left to wait for after the cancel");
+  }
+
+}
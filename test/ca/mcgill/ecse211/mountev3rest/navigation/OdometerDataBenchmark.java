@@ -0,0 +1,160 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Measures the latency of reading the pose from {@code READERS} threads while another thread keeps
+ * writing it, with the sequence lock of {@code OdometerData} and with the fair lock it replaced.
+ * <p>
+ * The writer stores poses where Y is twice X and Theta is X modulo 360, so every reader also
+ * checks that it never observes a mix of two writes.
+ *
+ * @author angelortiz
+ *
+ */
+public class OdometerDataBenchmark {
+
+  // Constants
+  private static final int READERS = 4;
+  private static final int SAMPLES = 2000000; // Timed reads per reader thread
+
+  /**
+   * Pose store under test.
+   */
+  private interface PoseStore {
+    void setXYT(double x, double y, double theta);
+
+    double[] getXYT(double[] position);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    final OdometerData data = new OdometerData();
+    measure("sequence lock", new PoseStore() {
+      @Override
+      public void setXYT(double x, double y, double theta) {
+        data.setXYT(x, y, theta);
+      }
+
+      @Override
+      public double[] getXYT(double[] position) {
+        return data.getXYT(position);
+      }
+    });
+    measure("fair lock", new FairLockStore());
+  }
+
+  /*
+   * Runs the readers against a writer and prints the latency percentiles of the reads.
+   */
+  private static void measure(String name, final PoseStore store) throws InterruptedException {
+    final long[][] latencies = new long[READERS][SAMPLES];
+    final long[] inconsistent = new long[READERS];
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(READERS);
+
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (long i = 0; !isInterrupted(); i++)
+          store.setXYT(i, 2 * i, i % 360);
+      }
+    };
+
+    for (int r = 0; r < READERS; r++) {
+      final int reader = r;
+      new Thread() {
+        @Override
+        public void run() {
+          double[] position = new double[3];
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            // there is nothing to be done
+          }
+          for (int i = 0; i < SAMPLES; i++) {
+            long before = System.nanoTime();
+            store.getXYT(position);
+            latencies[reader][i] = System.nanoTime() - before;
+            if (position[1] != 2 * position[0] || position[2] != position[0] % 360)
+              inconsistent[reader]++;
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+
+    writer.start();
+    start.countDown();
+    done.await();
+    writer.interrupt();
+    writer.join();
+
+    long[] all = new long[READERS * SAMPLES];
+    long torn = 0;
+    for (int r = 0; r < READERS; r++) {
+      System.arraycopy(latencies[r], 0, all, r * SAMPLES, SAMPLES);
+      torn += inconsistent[r];
+    }
+    long[] sorted = Benchmark.sorted(all, all.length);
+
+    System.out.println(name + ", " + READERS + " readers and 1 writer");
+    Benchmark.report("  median read latency", Benchmark.percentile(sorted, 0.5), "ns");
+    Benchmark.report("  99th percentile read latency", Benchmark.percentile(sorted, 0.99), "ns");
+    Benchmark.report("  99.9th percentile read latency", Benchmark.percentile(sorted, 0.999),
+        "ns");
+    Benchmark.report("  maximum read latency", sorted[sorted.length - 1], "ns");
+    Check.equal(0, torn, name + " inconsistent reads");
+  }
+
+  /*
+   * Pose store with the fair lock and reset condition used by OdometerData before the sequence
+   * lock, kept as the reference of the benchmark.
+   */
+  private static class FairLockStore implements PoseStore {
+
+    private final Lock lock = new ReentrantLock(true);
+    private final Condition doneReseting = lock.newCondition();
+    private volatile boolean isReseting = false;
+    private volatile double x;
+    private volatile double y;
+    private volatile double theta;
+
+    @Override
+    public void setXYT(double x, double y, double theta) {
+      lock.lock();
+      isReseting = true;
+      try {
+        this.x = x;
+        this.y = y;
+        this.theta = theta;
+        isReseting = false;
+        doneReseting.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public double[] getXYT(double[] position) {
+      lock.lock();
+      try {
+        while (isReseting)
+          doneReseting.await();
+        position[0] = x;
+        position[1] = y;
+        position[2] = theta;
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } finally {
+        lock.unlock();
+      }
+      return position;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+
+/**
+ * Checks the configuration and updates of the {@code Odometer} against simulated motors.
+ *
+ * @author angelortiz
+ *
+ */
+public class OdometerTest {
+
+  // Constants
+  private static final int OVERWRITES = 20000;
+
+  public static void main(String[] args) throws InterruptedException {
+    rejectsInvalidPeriods();
+    keepsHistoryAtLongPeriods();
+    notifiesOverwrites();
+  }
+
+  private static void rejectsInvalidPeriods() {
+    for (long period : new long[] {0, -25}) {
+      try {
+        createOdometer(period);
+        throw new AssertionError("an odometer period of " + period + " ms should be rejected");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /*
+   * Periods longer than the span of the history still keep the two poses needed to interpolate.
+   */
+  private static void keepsHistoryAtLongPeriods() throws InterruptedException {
+    for (long period : new long[] {1, 25, 2000, 2001, 5000}) {
+      Odometer odometer = createOdometer(period);
+      for (int i = 0; i < 3; i++) {
+        odometer.run();
+        Thread.sleep(2);
+      }
+      Check.isTrue(odometer.getHistory().size() >= 2,
+          "history of a " + period + " ms odometer holds two poses");
+      Check.equal(period, odometer.getPeriod(), "period of the odometer");
+    }
+  }
+
+  /*
+   * Every overwrite is reported to the listeners on the next update, whatever their thresholds,
+   * even when it is made from another thread while the odometer is updating. The overwrites are
+   * too small to exceed the thresholds, so an overwrite whose flag is lost is never notified.
+   */
+  private static void notifiesOverwrites() throws InterruptedException {
+    final Odometer odometer = createOdometer(1);
+    final double[] notified = new double[1];
+    odometer.addPoseListener(new PoseListener() {
+      @Override
+      public void poseChanged(double x, double y, double theta) {
+        synchronized (notified) {
+          notified[0] = x;
+          notified.notifyAll();
+        }
+      }
+    }, 1000, 360);
+
+    Thread updater = new Thread() {
+      @Override
+      public void run() {
+        while (!isInterrupted())
+          odometer.run();
+      }
+    };
+    updater.start();
+
+    try {
+      for (int i = 1; i <= OVERWRITES; i++) {
+        double x = i * 1e-3;
+        odometer.setX(x);
+        long deadline = System.currentTimeMillis() + 1000;
+        synchronized (notified) {
+          while (notified[0] != x && System.currentTimeMillis() < deadline)
+            notified.wait(10);
+        }
+        Check.near(x, notified[0], 0, "X notified after overwrite " + i);
+      }
+    } finally {
+      updater.interrupt();
+      updater.join();
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static Odometer createOdometer(long period) {
+    return new Odometer(new SimulatedMotor(), new SimulatedMotor(), 1,
+        new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK), period);
+  }
+
+}
@@ -0,0 +1,110 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
+
+/**
+ * Runs a correction of the {@code OdometryCorrector} on a simulated robot, without the EV3 brick.
+ * <p>
+ * The robot drives toward a line of the grid with a heading and a position that its odometer does
+ * not know. A floor task integrates the true pose of the robot from its motors and sets the line
+ * sensors to the reading of the grid under them. Once the corrector has aligned the robot to the
+ * line, the robot must face it squarely and the odometer must agree with the true pose.
+ *
+ * @author angelortiz
+ *
+ */
+public class OdometryCorrectorTest {
+
+  // Constants
+  private static final double SENSOR_SPACING = 12; // Distance between the line sensors, in cm
+  private static final double LINE_WIDTH = 1;
+  private static final float FLOOR = 0.5f;
+  private static final float LINE = 0.05f;
+  private static final long FLOOR_PERIOD = 2;
+  private static final double[] TRUE_START = {45, 25, 6}; // Pose of the robot on the grid
+  private static final double[] ODOMETER_START = {45, 28, 0}; // Pose believed by the odometer
+  private static final double THETA_TOLERANCE = 2;
+  private static final double POSITION_TOLERANCE = 1;
+
+  public static void main(String[] args) throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(1);
+    try {
+      Odometer truth = new Odometer(robot.getLeftMotor(), robot.getRightMotor(), 1,
+          new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK), FLOOR_PERIOD);
+      truth.setXYT(TRUE_START[0], TRUE_START[1], TRUE_START[2]);
+      robot.getOdometer().setXYT(ODOMETER_START[0], ODOMETER_START[1], ODOMETER_START[2]);
+      robot.getScheduler().schedule(new Floor(robot, truth), FLOOR_PERIOD, Priority.HIGH);
+      robot.startOdometer();
+      Thread.sleep(10 * FLOOR_PERIOD);
+
+      robot.getCorrector().correctOnNextLine(false);
+      Thread.sleep(10 * SimulatedRobot.ODOMETER_PERIOD);
+
+      double[] actual = truth.getXYT();
+      double[] believed = robot.getOdometer().getXYT();
+      System.out.println(String.format(
+          "corrected odometer: (%.2f, %.2f, %.2f) for (%.2f, %.2f, %.2f)", believed[0],
+          believed[1], believed[2], actual[0], actual[1], actual[2]));
+      Check.atMost(THETA_TOLERANCE, angleError(0, actual[2]), "robot aligned to the line");
+      Check.atMost(THETA_TOLERANCE, angleError(actual[2], believed[2]), "corrected heading");
+      Check.near(actual[1], believed[1], POSITION_TOLERANCE, "corrected position across the line");
+    } finally {
+      robot.close();
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static double angleError(double expected, double actual) {
+    double error = Math.abs(expected - actual) % 360;
+    return Math.min(error, 360 - error);
+  }
+
+  /*
+   * Grid of lines every TILE_SIZE along both axes. Each update moves the true pose with the motors,
+   * and sets each line sensor to the reading of the floor under it.
+   */
+  private static class Floor implements Runnable {
+
+    private final Odometer truth;
+    private final SimulatedSensor leftSensor;
+    private final SimulatedSensor rightSensor;
+    private final double[] pose = new double[3];
+
+    private Floor(SimulatedRobot robot, Odometer truth) {
+      this.truth = truth;
+      this.leftSensor = robot.getLeftSensor();
+      this.rightSensor = robot.getRightSensor();
+    }
+
+    @Override
+    public void run() {
+      truth.run();
+      truth.getXYT(pose);
+      leftSensor.set(0, reading(-SENSOR_SPACING / 2));
+      rightSensor.set(0, reading(SENSOR_SPACING / 2));
+    }
+
+    /*
+     * Reading of a sensor placed SENSOR_OFFSET behind the axis of the wheels, as the corrector
+     * expects, and at the given distance to the right of the center of the robot.
+     */
+    private float reading(double side) {
+      double sin = Math.sin(Math.toRadians(pose[2]));
+      double cos = Math.cos(Math.toRadians(pose[2]));
+      double x = pose[0] - SimulatedRobot.SENSOR_OFFSET * sin + side * cos;
+      double y = pose[1] - SimulatedRobot.SENSOR_OFFSET * cos - side * sin;
+      return onLine(x) || onLine(y) ? LINE : FLOOR;
+    }
+
+    private boolean onLine(double position) {
+      double distance = Math.abs(position - Math.rint(position / SimulatedRobot.TILE_SIZE)
+          * SimulatedRobot.TILE_SIZE);
+      return distance <= LINE_WIDTH / 2;
+    }
+  }
+
+}
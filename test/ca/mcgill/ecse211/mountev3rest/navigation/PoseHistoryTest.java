@@ -0,0 +1,177 @@
+package ca.mcgill.ecse211.mountev3rest.navigation;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+
+/**
+ * Checks the interpolation of the poses and tacho counts recorded by the {@code PoseHistory}, and
+ * that the {@code Odometer} discards its history whenever its values are overwritten.
+ *
+ * @author angelortiz
+ *
+ */
+public class PoseHistoryTest {
+
+  // Constants
+  private static final long PERIOD = 10000000; // Time between two recorded entries, in ns
+  private static final long START = 1000000000; // Time of the first recorded entry, in ns
+  private static final int CAPACITY = 4;
+
+  public static void main(String[] args) throws InterruptedException {
+    rejectsSmallCapacities();
+    interpolatesBetweenEntries();
+    interpolatesThetaAcrossZero();
+    clampsToOldestEntry();
+    rejectsNewerTimes();
+    wrapsAround();
+    clearedByOdometerOverwrites();
+  }
+
+  private static void rejectsSmallCapacities() {
+    try {
+      new PoseHistory(1);
+      throw new AssertionError("a history of a single pose should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void interpolatesBetweenEntries() {
+    PoseHistory history = new PoseHistory(CAPACITY);
+    history.record(START, 0, 10, 90, 0, 100);
+    history.record(START + PERIOD, 10, 30, 100, 40, 120);
+
+    double[] position = new double[3];
+    int[] tachos = new int[2];
+    Check.isTrue(history.poseAt(START + PERIOD / 4, position), "pose between two entries");
+    Check.near(2.5, position[0], 1e-9, "interpolated X");
+    Check.near(15, position[1], 1e-9, "interpolated Y");
+    Check.near(92.5, position[2], 1e-9, "interpolated Theta");
+    Check.isTrue(history.tachoAt(START + PERIOD / 4, tachos), "tachos between two entries");
+    Check.equal(10, tachos[0], "interpolated left tacho");
+    Check.equal(105, tachos[1], "interpolated right tacho");
+
+    Check.isTrue(history.poseAt(START + PERIOD, position), "pose at the last entry");
+    Check.near(10, position[0], 1e-9, "X of the last entry");
+    Check.near(100, position[2], 1e-9, "Theta of the last entry");
+  }
+
+  /*
+   * A heading crossing 0 is interpolated along the short rotation in both directions, and stays
+   * within [0, 360).
+   */
+  private static void interpolatesThetaAcrossZero() {
+    double[] position = new double[3];
+    PoseHistory history = new PoseHistory(CAPACITY);
+    history.record(START, 0, 0, 350, 0, 0);
+    history.record(START + PERIOD, 0, 0, 10, 0, 0);
+    history.poseAt(START + PERIOD / 4, position);
+    Check.near(355, position[2], 1e-9, "Theta turning clockwise past 0");
+    history.poseAt(START + 3 * PERIOD / 4, position);
+    Check.near(5, position[2], 1e-9, "Theta turning clockwise past 0");
+
+    history.clear();
+    history.record(START, 0, 0, 5, 0, 0);
+    history.record(START + PERIOD, 0, 0, 345, 0, 0);
+    history.poseAt(START + 3 * PERIOD / 4, position);
+    Check.near(350, position[2], 1e-9, "Theta turning counterclockwise past 0");
+  }
+
+  private static void clampsToOldestEntry() {
+    double[] position = new double[3];
+    int[] tachos = new int[2];
+    PoseHistory history = new PoseHistory(CAPACITY);
+    history.record(START, 1, 2, 3, 4, 5);
+    history.record(START + PERIOD, 11, 12, 13, 14, 15);
+
+    Check.isTrue(history.poseAt(START - 5 * PERIOD, position), "pose older than the history");
+    Check.near(1, position[0], 1e-9, "X clamped to the oldest entry");
+    Check.near(2, position[1], 1e-9, "Y clamped to the oldest entry");
+    Check.near(3, position[2], 1e-9, "Theta clamped to the oldest entry");
+    Check.isTrue(history.tachoAt(START - 5 * PERIOD, tachos), "tachos older than the history");
+    Check.equal(4, tachos[0], "left tacho clamped to the oldest entry");
+    Check.equal(5, tachos[1], "right tacho clamped to the oldest entry");
+  }
+
+  /*
+   * Times past the last entry, or any time on an empty history, are rejected and leave the output
+   * untouched.
+   */
+  private static void rejectsNewerTimes() {
+    double[] position = {-1, -1, -1};
+    int[] tachos = {-1, -1};
+    PoseHistory history = new PoseHistory(CAPACITY);
+    Check.isTrue(!history.poseAt(START, position), "pose of an empty history");
+    Check.isTrue(!history.tachoAt(START, tachos), "tachos of an empty history");
+
+    history.record(START, 1, 2, 3, 4, 5);
+    history.record(START + PERIOD, 11, 12, 13, 14, 15);
+    Check.isTrue(!history.poseAt(START + PERIOD + 1, position), "pose newer than the history");
+    Check.isTrue(!history.tachoAt(START + PERIOD + 1, tachos), "tachos newer than the history");
+    Check.near(-1, position[0], 0, "X left untouched");
+    Check.equal(-1, tachos[0], "left tacho left untouched");
+  }
+
+  /*
+   * Once the ring is full, the newest entries overwrite the oldest ones, and the interpolation
+   * still finds the entries around a time across the end of the arrays.
+   */
+  private static void wrapsAround() {
+    double[] position = new double[3];
+    int[] tachos = new int[2];
+    PoseHistory history = new PoseHistory(CAPACITY);
+    int entries = 2 * CAPACITY + 1;
+    for (int i = 0; i < entries; i++)
+      history.record(START + i * PERIOD, i, 2 * i, 10 * i, 100 * i, -100 * i);
+    Check.equal(CAPACITY, history.size(), "entries of a full history");
+
+    int oldest = entries - CAPACITY;
+    history.poseAt(START, position);
+    Check.near(oldest, position[0], 1e-9, "overwritten pose clamped to the oldest kept");
+    for (int i = oldest; i < entries - 1; i++) {
+      long time = START + i * PERIOD + PERIOD / 2;
+      Check.isTrue(history.poseAt(time, position), "pose after entry " + i);
+      Check.near(i + 0.5, position[0], 1e-9, "X after entry " + i);
+      Check.near(2 * i + 1, position[1], 1e-9, "Y after entry " + i);
+      Check.near(10 * i + 5, position[2], 1e-9, "Theta after entry " + i);
+      Check.isTrue(history.tachoAt(time, tachos), "tachos after entry " + i);
+      Check.equal(100 * i + 50, tachos[0], "left tacho after entry " + i);
+      Check.equal(-100 * i - 50, tachos[1], "right tacho after entry " + i);
+    }
+  }
+
+  /*
+   * The recorded poses belong to the frame the odometer had before an overwrite, so every setter
+   * discards them.
+   */
+  private static void clearedByOdometerOverwrites() throws InterruptedException {
+    String[] setters = {"setXYT", "setX", "setY", "setTheta"};
+    for (int setter = 0; setter < setters.length; setter++) {
+      Odometer odometer = new Odometer(new SimulatedMotor(), new SimulatedMotor(), 1,
+          new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK),
+          SimulatedRobot.ODOMETER_PERIOD);
+      for (int i = 0; i < 3; i++) {
+        odometer.run();
+        Thread.sleep(1);
+      }
+      Check.isTrue(odometer.getHistory().size() > 0, "history recorded by the odometer");
+
+      switch (setter) {
+        case 0:
+          odometer.setXYT(10, 20, 30);
+          break;
+        case 1:
+          odometer.setX(10);
+          break;
+        case 2:
+          odometer.setY(20);
+          break;
+        default:
+          odometer.setTheta(30);
+      }
+      Check.equal(0, odometer.getHistory().size(), "history after " + setters[setter]);
+    }
+  }
+
+}
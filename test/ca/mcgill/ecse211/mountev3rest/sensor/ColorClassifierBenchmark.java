@@ -0,0 +1,95 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Allocations;
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import java.util.Random;
+
+/**
+ * Measures the time and the allocations of the classification of a ring reading, with the
+ * {@code ColorClassifier} of the {@code ColorDetector}, with the distance computation it replaced
+ * and with a {@code ColorLookupTable} built from the classifier.
+ * <p>
+ * The readings are spread over the colors of the rings and the background, so every reference is
+ * checked as often as during a sweep of the arm.
+ *
+ * @author angelortiz
+ *
+ */
+public class ColorClassifierBenchmark {
+
+  // Constants
+  private static final int READINGS = 4096; // Readings classified in turn, a power of two
+  private static final int ALLOCATION_RUNS = 100000;
+
+  public static void main(String[] args) {
+    final float[][] readings = readings(new Random(211));
+
+    final DistanceClassifier original = DistanceClassifier.rings();
+    measure("distance computation", readings, new Benchmark.Operation() {
+      private int next;
+
+      @Override
+      public long run() {
+        return original.classify(readings[next++ & (READINGS - 1)]);
+      }
+    });
+
+    final ColorClassifier classifier = ColorDetector.createDefaultClassifier();
+    measure("ColorClassifier", readings, new Benchmark.Operation() {
+      private int next;
+
+      @Override
+      public long run() {
+        return classifier.classify(readings[next++ & (READINGS - 1)]);
+      }
+    });
+
+    final ColorLookupTable table = new ColorLookupTable(classifier);
+    table.build();
+    measure("ColorLookupTable", readings, new Benchmark.Operation() {
+      private int next;
+
+      @Override
+      public long run() {
+        return table.classify(readings[next++ & (READINGS - 1)]);
+      }
+    });
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static void measure(String name, float[][] readings, final Benchmark.Operation classify) {
+    System.out.println(name);
+    Benchmark.report("  time per reading", Benchmark.nanosPerOperation(classify), "ns");
+    if (Allocations.isSupported()) {
+      long bytes = Allocations.measure(new Runnable() {
+        @Override
+        public void run() {
+          long sum = 0;
+          for (int i = 0; i < ALLOCATION_RUNS; i++)
+            sum += classify.run();
+          Benchmark.sink = sum;
+        }
+      });
+      Benchmark.report("  bytes allocated per reading", (double) bytes / ALLOCATION_RUNS,
+          "bytes");
+    }
+  }
+
+  /*
+   * Readings of the four rings and of the background under random brightness and noise.
+   */
+  private static float[][] readings(Random random) {
+    double[][] colors = {{0.1461, 0.6783, 0.7200}, {0.4180, 0.8995, 0.1266},
+        {0.8221, 0.5516, 0.1406}, {0.9578, 0.2786, 0.0696}, {0.5774, 0.5774, 0.5774}};
+    float[][] readings = new float[READINGS][3];
+    for (float[] reading : readings) {
+      double[] color = colors[random.nextInt(colors.length)];
+      double brightness = 0.02 + 0.2 * random.nextDouble();
+      for (int i = 0; i < 3; i++)
+        reading[i] = (float) Math.max(0, brightness * (color[i] + 0.08 * random.nextGaussian()));
+    }
+    return readings;
+  }
+
+}
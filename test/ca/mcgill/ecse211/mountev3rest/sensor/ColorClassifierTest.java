@@ -0,0 +1,218 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Allocations;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Checks that the {@code ColorClassifier} takes the same decisions as the distance computation it
+ * replaced, for the references of the rings and for larger sets of references, and that it
+ * classifies readings without allocating.
+ * <p>
+ * Besides readings spread over the whole {@code RGB} space, the readings are drawn close to the
+ * threshold of every reference, where a difference between the two computations would show.
+ *
+ * @author angelortiz
+ *
+ */
+public class ColorClassifierTest {
+
+  // Constants
+  private static final int READINGS = 1000000;
+  private static final int REFERENCES = 12; // References of the randomly generated classifiers
+
+  public static void main(String[] args) {
+    Random random = new Random(211);
+    ColorClassifier classifier = ColorDetector.createDefaultClassifier();
+    DistanceClassifier original = DistanceClassifier.rings();
+    matchesOriginal("ring references", classifier, original, ringMeans(), random);
+
+    for (int i = 0; i < 3; i++)
+      matchesRandomReferences(random);
+
+    rejectsUnnormalizableReadings(classifier);
+    keepsReferencesOnSaveAndLoad(classifier, random);
+    classifiesWithoutAllocating(classifier, random);
+  }
+
+  private static void matchesOriginal(String name, ColorClassifier classifier,
+      DistanceClassifier original, double[][] means, Random random) {
+    float[] reading = new float[3];
+    int[] counts = new int[ColorDetector.NONE + REFERENCES + 1];
+    for (int i = 0; i < READINGS; i++) {
+      if (i % 2 == 0)
+        randomReading(random, reading);
+      else
+        nearThreshold(random, means, classifier, reading);
+
+      int expected = original.classify(reading);
+      Check.equal(expected, classifier.classify(reading),
+          name + ", reading (" + reading[0] + ", " + reading[1] + ", " + reading[2] + ")");
+      counts[expected]++;
+    }
+
+    StringBuilder summary = new StringBuilder(name + ": " + READINGS + " readings agree, codes");
+    for (int code = 0; code < counts.length; code++)
+      if (counts[code] > 0)
+        summary.append(' ').append(code).append('=').append(counts[code]);
+    System.out.println(summary);
+  }
+
+  /*
+   * References are loaded from data in any number, so compare classifiers holding more references
+   * than the rings, with overlapping thresholds.
+   */
+  private static void matchesRandomReferences(Random random) {
+    int[] codes = new int[REFERENCES];
+    double[][] means = new double[REFERENCES][];
+    double[] thresholds = new double[REFERENCES];
+    ColorClassifier classifier = new ColorClassifier(0);
+    for (int i = 0; i < REFERENCES; i++) {
+      codes[i] = i + 1;
+      means[i] = unitVector(random, true);
+      thresholds[i] = 0.05 + 0.3 * random.nextDouble();
+      classifier.addReference(codes[i], means[i], thresholds[i]);
+    }
+    Check.equal(REFERENCES, classifier.getReferenceCount(), "references of the classifier");
+
+    matchesOriginal(REFERENCES + " random references", classifier,
+        new DistanceClassifier(codes, means, thresholds, 0), means, random);
+  }
+
+  private static void rejectsUnnormalizableReadings(ColorClassifier classifier) {
+    Check.equal(ColorDetector.NONE, classifier.classify(new float[3]), "code of a zero reading");
+    Check.equal(ColorDetector.NONE, classifier.classify(new float[] {Float.NaN, 0.1f, 0.1f}),
+        "code of a NaN reading");
+  }
+
+  private static void keepsReferencesOnSaveAndLoad(ColorClassifier classifier, Random random) {
+    Properties properties = new Properties();
+    classifier.save(properties, "color");
+    ColorClassifier loaded = new ColorClassifier(ColorDetector.NONE);
+    Check.isTrue(loaded.load(properties, "color"), "saved references are loaded");
+    Check.equal(classifier.getReferenceCount(), loaded.getReferenceCount(), "references loaded");
+
+    float[] reading = new float[3];
+    for (int i = 0; i < READINGS / 10; i++) {
+      nearThreshold(random, ringMeans(), classifier, reading);
+      Check.equal(classifier.classify(reading), loaded.classify(reading), "loaded decision");
+    }
+
+    // An invalid reference leaves the classifier unchanged
+    properties.setProperty("color.2.threshold", "-1");
+    Check.isTrue(!loaded.load(properties, "color"), "invalid references are rejected");
+    Check.equal(classifier.getReferenceCount(), loaded.getReferenceCount(),
+        "references kept after an invalid load");
+  }
+
+  private static void classifiesWithoutAllocating(final ColorClassifier classifier,
+      Random random) {
+    if (!Allocations.isSupported()) {
+      System.out.println("allocation check skipped: this JVM cannot count the allocations");
+      return;
+    }
+
+    final float[][] readings = new float[1024][3];
+    for (float[] reading : readings)
+      nearThreshold(random, ringMeans(), classifier, reading);
+    Runnable loop = new Runnable() {
+      @Override
+      public void run() {
+        int sum = 0;
+        for (int i = 0; i < READINGS; i++)
+          sum += classifier.classify(readings[i & (readings.length - 1)]);
+        Check.isTrue(sum > 0, "codes returned");
+      }
+    };
+
+    loop.run();
+    long bytes = Allocations.measure(loop);
+    System.out.println("classify: " + bytes + " bytes allocated in " + READINGS + " readings");
+    Check.equal(0, bytes, "bytes allocated by classify");
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static double[][] ringMeans() {
+    return new double[][] {{0.1461, 0.6783, 0.7200}, {0.4180, 0.8995, 0.1266},
+        {0.8221, 0.5516, 0.1406}, {0.9578, 0.2786, 0.0696}};
+  }
+
+  /*
+   * Raw reading with components in the range of the sensor.
+   */
+  private static void randomReading(Random random, float[] reading) {
+    for (int i = 0; i < 3; i++)
+      reading[i] = 0.3f * random.nextFloat();
+  }
+
+  /*
+   * Raw reading whose normalized value lies close to the threshold of a reference, scaled by a
+   * random brightness. Readings closer than one part in a billion to a threshold are avoided, since
+   * the two computations round differently there.
+   */
+  private static void nearThreshold(Random random, double[][] means, ColorClassifier classifier,
+      float[] reading) {
+    while (true) {
+      int reference = random.nextInt(means.length);
+      double factor = 0.02 * random.nextDouble() - 0.01;
+      double distance = classifier.getThreshold(reference) * (1 + factor);
+      double[] direction = unitVector(random, false);
+      double brightness = 0.01 + 0.3 * random.nextDouble();
+
+      boolean valid = true;
+      double norm = 0;
+      double[] point = new double[3];
+      for (int i = 0; i < 3; i++) {
+        point[i] = means[reference][i] + distance * direction[i];
+        valid &= point[i] >= 0;
+        norm += point[i] * point[i];
+      }
+      if (!valid || norm == 0)
+        continue;
+
+      for (int i = 0; i < 3; i++)
+        reading[i] = (float) (brightness * point[i] / Math.sqrt(norm));
+      if (farFromThresholds(reading, means, classifier))
+        return;
+    }
+  }
+
+  private static boolean farFromThresholds(float[] reading, double[][] means,
+      ColorClassifier classifier) {
+    double r = reading[0];
+    double g = reading[1];
+    double b = reading[2];
+    double norm = Math.sqrt(r * r + g * g + b * b);
+    for (int i = 0; i < means.length; i++) {
+      double squared = 0;
+      for (int j = 0; j < 3; j++) {
+        double difference = means[i][j] - reading[j] / norm;
+        squared += difference * difference;
+      }
+      double threshold = classifier.getThreshold(i);
+      if (Math.abs(Math.sqrt(squared) - threshold) < 1e-9 * threshold)
+        return false;
+    }
+    return true;
+  }
+
+  /*
+   * Random direction, restricted to the positive octant where the normalized readings lie if
+   * requested.
+   */
+  private static double[] unitVector(Random random, boolean positive) {
+    double[] vector = new double[3];
+    double norm = 0;
+    for (int i = 0; i < 3; i++) {
+      vector[i] = positive ? Math.abs(random.nextGaussian()) : random.nextGaussian();
+      norm += vector[i] * vector[i];
+    }
+    norm = Math.sqrt(norm);
+    for (int i = 0; i < 3; i++)
+      vector[i] /= norm;
+    return vector;
+  }
+
+}
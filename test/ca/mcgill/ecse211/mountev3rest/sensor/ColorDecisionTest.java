@@ -0,0 +1,182 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures the ring colors decided by the {@code ColorDetector} over a sensor log of arm sweeps,
+ * and the number of readings taken per decision, with the sequential decision of the detector and
+ * with the rule it replaced, which required {@code MINIMUM_DETECTIONS} identical classifications in
+ * a row.
+ * <p>
+ * Every sweep is replayed as {@code ArmController.getRing()} runs it: decisions are taken one after
+ * the other on consecutive readings until one of them is a ring or the sweep ends. With the former
+ * rule the arm also slept for one period after every decision, so one reading is skipped between
+ * decisions. The sequential decision must not misclassify more sweeps than the former rule and must
+ * take fewer readings per decision on average, on sweeps with the default noise of
+ * {@code RingSweeps} and with twice that noise.
+ *
+ * @author angelortiz
+ *
+ */
+public class ColorDecisionTest {
+
+  // Constants
+  private static final int SWEEPS = 2000;
+  private static final int MINIMUM_DETECTIONS = 5;
+
+  /**
+   * Decision rule replayed over the readings of a sweep.
+   */
+  private interface Rule {
+    void start();
+
+    // Returns the color decided, or 0 if more readings are needed
+    int add(int color);
+
+    // Readings skipped by the arm after a decision
+    int pause();
+  }
+
+  public static void main(String[] args) throws IOException {
+    File log = File.createTempFile("sweeps", ".log");
+    log.deleteOnExit();
+    for (double noise : new double[] {RingSweeps.NOISE, 2 * RingSweeps.NOISE}) {
+      System.out.println("sweeps with a noise of " + noise);
+      int[] codes = RingSweeps.record(log.getPath(), SWEEPS, 1, noise);
+      compareRules(codes, RingSweeps.replay(log.getPath()));
+    }
+  }
+
+  private static void compareRules(int[] codes, float[][] readings) {
+    Check.equal(SWEEPS * RingSweeps.READINGS_PER_SWEEP, readings.length, "readings in the log");
+
+    final ColorDetector detector = new ColorDetector(null, new LightPoller(
+        new SimulatedSensor(3), new SimulatedSensor(1), new SimulatedSensor(1)));
+    ColorClassifier classifier = detector.getClassifier();
+    int[] classified = new int[readings.length];
+    for (int i = 0; i < readings.length; i++)
+      classified[i] = classifier.classify(readings[i]);
+
+    Result consecutive = replay("  five in a row", codes, classified, new Rule() {
+      private int last;
+      private int count; // Consecutive readings classified as the last color
+
+      @Override
+      public void start() {
+        last = 0;
+        count = 0;
+      }
+
+      @Override
+      public int add(int color) {
+        count = color == last ? count + 1 : 1;
+        last = color;
+        return count == MINIMUM_DETECTIONS ? color : 0;
+      }
+
+      @Override
+      public int pause() {
+        return 1;
+      }
+    });
+
+    Result sequential = replay("  sequential", codes, classified, new Rule() {
+      @Override
+      public void start() {
+        detector.startDecision();
+      }
+
+      @Override
+      public int add(int color) {
+        return detector.addEvidence(color) ? color : 0;
+      }
+
+      @Override
+      public int pause() {
+        return 0;
+      }
+    });
+
+    Check.atMost(consecutive.errors(), sequential.errors(), "misclassified sweeps");
+    Check.isTrue(sequential.readingsPerDecision() < consecutive.readingsPerDecision(),
+        "fewer readings per decision");
+    Check.isTrue(detector.getLastConfidence() >= 0.99999, "confidence of the last decision");
+  }
+
+  /*
+   * Replays every sweep of the log with a decision rule and prints the results.
+   */
+  private static Result replay(String name, int[] codes, int[] classified, Rule rule) {
+    Result result = new Result();
+    for (int sweep = 0; sweep < codes.length; sweep++) {
+      int first = sweep * RingSweeps.READINGS_PER_SWEEP;
+      int end = first + RingSweeps.READINGS_PER_SWEEP;
+      int detected = ColorDetector.NONE;
+
+      rule.start();
+      for (int i = first; i < end; i++) {
+        int decided = rule.add(classified[i]);
+        if (decided == 0)
+          continue;
+
+        result.decisions++;
+        result.readings += i + 1 - first - result.sweepReadings;
+        result.sweepReadings = i + 1 - first;
+        if (decided != ColorDetector.NONE) {
+          detected = decided;
+          result.detections++;
+          result.detectionReadings += i + 1 - first;
+          break;
+        }
+        i += rule.pause();
+        result.sweepReadings += rule.pause();
+        rule.start();
+      }
+      result.sweepReadings = 0;
+
+      if (detected == codes[sweep])
+        continue;
+      if (codes[sweep] == ColorDetector.NONE)
+        result.falseRings++;
+      else if (detected == ColorDetector.NONE)
+        result.missedRings++;
+      else
+        result.wrongColors++;
+    }
+
+    System.out.println(name);
+    System.out.println(String.format("    %d sweeps: %d wrong colors, %d missed rings,"
+        + " %d rings on empty faces", codes.length, result.wrongColors, result.missedRings,
+        result.falseRings));
+    System.out.println(String.format("    %.2f readings per decision, %.1f readings into the sweep"
+        + " per ring detected", result.readingsPerDecision(),
+        (double) result.detectionReadings / result.detections));
+    return result;
+  }
+
+  /*
+   * Outcome of the replay of every sweep with a rule.
+   */
+  private static class Result {
+    private int wrongColors;
+    private int missedRings;
+    private int falseRings;
+    private long decisions;
+    private int detections; // Sweeps where a ring was detected
+    private long readings; // Readings used by the decisions, excluding the skipped ones
+    private long detectionReadings; // Readings taken in the sweeps before a ring was detected
+    private int sweepReadings; // Readings of the current sweep already counted
+
+    private int errors() {
+      return wrongColors + missedRings + falseRings;
+    }
+
+    private double readingsPerDecision() {
+      return (double) readings / decisions;
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Checks that a {@code ColorLookupTable} built from the references of the rings takes exactly the
+ * decisions of its {@code ColorClassifier}.
+ * <p>
+ * The decisions are compared on every reading of a sensor log of ring sweeps, on a dense grid of
+ * directions covering every normalized reading, and after the table was saved and loaded back. The
+ * log is synthesized by {@code RingSweeps} unless the path of a log recorded on the robot is given
+ * as argument.
+ *
+ * @author angelortiz
+ *
+ */
+public class ColorLookupTableTest {
+
+  // Constants
+  private static final int SWEEPS = 2000;
+  private static final int GRID = 1500; // Directions per angle of the grid
+
+  public static void main(String[] args) throws IOException {
+    ColorClassifier classifier = ColorDetector.createDefaultClassifier();
+    ColorLookupTable table = new ColorLookupTable(classifier);
+    table.build();
+    System.out.println("built table: " + table.getAmbiguousCount() + " ambiguous cells");
+
+    File log;
+    if (args.length > 0) {
+      log = new File(args[0]);
+    } else {
+      log = File.createTempFile("sweeps", ".log");
+      log.deleteOnExit();
+      RingSweeps.record(log.getPath(), SWEEPS, 211);
+    }
+    float[][] readings = RingSweeps.replay(log.getPath());
+    matchesOnLog(table, classifier, readings);
+    matchesOnGrid(table, classifier);
+    keepsDecisionsOnSaveAndLoad(table, classifier, readings);
+    trainsFromLabelledReadings(classifier, readings);
+  }
+
+  private static void matchesOnLog(ColorLookupTable table, ColorClassifier classifier,
+      float[][] readings) {
+    int[] counts = new int[ColorDetector.NONE + 1];
+    for (int i = 0; i < readings.length; i++) {
+      int expected = classifier.classify(readings[i]);
+      Check.equal(expected, table.classify(readings[i]), "decision on reading " + i);
+      counts[expected]++;
+    }
+    System.out.println(String.format("log: %d readings agree, blue %d, green %d, yellow %d,"
+        + " orange %d, none %d", readings.length, counts[ColorDetector.BLUE],
+        counts[ColorDetector.GREEN], counts[ColorDetector.YELLOW], counts[ColorDetector.ORANGE],
+        counts[ColorDetector.NONE]));
+  }
+
+  /*
+   * Normalized readings only depend on the direction of the raw reading, so a grid over the
+   * angles of the positive octant reaches every cell of the table the sensor can produce, and
+   * crosses every decision boundary many times.
+   */
+  private static void matchesOnGrid(ColorLookupTable table, ColorClassifier classifier) {
+    float[] reading = new float[3];
+    int directions = 0;
+    for (int i = 0; i <= GRID; i++) {
+      double polar = Math.PI / 2 * i / GRID;
+      for (int j = 0; j <= GRID; j++) {
+        double azimuth = Math.PI / 2 * j / GRID;
+        reading[0] = (float) (Math.sin(polar) * Math.cos(azimuth));
+        reading[1] = (float) (Math.sin(polar) * Math.sin(azimuth));
+        reading[2] = (float) Math.cos(polar);
+        Check.equal(classifier.classify(reading), table.classify(reading),
+            "decision in direction " + i + ", " + j);
+        directions++;
+      }
+    }
+    System.out.println("grid: " + directions + " directions agree");
+  }
+
+  private static void keepsDecisionsOnSaveAndLoad(ColorLookupTable table,
+      ColorClassifier classifier, float[][] readings) throws IOException {
+    File file = File.createTempFile("colorTable", ".bin");
+    file.deleteOnExit();
+    Check.isTrue(table.save(file.getPath()), "table saved");
+    Check.equal(8 + 32 * 32 * 32, file.length(), "size of the table file");
+
+    ColorLookupTable loaded = new ColorLookupTable(classifier);
+    Check.isTrue(loaded.load(file.getPath()), "table loaded");
+    Check.equal(table.getAmbiguousCount(), loaded.getAmbiguousCount(), "ambiguous cells loaded");
+    for (int i = 0; i < readings.length; i++)
+      Check.equal(classifier.classify(readings[i]), loaded.classify(readings[i]),
+          "decision of the loaded table on reading " + i);
+
+    // A file that is not a table leaves the table unchanged
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[64]);
+    } finally {
+      out.close();
+    }
+    Check.isTrue(!loaded.load(file.getPath()), "invalid table file rejected");
+    Check.equal(table.getAmbiguousCount(), loaded.getAmbiguousCount(),
+        "ambiguous cells after an invalid load");
+  }
+
+  /*
+   * A table trained on labelled readings reproduces the labels of its training readings, the cells
+   * with conflicting labels being left to the classifier.
+   */
+  private static void trainsFromLabelledReadings(ColorClassifier classifier, float[][] readings) {
+    int[] codes = new int[readings.length];
+    for (int i = 0; i < readings.length; i++)
+      codes[i] = classifier.classify(readings[i]);
+
+    ColorLookupTable trained = new ColorLookupTable(classifier);
+    trained.train(readings, codes);
+    for (int i = 0; i < readings.length; i++)
+      Check.equal(codes[i], trained.classify(readings[i]), "trained decision on reading " + i);
+    System.out.println("trained table: " + trained.getAmbiguousCount() + " ambiguous cells");
+  }
+
+}
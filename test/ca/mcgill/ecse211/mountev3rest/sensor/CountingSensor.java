@@ -0,0 +1,50 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated sensor that counts how many times it is read, to measure the sensor accesses of the
+ * pollers. On the EV3 every {@code fetchSample()} call reads the sensor port, so the count is the
+ * main cost of a poll.
+ * 
+ * @author angelortiz
+ *
+ */
+public class CountingSensor extends SimulatedSensor {
+
+  // Attributes
+  private final AtomicLong fetches = new AtomicLong();
+
+  /**
+   * Creates a sensor with the given sample size. Every value starts at 0.
+   * 
+   * @param size Number of values in a sample.
+   */
+  public CountingSensor(int size) {
+    super(size);
+  }
+
+  @Override
+  public void fetchSample(float[] sample, int offset) {
+    fetches.incrementAndGet();
+    super.fetchSample(sample, offset);
+  }
+
+  /**
+   * Returns the number of reads since the sensor was created or last reset.
+   * 
+   * @return Number of {@code fetchSample()} calls.
+   */
+  public long getFetches() {
+    return fetches.get();
+  }
+
+  /**
+   * Resets the number of reads to zero.
+   */
+  public void reset() {
+    fetches.set(0);
+  }
+
+}
@@ -0,0 +1,89 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+/**
+ * Replica of the classification made by {@code ColorDetector} before the {@code ColorClassifier},
+ * which normalized the reading and took its Euclidean distance to every reference mean with
+ * {@code Math.pow} and {@code Math.sqrt}. It is kept as the reference of the color tests and
+ * benchmarks since it is no longer in the code.
+ *
+ * @author angelortiz
+ *
+ */
+public class DistanceClassifier {
+
+  // Attributes
+  private final int[] codes;
+  private final double[][] means;
+  private final double[] thresholds;
+  private final int noMatch;
+
+  /**
+   * Creates a classifier checking the given references in order.
+   *
+   * @param codes Code of every reference.
+   * @param means Normalized {@code RGB} mean of every reference.
+   * @param thresholds Maximum distance to every mean.
+   * @param noMatch Code of the readings matching no reference.
+   */
+  public DistanceClassifier(int[] codes, double[][] means, double[] thresholds, int noMatch) {
+    this.codes = codes;
+    this.means = means;
+    this.thresholds = thresholds;
+    this.noMatch = noMatch;
+  }
+
+  /**
+   * Creates the classifier of the rings, with the references and thresholds that were hard coded in
+   * {@code ColorDetector.getColor()}.
+   *
+   * @return A new {@code DistanceClassifier}.
+   */
+  public static DistanceClassifier rings() {
+    return new DistanceClassifier(
+        new int[] {ColorDetector.BLUE, ColorDetector.GREEN, ColorDetector.YELLOW,
+            ColorDetector.ORANGE},
+        new double[][] {{0.1461, 0.6783, 0.7200}, {0.4180, 0.8995, 0.1266},
+            {0.8221, 0.5516, 0.1406}, {0.9578, 0.2786, 0.0696}},
+        new double[] {0.17, 0.15, 0.15, 0.2}, ColorDetector.NONE);
+  }
+
+  /**
+   * Classifies a reading.
+   *
+   * @param reading Raw {@code RGB} reading.
+   * @return Code of the first reference whose distance to the normalized reading is below its
+   *         threshold, or the no match code.
+   */
+  public int classify(float[] reading) {
+    for (int i = 0; i < means.length; i++)
+      if (computeDistance(means[i], reading) < thresholds[i])
+        return codes[i];
+    return noMatch;
+  }
+
+  // ---PRIVATE METHODS---
+
+  private double computeDistance(double[] reference, float[] reading) {
+    double[] normReading = normalize(reading);
+    double ret = 0;
+
+    for (int i = 0; i < reference.length; i++)
+      ret += Math.pow((reference[i] - normReading[i]), 2);
+    return Math.sqrt(ret);
+  }
+
+  private double[] normalize(float[] values) {
+    double[] ret = new double[values.length];
+    double geometricMean = 0;
+
+    for (double v : values)
+      geometricMean += Math.pow(v, 2);
+    geometricMean = Math.sqrt(geometricMean);
+
+    for (int i = 0; i < ret.length; i++)
+      ret[i] = values[i] / geometricMean;
+
+    return ret;
+  }
+
+}
@@ -0,0 +1,175 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Allocations;
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the time of an update of every {@code SampleFilter} over a stream of noisy light
+ * readings, and checks that the filters compute the same values as a direct computation over the
+ * window without allocating.
+ * <p>
+ * The filters are compared with a mean that sums its whole window on every reading, as the leJOS
+ * {@code MeanFilter} they replaced does. That mean is replicated here since it is no longer used by
+ * the code. The sensor reads saved by feeding the filters readings that were already fetched are
+ * counted by {@code LightPollerBenchmark}.
+ *
+ * @author angelortiz
+ *
+ */
+public class FilterBenchmark {
+
+  // Constants
+  private static final int READINGS = 4096; // Length of the stream of readings, a power of two
+  private static final int CHECKED = 100000; // Updates compared with the direct computation
+  private static final float EWMA_WEIGHT = 0.3f;
+
+  public static void main(String[] args) {
+    final float[] readings = readings(new Random(211));
+
+    measure("leJOS style mean of 5", readings, new WindowSumMean(5), 5);
+    measure("MovingMeanFilter of 5", readings, new MovingMeanFilter(5), 5);
+    measure("leJOS style mean of 32", readings, new WindowSumMean(32), 32);
+    measure("MovingMeanFilter of 32", readings, new MovingMeanFilter(32), 32);
+    measure("MedianFilter of 5", readings, new MedianFilter(5), 5);
+    measure("MedianFilter of 15", readings, new MedianFilter(15), 15);
+    measure("EwmaFilter", readings, new EwmaFilter(EWMA_WEIGHT), 0);
+    measure("DerivativeFilter of lag 3", readings, new DerivativeFilter(3), 3);
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Checks the outputs of a filter, then reports the time of an update and the bytes it allocates.
+   */
+  private static void measure(String name, final float[] readings, final SampleFilter filter,
+      int size) {
+    check(name, readings, filter, size);
+
+    filter.reset();
+    final int[] next = new int[1];
+    Benchmark.Operation update = new Benchmark.Operation() {
+      @Override
+      public long run() {
+        float value = filter.update(readings[next[0]++ & (READINGS - 1)]);
+        return Float.floatToRawIntBits(value);
+      }
+    };
+
+    System.out.println(name);
+    Benchmark.report("  time per update", Benchmark.nanosPerOperation(update), "ns");
+    if (Allocations.isSupported()) {
+      long bytes = Allocations.measure(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < CHECKED; i++)
+            filter.update(readings[i & (READINGS - 1)]);
+        }
+      });
+      Benchmark.report("  bytes allocated per update", (double) bytes / CHECKED, "bytes");
+      Check.equal(0, bytes, name + " allocated bytes");
+    }
+  }
+
+  /*
+   * Compares the outputs of a filter with the direct computation of its value over the readings it
+   * received, after a reset and after enough readings to wrap its ring buffer many times.
+   */
+  private static void check(String name, float[] readings, SampleFilter filter, int size) {
+    filter.reset();
+    Check.isTrue(Float.isNaN(filter.getValue()), name + " is empty after a reset");
+
+    float[] history = new float[CHECKED];
+    float average = readings[0]; // Exponentially weighted average of the readings so far
+    for (int i = 0; i < CHECKED; i++) {
+      history[i] = readings[i & (READINGS - 1)];
+      float value = filter.update(history[i]);
+      Check.isTrue(Float.compare(value, filter.getValue()) == 0,
+          name + " returns its value on update");
+
+      average += EWMA_WEIGHT * (history[i] - average);
+      float expected =
+          filter instanceof EwmaFilter ? average : expected(filter, history, i, size);
+      double tolerance = filter instanceof MedianFilter ? 0 : 1e-5;
+      Check.near(expected, value, tolerance, name + " output after " + (i + 1) + " readings");
+    }
+  }
+
+  /*
+   * Value of a window filter over the readings up to the given index, computed directly.
+   */
+  private static float expected(SampleFilter filter, float[] history, int index, int size) {
+    int first = Math.max(0, index - size + 1);
+    if (filter instanceof DerivativeFilter)
+      return history[index] - history[Math.max(0, index - size)];
+    if (filter instanceof MedianFilter) {
+      float[] window = Arrays.copyOfRange(history, first, index + 1);
+      Arrays.sort(window);
+      return window[window.length / 2];
+    }
+    double sum = 0;
+    for (int i = first; i <= index; i++)
+      sum += history[i];
+    return (float) (sum / (index - first + 1));
+  }
+
+  /*
+   * Readings of a light sensor crossing lines every 200 samples, with noise and isolated spikes.
+   */
+  private static float[] readings(Random random) {
+    float[] readings = new float[READINGS];
+    for (int i = 0; i < READINGS; i++) {
+      float base = i % 200 < 20 ? 0.1f : 0.4f;
+      readings[i] = base + 0.02f * (float) random.nextGaussian();
+      if (random.nextInt(100) == 0)
+        readings[i] = random.nextFloat();
+    }
+    return readings;
+  }
+
+  /*
+   * Mean that stores its window in a ring buffer and sums it whenever a reading is added, as the
+   * leJOS MeanFilter does on every fetch.
+   */
+  private static class WindowSumMean implements SampleFilter {
+
+    private final float[] window;
+    private int next;
+    private int count;
+    private float value;
+
+    private WindowSumMean(int size) {
+      window = new float[size];
+      reset();
+    }
+
+    @Override
+    public float update(float value) {
+      window[next] = value;
+      next = (next + 1) % window.length;
+      if (count < window.length)
+        count++;
+
+      double sum = 0;
+      for (int i = 0; i < count; i++)
+        sum += window[i];
+      this.value = (float) (sum / count);
+      return this.value;
+    }
+
+    @Override
+    public float getValue() {
+      return count == 0 ? Float.NaN : value;
+    }
+
+    @Override
+    public void reset() {
+      next = 0;
+      count = 0;
+      value = 0;
+    }
+  }
+
+}
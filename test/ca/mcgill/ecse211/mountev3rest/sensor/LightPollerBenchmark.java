@@ -0,0 +1,122 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.navigation.ArcIntegrator;
+import ca.mcgill.ecse211.mountev3rest.navigation.DifferentialDrive;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.navigation.OdometryCorrector;
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
+
+/**
+ * Counts the sensor reads made by the control thread in every cycle of the odometry correction,
+ * which only needs the two line sensors, and measures the time of a cycle against simulated
+ * sensors.
+ * <p>
+ * The cycle is compared with polling every sensor, as the correction did before the polls were
+ * split per channel, and with the original {@code poll()}, which also read each sensor a second
+ * time through its leJOS {@code MeanFilter}. That original poll is replicated here since it is no
+ * longer in the code.
+ *
+ * @author angelortiz
+ *
+ */
+public class LightPollerBenchmark {
+
+  // Constants
+  private static final int CYCLES = 10000;
+  private static final long SAMPLING_PERIOD = 5;
+
+  public static void main(String[] args) throws Exception {
+    final CountingSensor front = new CountingSensor(3);
+    final CountingSensor left = new CountingSensor(1);
+    final CountingSensor right = new CountingSensor(1);
+    final float[] sample = new float[3];
+    final LightPoller lightPoller = new LightPoller(front, left, right);
+
+    SimulatedMotor leftMotor = new SimulatedMotor();
+    SimulatedMotor rightMotor = new SimulatedMotor();
+    DifferentialDrive drive = new DifferentialDrive(leftMotor, rightMotor,
+        SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK, 1);
+    Odometer odometer = new Odometer(leftMotor, rightMotor, 1,
+        new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK),
+        SimulatedRobot.ODOMETER_PERIOD);
+    RobotContext context = new RobotContext(odometer, lightPoller, null);
+    final OdometryCorrector corrector = new OdometryCorrector(context, drive,
+        SimulatedRobot.TILE_SIZE, SimulatedRobot.SENSOR_OFFSET);
+
+    CountingSensor[] sensors = {front, left, right};
+
+    measure("original poll(), with MeanFilter reads", sensors, new Benchmark.Operation() {
+      @Override
+      public long run() {
+        // Each sensor was read once directly and once through its mean filter
+        for (int i = 0; i < 2; i++) {
+          front.fetchSample(sample, 0);
+          left.fetchSample(sample, 0);
+          right.fetchSample(sample, 0);
+        }
+        return (long) sample[0];
+      }
+    }, 6, false);
+
+    measure("poll() of every channel", sensors, new Benchmark.Operation() {
+      @Override
+      public long run() {
+        lightPoller.poll(LightPoller.ALL);
+        return lightPoller.isLeftInLine() ? 1 : 0;
+      }
+    }, 3, true);
+
+    measure("correction cycle, lines polled", sensors, new Benchmark.Operation() {
+      @Override
+      public long run() {
+        return corrector.applyCorrection() ? 1 : 0;
+      }
+    }, 2, true);
+
+    // The control thread no longer reads the sensors once they are sampled in the background
+    context.getScheduler().start();
+    lightPoller.startSampling(context.getScheduler(), SAMPLING_PERIOD, LightPoller.LINES);
+    try {
+      measure("correction cycle, lines sampled", new CountingSensor[] {front},
+          new Benchmark.Operation() {
+            @Override
+            public long run() {
+              return corrector.applyCorrection() ? 1 : 0;
+            }
+          }, 0, true);
+
+      left.reset();
+      Thread.sleep(1000);
+      Benchmark.report("  background reads of the left sensor per second", left.getFetches(),
+          "reads");
+    } finally {
+      context.close();
+    }
+  }
+
+  /*
+   * Counts the reads of the given sensors per cycle and reports the time of a cycle, unless the
+   * cycle only replicates the reads of a former implementation.
+   */
+  private static void measure(String name, CountingSensor[] sensors, Benchmark.Operation cycle,
+      long expectedReads, boolean timed) {
+    for (CountingSensor sensor : sensors)
+      sensor.reset();
+    for (int i = 0; i < CYCLES; i++)
+      cycle.run();
+    long reads = 0;
+    for (CountingSensor sensor : sensors)
+      reads += sensor.getFetches();
+
+    System.out.println(name);
+    Benchmark.report("  sensor reads per cycle", (double) reads / CYCLES, "reads");
+    if (timed)
+      Benchmark.report("  time per cycle", Benchmark.nanosPerOperation(cycle), "ns");
+    Check.equal(expectedReads * CYCLES, reads, name + " sensor reads");
+  }
+
+}
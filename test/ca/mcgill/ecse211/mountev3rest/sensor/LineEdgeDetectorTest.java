@@ -0,0 +1,79 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.util.Random;
+
+/**
+ * Checks the hysteresis of the {@code LineEdgeDetector}: a reading hovering between the two
+ * thresholds, as it does at the border of a line, never makes the state flicker.
+ *
+ * @author angelortiz
+ *
+ */
+public class LineEdgeDetectorTest {
+
+  // Constants
+  private static final double ENTER = 0.3;
+  private static final double EXIT = 0.4;
+  private static final int READINGS = 10000;
+
+  public static void main(String[] args) {
+    rejectsInvertedThresholds();
+    detectsEdges();
+    keepsStateInsideBand();
+    keepsStateOnThresholdChange();
+  }
+
+  private static void rejectsInvertedThresholds() {
+    try {
+      new LineEdgeDetector(EXIT, ENTER);
+      throw new AssertionError("an enter threshold above the exit threshold should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void detectsEdges() {
+    LineEdgeDetector detector = new LineEdgeDetector(ENTER, EXIT);
+    Check.isTrue(!detector.isInLine(), "detector starts off the line");
+    Check.isTrue(!detector.update(0.5), "no edge on the floor");
+    Check.isTrue(detector.update(0.2), "edge entering the line");
+    Check.isTrue(detector.isInLine(), "on the line after the rising edge");
+    Check.isTrue(!detector.update(0.1), "no edge on the line");
+    Check.isTrue(detector.update(0.5), "edge leaving the line");
+    Check.isTrue(!detector.isInLine(), "off the line after the falling edge");
+  }
+
+  /*
+   * Readings between the thresholds keep the current state, whether it was reached from the floor
+   * or from the line.
+   */
+  private static void keepsStateInsideBand() {
+    Random random = new Random(0);
+    LineEdgeDetector detector = new LineEdgeDetector(ENTER, EXIT);
+    for (boolean inLine : new boolean[] {false, true}) {
+      detector.update(inLine ? 0.1 : 0.5);
+      int edges = 0;
+      for (int i = 0; i < READINGS; i++)
+        if (detector.update(ENTER + random.nextDouble() * (EXIT - ENTER)))
+          edges++;
+      Check.equal(0, edges, "edges inside the band " + (inLine ? "on" : "off") + " the line");
+      Check.isTrue(detector.isInLine() == inLine, "state kept inside the band");
+    }
+
+    // Readings exactly on a threshold do not cross it either
+    Check.isTrue(!detector.update(EXIT), "no edge on the exit threshold");
+    detector.update(0.5);
+    Check.isTrue(!detector.update(ENTER), "no edge on the enter threshold");
+  }
+
+  private static void keepsStateOnThresholdChange() {
+    LineEdgeDetector detector = new LineEdgeDetector(ENTER, EXIT);
+    detector.update(0.1);
+    detector.setThresholds(0.05, 0.08);
+    Check.isTrue(detector.isInLine(), "state kept when the thresholds change");
+    Check.isTrue(!detector.update(0.07), "no edge inside the new band");
+    Check.isTrue(detector.update(0.09), "edge leaving the line above the new exit threshold");
+  }
+
+}
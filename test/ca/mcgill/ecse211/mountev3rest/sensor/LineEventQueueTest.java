@@ -0,0 +1,175 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+
+/**
+ * Checks the ring buffer of the {@code LineEventQueue}, and the line crossings that the
+ * {@code LightPoller} publishes on it from simulated sensors and motors.
+ *
+ * @author angelortiz
+ *
+ */
+public class LineEventQueueTest {
+
+  // Constants
+  private static final int CAPACITY = 8;
+  private static final float FLOOR = 0.5f;
+  private static final float LINE = 0.05f;
+
+  public static void main(String[] args) {
+    roundsCapacity();
+    wrapsAround();
+    dropsWhenFull();
+    clears();
+    carriesCrossings();
+  }
+
+  private static void roundsCapacity() {
+    LineEventQueue queue = new LineEventQueue(5);
+    int accepted = 0;
+    while (offer(queue, accepted))
+      accepted++;
+    Check.equal(8, accepted, "events held by a queue of 5 rounded to a power of two");
+  }
+
+  /*
+   * Events keep their order and content over many laps of the ring, with the consumer lagging a
+   * few events behind the producer.
+   */
+  private static void wrapsAround() {
+    LineEventQueue queue = new LineEventQueue(CAPACITY);
+    LineEvent event = new LineEvent();
+    int next = 0;
+    for (int i = 0; i < 10 * CAPACITY; i++) {
+      Check.isTrue(offer(queue, i), "event " + i + " accepted");
+      if (i % 3 == 2) {
+        while (queue.poll(event))
+          checkEvent(event, next++);
+      }
+    }
+    while (queue.poll(event))
+      checkEvent(event, next++);
+    Check.equal(10 * CAPACITY, next, "events read after wrapping");
+    Check.equal(0, queue.getDropped(), "events dropped");
+  }
+
+  /*
+   * Once full, new events are dropped and counted, while the queued ones are kept.
+   */
+  private static void dropsWhenFull() {
+    LineEventQueue queue = new LineEventQueue(CAPACITY);
+    LineEvent event = new LineEvent();
+    for (int i = 0; i < CAPACITY + 3; i++)
+      offer(queue, i);
+    Check.equal(CAPACITY, queue.size(), "events held by a full queue");
+    Check.equal(3, queue.getDropped(), "events dropped by a full queue");
+
+    for (int i = 0; i < CAPACITY; i++) {
+      Check.isTrue(queue.poll(event), "queued event " + i);
+      checkEvent(event, i);
+    }
+    Check.isTrue(!queue.poll(event), "dropped events not queued");
+
+    Check.isTrue(offer(queue, 100), "event accepted once drained");
+    Check.equal(3, queue.getDropped(), "events dropped after draining");
+  }
+
+  private static void clears() {
+    LineEventQueue queue = new LineEventQueue(CAPACITY);
+    LineEvent event = new LineEvent();
+    for (int i = 0; i < CAPACITY / 2; i++)
+      offer(queue, i);
+    queue.clear();
+    Check.equal(0, queue.size(), "events after clearing");
+    Check.isTrue(!queue.poll(event), "nothing to read after clearing");
+
+    // The cleared slots can all be reused
+    for (int i = 0; i < CAPACITY; i++)
+      Check.isTrue(offer(queue, i), "event " + i + " accepted after clearing");
+    Check.isTrue(queue.poll(event), "event read after clearing");
+    checkEvent(event, 0);
+  }
+
+  /*
+   * Each crossing carries the time of the reading that produced it, the tacho counts of the
+   * motors at that moment and the state of both sensors after it.
+   */
+  private static void carriesCrossings() {
+    SimulatedSensor leftSensor = new SimulatedSensor(1);
+    SimulatedSensor rightSensor = new SimulatedSensor(1);
+    SimulatedMotor leftMotor = new SimulatedMotor(100);
+    SimulatedMotor rightMotor = new SimulatedMotor(100);
+    LightPoller poller = new LightPoller(new SimulatedSensor(3), leftSensor, rightSensor);
+    poller.attachMotors(leftMotor, rightMotor);
+    LineEventQueue queue = new LineEventQueue(CAPACITY);
+    poller.addLineEventQueue(queue);
+    LineEvent event = new LineEvent();
+
+    leftSensor.set(0, FLOOR);
+    rightSensor.set(0, FLOOR);
+    poller.poll(LightPoller.LINES);
+    Check.equal(0, queue.size(), "crossings on the floor");
+
+    leftMotor.setSpeed(360);
+    rightMotor.setSpeed(360);
+    leftMotor.rotate(90);
+    rightMotor.rotate(-45);
+    leftSensor.set(0, LINE);
+    long before = System.nanoTime();
+    poller.poll(LightPoller.LINES);
+    long after = System.nanoTime();
+    Check.isTrue(queue.poll(event), "crossing of the left sensor");
+    Check.isTrue(!queue.poll(new LineEvent()), "a single crossing");
+    Check.equal(LightPoller.LEFT, event.getChannel(), "channel of the crossing");
+    Check.isTrue(event.isRising(), "left sensor entering the line");
+    Check.equal(poller.getLeftTimestamp(), event.getTimestampNanos(), "time of the crossing");
+    Check.isTrue(event.getTimestampNanos() >= before && event.getTimestampNanos() <= after,
+        "crossing timed during the poll");
+    Check.near(LINE, event.getValue(), 1e-6, "reading of the crossing");
+    Check.equal(leftMotor.getTachoCount(), event.getLeftTacho(), "left tacho of the crossing");
+    Check.equal(rightMotor.getTachoCount(), event.getRightTacho(), "right tacho of the crossing");
+    Check.isTrue(event.isLeftInLine() && !event.isRightInLine(), "sensor states of the crossing");
+
+    rightSensor.set(0, LINE);
+    poller.poll(LightPoller.LINES);
+    Check.isTrue(queue.poll(event), "crossing of the right sensor");
+    Check.equal(LightPoller.RIGHT, event.getChannel(), "channel of the second crossing");
+    Check.equal(poller.getRightTimestamp(), event.getTimestampNanos(), "time of the crossing");
+    Check.isTrue(event.isLeftInLine() && event.isRightInLine(), "both sensors on the line");
+
+    leftSensor.set(0, FLOOR);
+    rightSensor.set(0, FLOOR);
+    poller.poll(LightPoller.LINES);
+    Check.isTrue(queue.poll(event), "left sensor leaving the line");
+    Check.isTrue(event.getChannel() == LightPoller.LEFT && !event.isRising(), "falling edge");
+    Check.isTrue(queue.poll(event), "right sensor leaving the line");
+    Check.isTrue(event.getChannel() == LightPoller.RIGHT && !event.isRising(), "falling edge");
+    Check.isTrue(!event.isLeftInLine() && !event.isRightInLine(), "both sensors off the line");
+    Check.equal(0, queue.getDropped(), "crossings dropped");
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Offers an event whose fields are all derived from the given index.
+   */
+  private static boolean offer(LineEventQueue queue, int index) {
+    return queue.offer(index % 2 == 0 ? LightPoller.LEFT : LightPoller.RIGHT, index % 3 == 0,
+        1000L * index, index / 10f, index, -index, index % 5 == 0, index % 7 == 0);
+  }
+
+  private static void checkEvent(LineEvent event, int index) {
+    Check.equal(index % 2 == 0 ? LightPoller.LEFT : LightPoller.RIGHT, event.getChannel(),
+        "channel of event " + index);
+    Check.isTrue(event.isRising() == (index % 3 == 0), "edge of event " + index);
+    Check.equal(1000L * index, event.getTimestampNanos(), "timestamp of event " + index);
+    Check.near(index / 10f, event.getValue(), 0, "value of event " + index);
+    Check.equal(index, event.getLeftTacho(), "left tacho of event " + index);
+    Check.equal(-index, event.getRightTacho(), "right tacho of event " + index);
+    Check.isTrue(event.isLeftInLine() == (index % 5 == 0), "left state of event " + index);
+    Check.isTrue(event.isRightInLine() == (index % 7 == 0), "right state of event " + index);
+  }
+
+}
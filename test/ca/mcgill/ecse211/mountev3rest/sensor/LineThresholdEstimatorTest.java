@@ -0,0 +1,223 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Feeds the {@code LineThresholdEstimator} with simulated readings of a sensor crossing lines, and
+ * checks that its thresholds follow changes of the lighting, that its clusters never merge, and
+ * that its calibration is saved and restored.
+ * <p>
+ * The sensor sees a line for {@code LINE_READINGS} readings out of every {@code CROSSING_READINGS},
+ * with a gaussian noise of {@code NOISE}, as it would while the robot drives over a grid.
+ *
+ * @author angelortiz
+ *
+ */
+public class LineThresholdEstimatorTest {
+
+  // Constants
+  private static final double INITIAL_THRESHOLD = 0.29; // Hard-coded value of the left sensor
+  private static final double MIN_SEPARATION = 0.08; // Minimum gap kept by the estimator
+  private static final double NOISE = 0.01;
+  private static final int CROSSING_READINGS = 50;
+  private static final int LINE_READINGS = 5;
+  private static final int CROSSINGS = 200; // Crossings simulated in each lighting condition
+  private static final double TOLERANCE = 0.02; // Accepted error of the estimated means
+  private static final int FLOOR_READINGS = 100000;
+
+  public static void main(String[] args) throws IOException {
+    followsLighting();
+    keepsClustersApart();
+    roundTripsProperties();
+    rejectsInvalidProperties();
+    roundTripsCalibrationFiles();
+  }
+
+  /*
+   * Steps of the floor and line brightness, darker then brighter than the initial values. Once
+   * adapted, the clusters are centred on the new readings, and every crossing of the last lines is
+   * detected exactly once.
+   */
+  private static void followsLighting() {
+    double[][] conditions = {{0.45, 0.12}, {0.33, 0.05}, {0.55, 0.15}};
+    Random random = new Random(0);
+    LineThresholdEstimator estimator = new LineThresholdEstimator(INITIAL_THRESHOLD);
+    LineEdgeDetector detector = new LineEdgeDetector(estimator.getEnterThreshold(),
+        estimator.getExitThreshold());
+
+    for (double[] condition : conditions) {
+      double floor = condition[0];
+      double line = condition[1];
+      int detected = 0;
+      for (int crossing = 0; crossing < CROSSINGS; crossing++) {
+        for (int i = 0; i < CROSSING_READINGS; i++) {
+          double value = (i < LINE_READINGS ? line : floor) + NOISE * random.nextGaussian();
+          estimator.update(value);
+          detector.setThresholds(estimator.getEnterThreshold(), estimator.getExitThreshold());
+          if (detector.update(value) && detector.isInLine() && crossing >= CROSSINGS / 2)
+            detected++;
+        }
+      }
+
+      String name = String.format("floor of %.2f and lines of %.2f", floor, line);
+      System.out.println(String.format("%s: floor %.3f, line %.3f, thresholds %.3f/%.3f", name,
+          estimator.getFloorMean(), estimator.getLineMean(), estimator.getEnterThreshold(),
+          estimator.getExitThreshold()));
+      Check.near(floor, estimator.getFloorMean(), TOLERANCE, "floor mean, " + name);
+      Check.near(line, estimator.getLineMean(), TOLERANCE, "line mean, " + name);
+      Check.isTrue(estimator.getEnterThreshold() > line + 2 * NOISE
+          && estimator.getExitThreshold() < floor - 2 * NOISE, "thresholds between the clusters");
+      Check.equal(CROSSINGS / 2, detected, "lines detected, " + name);
+    }
+  }
+
+  /*
+   * A sensor that stays on the floor, even while the floor slowly darkens to the seeded line
+   * value, never pulls the two clusters closer than MIN_SEPARATION, so lines can still be told
+   * apart from the floor afterwards.
+   */
+  private static void keepsClustersApart() {
+    Random random = new Random(1);
+    LineThresholdEstimator estimator = new LineThresholdEstimator(INITIAL_THRESHOLD);
+    double minGap = Double.MAX_VALUE;
+    for (int i = 0; i < FLOOR_READINGS; i++) {
+      double floor = 0.45 - 0.3 * i / FLOOR_READINGS;
+      estimator.update(floor + NOISE * random.nextGaussian());
+      minGap = Math.min(minGap, estimator.getFloorMean() - estimator.getLineMean());
+      Check.isTrue(estimator.getEnterThreshold() <= estimator.getExitThreshold()
+          && estimator.getExitThreshold() <= estimator.getFloorMean(), "ordered thresholds");
+    }
+    System.out.println(String.format("floor only: smallest gap between the clusters %.4f",
+        minGap));
+    Check.isTrue(minGap >= MIN_SEPARATION - 1e-9, "clusters kept apart on the floor");
+  }
+
+  private static void roundTripsProperties() {
+    LineThresholdEstimator estimator = trainedEstimator();
+    Properties properties = new Properties();
+    estimator.save(properties, "left");
+
+    LineThresholdEstimator loaded = new LineThresholdEstimator(INITIAL_THRESHOLD);
+    Check.isTrue(loaded.load(properties, "left"), "saved statistics loaded");
+    checkSame(estimator, loaded);
+    Check.isTrue(!loaded.load(properties, "right"), "statistics of another prefix");
+  }
+
+  /*
+   * Missing, malformed or inconsistent statistics are rejected and leave the estimator unchanged.
+   */
+  private static void rejectsInvalidProperties() {
+    LineThresholdEstimator estimator = trainedEstimator();
+    Properties valid = new Properties();
+    estimator.save(valid, "left");
+
+    String[][] corruptions = {{"floorMean", null}, {"lineVariance", "dark"},
+        {"floorVariance", "-0.001"}, {"lineVariance", "-0.001"},
+        {"lineMean", Double.toString(estimator.getFloorMean() - MIN_SEPARATION / 2)}};
+    for (String[] corruption : corruptions) {
+      Properties properties = new Properties();
+      properties.putAll(valid);
+      if (corruption[1] == null)
+        properties.remove("left." + corruption[0]);
+      else
+        properties.setProperty("left." + corruption[0], corruption[1]);
+
+      LineThresholdEstimator loaded = new LineThresholdEstimator(INITIAL_THRESHOLD);
+      LineThresholdEstimator seeded = new LineThresholdEstimator(INITIAL_THRESHOLD);
+      Check.isTrue(!loaded.load(properties, "left"),
+          corruption[0] + " of " + corruption[1] + " rejected");
+      checkSame(seeded, loaded);
+    }
+  }
+
+  /*
+   * The calibration of both sensors is written to a file and restored by another poller. Invalid
+   * files are rejected without changing the estimates that could not be read.
+   */
+  private static void roundTripsCalibrationFiles() throws IOException {
+    File file = File.createTempFile("calibration", ".properties");
+    try {
+      SimulatedSensor left = new SimulatedSensor(1);
+      SimulatedSensor right = new SimulatedSensor(1);
+      LightPoller poller = new LightPoller(new SimulatedSensor(3), left, right);
+      crossLines(poller, left, right);
+      Check.isTrue(poller.saveCalibration(file.getPath()), "calibration saved");
+
+      LightPoller restored = createPoller();
+      Check.isTrue(restored.loadCalibration(file.getPath()), "calibration loaded");
+      checkSame(poller.getLeftEstimator(), restored.getLeftEstimator());
+      checkSame(poller.getRightEstimator(), restored.getRightEstimator());
+
+      // Only the left sensor is valid
+      Properties properties = new Properties();
+      poller.getLeftEstimator().save(properties, "left");
+      properties.setProperty("right.floorMean", "bright");
+      store(properties, file);
+      LightPoller partial = createPoller();
+      LightPoller seeded = createPoller();
+      Check.isTrue(!partial.loadCalibration(file.getPath()), "partial calibration rejected");
+      checkSame(poller.getLeftEstimator(), partial.getLeftEstimator());
+      checkSame(seeded.getRightEstimator(), partial.getRightEstimator());
+
+      file.delete();
+      Check.isTrue(!partial.loadCalibration(file.getPath()), "missing calibration rejected");
+    } finally {
+      file.delete();
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static LineThresholdEstimator trainedEstimator() {
+    Random random = new Random(2);
+    LineThresholdEstimator estimator = new LineThresholdEstimator(INITIAL_THRESHOLD);
+    for (int i = 0; i < CROSSINGS * CROSSING_READINGS; i++) {
+      double value = i % CROSSING_READINGS < LINE_READINGS ? 0.1 : 0.5;
+      estimator.update(value + NOISE * random.nextGaussian());
+    }
+    return estimator;
+  }
+
+  private static LightPoller createPoller() {
+    return new LightPoller(new SimulatedSensor(3), new SimulatedSensor(1), new SimulatedSensor(1));
+  }
+
+  /*
+   * Moves the line sensors of a poller over a few lines, so that their estimates depart from the
+   * hard-coded values.
+   */
+  private static void crossLines(LightPoller poller, SimulatedSensor left, SimulatedSensor right) {
+    Random random = new Random(3);
+    for (int i = 0; i < CROSSINGS * CROSSING_READINGS; i++) {
+      boolean onLine = i % CROSSING_READINGS < LINE_READINGS;
+      left.set(0, (float) ((onLine ? 0.1 : 0.5) + NOISE * random.nextGaussian()));
+      right.set(0, (float) ((onLine ? 0.08 : 0.4) + NOISE * random.nextGaussian()));
+      poller.poll(LightPoller.LINES);
+    }
+  }
+
+  private static void store(Properties properties, File file) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void checkSame(LineThresholdEstimator expected, LineThresholdEstimator actual) {
+    Check.near(expected.getFloorMean(), actual.getFloorMean(), 0, "floor mean");
+    Check.near(expected.getFloorDeviation(), actual.getFloorDeviation(), 0, "floor deviation");
+    Check.near(expected.getLineMean(), actual.getLineMean(), 0, "line mean");
+    Check.near(expected.getLineDeviation(), actual.getLineDeviation(), 0, "line deviation");
+    Check.near(expected.getEnterThreshold(), actual.getEnterThreshold(), 0, "enter threshold");
+    Check.near(expected.getExitThreshold(), actual.getExitThreshold(), 0, "exit threshold");
+  }
+
+}
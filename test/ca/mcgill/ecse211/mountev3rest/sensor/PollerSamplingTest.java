@@ -0,0 +1,92 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.navigation.ArcIntegrator;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Task;
+
+/**
+ * Samples both pollers in the background from sensors that block on every read, as the UART
+ * sensors of the EV3 do, next to an odometer, and checks that the sensors are never read on the
+ * thread of the odometer and that the reads do not delay its updates.
+ *
+ * @author angelortiz
+ *
+ */
+public class PollerSamplingTest {
+
+  // Constants
+  private static final long READ_MILLIS = 4; // Time a read of a sensor blocks
+  private static final long LIGHT_PERIOD = 10;
+  private static final long US_PERIOD = 30;
+  private static final long DURATION = 2000;
+  private static final long MAX_MEAN_JITTER = 1500000; // Mean delay of the odometer, in ns
+
+  public static void main(String[] args) throws InterruptedException {
+    BlockingSensor left = new BlockingSensor();
+    BlockingSensor right = new BlockingSensor();
+    BlockingSensor us = new BlockingSensor();
+    LightPoller lightPoller = new LightPoller(new SimulatedSensor(3), left, right);
+    UltrasonicPoller usPoller = new UltrasonicPoller(us);
+    final Odometer odometer = new Odometer(new SimulatedMotor(), new SimulatedMotor(), 1,
+        new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK),
+        SimulatedRobot.ODOMETER_PERIOD);
+    final Thread[] odometerThread = new Thread[1];
+
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    try {
+      Task odometerTask = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          odometerThread[0] = Thread.currentThread();
+          odometer.run();
+        }
+      }, odometer.getPeriod(), Priority.HIGH);
+      lightPoller.startSampling(scheduler, LIGHT_PERIOD, LightPoller.LINES);
+      usPoller.startSampling(scheduler, US_PERIOD);
+      scheduler.start();
+      Thread.sleep(DURATION);
+
+      System.out.println(String.format(
+          "odometer next to blocking sensors: mean jitter %.2f ms, max %.2f ms, %d overruns",
+          odometerTask.getMeanJitterNanos() / 1e6, odometerTask.getMaxJitterNanos() / 1e6,
+          odometerTask.getOverruns()));
+      for (BlockingSensor sensor : new BlockingSensor[] {left, right, us}) {
+        Check.isTrue(sensor.reader != null, "sensor sampled in the background");
+        Check.isTrue(sensor.reader != odometerThread[0], "sensor read on the odometer thread");
+      }
+      Check.atMost(MAX_MEAN_JITTER, odometerTask.getMeanJitterNanos(), "odometer mean jitter");
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  /*
+   * Sensor whose reads block for READ_MILLIS, and which remembers the thread that read it last.
+   */
+  private static class BlockingSensor extends SimulatedSensor {
+
+    private volatile Thread reader;
+
+    private BlockingSensor() {
+      super(1);
+    }
+
+    @Override
+    public void fetchSample(float[] sample, int offset) {
+      reader = Thread.currentThread();
+      try {
+        Thread.sleep(READ_MILLIS);
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+      super.fetchSample(sample, offset);
+    }
+  }
+
+}
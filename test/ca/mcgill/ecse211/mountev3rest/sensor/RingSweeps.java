@@ -0,0 +1,117 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import java.io.IOException;
+import java.util.Random;
+import lejos.robotics.SampleProvider;
+
+/**
+ * Sensor logs of the front light sensor sweeping across the face of a ring tree, as done by
+ * {@code ArmController.getRing()}, for the tests of the color classification.
+ * <p>
+ * No log was recorded on the robot, so the sweeps are synthesized and written through a
+ * {@code SensorRecorder}, then read back through a {@code SensorReplay} like a log of the robot
+ * would be. A sweep turns the sensor 80 degrees at 10 degrees per second and is read every 50 ms.
+ * It sees the dark background of the tree, then the ring, if the face holds one, then the
+ * background again. The readings blend the ring and the background at the edges of the ring, and
+ * every sweep has its own brightness and color shift, besides the noise of each reading.
+ *
+ * @author angelortiz
+ *
+ */
+public class RingSweeps {
+
+  // Constants
+  public static final int READINGS_PER_SWEEP = 160;
+  private static final long PERIOD_NANOS = 50000000L;
+  private static final double EMPTY_FACES = 0.2; // Fraction of the sweeps seeing no ring
+  private static final int EDGE = 4; // Readings seeing both the ring and the background
+  private static final double[][] RING_COLORS = {{0.1461, 0.6783, 0.7200},
+      {0.4180, 0.8995, 0.1266}, {0.8221, 0.5516, 0.1406}, {0.9578, 0.2786, 0.0696}};
+  private static final int[] RING_CODES =
+      {ColorDetector.BLUE, ColorDetector.GREEN, ColorDetector.YELLOW, ColorDetector.ORANGE};
+  private static final double[] BACKGROUND = {0.55, 0.58, 0.60};
+  private static final double BACKGROUND_BRIGHTNESS = 0.03;
+  public static final double NOISE = 0.006; // Standard deviation of a component
+  private static final double SHIFT = 0.04; // Standard deviation of the color shift of a sweep
+
+  private RingSweeps() {}
+
+  /**
+   * Synthesizes sweeps and records them in a sensor log.
+   *
+   * @param path Path of the log file.
+   * @param sweeps Number of sweeps.
+   * @param seed Seed of the random sweeps.
+   * @return Code of the ring of every sweep, {@code ColorDetector.NONE} for an empty face.
+   * @throws IOException If the log cannot be written.
+   */
+  public static int[] record(String path, int sweeps, long seed) throws IOException {
+    return record(path, sweeps, seed, NOISE);
+  }
+
+  /**
+   * Synthesizes sweeps with the given noise and records them in a sensor log.
+   *
+   * @param path Path of the log file.
+   * @param sweeps Number of sweeps.
+   * @param seed Seed of the random sweeps.
+   * @param noise Standard deviation of each component of a reading.
+   * @return Code of the ring of every sweep, {@code ColorDetector.NONE} for an empty face.
+   * @throws IOException If the log cannot be written.
+   */
+  public static int[] record(String path, int sweeps, long seed, double noise)
+      throws IOException {
+    Random random = new Random(seed);
+    int[] codes = new int[sweeps];
+    float[] reading = new float[3];
+    double[] color = new double[3];
+    SensorRecorder recorder = new SensorRecorder(path, sweeps * READINGS_PER_SWEEP);
+    long timestamp = 0;
+
+    try {
+      for (int sweep = 0; sweep < sweeps; sweep++) {
+        int ring = random.nextDouble() < EMPTY_FACES ? -1 : random.nextInt(RING_COLORS.length);
+        codes[sweep] = ring < 0 ? ColorDetector.NONE : RING_CODES[ring];
+        int start = 10 + random.nextInt(60);
+        int length = 30 + random.nextInt(30);
+        double brightness = 0.08 + 0.12 * random.nextDouble();
+        for (int i = 0; i < 3 && ring >= 0; i++)
+          color[i] = Math.max(0, RING_COLORS[ring][i] + SHIFT * random.nextGaussian());
+
+        for (int i = 0; i < READINGS_PER_SWEEP; i++) {
+          // Fraction of the field of view of the sensor covered by the ring
+          double covered = Math.min(i - start + 1, start + length - i) / (double) EDGE;
+          covered = ring < 0 ? 0 : Math.max(0, Math.min(1, covered));
+          for (int j = 0; j < 3; j++) {
+            double value = covered * brightness * color[j]
+                + (1 - covered) * BACKGROUND_BRIGHTNESS * BACKGROUND[j]
+                + noise * random.nextGaussian();
+            reading[j] = (float) Math.max(0, value);
+          }
+          recorder.record(SensorRecorder.FRONT_LIGHT, timestamp, reading, 0, 3);
+          timestamp += PERIOD_NANOS;
+        }
+      }
+    } finally {
+      recorder.close();
+    }
+    return codes;
+  }
+
+  /**
+   * Reads every front light reading of a sensor log.
+   *
+   * @param path Path of a log written by {@code record()} or recorded on the robot.
+   * @return Readings of the front sensor in the order in which they were recorded.
+   * @throws IOException If the log cannot be read.
+   */
+  public static float[][] replay(String path) throws IOException {
+    SensorReplay replay = new SensorReplay(path, 0);
+    SampleProvider front = replay.getProvider(SensorRecorder.FRONT_LIGHT);
+    float[][] readings = new float[replay.getSampleCount(SensorRecorder.FRONT_LIGHT)][3];
+    for (float[] reading : readings)
+      front.fetchSample(reading, 0);
+    return readings;
+  }
+
+}
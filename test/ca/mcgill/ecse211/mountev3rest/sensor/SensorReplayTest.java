@@ -0,0 +1,251 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.Motor;
+import ca.mcgill.ecse211.mountev3rest.navigation.ArcIntegrator;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
+import java.io.File;
+import java.io.IOException;
+import lejos.robotics.SampleProvider;
+
+/**
+ * Writes a log of every source through a {@code SensorRecorder} and reads it back through a
+ * {@code SensorReplay}, in step mode and in timed mode. An odometer run on the replayed tacho
+ * counts must reach the pose of the recorded one, and a context must close its recorder.
+ *
+ * @author angelortiz
+ *
+ */
+public class SensorReplayTest {
+
+  // Constants
+  private static final int[] SOURCES = {SensorRecorder.FRONT_LIGHT, SensorRecorder.LEFT_LIGHT,
+      SensorRecorder.RIGHT_LIGHT, SensorRecorder.ULTRASONIC, SensorRecorder.TACHOS};
+  private static final int SAMPLES = 10; // Samples recorded per source
+  private static final long STEP = 20000000; // Time between two samples of a source, in ns
+  private static final long START = 5000000000L; // Time of the first record, in ns
+  private static final int UPDATES = 200; // Odometer updates of the recorded run
+  private static final double MIN_TRAVEL = 5; // Distance covered by the recorded run, in cm
+  private static final long SLACK = 1000000; // Accepted delay of the replay start, in ns
+
+  public static void main(String[] args) throws Exception {
+    File file = File.createTempFile("sensors", ".log");
+    try {
+      writeLog(file.getPath());
+      replaysSteps(file.getPath());
+      replaysTime(file.getPath());
+      replaysOdometer(file.getPath());
+      closesWithContext(file.getPath());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /*
+   * Records SAMPLES samples of every source, interleaved as on the robot. Each source is recorded
+   * a millisecond after the previous one, and each value is derived from the index of the sample.
+   */
+  private static void writeLog(String path) throws IOException {
+    SensorRecorder recorder = new SensorRecorder(path, SOURCES.length * SAMPLES);
+    float[] sample = new float[3];
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int source : SOURCES) {
+        long timestamp = timestamp(source, i);
+        if (source == SensorRecorder.TACHOS) {
+          recorder.recordTachos(timestamp, (int) value(source, i, 0), (int) value(source, i, 1));
+        } else {
+          for (int j = 0; j < size(source); j++)
+            sample[j] = value(source, i, j);
+          recorder.record(source, timestamp, sample, 0, size(source));
+        }
+      }
+    }
+    Check.equal(SOURCES.length * SAMPLES, recorder.getRecordCount(), "records written");
+
+    recorder.recordTachos(START, 0, 0);
+    Check.equal(1, recorder.getDropped(), "records dropped by a full log");
+    recorder.close();
+  }
+
+  /*
+   * In step mode every fetch returns the next sample of its source, whatever the time, and the
+   * last one is repeated once the source is exhausted.
+   */
+  private static void replaysSteps(String path) throws IOException {
+    SensorReplay replay = new SensorReplay(path, 0);
+    float[] sample = new float[3];
+    for (int source : SOURCES) {
+      SampleProvider provider = replay.getProvider(source);
+      Check.equal(SAMPLES, replay.getSampleCount(source), "samples of source " + source);
+      Check.equal(size(source), provider.sampleSize(), "sample size of source " + source);
+      Check.equal(Long.MIN_VALUE, replay.getTimestamp(source), "timestamp before any fetch");
+      Check.isTrue(!replay.isFinished(), "replay finished before source " + source);
+      for (int k = 0; k < SAMPLES + 2; k++) {
+        int i = Math.min(k, SAMPLES - 1);
+        provider.fetchSample(sample, 0);
+        checkSample(source, i, sample);
+        Check.equal(timestamp(source, i), replay.getTimestamp(source),
+            "timestamp of sample " + i + " of source " + source);
+      }
+    }
+    Check.isTrue(replay.isFinished(), "replay finished once every source was read");
+
+    // The motors read the same pairs as the provider of the tacho counts
+    replay = new SensorReplay(path, 0);
+    Motor left = replay.getLeftMotor();
+    Motor right = replay.getRightMotor();
+    Check.equal((long) value(SensorRecorder.TACHOS, 0, 1), right.getTachoCount(),
+        "right count before the left motor was read");
+    for (int k = 0; k < SAMPLES + 2; k++) {
+      int i = Math.min(k, SAMPLES - 1);
+      Check.equal((long) value(SensorRecorder.TACHOS, i, 0), left.getTachoCount(),
+          "left count of pair " + i);
+      Check.equal((long) value(SensorRecorder.TACHOS, i, 1), right.getTachoCount(),
+          "right count of pair " + i);
+      Check.isTrue(!left.isMoving(), "replayed motor moving");
+    }
+  }
+
+  /*
+   * In timed mode every fetch returns the last sample recorded before the replay time, measured
+   * from start().
+   */
+  private static void replaysTime(String path) throws Exception {
+    SensorReplay replay = new SensorReplay(path, 1);
+    float[] sample = new float[3];
+    replay.start();
+    long started = System.nanoTime();
+    for (int source : SOURCES) {
+      replay.getProvider(source).fetchSample(sample, 0);
+      checkSample(source, 0, sample);
+    }
+
+    // Half a step after the sixth sample of every source. The replay started before the start
+    // time measured here, by less than SLACK.
+    sleepUntil(started + 5 * STEP + STEP / 2);
+    for (int source : SOURCES) {
+      long before = System.nanoTime() - started;
+      replay.getProvider(source).fetchSample(sample, 0);
+      long after = System.nanoTime() - started + SLACK;
+      int i = (int) ((replay.getTimestamp(source) - START) / STEP);
+      checkSample(source, i, sample);
+      long offset = timestamp(source, 0) - START;
+      Check.isTrue(i >= (before - offset) / STEP && i <= (after - offset) / STEP,
+          "sample " + i + " of source " + source + " recorded at the replay time");
+    }
+
+    // The left motor moves to the pair of the current time, and the right one reads it too
+    int leftCount = replay.getLeftMotor().getTachoCount();
+    int i = (leftCount - 100) / 10;
+    Check.isTrue(i >= 5, "left count follows the replay time");
+    Check.equal((long) value(SensorRecorder.TACHOS, i, 1), replay.getRightMotor().getTachoCount(),
+        "right count of the same pair");
+
+    // Past the end of the log
+    sleepUntil(started + (SAMPLES + 1) * STEP);
+    for (int source : SOURCES) {
+      replay.getProvider(source).fetchSample(sample, 0);
+      checkSample(source, SAMPLES - 1, sample);
+    }
+    Check.isTrue(replay.isFinished(), "replay finished after the end of the log");
+  }
+
+  /*
+   * An odometer created on the motors of the replay goes through the same tacho counts as the
+   * odometer that recorded them, so it ends at the same pose.
+   */
+  private static void replaysOdometer(String path) throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(10);
+    SensorRecorder recorder = new SensorRecorder(path, UPDATES);
+    Odometer recorded = robot.getOdometer();
+    try {
+      recorded.setRecorder(recorder);
+      robot.getDrive().setSpeed(200);
+      robot.getLeftMotor().forward();
+      robot.getRightMotor().backward();
+      for (int i = 0; i < UPDATES; i++) {
+        if (i == UPDATES / 2)
+          robot.getRightMotor().forward();
+        recorded.run();
+        Thread.sleep(1);
+      }
+      robot.getDrive().stop();
+    } finally {
+      recorder.close();
+      robot.close();
+    }
+
+    SensorReplay replay = new SensorReplay(path, 0);
+    Odometer replayed = new Odometer(replay.getLeftMotor(), replay.getRightMotor(), 1,
+        new ArcIntegrator(SimulatedRobot.WHEEL_RADIUS, SimulatedRobot.TRACK),
+        SimulatedRobot.ODOMETER_PERIOD);
+    for (int i = 0; i < UPDATES; i++)
+      replayed.run();
+
+    double[] expected = recorded.getXYT();
+    double[] actual = replayed.getXYT();
+    System.out.println(String.format("replayed odometer: (%.2f, %.2f, %.2f) for (%.2f, %.2f, %.2f)",
+        actual[0], actual[1], actual[2], expected[0], expected[1], expected[2]));
+    Check.isTrue(Math.hypot(expected[0], expected[1]) > MIN_TRAVEL,
+        "recorded robot moved");
+    for (int j = 0; j < 3; j++)
+      Check.near(expected[j], actual[j], 1e-9, "replayed pose value " + j);
+  }
+
+  /*
+   * The recorder of a context is closed along with the context, so the log can be read back and
+   * later samples are dropped.
+   */
+  private static void closesWithContext(String path) throws Exception {
+    SimulatedRobot robot = new SimulatedRobot(1);
+    RobotContext context = robot.getContext();
+    SensorRecorder recorder = new SensorRecorder(path, SAMPLES);
+    context.setRecorder(recorder);
+    robot.getOdometer().run();
+    robot.getLightPoller().poll(LightPoller.LEFT);
+    robot.getUltrasonicPoller().poll();
+    robot.close();
+
+    robot.getOdometer().run();
+    Check.equal(1, recorder.getDropped(), "samples recorded after the context was closed");
+    SensorReplay replay = new SensorReplay(path, 0);
+    Check.equal(1, replay.getSampleCount(SensorRecorder.TACHOS), "tacho counts recorded");
+    Check.equal(1, replay.getSampleCount(SensorRecorder.LEFT_LIGHT), "light readings recorded");
+    Check.equal(1, replay.getSampleCount(SensorRecorder.ULTRASONIC), "distances recorded");
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static int size(int source) {
+    return source == SensorRecorder.FRONT_LIGHT ? 3 : source == SensorRecorder.TACHOS ? 2 : 1;
+  }
+
+  private static long timestamp(int source, int index) {
+    return START + index * STEP + (source - 1) * 1000000L;
+  }
+
+  /*
+   * Value j of sample i of a source. Tacho counts are 100 plus 10 per sample on the left, and minus
+   * 3 per sample on the right.
+   */
+  private static float value(int source, int i, int j) {
+    if (source == SensorRecorder.TACHOS)
+      return j == 0 ? 100 + 10 * i : -3 * i;
+    return source * 100 + i + j / 4f;
+  }
+
+  private static void checkSample(int source, int i, float[] sample) {
+    for (int j = 0; j < size(source); j++)
+      Check.near(value(source, i, j), sample[j], 0,
+          "value " + j + " of sample " + i + " of source " + source);
+  }
+
+  private static void sleepUntil(long nanos) throws InterruptedException {
+    long remaining;
+    while ((remaining = nanos - System.nanoTime()) > 0)
+      Thread.sleep(remaining / 1000000L + 1);
+  }
+
+}
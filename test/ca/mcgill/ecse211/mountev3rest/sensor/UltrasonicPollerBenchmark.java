@@ -0,0 +1,162 @@
+package ca.mcgill.ecse211.mountev3rest.sensor;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Benchmark;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+
+/**
+ * Measures how long {@code UltrasonicPoller.poll()} and {@code pollMean()} hold their caller and
+ * how many times they read the sensor, while the sensor reports bursts of readings past the maximum
+ * distance as it does when the echo is lost.
+ * <p>
+ * The original {@code poll()}, which retried the readings past 255 cm with a 50 ms sleep between
+ * attempts, and the original {@code pollMean()}, which read the sensor three times through a leJOS
+ * {@code MeanFilter}, are replicated here for comparison since they are no longer in the code.
+ *
+ * @author angelortiz
+ *
+ */
+public class UltrasonicPollerBenchmark {
+
+  // Constants
+  private static final float VALID = 0.5f; // Reading in meters
+  private static final float LOST = 2.55f + 1; // Reading past the maximum distance
+  private static final int BURST = 4; // Consecutive lost readings
+  private static final int CALLS = 200000;
+  private static final long SAMPLING_PERIOD = 30;
+
+  public static void main(String[] args) throws InterruptedException {
+    CountingSensor sensor = new CountingSensor(1);
+    UltrasonicPoller usPoller = new UltrasonicPoller(sensor);
+
+    // Original poll during a burst of lost readings
+    sensor.set(0, LOST);
+    sensor.reset();
+    Thread recover = recoverAfter(sensor, BURST);
+    long start = System.nanoTime();
+    int distance = originalPoll(sensor);
+    long blocked = System.nanoTime() - start;
+    recover.join();
+    System.out.println("original poll() during a burst of " + BURST + " lost readings");
+    Benchmark.report("  time blocked", blocked / 1e6, "ms");
+    Benchmark.report("  sensor reads", sensor.getFetches(), "reads");
+    Check.equal(50, distance, "distance returned after the burst");
+
+    // Current poll on demand: one read per call, lost readings are filtered out
+    for (int i = 0; i < 10; i++)
+      usPoller.poll();
+    sensor.reset();
+    long[] latencies = new long[CALLS];
+    for (int i = 0; i < CALLS; i++) {
+      sensor.set(0, i % 10 < BURST ? LOST : VALID);
+      long before = System.nanoTime();
+      distance = usPoller.poll();
+      latencies[i] = System.nanoTime() - before;
+      Check.equal(50, distance, "filtered distance");
+    }
+    reportLatencies("poll() on demand, " + BURST + " lost readings in 10", latencies);
+    Benchmark.report("  sensor reads per call", (double) sensor.getFetches() / CALLS, "reads");
+
+    // Means: the original read the sensor three times, the current one once or not at all
+    sensor.set(0, VALID);
+    sensor.reset();
+    for (int i = 0; i < CALLS; i++)
+      originalPollMean(sensor);
+    System.out.println("original pollMean()");
+    Benchmark.report("  sensor reads per call", (double) sensor.getFetches() / CALLS, "reads");
+    sensor.reset();
+    for (int i = 0; i < CALLS; i++)
+      usPoller.pollMean();
+    System.out.println("pollMean() on demand");
+    Benchmark.report("  sensor reads per call", (double) sensor.getFetches() / CALLS, "reads");
+    Check.equal(CALLS, sensor.getFetches(), "reads of pollMean() on demand");
+
+    // Sampled in the background: the callers only read the published values
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    usPoller.startSampling(scheduler, SAMPLING_PERIOD);
+    scheduler.start();
+    try {
+      Thread.sleep(5 * SAMPLING_PERIOD);
+      long sampled = sensor.getFetches();
+      for (int i = 0; i < CALLS; i++) {
+        long before = System.nanoTime();
+        distance = usPoller.poll();
+        latencies[i] = System.nanoTime() - before;
+      }
+      long reads = sensor.getFetches() - sampled;
+      reportLatencies("poll() sampled every " + SAMPLING_PERIOD + " ms", latencies);
+      Check.atMost(CALLS * SAMPLING_PERIOD / 1000 + 1, reads, "reads while sampled");
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static void reportLatencies(String name, long[] latencies) {
+    long[] sorted = Benchmark.sorted(latencies, latencies.length);
+    System.out.println(name);
+    Benchmark.report("  median latency", Benchmark.percentile(sorted, 0.5), "ns");
+    Benchmark.report("  99.9th percentile latency", Benchmark.percentile(sorted, 0.999), "ns");
+    Benchmark.report("  maximum latency", sorted[sorted.length - 1], "ns");
+  }
+
+  /*
+   * Makes the sensor valid again once it was read the given number of times.
+   */
+  private static Thread recoverAfter(final CountingSensor sensor, final int reads) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        while (sensor.getFetches() < reads)
+          Thread.yield();
+        sensor.set(0, VALID);
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  /*
+   * Original UltrasonicPoller.poll(), with its filter counter starting at 0.
+   */
+  private static int originalPoll(CountingSensor sp) {
+    float[] buffer = new float[1];
+    int filter = 0;
+    sp.fetchSample(buffer, 0);
+    int distance = (int) (buffer[0] * 100);
+
+    while (distance > 255 && filter <= 30) {
+      sp.fetchSample(buffer, 0);
+      distance = (int) (buffer[0] * 100);
+
+      if (distance > 255)
+        filter++;
+      else
+        filter = 0;
+
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+    }
+
+    return distance > 255 ? 255 : distance;
+  }
+
+  /*
+   * Sensor reads of the original UltrasonicPoller.pollMean(), which fetched its MeanFilter three
+   * times, each fetch reading the sensor once.
+   */
+  private static int originalPollMean(CountingSensor sp) {
+    float[] buffer = new float[1];
+    float sum = 0;
+    for (int i = 0; i < 3; i++) {
+      sp.fetchSample(buffer, 0);
+      sum += buffer[0];
+    }
+    return (int) (sum / 3 * 100);
+  }
+
+}
@@ -0,0 +1,64 @@
+package ca.mcgill.ecse211.mountev3rest.testing;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by the current thread, to check that code meant to run in the control
+ * loops does not allocate.
+ * <p>
+ * The count is read from the {@code com.sun.management.ThreadMXBean} of the HotSpot JVM. On JVMs
+ * without it {@code isSupported()} returns false and the tests skip their allocation checks.
+ * 
+ * @author angelortiz
+ *
+ */
+public final class Allocations {
+
+  private Allocations() {}
+
+  /**
+   * Indicates whether the JVM can count the allocations of a thread.
+   * 
+   * @return True if {@code allocatedBytes()} is available.
+   */
+  public static boolean isSupported() {
+    Object bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return false;
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported())
+      return false;
+    threads.setThreadAllocatedMemoryEnabled(true);
+    return threads.isThreadAllocatedMemoryEnabled();
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread since it started.
+   * 
+   * @return Allocated bytes.
+   */
+  public static long allocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread while running a piece of code. The code
+   * should run enough iterations for the JIT compiler to have compiled it, or be preceded by a
+   * warm-up, since the interpreter may allocate where compiled code does not.
+   * 
+   * @param code Code to run.
+   * @return Bytes allocated while running it, excluding the cost of the measurement itself.
+   */
+  public static long measure(Runnable code) {
+    // Calibrate the measurement, since reading the counter may itself allocate
+    long before = allocatedBytes();
+    long overhead = allocatedBytes() - before;
+
+    before = allocatedBytes();
+    code.run();
+    return Math.max(0, allocatedBytes() - before - overhead);
+  }
+
+}
@@ -0,0 +1,108 @@
+package ca.mcgill.ecse211.mountev3rest.testing;
+
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the benchmarks of the project.
+ * <p>
+ * The project is built by the leJOS tools, which do not provide a benchmark harness, so the
+ * benchmarks are plain programs run by {@code test/run.sh bench}. Every measurement runs the
+ * operation for {@code WARMUP_NANOS} first so the JIT compiler settles, and the results are printed
+ * one per line as {@code name: value unit}.
+ * 
+ * @author angelortiz
+ *
+ */
+public final class Benchmark {
+
+  // Constants
+  public static final long WARMUP_NANOS = 1000000000L;
+  public static final long MEASURE_NANOS = 2000000000L;
+  private static final int BATCH = 1000; // Operations between two reads of the clock
+
+  // Sink for the results of the measured operations, so they are not optimized away
+  public static volatile long sink;
+
+  private Benchmark() {}
+
+  /**
+   * An operation to measure. Returning a value derived from the work done keeps the JIT compiler
+   * from removing it.
+   */
+  public interface Operation {
+    /**
+     * Runs the operation once.
+     * 
+     * @return Any value computed by the operation.
+     */
+    long run();
+  }
+
+  /**
+   * Measures the average time of an operation run repeatedly on the calling thread.
+   * 
+   * @param operation Operation to measure.
+   * @return Average time per run in nanoseconds.
+   */
+  public static double nanosPerOperation(Operation operation) {
+    runFor(operation, WARMUP_NANOS);
+    long start = System.nanoTime();
+    long runs = runFor(operation, MEASURE_NANOS);
+    return (double) (System.nanoTime() - start) / runs;
+  }
+
+  /**
+   * Returns a percentile of sorted values.
+   * 
+   * @param sorted Values sorted in increasing order.
+   * @param fraction Percentile between 0 and 1.
+   * @return Value below which the given fraction of the values lie.
+   */
+  public static long percentile(long[] sorted, double fraction) {
+    int index = (int) Math.ceil(fraction * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * Sorts the first values of an array and returns them.
+   * 
+   * @param values Array holding the values.
+   * @param count Number of values to keep.
+   * @return Sorted copy of the first {@code count} values.
+   */
+  public static long[] sorted(long[] values, int count) {
+    long[] copy = Arrays.copyOf(values, count);
+    Arrays.sort(copy);
+    return copy;
+  }
+
+  /**
+   * Prints a result.
+   * 
+   * @param name Name of the measured quantity.
+   * @param value Measured value.
+   * @param unit Unit of the value.
+   */
+  public static void report(String name, double value, String unit) {
+    System.out.println(String.format("%-48s %12.1f %s", name + ":", value, unit));
+  }
+
+  // ---PRIVATE METHODS---
+
+  /*
+   * Runs the operation in batches for at least the given time and returns the number of runs.
+   */
+  private static long runFor(Operation operation, long nanos) {
+    long runs = 0;
+    long result = 0;
+    long end = System.nanoTime() + nanos;
+    while (System.nanoTime() - end < 0) {
+      for (int i = 0; i < BATCH; i++)
+        result += operation.run();
+      runs += BATCH;
+    }
+    sink = result;
+    return runs;
+  }
+
+}
@@ -0,0 +1,66 @@
+package ca.mcgill.ecse211.mountev3rest.testing;
+
+/**
+ * Assertions used by the tests of the project.
+ * <p>
+ * The tests are plain programs run by {@code test/run.sh}, so a failed check throws an
+ * {@code AssertionError} that ends the program with an error regardless of the {@code -ea} flag of
+ * the JVM.
+ * 
+ * @author angelortiz
+ *
+ */
+public final class Check {
+
+  private Check() {}
+
+  /**
+   * Fails if the condition is false.
+   * 
+   * @param condition Condition expected to hold.
+   * @param message Description of the condition.
+   */
+  public static void isTrue(boolean condition, String message) {
+    if (!condition)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Fails if two integer values differ.
+   * 
+   * @param expected Expected value.
+   * @param actual Value obtained.
+   * @param message Description of the value.
+   */
+  public static void equal(long expected, long actual, String message) {
+    if (expected != actual)
+      throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+  }
+
+  /**
+   * Fails if a value is farther than the tolerance from the expected one.
+   * 
+   * @param expected Expected value.
+   * @param actual Value obtained.
+   * @param tolerance Largest difference accepted.
+   * @param message Description of the value.
+   */
+  public static void near(double expected, double actual, double tolerance, String message) {
+    if (!(Math.abs(expected - actual) <= tolerance))
+      throw new AssertionError(message + ": expected " + expected + " +/- " + tolerance
+          + " but was " + actual);
+  }
+
+  /**
+   * Fails if a value is above the given limit.
+   * 
+   * @param limit Largest value accepted.
+   * @param actual Value obtained.
+   * @param message Description of the value.
+   */
+  public static void atMost(double limit, double actual, String message) {
+    if (!(actual <= limit))
+      throw new AssertionError(message + ": expected at most " + limit + " but was " + actual);
+  }
+
+}
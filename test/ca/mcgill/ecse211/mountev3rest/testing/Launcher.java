@@ -0,0 +1,37 @@
+package ca.mcgill.ecse211.mountev3rest.testing;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Runs the {@code main()} method of a test or benchmark and exits the JVM with its outcome, so the
+ * threads left running by a failed test, such as the workers of a scheduler, cannot keep the JVM
+ * alive.
+ * 
+ * @author angelortiz
+ *
+ */
+public final class Launcher {
+
+  private Launcher() {}
+
+  /**
+   * Runs a test or benchmark.
+   * 
+   * @param args Name of the class to run, followed by the arguments passed to it.
+   */
+  public static void main(String[] args) throws Exception {
+    String[] forwarded = new String[args.length - 1];
+    System.arraycopy(args, 1, forwarded, 0, forwarded.length);
+
+    int status = 0;
+    try {
+      Class.forName(args[0]).getMethod("main", String[].class).invoke(null, (Object) forwarded);
+    } catch (InvocationTargetException e) {
+      e.getCause().printStackTrace();
+      status = 1;
+    }
+    System.out.flush();
+    System.exit(status);
+  }
+
+}
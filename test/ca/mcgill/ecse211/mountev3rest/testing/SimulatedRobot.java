@@ -0,0 +1,163 @@
+package ca.mcgill.ecse211.mountev3rest.testing;
+
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedMotor;
+import ca.mcgill.ecse211.mountev3rest.hardware.SimulatedSensor;
+import ca.mcgill.ecse211.mountev3rest.navigation.ArcIntegrator;
+import ca.mcgill.ecse211.mountev3rest.navigation.DifferentialDrive;
+import ca.mcgill.ecse211.mountev3rest.navigation.Navigation;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.navigation.OdometerException;
+import ca.mcgill.ecse211.mountev3rest.navigation.OdometryCorrector;
+import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.PollerException;
+import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
+import ca.mcgill.ecse211.mountev3rest.util.RobotContext;
+
+/**
+ * Robot built on simulated motors and sensors, with the dimensions of the real one, used by the
+ * tests that run the control code.
+ * <p>
+ * The robot has its own {@code RobotContext}, so several of them can run in the same JVM. Its
+ * {@code OdometryCorrector} starts disabled, since the simulated light sensors only see lines when
+ * a test sets their values. Nothing runs until {@code start()} schedules the odometer and the
+ * navigation, and {@code close()} stops every thread of the robot.
+ *
+ * @author angelortiz
+ *
+ */
+public class SimulatedRobot implements AutoCloseable {
+
+  // Constants
+  public static final double WHEEL_RADIUS = 2.05;
+  public static final double TRACK = 8.45;
+  public static final double TILE_SIZE = 30.48;
+  public static final double SENSOR_OFFSET = -2.3; // Distance from the axis to the line sensors
+  public static final long ODOMETER_PERIOD = 10;
+
+  // Attributes
+  private final SimulatedMotor leftMotor;
+  private final SimulatedMotor rightMotor;
+  private final DifferentialDrive drive;
+  private final Odometer odometer;
+  private final SimulatedSensor frontSensor;
+  private final SimulatedSensor leftSensor;
+  private final SimulatedSensor rightSensor;
+  private final SimulatedSensor usSensor;
+  private final LightPoller lightPoller;
+  private final UltrasonicPoller usPoller;
+  private final RobotContext context;
+  private final OdometryCorrector corrector;
+  private final Navigation navigation;
+
+  /**
+   * Creates a robot whose motors run at the given multiple of real time.
+   *
+   * @param timeScale Simulated seconds elapsed per real second.
+   * @throws OdometerException If the navigation cannot obtain the odometer of the context.
+   * @throws PollerException If the corrector cannot obtain the light poller of the context.
+   */
+  public SimulatedRobot(double timeScale) throws OdometerException, PollerException {
+    leftMotor = new SimulatedMotor(timeScale);
+    rightMotor = new SimulatedMotor(timeScale);
+    drive = new DifferentialDrive(leftMotor, rightMotor, WHEEL_RADIUS, TRACK, 1);
+    odometer = new Odometer(leftMotor, rightMotor, 1, new ArcIntegrator(WHEEL_RADIUS, TRACK),
+        ODOMETER_PERIOD);
+
+    frontSensor = new SimulatedSensor(3);
+    leftSensor = new SimulatedSensor(1);
+    rightSensor = new SimulatedSensor(1);
+    usSensor = new SimulatedSensor(1);
+    lightPoller = new LightPoller(frontSensor, leftSensor, rightSensor);
+    usPoller = new UltrasonicPoller(usSensor);
+
+    context = new RobotContext(odometer, lightPoller, usPoller);
+    corrector = new OdometryCorrector(context, drive, TILE_SIZE, SENSOR_OFFSET);
+    corrector.disable();
+    navigation = new Navigation(context, drive, corrector);
+  }
+
+  /**
+   * Schedules the odometer and the navigation on the scheduler of the robot and starts it.
+   */
+  public void start() {
+    getScheduler().schedule(navigation, Navigation.NAVIGATION_PERIOD, Priority.NORMAL);
+    startOdometer();
+  }
+
+  /**
+   * Schedules the odometer alone and starts the scheduler, for tests that run the navigation
+   * themselves.
+   */
+  public void startOdometer() {
+    PeriodicScheduler scheduler = getScheduler();
+    scheduler.schedule(odometer, odometer.getPeriod(), Priority.HIGH);
+    scheduler.start();
+  }
+
+  public SimulatedMotor getLeftMotor() {
+    return leftMotor;
+  }
+
+  public SimulatedMotor getRightMotor() {
+    return rightMotor;
+  }
+
+  public DifferentialDrive getDrive() {
+    return drive;
+  }
+
+  public Odometer getOdometer() {
+    return odometer;
+  }
+
+  public SimulatedSensor getFrontSensor() {
+    return frontSensor;
+  }
+
+  public SimulatedSensor getLeftSensor() {
+    return leftSensor;
+  }
+
+  public SimulatedSensor getRightSensor() {
+    return rightSensor;
+  }
+
+  public SimulatedSensor getUltrasonicSensor() {
+    return usSensor;
+  }
+
+  public LightPoller getLightPoller() {
+    return lightPoller;
+  }
+
+  public UltrasonicPoller getUltrasonicPoller() {
+    return usPoller;
+  }
+
+  public RobotContext getContext() {
+    return context;
+  }
+
+  public PeriodicScheduler getScheduler() {
+    return context.getScheduler();
+  }
+
+  public OdometryCorrector getCorrector() {
+    return corrector;
+  }
+
+  public Navigation getNavigation() {
+    return navigation;
+  }
+
+  /**
+   * Stops the sampling of the sensors and the periodic tasks of the robot.
+   */
+  @Override
+  public void close() {
+    context.close();
+  }
+
+}
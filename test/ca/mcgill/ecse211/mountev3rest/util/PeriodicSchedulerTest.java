@@ -0,0 +1,140 @@
+package ca.mcgill.ecse211.mountev3rest.util;
+
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Priority;
+import ca.mcgill.ecse211.mountev3rest.util.PeriodicScheduler.Task;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the life cycle of the {@code PeriodicScheduler}: tasks run at their period, failing tasks
+ * are counted and eventually cancelled, workers exit once their tasks are cancelled, and
+ * {@code shutdown()} leaves no thread running.
+ *
+ * @author angelortiz
+ *
+ */
+public class PeriodicSchedulerTest {
+
+  public static void main(String[] args) throws InterruptedException {
+    runsAtPeriod();
+    cancelsFailingTasks();
+    workersExitWithoutTasks();
+    shutdownStopsEveryWorker();
+    Check.equal(0, countWorkers(), "scheduler threads left running");
+  }
+
+  private static void runsAtPeriod() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    Task task = scheduler.schedule(counter(runs), 10, Priority.HIGH);
+    scheduler.start();
+    Thread.sleep(500);
+    scheduler.shutdown();
+
+    Check.near(50, runs.get(), 10, "iterations in 500 ms at a 10 ms period");
+    Check.equal(runs.get(), task.getIterations(), "iterations counted by the task");
+    Check.equal(0, task.getFailures(), "failures of a task that never throws");
+    Check.isTrue(task.isCancelled(), "tasks are cancelled by the shutdown");
+  }
+
+  private static void cancelsFailingTasks() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    Task failing = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        // Fail on the odd iterations first, then on every iteration after the tenth
+        if (runs.incrementAndGet() > 10 || runs.get() % 2 == 1)
+          throw new IllegalStateException("failure " + runs.get());
+      }
+    }, 5, Priority.NORMAL);
+    Task healthy = scheduler.schedule(counter(new AtomicInteger()), 5, Priority.NORMAL);
+
+    // The stack traces printed for the expected failures are not part of the output of the test
+    PrintStream err = System.err;
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      scheduler.start();
+      Thread.sleep(300);
+    } finally {
+      System.setErr(err);
+    }
+
+    Check.isTrue(failing.isCancelled(), "task failing repeatedly is cancelled");
+    Check.equal(10 + PeriodicScheduler.MAX_CONSECUTIVE_FAILURES, failing.getIterations(),
+        "iterations before the cancellation");
+    Check.equal(5 + PeriodicScheduler.MAX_CONSECUTIVE_FAILURES, failing.getFailures(),
+        "failures counted");
+    Check.isTrue(failing.getLastFailure().getMessage().equals("failure 20"),
+        "last failure kept");
+    Check.isTrue(!healthy.isCancelled() && healthy.getIterations() > 40,
+        "task sharing the level keeps running");
+    scheduler.shutdown();
+  }
+
+  private static void workersExitWithoutTasks() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    Task first = scheduler.schedule(counter(runs), 5, Priority.LOW);
+    scheduler.start();
+    Thread.sleep(50);
+    first.cancel();
+    Thread.sleep(50);
+    Check.equal(0, countWorkers(), "workers left once the only task is cancelled");
+
+    // A new worker serves the tasks scheduled afterwards
+    int before = runs.get();
+    scheduler.schedule(counter(runs), 5, Priority.LOW);
+    Thread.sleep(100);
+    Check.isTrue(runs.get() - before > 10, "task scheduled after its worker exited runs");
+    scheduler.shutdown();
+  }
+
+  private static void shutdownStopsEveryWorker() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    PeriodicScheduler scheduler = new PeriodicScheduler();
+    for (Priority priority : Priority.values())
+      scheduler.schedule(counter(runs), 5, priority);
+    scheduler.start();
+    Thread.sleep(50);
+    scheduler.shutdown();
+
+    Check.equal(0, countWorkers(), "workers left after the shutdown");
+    int after = runs.get();
+    Thread.sleep(50);
+    Check.equal(after, runs.get(), "iterations after the shutdown");
+    Check.isTrue(scheduler.isShutdown(), "scheduler reports the shutdown");
+
+    try {
+      scheduler.schedule(counter(runs), 5, Priority.HIGH);
+      throw new AssertionError("scheduling after the shutdown should fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  // ---PRIVATE METHODS---
+
+  private static Runnable counter(final AtomicInteger runs) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+  }
+
+  /*
+   * Counts the live worker threads of every scheduler in the JVM.
+   */
+  private static int countWorkers() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+      if (thread.getName().startsWith("scheduler-") && thread.isAlive())
+        count++;
+    return count;
+  }
+
+}
@@ -0,0 +1,168 @@
+package ca.mcgill.ecse211.mountev3rest.util;
+
+import ca.mcgill.ecse211.mountev3rest.navigation.Navigation;
+import ca.mcgill.ecse211.mountev3rest.navigation.Odometer;
+import ca.mcgill.ecse211.mountev3rest.sensor.LightPoller;
+import ca.mcgill.ecse211.mountev3rest.sensor.UltrasonicPoller;
+import ca.mcgill.ecse211.mountev3rest.testing.Check;
+import ca.mcgill.ecse211.mountev3rest.testing.SimulatedRobot;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many short simulated missions at the same time in the same JVM, each in its own
+ * {@code RobotContext}, and checks that the robots do not share any state and that closing a
+ * context leaves none of its threads running.
+ * <p>
+ * Every robot starts from its own pose, moves by its own distance and reads its own values on its
+ * sensors, so a component shared between two contexts would make at least one of them end with
+ * the pose or the readings of another.
+ *
+ * @author angelortiz
+ *
+ */
+public class RobotContextTest {
+
+  // Constants
+  private static final int MISSIONS = 200;
+  private static final double TIME_SCALE = 20;
+  private static final long MISSION_TIMEOUT = 60000;
+  private static final double POSITION_TOLERANCE = 0.5;
+
+  public static void main(String[] args) throws Exception {
+    int baseline = Thread.activeCount();
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+
+    Thread[] missions = new Thread[MISSIONS];
+    for (int i = 0; i < MISSIONS; i++) {
+      final int index = i;
+      final SimulatedRobot robot = new SimulatedRobot(TIME_SCALE);
+      missions[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            int count = running.incrementAndGet();
+            for (int max = maxRunning.get(); max < count; max = maxRunning.get())
+              if (maxRunning.compareAndSet(max, count))
+                break;
+            runMission(robot, index);
+          } catch (Throwable e) {
+            failures.add(e);
+          } finally {
+            running.decrementAndGet();
+          }
+        }
+      };
+      missions[i].start();
+    }
+
+    start.countDown();
+    for (Thread mission : missions) {
+      mission.join(MISSION_TIMEOUT);
+      Check.isTrue(!mission.isAlive(), "mission finished");
+    }
+    if (!failures.isEmpty())
+      throw new AssertionError(failures.size() + " missions failed", failures.peek());
+
+    System.out.println(MISSIONS + " missions: up to " + maxRunning.get() + " at the same time");
+    Check.isTrue(maxRunning.get() > MISSIONS / 2, "missions running at the same time");
+    Check.equal(0, countWorkers(), "scheduler threads left running");
+    Check.atMost(baseline, Thread.activeCount(), "threads left running");
+  }
+
+  /*
+   * Starts the periodic tasks of a robot, moves it briefly and closes its context. The start pose,
+   * the distance and the sensor readings are derived from the index of the mission.
+   */
+  private static void runMission(SimulatedRobot robot, int index) throws Exception {
+    Navigation navigation = robot.getNavigation();
+    Odometer odometer = robot.getOdometer();
+    LightPoller lightPoller = robot.getLightPoller();
+    UltrasonicPoller usPoller = robot.getUltrasonicPoller();
+    double startX = index;
+    double distance = 2 + 0.1 * index;
+    float reading = 0.3f + index / 1000f;
+    int usDistance = 10 + index;
+    try {
+      odometer.setXYT(startX, 0, 0);
+      robot.getLeftSensor().set(0, reading);
+      robot.getUltrasonicSensor().set(0, (usDistance + 0.5f) / 100);
+      robot.start();
+      PeriodicScheduler scheduler = robot.getScheduler();
+      lightPoller.startSampling(scheduler, 5, LightPoller.LINES);
+      usPoller.startSampling(scheduler, 20);
+
+      navigation.advanceDist(distance);
+      Check.isTrue(navigation.waitNavigation(MISSION_TIMEOUT), "short movement completed");
+      Check.isTrue(awaitPose(odometer, startX, distance), "mission " + index + " ended at ("
+          + odometer.getX() + ", " + odometer.getY() + ") instead of its own target");
+      Check.isTrue(awaitSamples(lightPoller, usPoller),
+          "sensors sampled by the scheduler of the context");
+      Check.near(reading, lightPoller.getLeft(), 0, "light reading of mission " + index);
+      Check.equal(usDistance, usPoller.getDistance(), "distance of mission " + index);
+      Check.isTrue(robot.getContext().getOdometer() == odometer
+          && robot.getContext().getLightPoller() == lightPoller
+          && robot.getContext().getUltrasonicPoller() == usPoller, "components of the context");
+    } finally {
+      robot.close();
+    }
+
+    Check.isTrue(!lightPoller.isSampling() && !usPoller.isSampling(), "sampling stopped");
+    Check.isTrue(robot.getScheduler().isShutdown(), "scheduler shut down");
+  }
+
+  /*
+   * Waits for the odometer to integrate the end of the movement, which may take a few periods
+   * while hundreds of robots share the processor.
+   */
+  private static boolean awaitPose(Odometer odometer, double x, double y)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + MISSION_TIMEOUT;
+    while (Math.hypot(odometer.getX() - x, odometer.getY() - y) > POSITION_TOLERANCE) {
+      if (System.currentTimeMillis() > deadline)
+        return false;
+      Thread.sleep(odometer.getPeriod());
+    }
+    return true;
+  }
+
+  /*
+   * Waits for the first samples of both pollers, which a short movement can end before.
+   */
+  private static boolean awaitSamples(LightPoller lightPoller, UltrasonicPoller usPoller)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + MISSION_TIMEOUT;
+    while (lightPoller.getSampleCount(LightPoller.LEFT) == 0 || usPoller.getSampleCount() == 0) {
+      if (System.currentTimeMillis() > deadline)
+        return false;
+      Thread.sleep(1);
+    }
+    return true;
+  }
+
+  /*
+   * Counts the live worker threads of every scheduler in the JVM, waiting up to a second for the
+   * workers whose last task was just cancelled to exit.
+   */
+  private static int countWorkers() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 1000;
+    int count;
+    while ((count = countLiveWorkers()) > 0 && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+    return count;
+  }
+
+  private static int countLiveWorkers() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+      if (thread.getName().startsWith("scheduler-") && thread.isAlive())
+        count++;
+    return count;
+  }
+
+}
@@ -0,0 +1,31 @@
+#!/bin/sh
+# Compiles the sources and the tests, then runs every *Test class, or every *Benchmark class when
+# called as "test/run.sh bench". A single class can be selected with a second argument, as in
+# "test/run.sh test NavigationStressTest".
+#
+# The leJOS classes are taken from EV3_CLASSES, by default the ev3classes.jar of LEJOS_HOME. The
+# tests only use the simulated hardware, so they run on any Linux JVM.
+set -e
+cd "$(dirname "$0")/.."
+
+EV3_CLASSES="${EV3_CLASSES:-$LEJOS_HOME/lib/ev3/ev3classes.jar}"
+CLASSPATH="$EV3_CLASSES:lib/EV3WiFiClient.jar"
+OUT="$(mktemp -d)"
+trap 'rm -rf "$OUT"' EXIT
+
+if ! javac -nowarn -source 1.7 -target 1.7 -encoding UTF-8 -d "$OUT" -cp "$CLASSPATH" \
+    $(find src test -name '*.java') > "$OUT/javac.log" 2>&1; then
+  cat "$OUT/javac.log"
+  exit 1
+fi
+
+SUFFIX=Test
+[ "$1" = bench ] && SUFFIX=Benchmark
+status=0
+for file in $(cd test && find . -name "*$SUFFIX.java" | sort); do
+  class=$(echo "$file" | sed 's|^\./||; s|\.java$||; s|/|.|g')
+  case "$class" in *"$2"*) ;; *) continue ;; esac
+  echo "== $class"
+  java -cp "$OUT:$CLASSPATH" ca.mcgill.ecse211.mountev3rest.testing.Launcher "$class" || status=1
+done
+exit $status